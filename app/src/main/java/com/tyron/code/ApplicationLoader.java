@@ -13,6 +13,7 @@ import androidx.preference.PreferenceManager;
 import com.developer.crashx.config.CrashConfig;
 import com.tyron.builder.BuildModule;
 import com.tyron.common.ApplicationProvider;
+import com.tyron.common.util.Cache;
 import com.tyron.completion.java.CompletionModule;
 import com.tyron.completion.xml.XmlCompletionModule;
 
@@ -42,6 +43,13 @@ public class ApplicationLoader extends Application {
                 .apply();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        Cache.onTrimMemory(level);
+    }
+
     public static SharedPreferences getDefaultPreferences() {
         return PreferenceManager.getDefaultSharedPreferences(applicationContext);
     }
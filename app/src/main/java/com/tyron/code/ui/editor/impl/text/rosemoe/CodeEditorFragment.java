@@ -26,6 +26,7 @@ import com.tyron.builder.compiler.manifest.xml.XmlPrettyPrinter;
 import com.tyron.builder.log.LogViewModel;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.code.ApplicationLoader;
@@ -107,7 +108,7 @@ public class CodeEditorFragment extends Fragment implements Savable,
 
         if (mCanSave) {
             if (ProjectManager.getInstance().getCurrentProject() != null) {
-                ProjectManager.getInstance().getCurrentProject().getModule(mCurrentFile).getFileManager().setSnapshotContent(mCurrentFile, mEditor.getText().toString());
+                ProjectManager.getInstance().getCurrentProject().getModule(mCurrentFile).getFileManager().setSnapshotContent(mCurrentFile, mEditor.getText().snapshot());
             }
         }
     }
@@ -136,7 +137,7 @@ public class CodeEditorFragment extends Fragment implements Savable,
                 int targetX = mEditor.getOffsetX();
                 int targetY = mEditor.getOffsetY();
 
-                mEditor.setText(fileContent.get());
+                setEditorText(fileContent.get());
 
                 mEditor.setSelection(line, column, false);
 
@@ -149,6 +150,23 @@ public class CodeEditorFragment extends Fragment implements Savable,
     }
 
 
+    /**
+     * Set the text of the editor, the undo history saved when the editor was paused is
+     * restored if the text is the same
+     */
+    private void setEditorText(CharSequence text) {
+        mEditor.getText().setUndoJournal(null);
+        mEditor.setText(text);
+        if (mCanSave) {
+            mEditor.getText().setUndoJournal(getUndoJournalFile());
+        }
+    }
+
+    private File getUndoJournalFile() {
+        File dir = new File(requireContext().getCacheDir(), "undo");
+        return new File(dir, Integer.toHexString(mCurrentFile.getAbsolutePath().hashCode()));
+    }
+
     public void hideEditorWindows() {
         mEditor.getTextActionPresenter().onExit();
         mEditor.hideAutoCompleteWindow();
@@ -236,7 +254,7 @@ public class CodeEditorFragment extends Fragment implements Savable,
             if (module != null) {
                 module.getFileManager().openFileForSnapshot(mCurrentFile, text);
             }
-            mEditor.setText(text);
+            setEditorText(text);
         } else {
             mCanSave = false;
         }
@@ -367,7 +385,7 @@ public class CodeEditorFragment extends Fragment implements Savable,
             String xml = result.getString("text", mEditor.getText().toString());
             xml = XmlPrettyPrinter.prettyPrint(xml, XmlFormatPreferences.defaults(),
                     XmlFormatStyle.LAYOUT, "\n");
-            mEditor.setText(xml);
+            setEditorText(xml);
         }));
     }
 
@@ -376,6 +394,7 @@ public class CodeEditorFragment extends Fragment implements Savable,
         super.onDestroyView();
 
         mEditorEventListener = null;
+        mEditor.getText().setUndoJournal(null);
         mEditor.setEditorLanguage(null);
         mEditor.setEventListener(null);
         mEditor.setOnLongPressListener(null);
@@ -399,8 +418,9 @@ public class CodeEditorFragment extends Fragment implements Savable,
         hideEditorWindows();
 
         if (mCanSave) {
+            mEditor.getText().saveUndoJournal();
             if (ProjectManager.getInstance().getCurrentProject() != null) {
-                ProjectManager.getInstance().getCurrentProject().getModule(mCurrentFile).getFileManager().setSnapshotContent(mCurrentFile, mEditor.getText().toString());
+                ProjectManager.getInstance().getCurrentProject().getModule(mCurrentFile).getFileManager().setSnapshotContent(mCurrentFile, mEditor.getText().snapshot());
             } else {
                 try {
                     FileUtils.writeStringToFile(mCurrentFile, mEditor.getText().toString(), StandardCharsets.UTF_8);
@@ -427,6 +447,15 @@ public class CodeEditorFragment extends Fragment implements Savable,
                 return;
             }
 
+            Project project = ProjectManager.getInstance().getCurrentProject();
+            if (project != null) {
+                // saving through the file manager lets the source index pick up the change
+                FileManager fileManager = project.getModule(mCurrentFile).getFileManager();
+                fileManager.setSnapshotContent(mCurrentFile, mEditor.getText().snapshot());
+                if (fileManager.saveFile(mCurrentFile)) {
+                    return;
+                }
+            }
             try {
                 FileUtils.writeStringToFile(mCurrentFile, mEditor.getText().toString());
             } catch (IOException e) {
@@ -493,7 +522,7 @@ public class CodeEditorFragment extends Fragment implements Savable,
                     Cursor cursor = mEditor.getCursor();
                     CharSequence format = mLanguage.format(mEditor.getText(), cursor.getLeft(),
                             cursor.getRight());
-                    mEditor.setText(format);
+                    setEditorText(format);
                     return;
                 }
             }
@@ -538,26 +567,26 @@ public class CodeEditorFragment extends Fragment implements Savable,
 
         @Override
         public void onNewTextSet(@NonNull CodeEditor editor) {
-            updateFile(editor.getText().toString());
+            updateFile(editor);
         }
 
         @Override
         public void afterDelete(@NonNull CodeEditor editor, @NonNull CharSequence content,
                                 int startLine, int startColumn, int endLine, int endColumn,
                                 CharSequence deletedContent) {
-            updateFile(content);
+            updateFile(editor);
         }
 
         @Override
         public void afterInsert(@NonNull CodeEditor editor, @NonNull CharSequence content,
                                 int startLine, int startColumn, int endLine, int endColumn,
                                 CharSequence insertedContent) {
-            updateFile(content);
+            updateFile(editor);
         }
 
         @Override
         public void beforeReplace(@NonNull CodeEditor editor, @NonNull CharSequence content) {
-            updateFile(content);
+            updateFile(editor);
         }
 
         @Override
@@ -565,9 +594,9 @@ public class CodeEditorFragment extends Fragment implements Savable,
 
         }
 
-        private void updateFile(CharSequence contents) {
+        private void updateFile(CodeEditor editor) {
             if (mModule != null) {
-                mModule.getFileManager().setSnapshotContent(mCurrentFile, contents.toString());
+                mModule.getFileManager().setSnapshotContent(mCurrentFile, editor.getText().snapshot());
             }
         }
     }
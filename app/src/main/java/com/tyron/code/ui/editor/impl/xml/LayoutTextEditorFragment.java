@@ -2,6 +2,8 @@ package com.tyron.code.ui.editor.impl.xml;
 
 import android.os.Bundle;
 
+import androidx.fragment.app.Fragment;
+
 import com.tyron.code.R;
 import com.tyron.code.ui.editor.impl.text.rosemoe.CodeEditorFragment;
 import com.tyron.code.ui.layoutEditor.LayoutEditorFragment;
@@ -26,8 +28,18 @@ public class LayoutTextEditorFragment extends CodeEditorFragment {
 
         File currentFile = getEditor().getCurrentFile();
         if (ProjectUtils.isLayoutXMLFile(currentFile)) {
-            getChildFragmentManager().beginTransaction().add(R.id.layout_editor_container,
-                    LayoutEditorFragment.newInstance(currentFile)).addToBackStack(null).commit();
+            // the editor of a previous preview is kept hidden, only the views of the
+            // elements that were edited since then need to be inflated again
+            Fragment fragment = getChildFragmentManager()
+                    .findFragmentByTag(LayoutEditorFragment.TAG);
+            if (fragment instanceof LayoutEditorFragment) {
+                getChildFragmentManager().beginTransaction().show(fragment).commit();
+                ((LayoutEditorFragment) fragment).updateLayout();
+            } else {
+                getChildFragmentManager().beginTransaction().add(R.id.layout_editor_container,
+                        LayoutEditorFragment.newInstance(currentFile), LayoutEditorFragment.TAG)
+                        .commit();
+            }
         } else {
             // TODO: handle unknown files
 //            JavaCompilerProvider service =
@@ -0,0 +1,85 @@
+package com.tyron.code.ui.editor.language;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * A {@link CharStream} that reads directly from a {@link CharSequence} starting at any index,
+ * so lexers can resume in the middle of a text without copying it.
+ * <p>
+ * Indices are the indices of the underlying text and columns are counted in chars, the same
+ * way the editor counts them.
+ */
+public class CharSequenceCharStream implements CharStream {
+
+    private final CharSequence mText;
+    private final int mStart;
+    private int mIndex;
+
+    public CharSequenceCharStream(CharSequence text, int start) {
+        mText = text;
+        mStart = start;
+        mIndex = start;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.max(interval.a, mStart);
+        int stop = Math.min(interval.b, mText.length() - 1);
+        if (stop < start) {
+            return "";
+        }
+        return mText.subSequence(start, stop + 1).toString();
+    }
+
+    @Override
+    public void consume() {
+        if (mIndex >= mText.length()) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        mIndex++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        int index = i > 0 ? mIndex + i - 1 : mIndex + i;
+        if (index < mStart || index >= mText.length()) {
+            return IntStream.EOF;
+        }
+        return mText.charAt(index);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+
+    }
+
+    @Override
+    public int index() {
+        return mIndex;
+    }
+
+    @Override
+    public void seek(int index) {
+        mIndex = Math.max(mStart, Math.min(index, mText.length()));
+    }
+
+    @Override
+    public int size() {
+        return mText.length();
+    }
+
+    @Override
+    public String getSourceName() {
+        return IntStream.UNKNOWN_SOURCE_NAME;
+    }
+}
@@ -7,6 +7,7 @@ import org.openjdk.javax.tools.Diagnostic;
 import java.util.List;
 
 import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.data.SpanLine;
 import io.github.rosemoe.sora.text.CharPosition;
 import io.github.rosemoe.sora.text.Indexer;
 import io.github.rosemoe.sora.text.TextAnalyzeResult;
@@ -71,7 +72,7 @@ public class HighlightUtil {
     public static int[] setErrorSpan(TextAnalyzeResult colors, int line, int column) {
         int lineCount = colors.getSpanMap().size();
         int realLine = line - 1;
-        List<Span> spans = colors.getSpanMap().get(Math.min(realLine, lineCount - 1));
+        SpanLine spans = colors.getSpanMap().get(Math.min(realLine, lineCount - 1));
 
         int[] end = new int[2];
         end[0] = Math.min(realLine, lineCount - 1);
@@ -82,23 +83,20 @@ public class HighlightUtil {
             colors.add(realLine, span);
             end[0]++;
         } else {
-            Span last = null;
             for (int i = 0; i < spans.size(); i++) {
-                Span span = spans.get(i);
-                if (last != null) {
-                    if (last.column <= column - 1 && span.column >= column - 1) {
-                        span.problemFlags = Span.FLAG_ERROR;
-                        last.problemFlags = Span.FLAG_ERROR;
-                        end[1] = last.column;
+                if (i > 0) {
+                    if (spans.getColumn(i - 1) <= column - 1 && spans.getColumn(i) >= column - 1) {
+                        spans.setProblemFlags(i, Span.FLAG_ERROR);
+                        spans.setProblemFlags(i - 1, Span.FLAG_ERROR);
+                        end[1] = spans.getColumn(i - 1);
                         break;
                     }
                 }
-                if (i == spans.size() - 1 && span.column <= column - 1) {
-                    span.problemFlags = Span.FLAG_ERROR;
-                    end[1] = span.column;
+                if (i == spans.size() - 1 && spans.getColumn(i) <= column - 1) {
+                    spans.setProblemFlags(i, Span.FLAG_ERROR);
+                    end[1] = spans.getColumn(i);
                     break;
                 }
-                last = span;
             }
         }
         return end;
@@ -110,10 +108,10 @@ public class HighlightUtil {
     public static void setErrorSpan(TextAnalyzeResult colors, int line) {
         int lineCount = colors.getSpanMap().size();
         int realLine = line - 1;
-        List<Span> spans = colors.getSpanMap().get(Math.min(realLine, lineCount - 1));
+        SpanLine spans = colors.getSpanMap().get(Math.min(realLine, lineCount - 1));
 
-        for (Span span : spans) {
-            span.problemFlags = Span.FLAG_ERROR;
+        for (int i = 0; i < spans.size(); i++) {
+            spans.setProblemFlags(i, Span.FLAG_ERROR);
         }
     }
 }
@@ -0,0 +1,66 @@
+package com.tyron.code.ui.editor.language;
+
+import org.antlr.v4.runtime.Lexer;
+
+import java.util.Arrays;
+
+/**
+ * The mode stack of an ANTLR {@link Lexer}, used as the line state of incremental analyzers
+ * whose lexers keep no other state between tokens.
+ */
+public final class LexerState {
+
+    public static final LexerState DEFAULT = new LexerState(Lexer.DEFAULT_MODE, new int[0]);
+
+    private final int mMode;
+    private final int[] mModeStack;
+
+    private LexerState(int mode, int[] modeStack) {
+        mMode = mode;
+        mModeStack = modeStack;
+    }
+
+    /**
+     * @return The current state of the lexer, or an existing equal state
+     */
+    public static LexerState of(Lexer lexer, LexerState previous) {
+        if (previous != null && previous.matches(lexer)) {
+            return previous;
+        }
+        return new LexerState(lexer._mode, lexer._modeStack.toArray());
+    }
+
+    private boolean matches(Lexer lexer) {
+        if (lexer._mode != mMode || lexer._modeStack.size() != mModeStack.length) {
+            return false;
+        }
+        for (int i = 0; i < mModeStack.length; i++) {
+            if (lexer._modeStack.get(i) != mModeStack[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restore this state to the given lexer
+     */
+    public void apply(Lexer lexer) {
+        lexer._mode = mMode;
+        lexer._modeStack.clear();
+        lexer._modeStack.addAll(mModeStack);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LexerState that = (LexerState) o;
+        return mMode == that.mMode && Arrays.equals(mModeStack, that.mModeStack);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mMode + Arrays.hashCode(mModeStack);
+    }
+}
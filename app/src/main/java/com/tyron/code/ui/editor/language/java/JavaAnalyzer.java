@@ -44,18 +44,17 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
 import java.util.stream.Collectors;
 
-import io.github.rosemoe.sora.data.BlockLine;
-import io.github.rosemoe.sora.data.NavigationItem;
 import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.interfaces.IncrementalCodeAnalyzer;
 import io.github.rosemoe.sora.langs.java.JavaCodeAnalyzer;
 import io.github.rosemoe.sora.langs.java.JavaTextTokenizer;
 import io.github.rosemoe.sora.langs.java.Tokens;
 import io.github.rosemoe.sora.text.CharPosition;
 import io.github.rosemoe.sora.text.Indexer;
 import io.github.rosemoe.sora.text.LineNumberCalculator;
+import io.github.rosemoe.sora.text.LineStateCache;
 import io.github.rosemoe.sora.text.TextAnalyzeResult;
 import io.github.rosemoe.sora.text.TextAnalyzer;
 import io.github.rosemoe.sora.widget.CodeEditor;
@@ -64,7 +63,7 @@ import kotlin.Unit;
 import kotlin.jvm.functions.Function0;
 import kotlin.jvm.functions.Function1;
 
-public class JavaAnalyzer extends JavaCodeAnalyzer {
+public class JavaAnalyzer extends JavaCodeAnalyzer implements IncrementalCodeAnalyzer<Tokens> {
     private static final Debouncer sDebouncer = new Debouncer(Duration.ofMillis(700));
     private static final String TAG = JavaAnalyzer.class.getSimpleName();
     /**
@@ -133,7 +132,7 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
                 try {
                     SourceFileObject sourceFileObject =
                             new SourceFileObject(editor.getCurrentFile().toPath(),
-                                    contents.toString(), Instant.now());
+                                    contents, Instant.now());
                     CompilerContainer container =
                                  service.compile(Collections.singletonList(sourceFileObject));
                     container.run(task -> {
@@ -222,27 +221,40 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
         return positions.getEndPosition(root, tree);
     }
 
+    @Override
     public void analyze(CharSequence content, TextAnalyzeResult colors,
                         TextAnalyzer.AnalyzeThread.Delegate delegate) {
-        CodeEditor editor = mEditorReference.get();
-        if (editor == null) {
-            return;
-        }
-        StringBuilder text = content instanceof StringBuilder ? (StringBuilder) content :
-                new StringBuilder(content);
-        JavaTextTokenizer tokenizer = new JavaTextTokenizer(text);
-        tokenizer.setCalculateLineColumn(false);
-        Tokens token, previous = Tokens.UNKNOWN;
-        int line = 0, column = 0;
-        LineNumberCalculator helper = new LineNumberCalculator(text);
+        IncrementalCodeAnalyzer.super.analyze(content, colors, delegate);
+    }
 
-        Stack<BlockLine> stack = new Stack<>();
-        List<NavigationItem> labels = new ArrayList<>();
-        int maxSwitch = 1, currSwitch = 0;
+    @Override
+    public Tokens getInitialState() {
+        return Tokens.UNKNOWN;
+    }
 
-        boolean first = true;
+    /**
+     * The state at the start of a line is the last token that is not a whitespace, the
+     * tokenizer itself does not keep any state between tokens.
+     */
+    @Override
+    public void tokenize(CharSequence text, int offset, int startLine, Tokens state,
+                         LineStateCache<Tokens> cache,
+                         TextAnalyzer.AnalyzeThread.Delegate delegate) {
+        JavaTextTokenizer tokenizer = new JavaTextTokenizer(text);
+        tokenizer.setCalculateLineColumn(false);
+        tokenizer.seek(offset);
+        Tokens token, previous = state;
+        int line = startLine, column = 0;
+        int stateLine = startLine;
+        LineNumberCalculator helper = new LineNumberCalculator(text, offset, startLine);
 
         while (delegate.shouldAnalyze()) {
+            if (column == 0 && line > stateLine) {
+                if (!cache.startLine(line, previous)) {
+                    break;
+                }
+                stateLine = line;
+            }
             try {
                 // directNextToken() does not skip any token
                 token = tokenizer.directNextToken();
@@ -254,22 +266,18 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
                 break;
             }
             // Backup values because looking ahead in function name match will change them
-            int thisIndex = tokenizer.getIndex();
             int thisLength = tokenizer.getTokenLength();
 
             switch (token) {
                 case WHITESPACE:
                 case NEWLINE:
-                    if (first) {
-                        colors.addNormalIfNull();
-                    }
                     break;
                 case IDENTIFIER:
                     //Add a identifier to auto complete
 
                     //The previous so this will be the annotation's type name
                     if (previous == Tokens.AT) {
-                        colors.addIfNeeded(line, column, EditorColorScheme.ANNOTATION);
+                        cache.addIfNeeded(line, column, EditorColorScheme.ANNOTATION);
                         break;
                     }
                     //Here we have to get next token to see if it is function
@@ -286,7 +294,7 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
                             }
                         }
                         if (!found) {
-                            colors.addIfNeeded(line, column, EditorColorScheme.FUNCTION_NAME);
+                            cache.addIfNeeded(line, column, EditorColorScheme.FUNCTION_NAME);
                             tokenizer.pushBack(tokenizer.getTokenLength());
                             break;
                         }
@@ -295,13 +303,13 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
                     tokenizer.pushBack(tokenizer.getTokenLength());
                     //This is a class definition
 
-                    colors.addIfNeeded(line, column, EditorColorScheme.TEXT_NORMAL);
+                    cache.addIfNeeded(line, column, EditorColorScheme.TEXT_NORMAL);
                     break;
                 case CHARACTER_LITERAL:
                 case STRING:
                 case FLOATING_POINT_LITERAL:
                 case INTEGER_LITERAL:
-                    colors.addIfNeeded(line, column, EditorColorScheme.LITERAL);
+                    cache.addIfNeeded(line, column, EditorColorScheme.LITERAL);
                     break;
                 case INT:
                 case LONG:
@@ -357,49 +365,27 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
                 case FALSE:
                 case NULL:
                 case SEMICOLON:
-                    colors.addIfNeeded(line, column, EditorColorScheme.KEYWORD);
+                    cache.addIfNeeded(line, column, EditorColorScheme.KEYWORD);
                     break;
-                case LBRACE: {
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                    if (stack.isEmpty()) {
-                        if (currSwitch > maxSwitch) {
-                            maxSwitch = currSwitch;
-                        }
-                        currSwitch = 0;
-                    }
-                    currSwitch++;
-                    BlockLine block = colors.obtainNewBlock();
-                    block.startLine = line;
-                    block.startColumn = column;
-                    stack.push(block);
+                case LBRACE:
+                    cache.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
+                    cache.openBlock(line, column);
                     break;
-                }
-                case RBRACE: {
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                    if (!stack.isEmpty()) {
-                        BlockLine block = stack.pop();
-                        block.endLine = line;
-                        block.endColumn = column;
-                        if (block.startLine != block.endLine) {
-                            colors.addBlockLine(block);
-                        }
-                    }
+                case RBRACE:
+                    cache.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
+                    cache.closeBlock(line, column);
                     break;
-                }
                 case LINE_COMMENT:
                 case LONG_COMMENT:
-                    colors.addIfNeeded(line, column, EditorColorScheme.COMMENT);
+                    cache.addIfNeeded(line, column, EditorColorScheme.COMMENT);
                     break;
                 default:
                     if (token == Tokens.LBRACK || (token == Tokens.RBRACK && previous == Tokens.LBRACK)) {
-                        colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
+                        cache.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
                         break;
                     }
-                    colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
+                    cache.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
             }
-
-
-            first = false;
             helper.update(thisLength);
             line = helper.getLine();
             column = helper.getColumn();
@@ -407,15 +393,13 @@ public class JavaAnalyzer extends JavaCodeAnalyzer {
                 previous = token;
             }
         }
-        if (stack.isEmpty()) {
-            if (currSwitch > maxSwitch) {
-                maxSwitch = currSwitch;
-            }
-        }
-        colors.determine(line);
-        colors.setSuppressSwitch(maxSwitch + 10);
-        colors.setNavigation(labels);
+    }
 
-        HighlightUtil.markDiagnostics(editor, mDiagnostics, colors);
+    @Override
+    public void afterAnalyze(CharSequence content, TextAnalyzeResult result) {
+        CodeEditor editor = mEditorReference.get();
+        if (editor != null) {
+            HighlightUtil.markDiagnostics(editor, mDiagnostics, result);
+        }
     }
-}
\ No newline at end of file
+}
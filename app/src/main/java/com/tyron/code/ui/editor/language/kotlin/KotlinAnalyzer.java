@@ -5,7 +5,9 @@ import android.util.Log;
 
 import androidx.preference.PreferenceManager;
 
+import com.tyron.code.ui.editor.language.CharSequenceCharStream;
 import com.tyron.code.ui.editor.language.HighlightUtil;
+import com.tyron.code.ui.editor.language.LexerState;
 import com.tyron.code.ui.project.ProjectManager;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
@@ -15,29 +17,21 @@ import com.tyron.common.BuildConfig;
 import com.tyron.common.SharedPreferenceKeys;
 import com.tyron.kotlin_completion.CompletionEngine;
 
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CodePointCharStream;
 import org.antlr.v4.runtime.Token;
-import org.antlr.v4.runtime.TokenSource;
-import org.openjdk.javax.tools.Diagnostic;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
-import io.github.rosemoe.sora.data.BlockLine;
 import io.github.rosemoe.sora.data.Span;
-import io.github.rosemoe.sora.interfaces.CodeAnalyzer;
-import io.github.rosemoe.sora.text.CharPosition;
-import io.github.rosemoe.sora.text.Indexer;
+import io.github.rosemoe.sora.interfaces.IncrementalCodeAnalyzer;
+import io.github.rosemoe.sora.text.LineStateCache;
 import io.github.rosemoe.sora.text.TextAnalyzeResult;
 import io.github.rosemoe.sora.text.TextAnalyzer;
 import io.github.rosemoe.sora.widget.CodeEditor;
 import io.github.rosemoe.sora.widget.EditorColorScheme;
 
-public class KotlinAnalyzer implements CodeAnalyzer {
+public class KotlinAnalyzer implements IncrementalCodeAnalyzer<LexerState> {
 
     private final WeakReference<CodeEditor> mEditorReference;
     private final List<DiagnosticWrapper> mDiagnostics;
@@ -75,35 +69,41 @@ public class KotlinAnalyzer implements CodeAnalyzer {
     }
 
     @Override
-    public void analyze(CharSequence content, TextAnalyzeResult colors, TextAnalyzer.AnalyzeThread.Delegate delegate) {
-        CodeEditor editor = mEditorReference.get();
-        if (editor == null) {
-            return;
-        }
+    public LexerState getInitialState() {
+        return LexerState.DEFAULT;
+    }
+
+    @Override
+    public void tokenize(CharSequence text, int offset, int startLine, LexerState state,
+                         LineStateCache<LexerState> cache,
+                         TextAnalyzer.AnalyzeThread.Delegate delegate) {
         try {
-            CodePointCharStream stream = CharStreams.fromString(String.valueOf(content));
-            KotlinLexer lexer = new KotlinLexer(stream);
+            KotlinLexer lexer = new KotlinLexer(new CharSequenceCharStream(text, offset));
+            state.apply(lexer);
+            lexer.setLine(startLine + 1);
+            lexer.setCharPositionInLine(0);
 
-            Stack<BlockLine> stack = new Stack<>();
-            int maxSwitch = 1, currSwitch = 0;
-            int lastLine = 0;
+            LexerState lineState = state;
+            int stateLine = startLine;
             int line, column;
-            Token previous = UnknownToken.INSTANCE;
-            Token token = null;
+            Token token;
 
             while (delegate.shouldAnalyze()) {
-                token = lexer.nextToken();
-                if (token == null) {
-                    break;
+                line = lexer.getLine() - 1;
+                if (line > stateLine && lexer.getCharPositionInLine() == 0) {
+                    lineState = LexerState.of(lexer, lineState);
+                    if (!cache.startLine(line, lineState)) {
+                        break;
+                    }
+                    stateLine = line;
                 }
 
-                if (token.getType() == KotlinLexer.EOF) {
-                    lastLine = token.getLine() - 1;
+                token = lexer.nextToken();
+                if (token == null || token.getType() == KotlinLexer.EOF) {
                     break;
                 }
                 line = token.getLine() - 1;
                 column = token.getCharPositionInLine();
-                lastLine = line;
 
                 switch (token.getType()) {
                     case KotlinLexer.ADD:
@@ -111,7 +111,7 @@ public class KotlinAnalyzer implements CodeAnalyzer {
                     case KotlinLexer.MULT:
                     case KotlinLexer.DIV:
                     case KotlinLexer.ELVIS:
-                        colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
+                        cache.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
                         break;
                     case KotlinLexer.INTERNAL:
                     case KotlinLexer.IF:
@@ -156,10 +156,10 @@ public class KotlinAnalyzer implements CodeAnalyzer {
                     case KotlinLexer.INIT:
                     case KotlinLexer.OBJECT:
                     case KotlinLexer.INTERFACE:
-                        colors.addIfNeeded(line, column, EditorColorScheme.KEYWORD);
+                        cache.addIfNeeded(line, column, EditorColorScheme.KEYWORD);
                         break;
                     case KotlinLexer.Identifier:
-                        colors.addIfNeeded(line, column, EditorColorScheme.IDENTIFIER_NAME);
+                        cache.addIfNeeded(line, column, EditorColorScheme.IDENTIFIER_NAME);
                         break;
                     case KotlinLexer.QUOTE_CLOSE:
                     case KotlinLexer.QUOTE_OPEN:
@@ -186,53 +186,23 @@ public class KotlinAnalyzer implements CodeAnalyzer {
                                 span.setUnderlineColor(Color.TRANSPARENT);
                             }
                         }
-                        colors.addIfNeeded(line, span);
+                        cache.addIfNeeded(line, span);
                         break;
                     case KotlinLexer.AT:
                     case KotlinLexer.LabelReference:
-                        colors.addIfNeeded(line, column, EditorColorScheme.ANNOTATION);
+                        cache.addIfNeeded(line, column, EditorColorScheme.ANNOTATION);
                         break;
                     case KotlinLexer.LCURL:
-                        if (stack.isEmpty()) {
-                            if (currSwitch > maxSwitch) {
-                                maxSwitch = currSwitch;
-                            }
-                            currSwitch = 0;
-                        }
-                        currSwitch++;
-                        BlockLine block = colors.obtainNewBlock();
-                        block.startLine = line;
-                        block.startColumn = column;
-                        stack.push(block);
+                        cache.openBlock(line, column);
                         break;
                     case KotlinLexer.RCURL:
-                        if (!stack.isEmpty()) {
-                            BlockLine b = stack.pop();
-                            b.endLine = line;
-                            b.endColumn = column;
-                            if (b.startLine != b.endLine) {
-                                colors.addBlockLine(b);
-                            }
-                        }
+                        cache.closeBlock(line, column);
                         break;
                     default:
-                        colors.addIfNeeded(line, column, EditorColorScheme.TEXT_NORMAL);
+                        cache.addIfNeeded(line, column, EditorColorScheme.TEXT_NORMAL);
                         break;
                 }
-
-                if (token.getType() != KotlinLexer.WS && token.getType() != KotlinLexer.NL) {
-                    previous = token;
-                }
             }
-            colors.determine(lastLine);
-
-            if (stack.isEmpty()) {
-                if (currSwitch > maxSwitch) {
-                    maxSwitch = currSwitch;
-                }
-            }
-            colors.setSuppressSwitch(maxSwitch + 10);
-            HighlightUtil.markDiagnostics(editor, mDiagnostics, colors);
         } catch (Throwable e) {
             if (BuildConfig.DEBUG) {
                 Log.e("KotlinAnalyzer", "Failed to analyze", e);
@@ -240,58 +210,11 @@ public class KotlinAnalyzer implements CodeAnalyzer {
         }
     }
 
-    private static class UnknownToken implements Token {
-
-        public static UnknownToken INSTANCE = new UnknownToken();
-
-        @Override
-        public String getText() {
-            return "";
-        }
-
-        @Override
-        public int getType() {
-            return -1;
-        }
-
-        @Override
-        public int getLine() {
-            return 0;
-        }
-
-        @Override
-        public int getCharPositionInLine() {
-            return 0;
-        }
-
-        @Override
-        public int getChannel() {
-            return 0;
-        }
-
-        @Override
-        public int getTokenIndex() {
-            return 0;
-        }
-
-        @Override
-        public int getStartIndex() {
-            return 0;
-        }
-
-        @Override
-        public int getStopIndex() {
-            return 0;
-        }
-
-        @Override
-        public TokenSource getTokenSource() {
-            return null;
-        }
-
-        @Override
-        public CharStream getInputStream() {
-            return null;
+    @Override
+    public void afterAnalyze(CharSequence content, TextAnalyzeResult result) {
+        CodeEditor editor = mEditorReference.get();
+        if (editor != null) {
+            HighlightUtil.markDiagnostics(editor, mDiagnostics, result);
         }
     }
 }
@@ -71,10 +71,6 @@ public class KotlinAutoCompleteProvider implements AutoCompleteProvider {
 
         CompletionEngine engine = CompletionEngine.getInstance((AndroidModule) currentModule);
 
-        if (engine.isIndexing()) {
-            return null;
-        }
-
         try {
             // waiting for code editor to support async code completions
             mTask = engine.complete(mEditor.getCurrentFile(), mEditor.getText().toString(), prefix, line, column, mEditor.getCursor().getLeft());
@@ -161,8 +161,7 @@ public class XMLAnalyzer extends AbstractCodeAnalyzer {
                 colors.addIfNeeded(line, column, EditorColorScheme.IDENTIFIER_NAME);
                 return true;
             case XMLLexer.EQUALS:
-                Span span1 = colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
-                span1.setUnderlineColor(Color.TRANSPARENT);
+                colors.addIfNeeded(line, column, EditorColorScheme.OPERATOR);
                 return true;
             case XMLLexer.STRING:
                 String text = token.getText();
@@ -171,12 +170,12 @@ public class XMLAnalyzer extends AbstractCodeAnalyzer {
                         int color = Color.parseColor(text.substring(1, text.length() - 1));
                         colors.addIfNeeded(line, Span.obtain(column,
                                 EditorColorScheme.LITERAL));
-                        colors.add(line, Span.obtain(column + 1,
-                                EditorColorScheme.LITERAL)).setUnderlineColor(color);
-                        colors.add(line, Span.obtain(column + text.length() - 1,
-                                EditorColorScheme.LITERAL)).setUnderlineColor(Color.TRANSPARENT);
+                        Span underlined = Span.obtain(column + 1, EditorColorScheme.LITERAL);
+                        underlined.setUnderlineColor(color);
+                        colors.add(line, underlined);
+                        colors.add(line, column + text.length() - 1, EditorColorScheme.LITERAL);
                         colors.addIfNeeded(line, column + text.length(),
-                                EditorColorScheme.TEXT_NORMAL).setUnderlineColor(Color.TRANSPARENT);
+                                EditorColorScheme.TEXT_NORMAL);
                         break;
                     } catch (Exception ignore) {
                     }
@@ -222,9 +221,7 @@ public class XMLAnalyzer extends AbstractCodeAnalyzer {
                 // skip white spaces
                 return true;
             default:
-                Span s = Span.obtain(column, EditorColorScheme.TEXT_NORMAL);
-                colors.addIfNeeded(line, s);
-                s.setUnderlineColor(Color.TRANSPARENT);
+                colors.addIfNeeded(line, column, EditorColorScheme.TEXT_NORMAL);
                 return true;
         }
 
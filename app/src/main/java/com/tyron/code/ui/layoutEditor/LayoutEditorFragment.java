@@ -52,10 +52,15 @@ import com.tyron.code.ui.layoutEditor.attributeEditor.AttributeEditorDialogFragm
 import com.tyron.code.ui.layoutEditor.model.ViewPalette;
 import com.tyron.completion.java.provider.CompletionEngine;
 import com.tyron.layoutpreview.BoundaryDrawingFrameLayout;
+import com.tyron.layoutpreview.convert.ConvertException;
 import com.tyron.layoutpreview.convert.LayoutToXmlConverter;
+import com.tyron.layoutpreview.inflate.IncrementalLayoutInflater;
 import com.tyron.layoutpreview.inflate.PreviewLayoutInflater;
 
+import org.xmlpull.v1.XmlPullParserException;
+
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -69,6 +74,7 @@ import kotlin.Pair;
 public class LayoutEditorFragment extends Fragment implements ProjectManager.OnProjectOpenListener {
 
     public static final String KEY_SAVE = "KEY_SAVE";
+    public static final String TAG = "LayoutEditorFragment";
 
     /**
      * Creates a new LayoutEditorFragment instance for a layout xml file.
@@ -87,7 +93,14 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
     private LayoutEditorViewModel mEditorViewModel;
 
     private File mCurrentFile;
+    private AndroidModule mModule;
     private PreviewLayoutInflater mInflater;
+    private IncrementalLayoutInflater mLayoutInflater;
+    /**
+     * Whether the views have been edited since they were inflated, so they no longer
+     * match the source they were inflated from
+     */
+    private boolean mLayoutModified;
     private BoundaryDrawingFrameLayout mEditorRoot;
     private EditorDragListener mDragListener;
 
@@ -96,6 +109,34 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
 
     private boolean isDumb;
 
+    private final OnBackPressedCallback mOnBackPressedCallback = new OnBackPressedCallback(true) {
+        @Override
+        public void handleOnBackPressed() {
+            new MaterialAlertDialogBuilder(requireContext())
+                    .setTitle("Save to xml")
+                    .setMessage("Do you want to save the layout?")
+                    .setPositiveButton(android.R.string.yes, (d, w) -> {
+                        String converted = convertLayoutToXml();
+                        if (converted == null) {
+                            new MaterialAlertDialogBuilder(requireContext())
+                                    .setTitle("Error")
+                                    .setMessage("An unknown error has occurred during layout conversion")
+                                    .show();
+                        } else {
+                            Bundle args = new Bundle();
+                            args.putString("text", converted);
+                            getParentFragmentManager().setFragmentResult(KEY_SAVE,
+                                    args);
+                        }
+                        close();
+                    })
+                    .setNegativeButton(android.R.string.no, (d, w) -> {
+                        close();
+                    })
+                    .show();
+        }
+    };
+
     private final View.OnLongClickListener mOnLongClickListener = v -> {
         View.DragShadowBuilder shadowBuilder = new View.DragShadowBuilder(v);
         ViewCompat.startDragAndDrop(v, ClipData.newPlainText("", ""), shadowBuilder, v, 0);
@@ -149,6 +190,7 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
                     (requestKey, result) -> {
                 String key = result.getString("key", "");
                 String value = result.getString("value", "");
+                mLayoutModified = true;
                 if (value.isEmpty()) {
                     getChildFragmentManager().setFragmentResult(AttributeEditorDialogFragment.KEY_ATTRIBUTE_REMOVED, result);
                     manager.removeAttribute(key);
@@ -170,33 +212,14 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
                 CompletionEngine.isIndexing();
         mEditorViewModel = new ViewModelProvider(this)
                 .get(LayoutEditorViewModel.class);
-        requireActivity().getOnBackPressedDispatcher().addCallback(this, new OnBackPressedCallback(true) {
-            @Override
-            public void handleOnBackPressed() {
-                new MaterialAlertDialogBuilder(requireContext())
-                        .setTitle("Save to xml")
-                        .setMessage("Do you want to save the layout?")
-                        .setPositiveButton(android.R.string.yes, (d, w) -> {
-                            String converted = convertLayoutToXml();
-                            if (converted == null) {
-                                new MaterialAlertDialogBuilder(requireContext())
-                                        .setTitle("Error")
-                                        .setMessage("An unknown error has occurred during layout conversion")
-                                        .show();
-                            } else {
-                                Bundle args = new Bundle();
-                                args.putString("text", converted);
-                                getParentFragmentManager().setFragmentResult(KEY_SAVE,
-                                        args);
-                            }
-                            getParentFragmentManager().popBackStack();
-                        })
-                        .setNegativeButton(android.R.string.no, (d, w) -> {
-                            getParentFragmentManager().popBackStack();
-                        })
-                        .show();
-            }
-        });
+        requireActivity().getOnBackPressedDispatcher().addCallback(this, mOnBackPressedCallback);
+    }
+
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+
+        mOnBackPressedCallback.setEnabled(!hidden);
     }
 
     @Nullable
@@ -218,6 +241,7 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
                     .inflate(layout, new ObjectValue(), parent, 0);
             palette.getDefaultValues().forEach((key, value) ->
                     inflated.getViewManager().updateAttribute(key, value));
+            mLayoutModified = true;
             return inflated;
         });
         mDragListener.setDelegate(new EditorDragListener.Delegate() {
@@ -243,6 +267,7 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
                     ProteusView proteusChild = (ProteusView) view;
                     ProteusHelper.removeChildFromLayout(proteusParent, proteusChild);
                 }
+                mLayoutModified = true;
             }
         });
         return root;
@@ -272,10 +297,22 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
                         .setTitle(title)
                         .setMessage(message)
                         .setPositiveButton(android.R.string.ok, null).show();
-        getParentFragmentManager().popBackStack();
+        getParentFragmentManager().beginTransaction()
+                .remove(this)
+                .commit();
         return show;
     }
 
+    /**
+     * Hides the editor, it is kept so the next preview of this file only has to update
+     * the views that have changed
+     */
+    private void close() {
+        getParentFragmentManager().beginTransaction()
+                .hide(this)
+                .commit();
+    }
+
     private void createInflater() {
         Project currentProject = ProjectManager.getInstance().getCurrentProject();
         if (currentProject == null) {
@@ -287,6 +324,7 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
             exit(getString(R.string.error), "Layout preview is only for android projects.");
             return;
         }
+        mModule = (AndroidModule) module;
         setLoadingText("Parsing xml files");
 
         // need to wrap the context to a default theme so
@@ -306,30 +344,56 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
 
     private void afterParse(PreviewLayoutInflater inflater) {
         mInflater = inflater;
+        mLayoutInflater = inflater.newIncrementalInflater();
         setLoadingText("Inflating xml");
         inflateFile(mCurrentFile);
     }
 
+    /**
+     * Updates the views to match the current contents of the file, views of the elements
+     * that have not changed are kept.
+     */
+    public void updateLayout() {
+        if (mLayoutInflater == null) {
+            // the layout will be inflated once the resources are parsed
+            return;
+        }
+        inflateFile(mCurrentFile);
+    }
+
     private void inflateFile(File file) {
-        Optional<ProteusView> optionalView;
+        Optional<CharSequence> content = mModule.getFileManager().getFileContent(file);
+        if (!content.isPresent()) {
+            exit(getString(R.string.error), "Unable to read layout.");
+            return;
+        }
 
+        ProteusView current = mLayoutInflater.getRoot();
+        ProteusView view;
         try {
-            optionalView = mInflater.inflateLayout(file.getName()
-                    .replace(".xml", ""));
-        } catch (ProteusInflateException e) {
-            optionalView = Optional.empty();
+            if (current == null || mLayoutModified) {
+                view = mLayoutInflater.inflate(content.get().toString());
+            } else {
+                view = mLayoutInflater.update(content.get().toString());
+            }
+        } catch (IOException | XmlPullParserException | ConvertException
+                | ProteusInflateException e) {
+            exit(getString(R.string.error),
+                    "Unable to inflate layout: \n" + Log.getStackTraceString(e));
+            return;
         }
         setLoadingText(null);
+        mLayoutModified = false;
 
-        if (optionalView.isPresent()) {
+        if (view != current) {
             mEditorRoot.removeAllViews();
-            mEditorRoot.addView(optionalView.get().getAsView());
-            setDragListeners(mEditorRoot);
-            setClickListeners(mEditorRoot);
+            mEditorRoot.addView(view.getAsView());
+        }
+        setDragListeners(mEditorRoot);
+        setClickListeners(mEditorRoot);
 
+        if (current == null) {
             requireActivity().runOnUiThread(() -> resizeLayoutEditor(mEditorRoot));
-        } else {
-            exit(getString(R.string.error), "Unable to inflate layout.");
         }
     }
 
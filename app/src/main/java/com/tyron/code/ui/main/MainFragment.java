@@ -230,6 +230,9 @@ public class MainFragment extends Fragment implements ProjectManager.OnProjectOp
         super.onDestroy();
 
         ProjectManager.getInstance().removeOnProjectOpenListener(this);
+        if (isRemoving() && mProject != null) {
+            ProjectManager.getInstance().closeProject(mProject);
+        }
 
         if (mLogReceiver != null) {
             requireActivity().unregisterReceiver(mLogReceiver);
@@ -9,7 +9,6 @@ import com.tyron.builder.model.Library;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.code.ApplicationLoader;
-import com.tyron.code.util.AndroidUtilities;
 import com.tyron.code.util.DependencyUtils;
 import com.tyron.common.util.Decompress;
 import com.tyron.resolver.DependencyResolver;
@@ -22,18 +21,30 @@ import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipFile;
 
 public class DependencyManager {
 
+    private static final int MAX_CONCURRENT_DOWNLOADS = 8;
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final String FINGERPRINTS_FILE_NAME = "library_fingerprints.json";
+
     private final PomRepository mRepository;
     private final DependencyResolver mResolver;
+    private final LibraryFingerprints mFingerprints;
 
     public DependencyManager(File cacheDir) {
         extractCommonPomsIfNeeded();
@@ -46,6 +57,7 @@ public class DependencyManager {
         mRepository.addRepositoryUrl("https://jcenter.bintray.com");
         mRepository.initialize();
         mResolver = new DependencyResolver(mRepository);
+        mFingerprints = new LibraryFingerprints(new File(cacheDir, FINGERPRINTS_FILE_NAME));
     }
 
     private void extractCommonPomsIfNeeded() {
@@ -82,26 +94,30 @@ public class DependencyManager {
     }
 
     private void checkLibraries(JavaModule project, ILogger logger, List<File> newLibraries) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            checkLibraries(project, logger, newLibraries, executor);
+        } finally {
+            executor.shutdownNow();
+            mFingerprints.save();
+        }
+    }
+
+    private void checkLibraries(JavaModule project, ILogger logger, List<File> newLibraries,
+                                ExecutorService executor) throws IOException {
         Set<Library> libraries = new HashSet<>();
 
-        Map<String, Library> fileLibsHashes = new HashMap<>();
+        List<Library> projectLibraries = new ArrayList<>();
         File[] fileLibraries = project.getLibraryDirectory().listFiles(c ->
                 c.getName().endsWith(".aar") || c.getName().endsWith(".jar"));
         if (fileLibraries != null) {
             for (File fileLibrary : fileLibraries) {
-                try {
-                    ZipFile zipFile = new ZipFile(fileLibrary);
-                    Library library = new Library();
-                    library.setSourceFile(fileLibrary);
-                    fileLibsHashes.put(AndroidUtilities.calculateMD5(fileLibrary), library);
-                } catch (IOException e) {
-                    String message = "File " + fileLibrary +
-                            " is corrupt! Ignoring.";
-                    logger.warning(message);
-                }
+                Library library = new Library();
+                library.setSourceFile(fileLibrary);
+                projectLibraries.add(library);
             }
         }
-
+        Map<String, Library> fileLibsHashes = hashLibraries(projectLibraries, true, executor, logger);
 
         newLibraries.forEach(it -> {
             Library library = new Library();
@@ -126,9 +142,7 @@ public class DependencyManager {
 
         }
 
-        Map<String, Library> md5Map = new HashMap<>();
-        libraries.forEach(it ->
-                md5Map.put(AndroidUtilities.calculateMD5(it.getSourceFile()), it));
+        Map<String, Library> md5Map = hashLibraries(libraries, false, executor, logger);
         File buildLibs = new File(project.getBuildDirectory(), "libs");
         File[] buildLibraryDirs = buildLibs.listFiles(File::isDirectory);
         if (buildLibraryDirs != null) {
@@ -141,32 +155,91 @@ public class DependencyManager {
             }
         }
 
-        saveLibraryToProject(project, md5Map, fileLibsHashes);
+        saveLibraryToProject(project, md5Map, fileLibsHashes, executor, logger);
+    }
+
+    /**
+     * Hashes the source files of the libraries concurrently, only the files that changed since
+     * they were last hashed are read.
+     *
+     * @param verify whether the files should be checked to be valid zip files, the libraries
+     *               that are not are ignored
+     * @return the libraries by the MD5 hash of their source file
+     */
+    private Map<String, Library> hashLibraries(Collection<Library> libraries, boolean verify,
+                                               ExecutorService executor, ILogger logger) throws IOException {
+        Map<Library, Future<String>> futures = new LinkedHashMap<>();
+        for (Library library : libraries) {
+            futures.put(library, executor.submit(() -> {
+                if (verify) {
+                    try (ZipFile ignored = new ZipFile(library.getSourceFile())) {
+                        // only checks that the file can be opened
+                    }
+                }
+                return mFingerprints.getHash(library.getSourceFile());
+            }));
+        }
+
+        Map<String, Library> hashes = new HashMap<>();
+        for (Map.Entry<Library, Future<String>> entry : futures.entrySet()) {
+            try {
+                String hash = entry.getValue().get();
+                if (hash != null) {
+                    hashes.put(hash, entry.getKey());
+                }
+            } catch (ExecutionException e) {
+                String message = "File " + entry.getKey().getSourceFile() +
+                        " is corrupt! Ignoring.";
+                logger.warning(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while checking libraries");
+            }
+        }
+        return hashes;
     }
 
-    private void saveLibraryToProject(Module module, Map<String, Library> libraries, Map<String, Library> fileLibraries) throws IOException {
+    private void saveLibraryToProject(Module module, Map<String, Library> libraries,
+                                      Map<String, Library> fileLibraries,
+                                      ExecutorService executor, ILogger logger) throws IOException {
         Map<String, Library> combined = new HashMap<>();
         combined.putAll(libraries);
         combined.putAll(fileLibraries);
+
+        Map<File, Future<?>> futures = new HashMap<>();
         for (Map.Entry<String, Library> entry : combined.entrySet()) {
             String hash = entry.getKey();
             Library library = entry.getValue();
 
             File libraryDir = new File(module.getBuildDirectory(), "libs/" + hash);
             if (!libraryDir.exists()) {
-                libraryDir.mkdir();
+                libraryDir.mkdirs();
             } else {
                 continue;
             }
 
-            if (library.getSourceFile().getName().endsWith(".jar")) {
-                FileUtils.copyFileToDirectory(library.getSourceFile(), libraryDir);
+            futures.put(libraryDir, executor.submit(() -> {
+                File sourceFile = library.getSourceFile();
+                if (sourceFile.getName().endsWith(".jar")) {
+                    FileUtils.copyFile(sourceFile, new File(libraryDir, "classes.jar"));
+                } else if (sourceFile.getName().endsWith(".aar")) {
+                    Decompress.unzip(sourceFile, libraryDir);
+                }
+                return null;
+            }));
+        }
 
-                File file = new File(libraryDir, library.getSourceFile().getName());
-                file.renameTo(new File(libraryDir, "classes.jar"));
-            } else if (library.getSourceFile().getName().endsWith(".aar")) {
-                Decompress.unzip(library.getSourceFile().getAbsolutePath(),
-                        libraryDir.getAbsolutePath());
+        for (Map.Entry<File, Future<?>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException e) {
+                // extract it again the next time the libraries are checked
+                FileUtils.deleteQuietly(entry.getKey());
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.error("Unable to extract library to " + entry.getKey() + ": " + cause.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while extracting libraries");
             }
         }
 
@@ -176,18 +249,36 @@ public class DependencyManager {
                 .apply();
     }
 
+    /**
+     * Downloads the libraries of the poms concurrently, the returned files are in the same
+     * order as the poms
+     */
     public List<File> getFiles(List<Pom> resolvedPoms, ILogger logger) {
-        List<File> files = new ArrayList<>();
-        for (Pom resolvedPom : resolvedPoms) {
-            try {
-                File file = mRepository.getLibrary(resolvedPom);
-                if (file != null) {
-                    files.add(file);
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_DOWNLOADS);
+        try {
+            List<Future<File>> futures = new ArrayList<>(resolvedPoms.size());
+            for (Pom resolvedPom : resolvedPoms) {
+                futures.add(executor.submit(() -> mRepository.getLibrary(resolvedPom)));
+            }
+
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < resolvedPoms.size(); i++) {
+                try {
+                    File file = futures.get(i).get();
+                    if (file != null) {
+                        files.add(file);
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logger.error("Unable to download " + resolvedPoms.get(i) + ": " + cause.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
-            } catch (IOException e) {
-                logger.error("Unable to download " + resolvedPom + ": " + e.getMessage());
             }
+            return files;
+        } finally {
+            executor.shutdownNow();
         }
-        return files;
     }
 }
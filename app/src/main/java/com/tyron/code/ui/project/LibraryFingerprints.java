@@ -0,0 +1,119 @@
+package com.tyron.code.ui.project;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.tyron.code.util.AndroidUtilities;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The MD5 hashes of library files by their path. A library is only hashed again when its size
+ * or its modification time has changed since it was last hashed.
+ *
+ * <p>Hashes can be requested from multiple threads.
+ */
+class LibraryFingerprints {
+
+    private static final String TAG = "LibraryFingerprints";
+
+    private static class Fingerprint {
+
+        @SerializedName("length")
+        long length;
+
+        @SerializedName("lastModified")
+        long lastModified;
+
+        @SerializedName("md5")
+        String md5;
+    }
+
+    private final File mFile;
+    private final Map<String, Fingerprint> mFingerprints = new ConcurrentHashMap<>();
+    private volatile boolean mModified;
+
+    LibraryFingerprints(File file) {
+        mFile = file;
+        load();
+    }
+
+    private void load() {
+        if (!mFile.exists()) {
+            return;
+        }
+        try {
+            String contents = FileUtils.readFileToString(mFile, StandardCharsets.UTF_8);
+            Map<String, Fingerprint> fingerprints = new Gson().fromJson(contents,
+                    new TypeToken<Map<String, Fingerprint>>() {
+                    }.getType());
+            if (fingerprints != null) {
+                mFingerprints.putAll(fingerprints);
+            }
+        } catch (IOException | JsonParseException e) {
+            // the libraries will be hashed again
+            Log.w(TAG, "Unable to read " + mFile, e);
+        }
+    }
+
+    /**
+     * @return the MD5 hash of the file, null if the file does not exist
+     */
+    @Nullable
+    String getHash(File file) {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Fingerprint fingerprint = mFingerprints.get(path);
+        if (fingerprint != null && fingerprint.length == length
+                && fingerprint.lastModified == lastModified) {
+            return fingerprint.md5;
+        }
+
+        String md5 = AndroidUtilities.calculateMD5(file);
+        if (md5 == null) {
+            return null;
+        }
+        fingerprint = new Fingerprint();
+        fingerprint.length = length;
+        fingerprint.lastModified = lastModified;
+        fingerprint.md5 = md5;
+        mFingerprints.put(path, fingerprint);
+        mModified = true;
+        return md5;
+    }
+
+    /**
+     * Writes the hashes to the file if new libraries were hashed, the hashes of the files that
+     * no longer exist are dropped
+     */
+    synchronized void save() {
+        if (!mModified) {
+            return;
+        }
+        mFingerprints.keySet().removeIf(path -> !new File(path).exists());
+        File temp = new File(mFile.getPath() + ".tmp");
+        try {
+            FileUtils.writeStringToFile(temp, new Gson().toJson(mFingerprints),
+                    StandardCharsets.UTF_8);
+            FileUtils.deleteQuietly(mFile);
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Unable to move " + temp + " to " + mFile);
+            }
+            mModified = false;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save library hashes", e);
+        }
+    }
+}
@@ -18,9 +18,9 @@ import com.tyron.code.ApplicationLoader;
 import com.tyron.code.template.CodeTemplate;
 import com.tyron.code.util.ProjectUtils;
 import com.tyron.completion.index.CompilerService;
-import com.tyron.completion.java.CompilerContainer;
 import com.tyron.completion.java.JavaCompilerProvider;
-import com.tyron.completion.java.JavaCompilerService;
+import com.tyron.completion.java.index.SourceIndex;
+import com.tyron.completion.java.index.SourceIndexer;
 import com.tyron.completion.java.provider.CompletionEngine;
 import com.tyron.completion.xml.XmlIndexProvider;
 import com.tyron.completion.xml.XmlRepository;
@@ -92,6 +92,10 @@ public class ProjectManager {
             return;
         }
 
+        Project previous = mCurrentProject;
+        if (previous != null && !previous.equals(project)) {
+            closeProject(previous);
+        }
         mCurrentProject = project;
 
         if (module instanceof JavaModule) {
@@ -125,15 +129,16 @@ public class ProjectManager {
         if (module instanceof JavaModule) {
             mListener.onTaskStarted("Indexing");
             try {
+                JavaModule javaModule = (JavaModule) module;
                 JavaCompilerProvider provider = CompilerService.getInstance()
                         .getIndex(JavaCompilerProvider.KEY);
-                JavaCompilerService service = provider.get(project, (JavaModule) module);
-                ((JavaModule) module).getJavaFiles().forEach((key, value) -> {
-                    CompilerContainer container = service.compile(value.toPath());
-                    container.run(__ -> {
-
-                    });
-                });
+                SourceIndex index = provider.getSourceIndex(project, javaModule);
+                int parsed = new SourceIndexer(project)
+                        .update(index, javaModule.getJavaFiles().values());
+                if (parsed > 0) {
+                    logger.debug("Indexed " + parsed + " of " + index.size() + " java files");
+                }
+                provider.saveSourceIndex(project, javaModule);
             } catch (Throwable e) {
                 String message = "Failure indexing project.\n" +
                         Throwables.getStackTraceAsString(e);
@@ -162,6 +167,12 @@ public class ProjectManager {
     public void closeProject(@NonNull Project project) {
         if (project.equals(mCurrentProject)) {
             mCurrentProject = null;
+            // the source indexes listen to the file managers of the closed modules
+            JavaCompilerProvider provider = CompilerService.getInstance()
+                    .getIndex(JavaCompilerProvider.KEY);
+            if (provider != null) {
+                provider.destroy();
+            }
         }
     }
 
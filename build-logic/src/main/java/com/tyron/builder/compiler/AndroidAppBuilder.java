@@ -2,6 +2,7 @@ package com.tyron.builder.compiler;
 
 import com.tyron.builder.compiler.apk.PackageTask;
 import com.tyron.builder.compiler.apk.SignTask;
+import com.tyron.builder.compiler.dex.DexLibrariesTask;
 import com.tyron.builder.compiler.dex.R8Task;
 import com.tyron.builder.compiler.firebase.GenerateFirebaseConfigTask;
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
@@ -26,8 +27,13 @@ public class AndroidAppBuilder extends BuilderImpl<AndroidModule> {
 
     @Override
     public List<Task<? super AndroidModule>> getTasks(BuildType type) {
+        boolean useR8 = getModule().getSettings().getBoolean(ModuleSettings.USE_R8, false) &&
+                type == BuildType.RELEASE;
         List<Task<? super AndroidModule>> tasks = new ArrayList<>();
         tasks.add(new CleanTask(getModule(), getLogger()));
+        if (!useR8) {
+            tasks.add(new DexLibrariesTask(getModule(), getLogger()));
+        }
         tasks.add(new ManifestMergeTask(getModule(), getLogger()));
         tasks.add(new GenerateFirebaseConfigTask(getModule(), getLogger()));
         if (type == BuildType.DEBUG) {
@@ -37,8 +43,7 @@ public class AndroidAppBuilder extends BuilderImpl<AndroidModule> {
         tasks.add(new MergeSymbolsTask(getModule(), getLogger()));
         tasks.add(new IncrementalKotlinCompiler(getModule(), getLogger()));
         tasks.add(new IncrementalJavaTask(getModule(), getLogger()));
-        if (getModule().getSettings().getBoolean(ModuleSettings.USE_R8, false) &&
-                type == BuildType.RELEASE) {
+        if (useR8) {
             tasks.add(new R8Task(getModule(), getLogger()));
         } else {
             tasks.add(new IncrementalD8Task(getModule(), getLogger()));
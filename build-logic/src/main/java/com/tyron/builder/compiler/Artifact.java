@@ -0,0 +1,49 @@
+package com.tyron.builder.compiler;
+
+/**
+ * The outputs of the build that tasks read and write, used by {@link BuilderImpl} to find out
+ * which tasks can run at the same time.
+ */
+public enum Artifact {
+
+    /**
+     * The merged AndroidManifest.xml in the bin directory
+     */
+    MERGED_MANIFEST,
+
+    /**
+     * The android resources of the module, including generated ones
+     */
+    RESOURCES,
+
+    /**
+     * The compiled and linked resources, R.txt and the generated proguard rules
+     */
+    COMPILED_RESOURCES,
+
+    /**
+     * The java sources of the module, including the generated R.java files
+     */
+    JAVA_SOURCES,
+
+    /**
+     * The java and kotlin class files of the module
+     */
+    CLASSES,
+
+    /**
+     * The classes.dex files next to each library jar
+     */
+    LIBRARY_DEX,
+
+    /**
+     * The dex files of the module
+     */
+    DEX,
+
+    APK,
+
+    BUNDLE,
+
+    JAR
+}
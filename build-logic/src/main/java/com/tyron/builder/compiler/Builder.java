@@ -14,6 +14,16 @@ public interface Builder<T extends Module> {
     interface TaskListener {
         @MainThread
         void onTaskStarted(String name, String message, int progress);
+
+        /**
+         * Called when a task has finished successfully
+         *
+         * @param elapsedMillis the wall time taken by the task, including its preparation
+         */
+        @MainThread
+        default void onTaskFinished(String name, long elapsedMillis) {
+
+        }
     }
 
     void setTaskListener(TaskListener taskListener);
@@ -10,11 +10,27 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.Module;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public abstract class BuilderImpl<T extends Module> implements Builder<T> {
 
+    /**
+     * The maximum number of tasks that can run at the same time
+     */
+    private static final int MAX_CONCURRENT_TASKS = 3;
+
     private final Handler mMainHandler;
     private final T mProject;
     private final ILogger mLogger;
@@ -46,32 +62,184 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
 
     @Override
     public final void build(BuildType type) throws CompilationFailedException, IOException {
+        try {
+            runTasks(type);
+        } finally {
+            // the caches are persisted even if the build failed, they only contain entries
+            // of the work that succeeded
+            try {
+                getModule().persistCaches();
+            } catch (IOException e) {
+                getLogger().warning("Failed to save the build caches: " + e.getMessage());
+            }
+        }
+    }
+
+    private void runTasks(BuildType type) throws CompilationFailedException, IOException {
         mTasksRan.clear();
         List<Task<? super T>> tasks = getTasks(type);
-        for (int i = 0, tasksSize = tasks.size(); i < tasksSize; i++) {
-            Task<? super T> task = tasks.get(i);
-            final float current = i;
-            getLogger().info("Running " + task.getName());
-            try {
-                mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
-                        (int) ((current / (float) tasks.size()) * 100f)));
-                task.prepare(type);
-                task.run();
-            } catch (Throwable e) {
-                if (e instanceof OutOfMemoryError) {
-                    tasks.clear();
-                    mTasksRan.clear();
-                    throw new CompilationFailedException("Builder ran out of memory", e);
+        List<Set<Integer>> dependencies = getDependencies(tasks);
+
+        // the number of unfinished dependencies of each task and the tasks waiting for it
+        int[] waiting = new int[tasks.size()];
+        List<List<Integer>> dependents = new ArrayList<>();
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            waiting[i] = dependencies.get(i).size();
+            for (int dependency : dependencies.get(i)) {
+                dependents.get(dependency).add(i);
+            }
+            if (waiting[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(MAX_CONCURRENT_TASKS, tasks.size())));
+        CompletionService<TaskResult> completionService =
+                new ExecutorCompletionService<>(executor);
+        List<TaskResult> failures = new ArrayList<>();
+        int running = 0;
+        int finished = 0;
+        try {
+            while (true) {
+                while (failures.isEmpty() && !ready.isEmpty()) {
+                    int index = ready.poll();
+                    Task<? super T> task = tasks.get(index);
+                    final float current = finished;
+                    getLogger().info("Running " + task.getName());
+                    mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
+                            (int) ((current / (float) tasks.size()) * 100f)));
+                    completionService.submit(() -> runTask(index, task, type));
+                    running++;
+                }
+                if (running == 0) {
+                    break;
+                }
+
+                TaskResult result;
+                try {
+                    result = completionService.take().get();
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    throw new CompilationFailedException("Build was interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new CompilationFailedException("Task failed unexpectedly", e.getCause());
+                }
+                running--;
+
+                Task<? super T> task = tasks.get(result.index);
+                if (result.error != null) {
+                    // let the running tasks finish, but do not start new ones
+                    failures.add(result);
+                    continue;
                 }
-                task.clean();
-                mTasksRan.forEach(Task::clean);
-                throw e;
+                finished++;
+                mTasksRan.add(task);
+
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos);
+                getLogger().info(task.getName() + " finished in " + elapsed + " ms");
+                mMainHandler.post(() -> finishTask(task.getName(), elapsed));
+
+                for (int dependent : dependents.get(result.index)) {
+                    if (--waiting[dependent] == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        if (!failures.isEmpty()) {
+            Throwable e = failures.get(0).error;
+            if (e instanceof OutOfMemoryError) {
+                tasks.clear();
+                mTasksRan.clear();
+                throw new CompilationFailedException("Builder ran out of memory", e);
             }
-            mTasksRan.add(task);
+            for (TaskResult failure : failures) {
+                tasks.get(failure.index).clean();
+            }
+            mTasksRan.forEach(Task::clean);
+            if (e instanceof CompilationFailedException) {
+                throw (CompilationFailedException) e;
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new CompilationFailedException(e.getMessage(), e);
         }
         mTasksRan.forEach(Task::clean);
     }
 
+    private TaskResult runTask(int index, Task<? super T> task, BuildType type) {
+        long start = System.nanoTime();
+        try {
+            task.prepare(type);
+            task.run();
+            return new TaskResult(index, null, System.nanoTime() - start);
+        } catch (Throwable e) {
+            return new TaskResult(index, e, System.nanoTime() - start);
+        }
+    }
+
+    private void finishTask(String name, long elapsedMillis) {
+        if (mTaskListener != null) {
+            mTaskListener.onTaskFinished(name, elapsedMillis);
+        }
+    }
+
+    /**
+     * Finds the tasks each task has to wait for. A task waits for the tasks before it that
+     * write an artifact it reads or writes, or that read an artifact it writes. Tasks that
+     * do not declare their artifacts wait for every task before them, and every task after
+     * them waits for them.
+     *
+     * @return the indices of the tasks each task depends on
+     */
+    @VisibleForTesting
+    static List<Set<Integer>> getDependencies(List<? extends Task<?>> tasks) {
+        List<Set<Integer>> dependencies = new ArrayList<>();
+        int lastBarrier = -1;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task<?> task = tasks.get(i);
+            Set<Artifact> inputs = task.getInputs();
+            Set<Artifact> outputs = task.getOutputs();
+            Set<Integer> taskDependencies = new HashSet<>();
+            if (inputs == null || outputs == null) {
+                for (int j = lastBarrier == -1 ? 0 : lastBarrier; j < i; j++) {
+                    taskDependencies.add(j);
+                }
+                lastBarrier = i;
+            } else {
+                if (lastBarrier != -1) {
+                    taskDependencies.add(lastBarrier);
+                }
+                for (int j = lastBarrier + 1; j < i; j++) {
+                    Task<?> other = tasks.get(j);
+                    if (!Collections.disjoint(inputs, other.getOutputs()) ||
+                            !Collections.disjoint(outputs, other.getOutputs()) ||
+                            !Collections.disjoint(outputs, other.getInputs())) {
+                        taskDependencies.add(j);
+                    }
+                }
+            }
+            dependencies.add(taskDependencies);
+        }
+        return dependencies;
+    }
+
     public abstract List<Task<? super T>> getTasks(BuildType type);
 
     /**
@@ -86,4 +254,16 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
     public ILogger getLogger() {
         return mLogger;
     }
+
+    private static class TaskResult {
+        final int index;
+        final Throwable error;
+        final long elapsedNanos;
+
+        TaskResult(int index, Throwable error, long elapsedNanos) {
+            this.index = index;
+            this.error = error;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
 }
@@ -69,6 +69,8 @@ public class CleanTask extends Task<AndroidModule> {
                 .clear();
         getModule().getCache(MergeSymbolsTask.CACHE_KEY, new Cache<>())
                 .clear();
+        getModule().getCache(MergeSymbolsTask.JAR_CACHE_KEY, new Cache<>())
+                .clear();
     }
     private void cleanClasses() {
 
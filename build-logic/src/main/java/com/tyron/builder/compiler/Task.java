@@ -5,6 +5,7 @@ import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.project.api.Module;
 
 import java.io.IOException;
+import java.util.Set;
 
 /**
  *
@@ -38,6 +39,24 @@ public abstract class Task<T extends Module> {
      */
     public abstract String getName();
 
+    /**
+     * Called by {@link BuilderImpl} to know which tasks this task has to wait for.
+     *
+     * @return the artifacts read by this task, or null if they are unknown in which case this
+     * task runs after every task before it and before every task after it
+     */
+    public Set<Artifact> getInputs() {
+        return null;
+    }
+
+    /**
+     * @return the artifacts written by this task, or null if they are unknown
+     * @see #getInputs()
+     */
+    public Set<Artifact> getOutputs() {
+        return null;
+    }
+
     /**
      * Called before run() to give the subclass information about the project
      * @throws IOException if an exception occurred during a file operation
@@ -9,6 +9,7 @@ import com.android.sdklib.build.ApkBuilder;
 import com.android.sdklib.build.DuplicateFileException;
 import com.android.sdklib.internal.build.SignedJarBuilder;
 import com.tyron.builder.BuildModule;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.manifest.SdkConstants;
@@ -41,9 +42,11 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
@@ -71,6 +74,16 @@ public class AabTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.DEX, Artifact.LIBRARY_DEX, Artifact.COMPILED_RESOURCES);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.BUNDLE);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBinDir = new File(getModule().getBuildDirectory(), "/bin");
@@ -1,13 +1,13 @@
 package com.tyron.builder.compiler.apk;
 
-import android.net.Uri;
-
 import com.android.sdklib.build.ApkBuilder;
 import com.android.sdklib.build.ApkCreationException;
 import com.android.sdklib.build.DuplicateFileException;
 import com.android.sdklib.build.SealedApkException;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
@@ -15,7 +15,10 @@ import com.tyron.builder.project.api.AndroidModule;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class PackageTask extends Task<AndroidModule> {
 
@@ -50,6 +53,16 @@ public class PackageTask extends Task<AndroidModule> {
         return "Package";
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.DEX, Artifact.LIBRARY_DEX, Artifact.COMPILED_RESOURCES);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.APK);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBuildType = type;
@@ -59,8 +72,16 @@ public class PackageTask extends Task<AndroidModule> {
         mApk = new File(mBinDir, "generated.apk");
         mDexFile = new File(mBinDir, "classes.dex");
         mGeneratedRes = new File(mBinDir, "generated.apk.res");
+
+        // debug builds may split the classes into several dex files instead of merging them
+        List<File> shards = type == BuildType.DEBUG
+                ? IncrementalD8Task.getDexShards(getModule())
+                : Collections.emptyList();
         File[] binFiles = mBinDir.listFiles();
-        if (binFiles != null) {
+        if (!shards.isEmpty()) {
+            mDexFile = shards.get(0);
+            mDexFiles.addAll(shards.subList(1, shards.size()));
+        } else if (binFiles != null) {
             for (File child : binFiles) {
                 if (!child.isFile()) {
                     continue;
@@ -90,7 +111,7 @@ public class PackageTask extends Task<AndroidModule> {
 
             for (File extraDex : mDexFiles) {
                 dexCount++;
-                builder.addFile(extraDex, Uri.parse(extraDex.getAbsolutePath()).getLastPathSegment());
+                builder.addFile(extraDex, "classes" + dexCount + ".dex");
             }
 
             for (File library : mLibraries) {
@@ -1,6 +1,7 @@
 package com.tyron.builder.compiler.apk;
 
 import com.tyron.builder.compiler.ApkSigner;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -9,6 +10,8 @@ import com.tyron.builder.project.api.AndroidModule;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class SignTask extends Task<AndroidModule> {
 
@@ -24,6 +27,16 @@ public class SignTask extends Task<AndroidModule> {
         return "Sign";
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.APK);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.APK);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mInputApk = new File(getModule().getBuildDirectory(), "bin/generated.apk");
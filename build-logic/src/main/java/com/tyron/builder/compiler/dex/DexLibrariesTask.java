@@ -0,0 +1,113 @@
+package com.tyron.builder.compiler.dex;
+
+import com.android.tools.r8.CompilationMode;
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.OutputMode;
+import com.tyron.builder.compiler.Artifact;
+import com.tyron.builder.compiler.BuildType;
+import com.tyron.builder.compiler.Task;
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.api.AndroidModule;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Dexes the libraries of the module that have not been dexed yet. This does not depend on the
+ * sources of the module, so it runs while the resources and sources are being compiled.
+ */
+public class DexLibrariesTask extends Task<AndroidModule> {
+
+    private static final String TAG = DexLibrariesTask.class.getSimpleName();
+
+    public DexLibrariesTask(AndroidModule project, ILogger logger) {
+        super(project, logger);
+    }
+
+    @Override
+    public String getName() {
+        return TAG;
+    }
+
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.noneOf(Artifact.class);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.LIBRARY_DEX);
+    }
+
+    @Override
+    public void prepare(BuildType type) throws IOException {
+
+    }
+
+    @Override
+    public void run() throws IOException, CompilationFailedException {
+        try {
+            dexLibraries(getModule(), getLogger(), new DexDiagnosticHandler(getLogger()));
+        } catch (com.android.tools.r8.CompilationFailedException e) {
+            throw new CompilationFailedException(e);
+        }
+    }
+
+    /**
+     * Ensures that all libraries of the project has been dex-ed
+     *
+     * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
+     */
+    public static void dexLibraries(AndroidModule module, ILogger logger,
+                                    DiagnosticsHandler diagnosticsHandler)
+            throws com.android.tools.r8.CompilationFailedException {
+        List<File> libraries = module.getLibraries();
+
+        for (File lib : libraries) {
+            File parentFile = lib.getParentFile();
+            if (parentFile == null) {
+                continue;
+            }
+            File[] libFiles = lib.getParentFile().listFiles();
+            if (libFiles == null) {
+                if (!lib.delete()) {
+                    logger.warning("Failed to delete " + lib.getAbsolutePath());
+                }
+            } else {
+                File dex = new File(lib.getParentFile(), "classes.dex");
+                if (dex.exists()) {
+                    continue;
+                }
+                if (lib.exists()) {
+                    logger.debug("Dexing jar " + parentFile.getName());
+                    D8Command command = D8Command.builder(diagnosticsHandler)
+                            .addLibraryFiles(getLibraryFiles(module))
+                            .addClasspathFiles(libraries.stream().map(File::toPath)
+                                    .collect(Collectors.toList()))
+                            .setMinApiLevel(module.getMinSdk())
+                            .addProgramFiles(lib.toPath())
+                            .setMode(CompilationMode.RELEASE)
+                            .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
+                            .build();
+                    D8.run(command);
+                }
+            }
+        }
+    }
+
+    private static List<Path> getLibraryFiles(AndroidModule module) {
+        List<Path> path = new ArrayList<>();
+        path.add(module.getLambdaStubsJarFile().toPath());
+        path.add(module.getBootstrapJarFile().toPath());
+        return path;
+    }
+}
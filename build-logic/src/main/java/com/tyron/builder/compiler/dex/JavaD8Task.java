@@ -7,6 +7,7 @@ import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
 import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
@@ -23,8 +24,10 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -42,6 +45,16 @@ public class JavaD8Task extends Task<JavaModule> {
         return "JavaD8Task";
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.CLASSES, Artifact.LIBRARY_DEX);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.DEX);
+    }
+
     private DiagnosticsHandler diagnosticsHandler;
     private List<Path> mClassFiles;
     private List<Path> mFilesToCompile;
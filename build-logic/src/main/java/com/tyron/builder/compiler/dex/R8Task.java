@@ -5,8 +5,10 @@ import com.android.tools.r8.OutputMode;
 import com.android.tools.r8.R8;
 import com.android.tools.r8.R8Command;
 import com.android.tools.r8.origin.Origin;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
@@ -17,7 +19,9 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class R8Task extends Task<AndroidModule> {
 
@@ -32,6 +36,16 @@ public class R8Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.CLASSES, Artifact.COMPILED_RESOURCES);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.DEX);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -90,6 +104,10 @@ public class R8Task extends Task<AndroidModule> {
         for (File it : getModule().getLibraries()) {
             paths.add(it.toPath());
         }
+        File rJar = MergeSymbolsTask.getRJar(getModule());
+        if (rJar.exists()) {
+            paths.add(rJar.toPath());
+        }
         return paths;
     }
 
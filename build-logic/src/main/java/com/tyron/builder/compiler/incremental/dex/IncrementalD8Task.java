@@ -1,37 +1,65 @@
 package com.tyron.builder.compiler.incremental.dex;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.tools.r8.CompilationMode;
 import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
 import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.dex.D8Task;
+import com.tyron.builder.compiler.dex.DexLibrariesTask;
 import com.tyron.builder.compiler.dex.DexDiagnosticHandler;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.cache.CacheCodec;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class IncrementalD8Task extends Task<AndroidModule> {
 
     private static final String TAG = IncrementalD8Task.class.getSimpleName();
+
+    /**
+     * Number of dex files the classes of the module are split into for debug builds,
+     * see {@link #mergeShards()}
+     */
+    private static final int SHARD_COUNT = 16;
+
+    /**
+     * The first API level that loads every dex file of the APK by itself, lower API levels
+     * need the classes merged so the main dex file has the classes needed at startup
+     */
+    private static final int MIN_SHARDED_API = 21;
+
+    private static final String[] CLASS_DIRECTORIES = {"bin/java/classes", "bin/kotlin/classes"};
+
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("dexCache");
+            new CacheHolder.CacheKey<>("dexCache", CacheCodec.STRING, CacheCodec.FILES);
 
     private DiagnosticsHandler diagnosticsHandler;
     private List<Path> mClassFiles;
@@ -52,6 +80,16 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.CLASSES, Artifact.LIBRARY_DEX);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.DEX);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBuildType = type;
@@ -65,12 +103,16 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         mOutputPath = output.toPath();
 
         mFilesToCompile = new ArrayList<>();
-        mClassFiles = new ArrayList<>(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/java/classes")));
-        mClassFiles.addAll(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
+        mClassFiles = new ArrayList<>();
+        for (String directory : CLASS_DIRECTORIES) {
+            mClassFiles.addAll(D8Task.getClassFiles(
+                    new File(getModule().getBuildDirectory(), directory)));
+        }
+        Set<Path> classFiles = new HashSet<>(mClassFiles);
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
+            if (!classFiles.contains(key.file)) {
                 File file = mDexCache.get(key.file, "dex").iterator().next();
-                deleteAllFiles(file, ".dex");
+                FileUtils.deleteQuietly(file);
                 mDexCache.remove(key.file, "dex");
             }
         }
@@ -113,8 +155,8 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                 mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
             }
 
-            mergeRelease();
-        } catch (com.android.tools.r8.CompilationFailedException e) {
+            mergeRelease(dexRClasses(CompilationMode.RELEASE));
+        } catch (com.android.tools.r8.CompilationFailedException | IOException e) {
             throw new CompilationFailedException(e);
         }
     }
@@ -138,8 +180,16 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                 mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
             }
 
+            List<Path> rClasses = dexRClasses(CompilationMode.DEBUG);
+            if (getModule().getMinSdk() >= MIN_SHARDED_API) {
+                mergeShards();
+                return;
+            }
+            FileUtils.deleteQuietly(getShardDirectory(getModule()));
+
             D8Command.Builder builder = D8Command.builder(diagnosticsHandler)
                     .addProgramFiles(getAllDexFiles(mOutputPath.toFile()))
+                    .addProgramFiles(rClasses)
                     .addLibraryFiles(getLibraryFiles())
                     .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
                     .setMinApiLevel(getModule().getMinSdk());
@@ -149,12 +199,13 @@ public class IncrementalD8Task extends Task<AndroidModule> {
             builder.setOutput(output.toPath(), OutputMode.DexIndexed);
             D8.run(builder.build());
 
-        } catch (com.android.tools.r8.CompilationFailedException e) {
+        } catch (com.android.tools.r8.CompilationFailedException | IOException e) {
             throw new CompilationFailedException(e);
         }
     }
 
-    private void mergeRelease() throws com.android.tools.r8.CompilationFailedException {
+    private void mergeRelease(List<Path> rClasses)
+            throws com.android.tools.r8.CompilationFailedException {
         File output = new File(getModule().getBuildDirectory(), "bin");
         D8Command command = D8Command.builder(diagnosticsHandler)
                 .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath)
@@ -162,6 +213,7 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                 .addLibraryFiles(getLibraryFiles())
                 .addProgramFiles(getAllDexFiles(mOutputPath.toFile()))
                 .addProgramFiles(getLibraryDexes())
+                .addProgramFiles(rClasses)
                 .setMinApiLevel(getModule().getMinSdk())
                 .setMode(CompilationMode.RELEASE)
                 .setOutput(output.toPath(), OutputMode.DexIndexed)
@@ -169,6 +221,240 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         D8.run(command);
     }
 
+    /**
+     * Merges the dex files of the classes into {@link #SHARD_COUNT} dex files instead of
+     * one, a class always goes to the same shard so only the shards with changed classes are
+     * merged again. A shard is considered changed if the names, sizes or modification times
+     * of its dex files are different from the last build.
+     */
+    private void mergeShards() throws com.android.tools.r8.CompilationFailedException,
+            IOException {
+        File shardDirectory = getShardDirectory(getModule());
+        if (!shardDirectory.exists() && !shardDirectory.mkdirs()) {
+            throw new IOException("Unable to create shard directory");
+        }
+
+        List<List<Path>> shards = getShards(mOutputPath, getAllDexFiles(mOutputPath.toFile()));
+        File fingerprintFile = new File(shardDirectory, "fingerprints.bin");
+        long[] fingerprints = readFingerprints(fingerprintFile);
+        List<Integer> changedShards = getChangedShards(shardDirectory, shards, fingerprints);
+        for (int i : changedShards) {
+            List<Path> files = shards.get(i);
+            File output = new File(shardDirectory, String.valueOf(i));
+            FileUtils.deleteQuietly(output);
+            if (!files.isEmpty()) {
+                if (!output.mkdirs()) {
+                    throw new IOException("Unable to create shard directory " + output);
+                }
+                D8Command command = D8Command.builder(diagnosticsHandler)
+                        .addProgramFiles(files)
+                        .addLibraryFiles(getLibraryFiles())
+                        .setMinApiLevel(getModule().getMinSdk())
+                        .setMode(CompilationMode.DEBUG)
+                        .setOutput(output.toPath(), OutputMode.DexIndexed)
+                        .build();
+                D8.run(command);
+            }
+        }
+        writeFingerprints(fingerprintFile, fingerprints);
+        getLogger().debug("Merged " + changedShards.size() + " of " + SHARD_COUNT +
+                " dex shards");
+
+        // the merged dex files of a previous build would be packaged along with the shards
+        File[] mergedFiles = new File(getModule().getBuildDirectory(), "bin")
+                .listFiles(c -> c.isFile() && c.getName().startsWith("classes") &&
+                        c.getName().endsWith(".dex"));
+        if (mergedFiles != null) {
+            for (File file : mergedFiles) {
+                FileUtils.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Splits the dex files of the classes into {@link #SHARD_COUNT} sorted lists
+     *
+     * @param outputPath the directory containing the dex files of the classes
+     */
+    @VisibleForTesting
+    static List<List<Path>> getShards(Path outputPath, List<Path> dexFiles) {
+        List<List<Path>> shards = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (Path dexFile : dexFiles) {
+            shards.get(getShard(outputPath.relativize(dexFile))).add(dexFile);
+        }
+        for (List<Path> shard : shards) {
+            Collections.sort(shard);
+        }
+        return shards;
+    }
+
+    /**
+     * Finds the shards that need to be merged again, either because their dex files changed
+     * or because their output is missing. The fingerprints of the changed shards are updated.
+     *
+     * @return the indices of the changed shards
+     */
+    @VisibleForTesting
+    static List<Integer> getChangedShards(File shardDirectory, List<List<Path>> shards,
+                                          long[] fingerprints) {
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            List<Path> files = shards.get(i);
+            long fingerprint = fingerprint(files);
+            File output = new File(shardDirectory, String.valueOf(i));
+            if (fingerprints[i] == fingerprint && (files.isEmpty() || output.exists())) {
+                continue;
+            }
+            fingerprints[i] = fingerprint;
+            changed.add(i);
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the dex files of the classes of the module when they are split into shards
+     * by a debug build, the R classes of the libraries are included as well.
+     *
+     * @return the dex files, or an empty list if the last build didn't split the classes
+     */
+    public static List<File> getDexShards(AndroidModule module) {
+        File shardDirectory = getShardDirectory(module);
+        if (!shardDirectory.exists()) {
+            return Collections.emptyList();
+        }
+
+        List<File> dexFiles = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            File[] files = new File(shardDirectory, String.valueOf(i))
+                    .listFiles(c -> c.getName().endsWith(".dex"));
+            if (files != null) {
+                Arrays.sort(files);
+                dexFiles.addAll(Arrays.asList(files));
+            }
+        }
+
+        // the shards are only used by debug builds
+        File rClasses = new File(getRClassesDirectory(module, CompilationMode.DEBUG),
+                "classes.dex");
+        if (!dexFiles.isEmpty() && rClasses.exists()) {
+            dexFiles.add(rClasses);
+        }
+        return dexFiles;
+    }
+
+    /**
+     * The R classes are dexed separately for each mode, so a dex of one mode is never merged
+     * into a build of the other
+     */
+    private static File getRClassesDirectory(AndroidModule module, CompilationMode mode) {
+        return new File(module.getBuildDirectory(),
+                "intermediate/r/dex/" + mode.name().toLowerCase(Locale.ROOT));
+    }
+
+    private static File getShardDirectory(AndroidModule module) {
+        return new File(module.getBuildDirectory(), "intermediate/dex-shards");
+    }
+
+    /**
+     * Returns the shard of a dex file, the inner classes and lambdas of a class are put in
+     * the same shard as the class itself
+     *
+     * @param dexFile the path of the dex file relative to the output directory
+     */
+    @VisibleForTesting
+    static int getShard(Path dexFile) {
+        String path = dexFile.toString().replace(File.separatorChar, '/');
+        int slash = path.lastIndexOf('/');
+        String name = path.substring(slash + 1).replace(".dex", "");
+        if (name.startsWith("-$$")) {
+            int start = name.indexOf('$', 3) + 1;
+            int end = name.indexOf('$', start);
+            if (start > 0 && end != -1) {
+                name = name.substring(start, end);
+            }
+        } else if (name.indexOf('$') > 0) {
+            name = name.substring(0, name.indexOf('$'));
+        }
+        return Math.floorMod((path.substring(0, slash + 1) + name).hashCode(), SHARD_COUNT);
+    }
+
+    private static long fingerprint(List<Path> files) {
+        long fingerprint = files.size();
+        for (Path path : files) {
+            File file = path.toFile();
+            fingerprint = 31 * fingerprint + path.hashCode();
+            fingerprint = 31 * fingerprint + file.length();
+            fingerprint = 31 * fingerprint + file.lastModified();
+        }
+        return fingerprint;
+    }
+
+    @VisibleForTesting
+    static long[] readFingerprints(File file) {
+        long[] fingerprints = new long[SHARD_COUNT];
+        Arrays.fill(fingerprints, Long.MIN_VALUE);
+        if (!file.exists()) {
+            return fingerprints;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != SHARD_COUNT) {
+                return fingerprints;
+            }
+            for (int i = 0; i < SHARD_COUNT; i++) {
+                fingerprints[i] = in.readLong();
+            }
+        } catch (IOException e) {
+            Arrays.fill(fingerprints, Long.MIN_VALUE);
+        }
+        return fingerprints;
+    }
+
+    @VisibleForTesting
+    static void writeFingerprints(File file, long[] fingerprints) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(fingerprints.length);
+            for (long fingerprint : fingerprints) {
+                out.writeLong(fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Dexes the jar of R classes generated by {@link MergeSymbolsTask}, it is only dexed
+     * again when the jar has been modified since it was last dexed in the given mode.
+     *
+     * @return the dex file of the R classes, or an empty list if the jar is not generated
+     */
+    private List<Path> dexRClasses(CompilationMode mode)
+            throws com.android.tools.r8.CompilationFailedException, IOException {
+        File jar = MergeSymbolsTask.getRJar(getModule());
+        File output = getRClassesDirectory(getModule(), mode);
+        if (!jar.exists()) {
+            FileUtils.deleteQuietly(output.getParentFile());
+            return Collections.emptyList();
+        }
+
+        File dex = new File(output, "classes.dex");
+        if (!dex.exists() || dex.lastModified() < jar.lastModified()) {
+            if (!output.exists() && !output.mkdirs()) {
+                throw new IOException("Unable to create output directory");
+            }
+            D8Command command = D8Command.builder(diagnosticsHandler)
+                    .addProgramFiles(jar.toPath())
+                    .addLibraryFiles(getLibraryFiles())
+                    .setMinApiLevel(getModule().getMinSdk())
+                    .setMode(mode)
+                    .setIntermediate(true)
+                    .setOutput(output.toPath(), OutputMode.DexIndexed)
+                    .build();
+            D8.run(command);
+        }
+        return Collections.singletonList(dex.toPath());
+    }
+
     private List<Path> getLibraryDexes() {
         List<Path> dexes = new ArrayList<>();
         for (File file : getModule().getLibraries()) {
@@ -185,56 +471,30 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     }
 
 
+    /**
+     * @return the dex file written by D8 for the given class file
+     */
     private File getDexFile(File file) {
-        File output = new File(getModule().getBuildDirectory(), "bin/classes/");
-        String packageName = file.getAbsolutePath()
-                .replace(output.getAbsolutePath(), "")
-                .substring(1)
-                .replace(".class", ".dex");
-
-        File intermediate = new File(getModule().getBuildDirectory(), "intermediate/classes");
-        File file1 = new File(intermediate, packageName);
-        return file1;
+        String path = file.getAbsolutePath();
+        for (String directory : CLASS_DIRECTORIES) {
+            String root = new File(getModule().getBuildDirectory(), directory)
+                    .getAbsolutePath() + File.separator;
+            if (path.startsWith(root)) {
+                path = path.substring(root.length());
+                break;
+            }
+        }
+        return new File(mOutputPath.toFile(), path.replace(".class", ".dex"));
     }
 
     /**
-     * Ensures that all libraries of the project has been dex-ed
+     * Ensures that all libraries of the project has been dex-ed, this does nothing if they
+     * have already been dexed by {@link DexLibrariesTask}
      *
      * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
      */
     protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
-        List<File> libraries = getModule().getLibraries();
-
-        for (File lib : libraries) {
-            File parentFile = lib.getParentFile();
-            if (parentFile == null) {
-                continue;
-            }
-            File[] libFiles = lib.getParentFile().listFiles();
-            if (libFiles == null) {
-                if (!lib.delete()) {
-                    getLogger().warning("Failed to delete " + lib.getAbsolutePath());
-                }
-            } else {
-                File dex = new File(lib.getParentFile(), "classes.dex");
-                if (dex.exists()) {
-                    continue;
-                }
-                if (lib.exists()) {
-                    getLogger().debug("Dexing jar " + parentFile.getName());
-                    D8Command command = D8Command.builder(diagnosticsHandler)
-                            .addLibraryFiles(getLibraryFiles())
-                            .addClasspathFiles(libraries.stream().map(File::toPath)
-                                    .collect(Collectors.toList()))
-                            .setMinApiLevel(getModule().getMinSdk())
-                            .addProgramFiles(lib.toPath())
-                            .setMode(CompilationMode.RELEASE)
-                            .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-                            .build();
-                    D8.run(command);
-                }
-            }
-        }
+        DexLibrariesTask.dexLibraries(getModule(), getLogger(), diagnosticsHandler);
     }
 
     private List<Path> getLibraryFiles() {
@@ -244,28 +504,6 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         return path;
     }
 
-    private void deleteAllFiles(File classFile, String ext) throws IOException {
-
-        File dexFile = getDexFile(classFile);
-        if (!dexFile.exists()) {
-            return;
-        }
-        File parent = dexFile.getParentFile();
-        String name = dexFile.getName().replace(ext, "");
-        if (parent != null) {
-            File[] children = parent.listFiles((c) -> c.getName().endsWith(ext) &&
-                    c.getName().contains("$"));
-            if (children != null) {
-                for (File child : children) {
-                    if (child.getName().startsWith(name)) {
-                        FileUtils.delete(child);
-                    }
-                }
-            }
-        }
-        FileUtils.delete(dexFile);
-    }
-
     private List<Path> getAllDexFiles(File dir) {
         List<Path> files = new ArrayList<>();
         File[] children = dir.listFiles(c -> c.getName().endsWith(".dex") || c.isDirectory());
@@ -0,0 +1,248 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes a hash of the parts of a class file that other classes can depend on: the class
+ * declaration and its non private fields and methods. Method bodies, private members and
+ * debug information are not included, so changing them does not change the hash.
+ */
+public class AbiHasher {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private AbiHasher() {
+
+    }
+
+    public static long hash(@NonNull File classFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(classFile)))) {
+            return hash(in);
+        }
+    }
+
+    private static long hash(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        // minor and major version
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        Object[] pool = readConstantPool(in);
+
+        List<String> parts = new ArrayList<>();
+        int access = in.readUnsignedShort();
+        String thisClass = className(pool, in.readUnsignedShort());
+        int superIndex = in.readUnsignedShort();
+        String superClass = superIndex == 0 ? "" : className(pool, superIndex);
+        StringBuilder header = new StringBuilder();
+        header.append("class ").append(access).append(' ').append(thisClass)
+                .append(" extends ").append(superClass).append(" implements");
+        int interfaceCount = in.readUnsignedShort();
+        for (int i = 0; i < interfaceCount; i++) {
+            header.append(' ').append(className(pool, in.readUnsignedShort()));
+        }
+
+        List<String> members = new ArrayList<>();
+        readMembers(in, pool, "field", members);
+        readMembers(in, pool, "method", members);
+        // members are hashed in a fixed order so reordering them is not a change
+        Collections.sort(members);
+
+        header.append(' ').append(readAttributes(in, pool));
+        parts.add(header.toString());
+        parts.addAll(members);
+
+        return digest(parts);
+    }
+
+    private static Object[] readConstantPool(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        Object[] pool = new Object[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    pool[i] = in.readUTF();
+                    break;
+                case CONSTANT_INTEGER:
+                    pool[i] = in.readInt();
+                    break;
+                case CONSTANT_FLOAT:
+                    pool[i] = in.readFloat();
+                    break;
+                case CONSTANT_LONG:
+                    pool[i] = in.readLong();
+                    // longs and doubles take two entries
+                    i++;
+                    break;
+                case CONSTANT_DOUBLE:
+                    pool[i] = in.readDouble();
+                    i++;
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                    pool[i] = new Ref(in.readUnsignedShort());
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.readUnsignedShort();
+                    break;
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.readInt();
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        return pool;
+    }
+
+    private static void readMembers(DataInputStream in, Object[] pool, String kind,
+                                    List<String> members) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int access = in.readUnsignedShort();
+            String name = (String) pool[in.readUnsignedShort()];
+            String descriptor = (String) pool[in.readUnsignedShort()];
+            String attributes = readAttributes(in, pool);
+            if ((access & (ACC_PRIVATE | ACC_SYNTHETIC)) != 0) {
+                continue;
+            }
+            members.add(kind + ' ' + access + ' ' + name + ' ' + descriptor + ' ' + attributes);
+        }
+    }
+
+    /**
+     * Reads the attributes at the current position and returns the ones that are part of the
+     * declaration, the others are skipped
+     */
+    private static String readAttributes(DataInputStream in, Object[] pool) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String name = (String) pool[in.readUnsignedShort()];
+            int length = in.readInt();
+            switch (name) {
+                case "Signature":
+                    builder.append("signature ").append(pool[in.readUnsignedShort()]).append(' ');
+                    break;
+                case "ConstantValue":
+                    // constants are inlined by javac, so their values are part of the ABI
+                    builder.append("value ").append(constant(pool, in.readUnsignedShort()))
+                            .append(' ');
+                    break;
+                case "Exceptions":
+                    int exceptionCount = in.readUnsignedShort();
+                    builder.append("throws");
+                    for (int j = 0; j < exceptionCount; j++) {
+                        builder.append(' ').append(className(pool, in.readUnsignedShort()));
+                    }
+                    builder.append(' ');
+                    break;
+                default:
+                    skipFully(in, length);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of class file");
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static String className(Object[] pool, int index) {
+        Ref ref = (Ref) pool[index];
+        return (String) pool[ref.index];
+    }
+
+    private static String constant(Object[] pool, int index) {
+        Object value = pool[index];
+        if (value instanceof Ref) {
+            return "\"" + pool[((Ref) value).index] + "\"";
+        }
+        return String.valueOf(value);
+    }
+
+    private static long digest(List<String> parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        byte[] bytes = digest.digest();
+        long hash = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash << 8) | (bytes[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    /**
+     * A class or string constant, pointing to the utf8 constant holding its value
+     */
+    private static class Ref {
+        final int index;
+
+        Ref(int index) {
+            this.index = index;
+        }
+    }
+}
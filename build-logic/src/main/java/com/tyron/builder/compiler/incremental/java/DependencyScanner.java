@@ -0,0 +1,122 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import org.openjdk.javax.lang.model.element.Element;
+import org.openjdk.javax.lang.model.element.NestingKind;
+import org.openjdk.javax.lang.model.element.TypeElement;
+import org.openjdk.javax.lang.model.type.DeclaredType;
+import org.openjdk.javax.lang.model.type.TypeKind;
+import org.openjdk.javax.lang.model.type.TypeMirror;
+import org.openjdk.javax.lang.model.util.Elements;
+import org.openjdk.javax.lang.model.util.Types;
+import org.openjdk.source.tree.ClassTree;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.tree.IdentifierTree;
+import org.openjdk.source.tree.MemberReferenceTree;
+import org.openjdk.source.tree.MemberSelectTree;
+import org.openjdk.source.tree.NewClassTree;
+import org.openjdk.source.util.JavacTask;
+import org.openjdk.source.util.TreePathScanner;
+import org.openjdk.source.util.Trees;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects the binary names of the classes declared in an analyzed compilation unit and of
+ * the classes it references, including the supertypes of the declared classes.
+ */
+class DependencyScanner extends TreePathScanner<Void, Void> {
+
+    private final Trees mTrees;
+    private final Elements mElements;
+    private final Types mTypes;
+
+    private final Set<String> mDeclared = new HashSet<>();
+    private final Set<String> mReferences = new HashSet<>();
+
+    DependencyScanner(JavacTask task) {
+        mTrees = Trees.instance(task);
+        mElements = task.getElements();
+        mTypes = task.getTypes();
+    }
+
+    void scan(CompilationUnitTree root) {
+        scan(root, null);
+        mReferences.removeAll(mDeclared);
+    }
+
+    Set<String> getDeclaredClasses() {
+        return mDeclared;
+    }
+
+    Set<String> getReferences() {
+        return mReferences;
+    }
+
+    @Override
+    public Void visitClass(ClassTree tree, Void unused) {
+        Element element = mTrees.getElement(getCurrentPath());
+        if (element instanceof TypeElement) {
+            TypeElement type = (TypeElement) element;
+            NestingKind nesting = type.getNestingKind();
+            if (nesting == NestingKind.TOP_LEVEL || nesting == NestingKind.MEMBER) {
+                mDeclared.add(mElements.getBinaryName(type).toString());
+            }
+            // a change in an indirect supertype can break this class without it naming it
+            addSupertypes(type.asType(), new HashSet<>());
+        }
+        return super.visitClass(tree, unused);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree tree, Void unused) {
+        addReference(mTrees.getElement(getCurrentPath()));
+        return super.visitIdentifier(tree, unused);
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree tree, Void unused) {
+        addReference(mTrees.getElement(getCurrentPath()));
+        return super.visitMemberSelect(tree, unused);
+    }
+
+    @Override
+    public Void visitMemberReference(MemberReferenceTree tree, Void unused) {
+        addReference(mTrees.getElement(getCurrentPath()));
+        return super.visitMemberReference(tree, unused);
+    }
+
+    @Override
+    public Void visitNewClass(NewClassTree tree, Void unused) {
+        addReference(mTrees.getElement(getCurrentPath()));
+        return super.visitNewClass(tree, unused);
+    }
+
+    private void addSupertypes(TypeMirror type, Set<TypeMirror> visited) {
+        for (TypeMirror supertype : mTypes.directSupertypes(type)) {
+            if (supertype.getKind() != TypeKind.DECLARED || !visited.add(supertype)) {
+                continue;
+            }
+            addReference(((DeclaredType) supertype).asElement());
+            addSupertypes(supertype, visited);
+        }
+    }
+
+    /**
+     * Adds the class that declares the given element, or the element itself if it is a class
+     */
+    private void addReference(Element element) {
+        while (element != null && !(element instanceof TypeElement)) {
+            element = element.getEnclosingElement();
+        }
+        if (element == null) {
+            return;
+        }
+        TypeElement type = (TypeElement) element;
+        if (type.getNestingKind() == NestingKind.LOCAL
+                || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            return;
+        }
+        mReferences.add(mElements.getBinaryName(type).toString());
+    }
+}
@@ -2,17 +2,21 @@ package com.tyron.builder.compiler.incremental.java;
 
 import androidx.annotation.VisibleForTesting;
 
+import org.openjdk.source.tree.CompilationUnitTree;
 import org.openjdk.source.util.JavacTask;
 import org.openjdk.tools.javac.api.JavacTaskImpl;
 import org.openjdk.tools.javac.api.JavacTool;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.cache.CacheCodec;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.TestUtil;
 import com.tyron.common.util.Cache;
@@ -27,11 +31,15 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.openjdk.javax.tools.DiagnosticListener;
 import org.openjdk.javax.tools.JavaFileObject;
@@ -42,13 +50,14 @@ import org.openjdk.javax.tools.StandardLocation;
 public class IncrementalJavaTask extends Task<JavaModule> {
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("javaCache");
+            new CacheHolder.CacheKey<>("javaCache", CacheCodec.STRING, CacheCodec.FILES);
     private static final String TAG = IncrementalJavaTask.class.getSimpleName();
 
     private File mOutputDir;
     private List<File> mJavaFiles;
     private List<File> mFilesToCompile;
     private Cache<String, List<File>> mClassCache;
+    private JavaDependencyGraph mDependencyGraph;
 
     public IncrementalJavaTask(JavaModule project, ILogger logger) {
         super(project, logger);
@@ -59,6 +68,16 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         return TAG;
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.JAVA_SOURCES, Artifact.CLASSES);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.CLASSES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mOutputDir = new File(getModule().getBuildDirectory(), "bin/java/classes");
@@ -68,6 +87,7 @@ public class IncrementalJavaTask extends Task<JavaModule> {
 
         mFilesToCompile = new ArrayList<>();
         mClassCache = getModule().getCache(CACHE_KEY, new Cache<>());
+        mDependencyGraph = JavaDependencyGraph.load(getDependencyGraphFile());
 
         mJavaFiles = new ArrayList<>(getModule().getJavaFiles().values());
 
@@ -79,13 +99,28 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             }
         }
 
+        // classes of deleted files, the files referencing them need to report the errors
+        Set<String> removedClasses = new HashSet<>();
+        for (File source : mDependencyGraph.getSourceFiles()) {
+            if (!mJavaFiles.contains(source)) {
+                for (String className : mDependencyGraph.removeSource(source)) {
+                    deleteAllFiles(getClassFile(className), ".class");
+                    removedClasses.add(className);
+                }
+            }
+        }
+
+        Set<File> filesToCompile = new LinkedHashSet<>();
         for (File file : mJavaFiles) {
             Path filePath = file.toPath();
             if (mClassCache.needs(filePath, "class")) {
-                mFilesToCompile.add(file);
+                filesToCompile.add(file);
             }
         }
-
+        filesToCompile.addAll(mDependencyGraph.getDirtyFiles());
+        filesToCompile.addAll(mDependencyGraph.getDependents(removedClasses));
+        filesToCompile.retainAll(mJavaFiles);
+        mFilesToCompile.addAll(filesToCompile);
     }
 
     private boolean mHasErrors = false;
@@ -98,6 +133,51 @@ public class IncrementalJavaTask extends Task<JavaModule> {
 
         getLogger().debug("Compiling java files");
 
+        // files are compiled in rounds, each round compiles the files that reference a class
+        // whose ABI was changed by the previous round
+        Set<File> compiled = new HashSet<>();
+        List<File> round = new ArrayList<>(mFilesToCompile);
+        try {
+            while (!round.isEmpty()) {
+                mDependencyGraph.markDirty(round);
+                Set<String> changedClasses = compile(round);
+                if (mHasErrors) {
+                    break;
+                }
+                mDependencyGraph.clearDirty(round);
+                compiled.addAll(round);
+
+                round = new ArrayList<>();
+                for (File dependent : mDependencyGraph.getDependents(changedClasses)) {
+                    if (!compiled.contains(dependent) && mJavaFiles.contains(dependent)) {
+                        round.add(dependent);
+                    }
+                }
+                if (!round.isEmpty()) {
+                    getLogger().debug("ABI of " + changedClasses.size() + " classes changed, " +
+                            "compiling " + round.size() + " dependent files");
+                }
+            }
+        } finally {
+            try {
+                mDependencyGraph.save(getDependencyGraphFile());
+            } catch (IOException e) {
+                getLogger().warning("Failed to save the java dependency graph: " + e.getMessage());
+            }
+        }
+        mFilesToCompile = new ArrayList<>(compiled);
+
+        if (mHasErrors) {
+            throw new CompilationFailedException("Compilation failed, check logs for more details");
+        }
+    }
+
+    /**
+     * Compiles the given files and updates their entries in the dependency graph
+     *
+     * @return the classes whose ABI has changed
+     */
+    private Set<String> compile(List<File> filesToCompile) throws CompilationFailedException {
         DiagnosticListener<JavaFileObject> diagnosticCollector = diagnostic -> {
             switch (diagnostic.getKind()) {
                 case ERROR:
@@ -116,6 +196,10 @@ public class IncrementalJavaTask extends Task<JavaModule> {
                         Charset.defaultCharset());
         List<File> classpath = new ArrayList<>(getModule().getLibraries());
         classpath.add(mOutputDir);
+        File rJar = MergeSymbolsTask.getRJar(getModule());
+        if (rJar.exists()) {
+            classpath.add(rJar);
+        }
 
         try {
             standardJavaFileManager.setLocation(StandardLocation.CLASS_OUTPUT,
@@ -130,7 +214,7 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         }
 
         List<JavaFileObject> javaFileObjects = new ArrayList<>();
-        for (File file : mFilesToCompile) {
+        for (File file : filesToCompile) {
             javaFileObjects.add(new SimpleJavaFileObject(file.toURI(), JavaFileObject.Kind.SOURCE) {
                 @Override
                 public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
@@ -145,8 +229,17 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         HashMap<String, List<File>> compiledFiles = new HashMap<>();
         try {
 
-            task.parse();
+            Iterable<? extends CompilationUnitTree> units = task.parse();
             task.analyze();
+
+            // the trees are scanned before generating, as it modifies them
+            Map<File, DependencyScanner> scanners = new HashMap<>();
+            for (CompilationUnitTree unit : units) {
+                DependencyScanner scanner = new DependencyScanner(task);
+                scanner.scan(unit);
+                scanners.put(new File(unit.getSourceFile().toUri()), scanner);
+            }
+
             Iterable<? extends JavaFileObject> generate = task.generate();
             for (JavaFileObject fileObject : generate) {
                 String path = fileObject.getName();
@@ -197,13 +290,43 @@ public class IncrementalJavaTask extends Task<JavaModule> {
                     }
                 }
             });
+
+            if (mHasErrors) {
+                return Collections.emptySet();
+            }
+            return updateDependencies(scanners);
         } catch (Exception e) {
             throw new CompilationFailedException(e);
         }
+    }
 
-        if (mHasErrors) {
-            throw new CompilationFailedException("Compilation failed, check logs for more details");
+    private Set<String> updateDependencies(Map<File, DependencyScanner> scanners)
+            throws IOException {
+        Set<String> changedClasses = new HashSet<>();
+        for (Map.Entry<File, DependencyScanner> entry : scanners.entrySet()) {
+            File source = entry.getKey();
+            DependencyScanner scanner = entry.getValue();
+
+            Set<String> removed = mDependencyGraph.getDeclaredClasses(source);
+            removed.removeAll(scanner.getDeclaredClasses());
+            for (String className : removed) {
+                mDependencyGraph.removeAbiHash(className);
+                changedClasses.add(className);
+            }
+
+            for (String className : scanner.getDeclaredClasses()) {
+                File classFile = getClassFile(className);
+                if (!classFile.exists()) {
+                    continue;
+                }
+                if (mDependencyGraph.putAbiHash(className, AbiHasher.hash(classFile))) {
+                    changedClasses.add(className);
+                }
+            }
+            mDependencyGraph.update(source, scanner.getDeclaredClasses(),
+                    scanner.getReferences());
         }
+        return changedClasses;
     }
 
     @VisibleForTesting
@@ -216,6 +339,17 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         return new File(mOutputDir, path);
     }
 
+    /**
+     * @param className the binary name of the class
+     */
+    private File getClassFile(String className) {
+        return new File(mOutputDir, className.replace('.', '/') + ".class");
+    }
+
+    private File getDependencyGraphFile() {
+        return new File(getModule().getBuildDirectory(), "intermediate/java_dependencies.bin");
+    }
+
     private void deleteAllFiles(File classFile, String ext) throws IOException {
         File parent = classFile.getParentFile();
         String name = classFile.getName().replace(ext, "");
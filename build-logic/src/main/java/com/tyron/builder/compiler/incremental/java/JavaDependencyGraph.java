@@ -0,0 +1,235 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the classes declared and referenced by each java source file of a module along with
+ * the ABI hash of each declared class, so that when the ABI of a class changes only the files
+ * that reference it are compiled again.
+ */
+public class JavaDependencyGraph {
+
+    private static final int MAGIC = 0x4A444550;
+    private static final int VERSION = 1;
+
+    private final Map<File, Set<String>> mDeclaredClasses = new HashMap<>();
+    private final Map<File, Set<String>> mReferences = new HashMap<>();
+    private final Map<String, Long> mAbiHashes = new HashMap<>();
+
+    /**
+     * Class name to the source files referencing it, built from {@link #mReferences}
+     */
+    private final Map<String, Set<File>> mDependents = new HashMap<>();
+
+    /**
+     * Files that need to be compiled regardless of whether they were modified, because a
+     * class they depend on has changed and they have not been compiled successfully since
+     */
+    private final Set<File> mDirtyFiles = new HashSet<>();
+
+    @NonNull
+    public static JavaDependencyGraph load(@NonNull File file) {
+        JavaDependencyGraph graph = new JavaDependencyGraph();
+        if (!file.exists()) {
+            return graph;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return graph;
+            }
+            int sourceCount = in.readInt();
+            for (int i = 0; i < sourceCount; i++) {
+                File source = new File(in.readUTF());
+                Set<String> declared = readStrings(in);
+                Set<String> references = readStrings(in);
+                graph.update(source, declared, references);
+            }
+            int hashCount = in.readInt();
+            for (int i = 0; i < hashCount; i++) {
+                graph.mAbiHashes.put(in.readUTF(), in.readLong());
+            }
+            int dirtyCount = in.readInt();
+            for (int i = 0; i < dirtyCount; i++) {
+                graph.mDirtyFiles.add(new File(in.readUTF()));
+            }
+        } catch (IOException e) {
+            // the graph is only a cache, the files will be compiled again
+            return new JavaDependencyGraph();
+        }
+        return graph;
+    }
+
+    public synchronized void save(@NonNull File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mDeclaredClasses.size());
+            for (Map.Entry<File, Set<String>> entry : mDeclaredClasses.entrySet()) {
+                out.writeUTF(entry.getKey().getAbsolutePath());
+                writeStrings(out, entry.getValue());
+                writeStrings(out, mReferences.getOrDefault(entry.getKey(),
+                        Collections.emptySet()));
+            }
+            out.writeInt(mAbiHashes.size());
+            for (Map.Entry<String, Long> entry : mAbiHashes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.writeInt(mDirtyFiles.size());
+            for (File dirty : mDirtyFiles) {
+                out.writeUTF(dirty.getAbsolutePath());
+            }
+        }
+        if (!temp.renameTo(file)) {
+            // renameTo does not replace existing files on some platforms
+            if (!file.delete() || !temp.renameTo(file)) {
+                throw new IOException("Unable to write dependency graph " + file);
+            }
+        }
+    }
+
+    @NonNull
+    public synchronized Set<File> getSourceFiles() {
+        return new HashSet<>(mDeclaredClasses.keySet());
+    }
+
+    @NonNull
+    public synchronized Set<String> getDeclaredClasses(@NonNull File source) {
+        Set<String> declared = mDeclaredClasses.get(source);
+        return declared == null ? Collections.emptySet() : new HashSet<>(declared);
+    }
+
+    /**
+     * Replaces the classes declared and referenced by the given source file
+     */
+    public synchronized void update(@NonNull File source, @NonNull Set<String> declared,
+                                    @NonNull Set<String> references) {
+        removeReferences(source);
+        mDeclaredClasses.put(source, new HashSet<>(declared));
+        mReferences.put(source, new HashSet<>(references));
+        for (String reference : references) {
+            Set<File> dependents = mDependents.get(reference);
+            if (dependents == null) {
+                dependents = new HashSet<>();
+                mDependents.put(reference, dependents);
+            }
+            dependents.add(source);
+        }
+    }
+
+    /**
+     * Removes a deleted source file from the graph
+     *
+     * @return the classes that were declared in the source file
+     */
+    @NonNull
+    public synchronized Set<String> removeSource(@NonNull File source) {
+        removeReferences(source);
+        mDirtyFiles.remove(source);
+        Set<String> declared = mDeclaredClasses.remove(source);
+        if (declared == null) {
+            return Collections.emptySet();
+        }
+        for (String className : declared) {
+            mAbiHashes.remove(className);
+        }
+        return declared;
+    }
+
+    /**
+     * @return the source files referencing any of the given classes
+     */
+    @NonNull
+    public synchronized Set<File> getDependents(@NonNull Collection<String> classNames) {
+        Set<File> result = new HashSet<>();
+        for (String className : classNames) {
+            Set<File> dependents = mDependents.get(className);
+            if (dependents != null) {
+                result.addAll(dependents);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores the new ABI hash of a class
+     *
+     * @return whether the hash is different from the previous one
+     */
+    public synchronized boolean putAbiHash(@NonNull String className, long hash) {
+        Long previous = mAbiHashes.put(className, hash);
+        return previous == null || previous != hash;
+    }
+
+    public synchronized void removeAbiHash(@NonNull String className) {
+        mAbiHashes.remove(className);
+    }
+
+    @NonNull
+    public synchronized Set<File> getDirtyFiles() {
+        return new HashSet<>(mDirtyFiles);
+    }
+
+    public synchronized void markDirty(@NonNull Collection<File> files) {
+        mDirtyFiles.addAll(files);
+    }
+
+    public synchronized void clearDirty(@NonNull Collection<File> files) {
+        mDirtyFiles.removeAll(files);
+    }
+
+    private void removeReferences(File source) {
+        Set<String> references = mReferences.remove(source);
+        if (references == null) {
+            return;
+        }
+        for (String reference : references) {
+            Set<File> dependents = mDependents.get(reference);
+            if (dependents != null) {
+                dependents.remove(source);
+                if (dependents.isEmpty()) {
+                    mDependents.remove(reference);
+                }
+            }
+        }
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> strings = new HashSet<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> strings)
+            throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+}
@@ -5,8 +5,10 @@ import android.text.TextUtils;
 import androidx.annotation.NonNull;
 
 import com.google.common.base.Throwables;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
@@ -28,8 +30,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import kotlin.jvm.functions.Function0;
@@ -53,6 +57,16 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.JAVA_SOURCES);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.CLASSES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mFilesToCompile = new ArrayList<>();
@@ -80,6 +94,10 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
         classpath.add(getModule().getBootstrapJarFile());
         classpath.add(getModule().getLambdaStubsJarFile());
         classpath.addAll(getModule().getLibraries());
+        File rJar = MergeSymbolsTask.getRJar(getModule());
+        if (rJar.exists()) {
+            classpath.add(rJar);
+        }
         List<String> arguments = new ArrayList<>();
         Collections.addAll(arguments, "-cp",
                 classpath.stream()
@@ -1,9 +1,13 @@
 package com.tyron.builder.compiler.incremental.resource;
 
+import android.content.Context;
+import android.util.Log;
+
 import androidx.annotation.VisibleForTesting;
 
 import com.android.tools.aapt2.Aapt2Jni;
 import com.tyron.builder.BuildModule;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.resource.AAPT2Compiler;
@@ -18,21 +22,34 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class IncrementalAapt2Task extends Task<AndroidModule> {
 
     private static final String TAG = "IncrementalAAPT2";
 
+    private static final int MAX_THREADS = 4;
+
     private final boolean mGenerateProtoFormat;
 
     public IncrementalAapt2Task(AndroidModule project, ILogger logger, boolean generateProtoFormat) {
@@ -45,6 +62,16 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.MERGED_MANIFEST, Artifact.RESOURCES);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.COMPILED_RESOURCES, Artifact.JAVA_SOURCES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -92,12 +119,16 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         }
         args.add(outputCompiled.getAbsolutePath());
 
-        int compile = Aapt2Jni.compile(args);
-        List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
-        LogUtils.log(logs, getLogger());
+        // the logs of the native aapt2 are static, the libraries may be compiling concurrently
+        synchronized (Aapt2Jni.class) {
+            int compile = Aapt2Jni.compile(args);
+            List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
+            LogUtils.log(logs, getLogger());
 
-        if (compile != 0) {
-            throw new CompilationFailedException("Compilation failed, check logs for more details.");
+            if (compile != 0) {
+                throw new CompilationFailedException(
+                        "Compilation failed, check logs for more details.");
+            }
         }
 
         copyMapToDir(files);
@@ -114,36 +145,187 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
             }
         }
 
-        for (File file : libraries) {
-            File parent = file.getParentFile();
-            if (parent == null) {
-                throw new IOException("Library folder doesn't exist");
+        LibraryResourceCache cache = LibraryResourceCache.getInstance(
+                new File(getModule().getBuildDirectory(), "intermediate/library-resources"));
+        ExecutorService executor = Executors.newFixedThreadPool(getThreadCount(libraries.size()));
+        try {
+            List<Future<String>> keys = new ArrayList<>();
+            for (File resDirectory : libraries) {
+                keys.add(executor.submit(() -> cache.getKey(resDirectory)));
             }
-            File[] files = parent.listFiles();
-            if (files == null) {
-                continue;
+
+            int hits = 0;
+            Map<File, String> misses = new LinkedHashMap<>();
+            for (int i = 0; i < libraries.size(); i++) {
+                File resDirectory = libraries.get(i);
+                String key = await(keys.get(i));
+                File cached = cache.get(key);
+                if (cached != null) {
+                    hits++;
+                    copyIfChanged(cached, getLibraryOutput(output, resDirectory));
+                } else {
+                    misses.put(resDirectory, key);
+                }
             }
 
-            for (File inside : files) {
-                if (inside.isDirectory() && inside.getName().equals("res")) {
-                    List<String> args = new ArrayList<>();
-                    args.add("--dir");
-                    args.add(inside.getAbsolutePath());
-                    args.add("-o");
-                    args.add(createNewFile(output, parent.getName() + ".zip").getAbsolutePath());
+            File binary = findBinary();
+            if (binary != null && misses.size() > 1) {
+                List<Future<Void>> results = new ArrayList<>();
+                for (Map.Entry<File, String> miss : misses.entrySet()) {
+                    results.add(executor.submit(() -> {
+                        compileLibrary(cache, binary, miss.getKey(), miss.getValue(), output);
+                        return null;
+                    }));
+                }
+                for (Future<Void> result : results) {
+                    await(result);
+                }
+            } else {
+                for (Map.Entry<File, String> miss : misses.entrySet()) {
+                    compileLibrary(cache, null, miss.getKey(), miss.getValue(), output);
+                }
+            }
+
+            Log.d(TAG, "Library resources: " + hits + " cached, " + misses.size() + " compiled");
+            getLogger().debug("Library resources: " + hits + " cached, " +
+                    misses.size() + " compiled");
+        } finally {
+            executor.shutdownNow();
+            try {
+                cache.save();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to save library resource cache", e);
+            }
+        }
+    }
 
+    /**
+     * Compiles the res directory of a library into the cache and copies the result to the
+     * output directory. The aapt2 binary is used when given so that several libraries can be
+     * compiled at the same time, {@link Aapt2Jni} reports its logs through a single global list
+     * so calls to it cannot overlap.
+     */
+    private void compileLibrary(LibraryResourceCache cache, File binary, File resDirectory,
+                                String key, File output)
+            throws IOException, CompilationFailedException {
+        File temp = cache.createTempFile();
+        try {
+            List<String> args = new ArrayList<>();
+            args.add("--dir");
+            args.add(resDirectory.getAbsolutePath());
+            args.add("-o");
+            args.add(temp.getAbsolutePath());
+
+            if (binary != null) {
+                args.add(0, binary.getAbsolutePath());
+                args.add(1, "compile");
+                compileWithBinary(args);
+            } else {
+                synchronized (Aapt2Jni.class) {
                     int compile = Aapt2Jni.compile(args);
                     List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
                     LogUtils.log(logs, getLogger());
 
                     if (compile != 0) {
-                        throw new CompilationFailedException("Compilation failed, check logs for more details.");
+                        throw new CompilationFailedException(
+                                "Compilation failed, check logs for more details.");
                     }
                 }
             }
+
+            File cached = cache.put(key, temp);
+            copyIfChanged(cached, getLibraryOutput(output, resDirectory));
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    private void compileWithBinary(List<String> args)
+            throws IOException, CompilationFailedException {
+        Process process = new ProcessBuilder(args)
+                .redirectErrorStream(true)
+                .start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new CompilationFailedException("Interrupted while compiling resources", e);
+        }
+        if (exitCode != 0) {
+            for (String line : lines) {
+                getLogger().error(line);
+            }
+            throw new CompilationFailedException("Compilation failed, check logs for more details.");
         }
     }
 
+    /**
+     * Copies the cached archive to the output directory unless it is already there. The
+     * modification time is copied as well so the next build can tell the files apart without
+     * reading them.
+     */
+    private static void copyIfChanged(File cached, File output) throws IOException {
+        if (output.exists() && output.length() == cached.length()
+                && output.lastModified() == cached.lastModified()) {
+            return;
+        }
+        Files.copy(cached.toPath(), output.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    private static File getLibraryOutput(File output, File resDirectory) {
+        return new File(output, resDirectory.getParentFile().getName() + ".zip");
+    }
+
+    private static int getThreadCount(int libraries) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(libraries, Math.min(processors, MAX_THREADS)));
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, CompilationFailedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompilationFailedException("Interrupted while compiling resources", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof CompilationFailedException) {
+                throw (CompilationFailedException) cause;
+            }
+            throw new CompilationFailedException("Failed to compile library resources", e);
+        }
+    }
+
+    /**
+     * @return the aapt2 executable shipped with the app, or null if it is not available
+     */
+    private static File findBinary() {
+        if (sAapt2Binary != null) {
+            return sAapt2Binary;
+        }
+        Context context = BuildModule.getContext();
+        if (context == null) {
+            return null;
+        }
+        File binary = new File(context.getApplicationInfo().nativeLibraryDir, "libaapt2.so");
+        return binary.canExecute() ? binary : null;
+    }
+
     private void link() throws IOException, CompilationFailedException {
         getLogger().debug("Linking resources");
 
@@ -245,12 +427,16 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
             args.add(getModule().getAssetsDirectory().getAbsolutePath());
         }
 
-        int compile = Aapt2Jni.link(args);
-        List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
-        LogUtils.log(logs, getLogger());
+        // the logs of the native aapt2 are static, the libraries may be compiling concurrently
+        synchronized (Aapt2Jni.class) {
+            int compile = Aapt2Jni.link(args);
+            List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
+            LogUtils.log(logs, getLogger());
 
-        if (compile != 0) {
-            throw new CompilationFailedException("Compilation failed, check logs for more details.");
+            if (compile != 0) {
+                throw new CompilationFailedException(
+                        "Compilation failed, check logs for more details.");
+            }
         }
     }
     /**
@@ -433,9 +619,8 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
     }
 
     /**
-     * Returns the list of resource directories of libraries that needs to be compiled
-     * It determines whether the library should be compiled by checking the build/bin/res folder,
-     * if it contains a zip file with its name, then its most likely the same library
+     * Returns the res directories of the libraries of the module. Archives in build/bin/res
+     * that no longer belong to a library are deleted so they are not linked.
      */
     private List<File> getLibraries()  throws IOException {
         File resDir = new File(getModule().getBuildDirectory(), "bin/res");
@@ -446,19 +631,28 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         }
 
         List<File> libraries = new ArrayList<>();
+        Set<String> archives = new HashSet<>();
 
         for (File library : getModule().getLibraries()) {
             File parent = library.getParentFile();
             if (parent != null) {
-
-                if (!new File(parent, "res").exists()) {
+                File res = new File(parent, "res");
+                if (!res.isDirectory()) {
                     // we don't need to check it if it has no resource directory
                     continue;
                 }
 
-                File check = new File(resDir, parent.getName() + ".zip");
-                if (!check.exists()) {
-                    libraries.add(library);
+                libraries.add(res);
+                archives.add(parent.getName() + ".zip");
+            }
+        }
+
+        File[] existing = resDir.listFiles();
+        if (existing != null) {
+            for (File file : existing) {
+                if (file.isFile() && file.getName().endsWith(".zip")
+                        && !archives.contains(file.getName())) {
+                    FileUtils.deleteQuietly(file);
                 }
             }
         }
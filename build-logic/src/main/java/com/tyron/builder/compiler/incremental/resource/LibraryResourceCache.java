@@ -0,0 +1,318 @@
+package com.tyron.builder.compiler.incremental.resource;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.BuildModule;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the compiled resources of libraries keyed by a hash of the contents of their res
+ * directory. The cache lives in the application cache directory, so a library is only compiled
+ * once no matter how many modules or projects depend on it.
+ *
+ * <p>Hashing the contents of a res directory means reading every file in it, so the hash is
+ * stored along with a fingerprint of the names, sizes and modification times of the files and
+ * is only computed again when the fingerprint changes.
+ */
+public class LibraryResourceCache {
+
+    private static final int MAGIC = 0x4C524553;
+    private static final int VERSION = 1;
+
+    /**
+     * Changing the arguments used to compile libraries must change this, otherwise archives
+     * compiled with the old arguments would be reused
+     */
+    private static final String COMPILE_ARGUMENTS = "compile --dir";
+
+    private static final long MAX_SIZE = 256L * 1024 * 1024;
+
+    private static final String INDEX_FILE = "index.bin";
+    private static final String ARCHIVE_EXTENSION = ".zip";
+
+    private static LibraryResourceCache sInstance;
+
+    @NonNull
+    public static synchronized LibraryResourceCache getInstance(@NonNull File fallbackDirectory) {
+        Context context = BuildModule.getContext();
+        File directory = context != null
+                ? new File(context.getCacheDir(), "library-resources")
+                : fallbackDirectory;
+        if (sInstance == null || !sInstance.mDirectory.equals(directory)) {
+            sInstance = new LibraryResourceCache(directory);
+        }
+        return sInstance;
+    }
+
+    private final File mDirectory;
+
+    /**
+     * Path of a res directory to its last known fingerprint and content hash
+     */
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Content hash to the time its archive was last used, to evict the oldest archives first
+     */
+    private final Map<String, Long> mLastUsed = new HashMap<>();
+
+    private boolean mLoaded;
+
+    private LibraryResourceCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns the content hash of a res directory, reusing the previous one if none of the
+     * files in it have changed since
+     */
+    @NonNull
+    public String getKey(@NonNull File resDirectory) throws IOException {
+        List<File> files = new ArrayList<>();
+        listFiles(resDirectory, files);
+        Collections.sort(files);
+
+        long fingerprint = fingerprint(resDirectory, files);
+        String path = resDirectory.getAbsolutePath();
+        synchronized (this) {
+            load();
+            Entry entry = mEntries.get(path);
+            if (entry != null && entry.fingerprint == fingerprint) {
+                return entry.hash;
+            }
+        }
+
+        String hash = hash(resDirectory, files);
+        synchronized (this) {
+            mEntries.put(path, new Entry(fingerprint, hash));
+        }
+        return hash;
+    }
+
+    /**
+     * @return the cached archive for the given key, or null if it has not been compiled yet
+     */
+    @Nullable
+    public synchronized File get(@NonNull String key) {
+        load();
+        File archive = getArchive(key);
+        if (!archive.exists()) {
+            mLastUsed.remove(key);
+            return null;
+        }
+        mLastUsed.put(key, System.currentTimeMillis());
+        return archive;
+    }
+
+    /**
+     * Creates a file to compile a library into, in the cache directory so that
+     * {@link #put(String, File)} can move it without copying
+     */
+    @NonNull
+    public File createTempFile() throws IOException {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory " + mDirectory);
+        }
+        return File.createTempFile("compile", ".tmp", mDirectory);
+    }
+
+    /**
+     * Moves a compiled archive into the cache
+     *
+     * @return the cached archive
+     */
+    @NonNull
+    public synchronized File put(@NonNull String key, @NonNull File compiled) throws IOException {
+        load();
+        File archive = getArchive(key);
+        if (!compiled.renameTo(archive)) {
+            // renameTo does not replace existing files on some platforms
+            if (!archive.delete() || !compiled.renameTo(archive)) {
+                throw new IOException("Unable to store compiled resources " + archive);
+            }
+        }
+        mLastUsed.put(key, System.currentTimeMillis());
+        return archive;
+    }
+
+    /**
+     * Evicts the least recently used archives if the cache is too large and writes the index
+     */
+    public synchronized void save() throws IOException {
+        if (!mLoaded) {
+            return;
+        }
+        trim();
+
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory " + mDirectory);
+        }
+        File file = new File(mDirectory, INDEX_FILE);
+        File temp = new File(mDirectory, INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mEntries.size());
+            for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().fingerprint);
+                out.writeUTF(entry.getValue().hash);
+            }
+            out.writeInt(mLastUsed.size());
+            for (Map.Entry<String, Long> entry : mLastUsed.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+        if (!temp.renameTo(file)) {
+            if (!file.delete() || !temp.renameTo(file)) {
+                throw new IOException("Unable to write library resource index " + file);
+            }
+        }
+    }
+
+    private void trim() {
+        List<String> keys = new ArrayList<>(mLastUsed.keySet());
+        keys.sort((first, second) -> Long.compare(mLastUsed.get(first), mLastUsed.get(second)));
+
+        long size = 0;
+        for (String key : keys) {
+            size += getArchive(key).length();
+        }
+        for (String key : keys) {
+            if (size <= MAX_SIZE) {
+                break;
+            }
+            File archive = getArchive(key);
+            long length = archive.length();
+            if (archive.delete()) {
+                size -= length;
+                mLastUsed.remove(key);
+            }
+        }
+    }
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+
+        File file = new File(mDirectory, INDEX_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String path = in.readUTF();
+                long fingerprint = in.readLong();
+                mEntries.put(path, new Entry(fingerprint, in.readUTF()));
+            }
+            int usedCount = in.readInt();
+            for (int i = 0; i < usedCount; i++) {
+                mLastUsed.put(in.readUTF(), in.readLong());
+            }
+        } catch (IOException e) {
+            // the index is only used to avoid hashing, start over
+            mEntries.clear();
+            mLastUsed.clear();
+        }
+    }
+
+    private File getArchive(String key) {
+        return new File(mDirectory, key + ARCHIVE_EXTENSION);
+    }
+
+    private static void listFiles(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listFiles(child, files);
+            } else {
+                files.add(child);
+            }
+        }
+    }
+
+    private static String getRelativePath(File root, File file) {
+        return file.getAbsolutePath().substring(root.getAbsolutePath().length() + 1);
+    }
+
+    private static long fingerprint(File root, List<File> files) {
+        long fingerprint = files.size();
+        for (File file : files) {
+            fingerprint = 31 * fingerprint + getRelativePath(root, file).hashCode();
+            fingerprint = 31 * fingerprint + file.length();
+            fingerprint = 31 * fingerprint + file.lastModified();
+        }
+        return fingerprint;
+    }
+
+    private static String hash(File root, List<File> files) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update(COMPILE_ARGUMENTS.getBytes(StandardCharsets.UTF_8));
+
+        byte[] buffer = new byte[8192];
+        for (File file : files) {
+            digest.update(getRelativePath(root, file).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            try (InputStream in = new FileInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            digest.update((byte) 0);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    private static class Entry {
+        final long fingerprint;
+        final String hash;
+
+        Entry(long fingerprint, String hash) {
+            this.fingerprint = fingerprint;
+            this.hash = hash;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.tyron.builder.compiler.java;
 
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -10,6 +11,8 @@ import com.tyron.builder.project.api.JavaModule;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.jar.Attributes;
 
 public class JarTask extends Task<JavaModule> {
@@ -25,6 +28,16 @@ public class JarTask extends Task<JavaModule> {
         return TAG;
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.CLASSES);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.JAR);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
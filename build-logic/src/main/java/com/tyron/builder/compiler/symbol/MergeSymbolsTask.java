@@ -4,35 +4,68 @@ import android.util.Log;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.io.ByteStreams;
+import com.tyron.builder.compiler.Artifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.resource.AAPT2Compiler;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
+import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.cache.CacheCodec;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Class that loads R.txt files generated by AAPT/AAPT2  and converts them
- * to R.java class files
+ * to R.java class files. When {@link ModuleSettings#GENERATE_R_JAR} is enabled, the R classes
+ * are written as class files to {@link #getRJar(Module)} instead.
  */
 public class MergeSymbolsTask extends Task<AndroidModule> {
 
     public static final CacheHolder.CacheKey<Void, Void> CACHE_KEY =
-            new CacheHolder.CacheKey<>("mergeSymbolsCache");
+            new CacheHolder.CacheKey<>("mergeSymbolsCache", CacheCodec.VOID,
+                    CacheCodec.VOID);
+
+    /**
+     * The R.txt files the classes in {@link #getRJar(Module)} were generated from, along with
+     * the R.txt of the module which holds the values of the ids
+     */
+    public static final CacheHolder.CacheKey<Void, Void> JAR_CACHE_KEY =
+            new CacheHolder.CacheKey<>("mergeSymbolsJarCache", CacheCodec.VOID,
+                    CacheCodec.VOID);
 
     private File mSymbolOutputDir;
     private File mFullResourceFile;
+    private boolean mGenerateJar;
 
     public MergeSymbolsTask(AndroidModule project, ILogger logger) {
         super(project, logger);
@@ -43,10 +76,30 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
         return "SymbolProcessor";
     }
 
+    @Override
+    public Set<Artifact> getInputs() {
+        return EnumSet.of(Artifact.COMPILED_RESOURCES);
+    }
+
+    @Override
+    public Set<Artifact> getOutputs() {
+        return EnumSet.of(Artifact.JAVA_SOURCES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mSymbolOutputDir = new File(getModule().getBuildDirectory(), "gen");
         mFullResourceFile = new File(getModule().getBuildDirectory(), "bin/res/R.txt");
+        mGenerateJar = getModule().getSettings()
+                .getBoolean(ModuleSettings.GENERATE_R_JAR, false);
+    }
+
+    /**
+     * @return the jar containing the compiled R classes of the libraries of the module, it
+     * only exists when {@link ModuleSettings#GENERATE_R_JAR} is enabled
+     */
+    public static File getRJar(Module module) {
+        return new File(module.getBuildDirectory(), "intermediate/r/R.jar");
     }
 
     @Override
@@ -81,6 +134,18 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
             RFiles.add(rFile);
         }
 
+        Cache<Void, Void> jarCache = getModule().getCache(JAR_CACHE_KEY, new Cache<>());
+        if (mGenerateJar) {
+            writeJar(RFiles, jarCache);
+            // the R.java files need to be written again if the jar is disabled
+            if (!cache.getKeys().isEmpty()) {
+                cache.clear();
+            }
+            return;
+        }
+        FileUtils.deleteQuietly(getRJar(getModule()));
+        jarCache.clear();
+
         for (Cache.Key<Void> key : new HashSet<>(cache.getKeys())) {
             if (!RFiles.contains(key.file.toFile())) {
                 Log.d("MergeSymbolsTask", "Found deleted resource file, removing " + key.file.toFile().getName() + " on the cache.");
@@ -132,4 +197,141 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
             cache.load(file.toPath(), null, null);
         }
     }
+
+    /**
+     * Writes the R classes of all the libraries to a single jar. Only the packages whose R.txt
+     * changed are generated again, the classes of the other packages are copied from the
+     * previous jar, unless the R.txt of the module changed since it holds the values of all
+     * the ids. The jar is only replaced when its contents have changed so the tasks reading it
+     * can skip it otherwise.
+     */
+    private void writeJar(List<File> RFiles, Cache<Void, Void> jarCache) throws IOException {
+        File jar = getRJar(getModule());
+        Set<File> inputs = new HashSet<>(RFiles);
+        inputs.add(mFullResourceFile);
+
+        Set<File> cached = new HashSet<>();
+        for (Cache.Key<Void> key : jarCache.getKeys()) {
+            cached.add(key.file.toFile());
+        }
+        boolean valuesChanged = !jar.exists()
+                || jarCache.needs(mFullResourceFile.toPath(), null);
+
+        Multimap<String, File> packages = ArrayListMultimap.create();
+        Set<String> stalePackages = new HashSet<>();
+        for (File rFile : RFiles) {
+            String packageName = AAPT2Compiler.getPackageName(
+                    new File(rFile.getParentFile(), "AndroidManifest.xml"));
+            if (packageName == null) {
+                continue;
+            }
+            packages.put(packageName, rFile);
+            if (valuesChanged || jarCache.needs(rFile.toPath(), null)) {
+                stalePackages.add(packageName);
+            }
+        }
+
+        deleteLibrarySources();
+        if (stalePackages.isEmpty() && cached.equals(inputs)) {
+            return;
+        }
+
+        Map<String, List<Map.Entry<String, byte[]>>> previousEntries = valuesChanged
+                ? Collections.emptyMap() : readEntries(jar);
+
+        SymbolLoader fullSymbolValues = null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (String packageName : new TreeSet<>(packages.keySet())) {
+                List<Map.Entry<String, byte[]>> previous = previousEntries.get(packageName);
+                if (!stalePackages.contains(packageName) && previous != null) {
+                    for (Map.Entry<String, byte[]> entry : previous) {
+                        RClassWriter.putEntry(out, entry.getKey(), entry.getValue());
+                    }
+                    continue;
+                }
+                if (fullSymbolValues == null) {
+                    fullSymbolValues = new SymbolLoader(mFullResourceFile, getLogger());
+                    fullSymbolValues.load();
+                }
+                SymbolWriter writer = new SymbolWriter(mSymbolOutputDir.getAbsolutePath(),
+                        packageName, fullSymbolValues, getModule());
+                for (File rFile : packages.get(packageName)) {
+                    SymbolLoader libSymbols = new SymbolLoader(rFile, getLogger());
+                    libSymbols.load();
+                    writer.addSymbolsToWrite(libSymbols);
+                }
+                writer.write(out);
+            }
+        }
+
+        jarCache.clear();
+        for (File input : inputs) {
+            jarCache.load(input.toPath(), null, null);
+        }
+
+        byte[] contents = bytes.toByteArray();
+        if (jar.exists() && Arrays.equals(contents, Files.readAllBytes(jar.toPath()))) {
+            return;
+        }
+        File parent = jar.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        Files.write(jar.toPath(), contents);
+        getLogger().debug("Generated R classes of " + stalePackages.size() + " of "
+                + packages.keySet().size() + " libraries");
+    }
+
+    /**
+     * @return the entries of the jar by the package of their R class
+     */
+    private static Map<String, List<Map.Entry<String, byte[]>>> readEntries(File jar)
+            throws IOException {
+        Map<String, List<Map.Entry<String, byte[]>>> entries = new HashMap<>();
+        if (!jar.exists()) {
+            return entries;
+        }
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(jar))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                String name = entry.getName();
+                int slash = name.lastIndexOf('/');
+                String packageName = slash < 0
+                        ? "" : name.substring(0, slash).replace('/', '.');
+                entries.computeIfAbsent(packageName, k -> new ArrayList<>())
+                        .add(new AbstractMap.SimpleImmutableEntry<>(name,
+                                ByteStreams.toByteArray(in)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Deletes the R.java files of the libraries written by previous builds, they would
+     * clash with the classes in the jar. The R.java of the module is generated by AAPT2 and
+     * is kept.
+     */
+    private void deleteLibrarySources() throws IOException {
+        if (!mSymbolOutputDir.exists()) {
+            return;
+        }
+        String modulePackage = getModule().getPackageName();
+        Iterator<File> iterator = FileUtils.iterateFiles(mSymbolOutputDir,
+                FileFilterUtils.nameFileFilter("R.java"), TrueFileFilter.INSTANCE);
+        while (iterator.hasNext()) {
+            File file = iterator.next();
+            File parent = file.getParentFile();
+            if (parent == null) {
+                continue;
+            }
+            String packageName = mSymbolOutputDir.toPath().relativize(parent.toPath())
+                    .toString().replace(File.separatorChar, '.');
+            if (packageName.equals(modulePackage)) {
+                continue;
+            }
+            getModule().removeJavaFile(packageName + ".R");
+            FileUtils.delete(file);
+        }
+    }
 }
@@ -0,0 +1,441 @@
+package com.tyron.builder.compiler.symbol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A class to write the R class of a package directly as class files, so the generated
+ * resource ids don't need to be compiled by javac.
+ *
+ * <p>When the ids are not final, the fields are assigned in a static initializer instead of
+ * being constants. This is used for the R classes of libraries so that javac never inlines
+ * their values, the classes that read them don't need to be recompiled when the ids change.
+ * Initializers that would exceed the 64 KB limit of a method are split into helper methods
+ * called from {@code <clinit>}.
+ */
+public class RClassWriter {
+
+    private static final int CLASS_VERSION = 52;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /**
+     * The deepest stack used by the initializers, while storing an element of an array
+     */
+    private static final int MAX_STACK = 3;
+
+    /**
+     * Zip entries are written with a fixed time so that the same symbols produce the same jar
+     */
+    private static final long ENTRY_TIME = 315532800000L;
+
+    private final String mInternalName;
+    private final boolean mFinalIds;
+    private final Map<String, List<SymbolLoader.SymbolEntry>> mSymbols = new TreeMap<>();
+
+    /**
+     * @param packageName the package of the R class
+     * @param finalIds whether the ids should be written as constants
+     */
+    public RClassWriter(String packageName, boolean finalIds) {
+        mInternalName = packageName.replace('.', '/') + "/R";
+        mFinalIds = finalIds;
+    }
+
+    /**
+     * Adds a symbol to the inner class of the given resource type, e.g. {@code string}
+     */
+    public void addSymbol(String type, SymbolLoader.SymbolEntry entry) {
+        List<SymbolLoader.SymbolEntry> entries = mSymbols.get(type);
+        if (entries == null) {
+            entries = new ArrayList<>();
+            mSymbols.put(type, entries);
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Writes the R class and its inner classes as entries of the given zip
+     */
+    public void write(ZipOutputStream out) throws IOException {
+        putEntry(out, mInternalName + ".class", writeOuterClass());
+        for (Map.Entry<String, List<SymbolLoader.SymbolEntry>> entry : mSymbols.entrySet()) {
+            putEntry(out, mInternalName + "$" + entry.getKey() + ".class",
+                    writeInnerClass(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    static void putEntry(ZipOutputStream out, String name, byte[] bytes)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private byte[] writeOuterClass() throws IOException {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.addClass(mInternalName);
+        int superClass = pool.addClass("java/lang/Object");
+        int innerClasses = pool.addUtf8("InnerClasses");
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(0); // methods
+
+        out.writeShort(1); // attributes
+        out.writeShort(innerClasses);
+        out.writeInt(2 + mSymbols.size() * 8);
+        out.writeShort(mSymbols.size());
+        for (String type : mSymbols.keySet()) {
+            writeInnerClassEntry(out, pool, type);
+        }
+
+        return toClassFile(pool, body);
+    }
+
+    private byte[] writeInnerClass(String type, List<SymbolLoader.SymbolEntry> entries)
+            throws IOException {
+        String internalName = mInternalName + "$" + type;
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.addClass(internalName);
+        int superClass = pool.addClass("java/lang/Object");
+        int constantValue = pool.addUtf8("ConstantValue");
+        int code = pool.addUtf8("Code");
+        int innerClasses = pool.addUtf8("InnerClasses");
+
+        ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(fieldBytes);
+        // assignments of final fields, only allowed in <clinit>
+        ByteArrayOutputStream clinitBytes = new ByteArrayOutputStream();
+        // the other assignments, split into chunks that fit in a method
+        List<ByteArrayOutputStream> chunks = new ArrayList<>();
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        chunks.add(chunk);
+
+        for (SymbolLoader.SymbolEntry entry : entries) {
+            boolean array = "int[]".equals(entry.getType());
+            String descriptor = array ? "[I" : "I";
+            boolean constant = mFinalIds && !array;
+
+            int access = ACC_PUBLIC | ACC_STATIC;
+            if (mFinalIds) {
+                access |= ACC_FINAL;
+            }
+            fields.writeShort(access);
+            fields.writeShort(pool.addUtf8(entry.getName()));
+            fields.writeShort(pool.addUtf8(descriptor));
+            if (constant) {
+                fields.writeShort(1);
+                fields.writeShort(constantValue);
+                fields.writeInt(2);
+                fields.writeShort(pool.addInteger(parseInt(entry.getValue())));
+                continue;
+            }
+            fields.writeShort(0);
+
+            int field = pool.addField(thisClass, entry.getName(), descriptor);
+            if (array) {
+                int[] values = parseArray(entry.getValue());
+                DataOutputStream allocation = new DataOutputStream(
+                        mFinalIds ? clinitBytes : (chunk = nextChunk(chunks, chunk, 11)));
+                pushInt(allocation, pool, values.length);
+                allocation.writeByte(0xbc); // newarray
+                allocation.writeByte(10); // T_INT
+                allocation.writeByte(0xb3); // putstatic
+                allocation.writeShort(field);
+
+                // the elements are stored one by one so that the initializer of a large
+                // array can be split between methods as well
+                for (int i = 0; i < values.length; i++) {
+                    DataOutputStream store = new DataOutputStream(
+                            chunk = nextChunk(chunks, chunk, 10));
+                    store.writeByte(0xb2); // getstatic
+                    store.writeShort(field);
+                    pushInt(store, pool, i);
+                    pushInt(store, pool, values[i]);
+                    store.writeByte(0x4f); // iastore
+                }
+            } else {
+                DataOutputStream assignment = new DataOutputStream(
+                        chunk = nextChunk(chunks, chunk, 6));
+                pushInt(assignment, pool, parseInt(entry.getValue()));
+                assignment.writeByte(0xb3); // putstatic
+                assignment.writeShort(field);
+            }
+        }
+
+        List<Method> methods = new ArrayList<>();
+        if (chunks.size() == 1 && clinitBytes.size() + chunk.size() < MAX_CODE_LENGTH) {
+            chunk.writeTo(clinitBytes);
+        } else {
+            DataOutputStream clinit = new DataOutputStream(clinitBytes);
+            for (int i = 0; i < chunks.size(); i++) {
+                String name = "init" + i;
+                ByteArrayOutputStream helper = chunks.get(i);
+                helper.write(0xb1); // return
+                methods.add(new Method(ACC_PRIVATE | ACC_STATIC, pool.addUtf8(name),
+                        pool.addUtf8("()V"), helper));
+
+                clinit.writeByte(0xb8); // invokestatic
+                clinit.writeShort(pool.addMethod(thisClass, name, "()V"));
+            }
+        }
+        if (clinitBytes.size() > 0) {
+            clinitBytes.write(0xb1); // return
+            if (clinitBytes.size() > MAX_CODE_LENGTH) {
+                throw new IOException("Too many resources of type " + type + " to write " +
+                        internalName);
+            }
+            methods.add(new Method(ACC_STATIC, pool.addUtf8("<clinit>"), pool.addUtf8("()V"),
+                    clinitBytes));
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); // interfaces
+        out.writeShort(entries.size());
+        fieldBytes.writeTo(out);
+
+        out.writeShort(methods.size());
+        for (Method method : methods) {
+            out.writeShort(method.access);
+            out.writeShort(method.name);
+            out.writeShort(method.descriptor);
+            out.writeShort(1);
+            out.writeShort(code);
+            out.writeInt(12 + method.code.size());
+            out.writeShort(MAX_STACK);
+            out.writeShort(0); // max locals
+            out.writeInt(method.code.size());
+            method.code.writeTo(out);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        }
+
+        out.writeShort(1); // attributes
+        out.writeShort(innerClasses);
+        out.writeInt(2 + 8);
+        out.writeShort(1);
+        writeInnerClassEntry(out, pool, type);
+
+        return toClassFile(pool, body);
+    }
+
+    /**
+     * Returns the chunk to append an instruction sequence of at most {@code length} bytes to,
+     * starting a new one when it would not fit in a method along with its return.
+     */
+    private static ByteArrayOutputStream nextChunk(List<ByteArrayOutputStream> chunks,
+                                                   ByteArrayOutputStream chunk, int length) {
+        if (chunk.size() + length < MAX_CODE_LENGTH) {
+            return chunk;
+        }
+        ByteArrayOutputStream next = new ByteArrayOutputStream();
+        chunks.add(next);
+        return next;
+    }
+
+    private void writeInnerClassEntry(DataOutputStream out, ConstantPool pool, String type)
+            throws IOException {
+        out.writeShort(pool.addClass(mInternalName + "$" + type));
+        out.writeShort(pool.addClass(mInternalName));
+        out.writeShort(pool.addUtf8(type));
+        out.writeShort(ACC_PUBLIC | ACC_STATIC | ACC_FINAL);
+    }
+
+    private static void pushInt(DataOutputStream out, ConstantPool pool, int value)
+            throws IOException {
+        if (value >= -1 && value <= 5) {
+            out.writeByte(0x03 + value); // iconst_<n>
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            out.writeByte(0x10); // bipush
+            out.writeByte(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            out.writeByte(0x11); // sipush
+            out.writeShort(value);
+        } else {
+            int index = pool.addInteger(value);
+            if (index <= 0xff) {
+                out.writeByte(0x12); // ldc
+                out.writeByte(index);
+            } else {
+                out.writeByte(0x13); // ldc_w
+                out.writeShort(index);
+            }
+        }
+    }
+
+    private static byte[] toClassFile(ConstantPool pool, ByteArrayOutputStream body)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_VERSION);
+        pool.writeTo(out);
+        body.writeTo(out);
+        return bytes.toByteArray();
+    }
+
+    private static int parseInt(String value) throws IOException {
+        try {
+            return Long.decode(value.trim()).intValue();
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid resource id " + value, e);
+        }
+    }
+
+    /**
+     * Parses the value of a styleable array, written as {@code { 0x7f010000, 0x7f010001 }}
+     */
+    private static int[] parseArray(String value) throws IOException {
+        String contents = value.trim();
+        if (contents.startsWith("{")) {
+            contents = contents.substring(1);
+        }
+        if (contents.endsWith("}")) {
+            contents = contents.substring(0, contents.length() - 1);
+        }
+
+        List<Integer> values = new ArrayList<>();
+        for (String element : contents.split(",")) {
+            if (!element.trim().isEmpty()) {
+                values.add(parseInt(element));
+            }
+        }
+
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static class Method {
+
+        final int access;
+        final int name;
+        final int descriptor;
+        final ByteArrayOutputStream code;
+
+        Method(int access, int name, int descriptor, ByteArrayOutputStream code) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.code = code;
+        }
+    }
+
+    private static class ConstantPool {
+
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_FIELD_REF = 9;
+        private static final int CONSTANT_METHOD_REF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mOut = new DataOutputStream(mBytes);
+        private final Map<String, Integer> mIndices = new HashMap<>();
+        private int mCount = 1;
+
+        int addUtf8(String value) throws IOException {
+            Integer index = mIndices.get("utf8:" + value);
+            if (index != null) {
+                return index;
+            }
+            mOut.writeByte(CONSTANT_UTF8);
+            mOut.writeUTF(value);
+            return put("utf8:" + value);
+        }
+
+        int addInteger(int value) throws IOException {
+            Integer index = mIndices.get("int:" + value);
+            if (index != null) {
+                return index;
+            }
+            mOut.writeByte(CONSTANT_INTEGER);
+            mOut.writeInt(value);
+            return put("int:" + value);
+        }
+
+        int addClass(String internalName) throws IOException {
+            Integer index = mIndices.get("class:" + internalName);
+            if (index != null) {
+                return index;
+            }
+            int name = addUtf8(internalName);
+            mOut.writeByte(CONSTANT_CLASS);
+            mOut.writeShort(name);
+            return put("class:" + internalName);
+        }
+
+        int addField(int owner, String name, String descriptor) throws IOException {
+            return addMember(CONSTANT_FIELD_REF, "field:", owner, name, descriptor);
+        }
+
+        int addMethod(int owner, String name, String descriptor) throws IOException {
+            return addMember(CONSTANT_METHOD_REF, "method:", owner, name, descriptor);
+        }
+
+        private int addMember(int tag, String prefix, int owner, String name, String descriptor)
+                throws IOException {
+            String key = prefix + owner + ":" + name + ":" + descriptor;
+            Integer index = mIndices.get(key);
+            if (index != null) {
+                return index;
+            }
+            int nameIndex = addUtf8(name);
+            int descriptorIndex = addUtf8(descriptor);
+            int nameAndType = mCount;
+            mOut.writeByte(CONSTANT_NAME_AND_TYPE);
+            mOut.writeShort(nameIndex);
+            mOut.writeShort(descriptorIndex);
+            mCount++;
+
+            mOut.writeByte(tag);
+            mOut.writeShort(owner);
+            mOut.writeShort(nameAndType);
+            return put(key);
+        }
+
+        private int put(String key) throws IOException {
+            if (mCount >= 0xffff) {
+                throw new IOException("Too many constants in R class");
+            }
+            int index = mCount++;
+            mIndices.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeShort(mCount);
+            mBytes.writeTo(out);
+        }
+    }
+}
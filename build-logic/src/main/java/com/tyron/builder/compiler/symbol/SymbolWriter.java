@@ -18,10 +18,12 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipOutputStream;
 
 /**
  * A class to write R.java classes based on data read from text symbol files generated by
- * AAPT/AAPT2 with the --output-text-symbols option.
+ * AAPT/AAPT2 with the --output-text-symbols option. The classes can also be written as
+ * compiled class files, see {@link #write(ZipOutputStream)}.
  */
 public class SymbolWriter {
 
@@ -52,6 +54,34 @@ public class SymbolWriter {
         return symbols;
     }
 
+    /**
+     * Writes the R class as class files to the given zip instead of an R.java file. The ids
+     * are not final, so the classes referencing them are not affected when they change.
+     */
+    public void write(ZipOutputStream out) throws IOException {
+        RClassWriter writer = new RClassWriter(mPackageName, false);
+
+        Table<String, String, SymbolLoader.SymbolEntry> symbols = getAllSymbols();
+        Table<String, String, SymbolLoader.SymbolEntry> values = mValues.getSymbols();
+
+        List<String> rowList = Lists.newArrayList(symbols.rowKeySet());
+        Collections.sort(rowList);
+
+        for (String row : rowList) {
+            List<String> symbolList = Lists.newArrayList(symbols.row(row).keySet());
+            Collections.sort(symbolList);
+
+            for (String symbolName : symbolList) {
+                SymbolLoader.SymbolEntry value = values.get(row, symbolName);
+                if (value != null) {
+                    writer.addSymbol(row, value);
+                }
+            }
+        }
+
+        writer.write(out);
+    }
+
     public void write() throws IOException {
         Splitter splitter = Splitter.on('.');
         Iterable<String> folders = splitter.split(mPackageName);
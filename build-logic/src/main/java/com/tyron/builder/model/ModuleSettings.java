@@ -33,6 +33,7 @@ public class ModuleSettings implements SharedPreferences {
     public static final String LIBRARY_LIST = "libraries";
     public static final String SAVED_EDITOR_FILES = "editor_opened_files";
     public static final String USE_R8 = "useR8";
+    public static final String GENERATE_R_JAR = "generateRJar";
     public static final String TARGET_SDK_VERSION = "targetSdkVersion";
     public static final String MIN_SDK_VERSION = "minSdkVersion";
     public static final String VERSION_NAME = "versionName";
@@ -64,6 +65,7 @@ public class ModuleSettings implements SharedPreferences {
     protected Map<String, Object> getDefaults() {
         Map<String, Object> map = new TreeMap<>();
         map.put(USE_R8, false);
+        map.put(GENERATE_R_JAR, false);
         map.put(MIN_SDK_VERSION, 21);
         map.put(TARGET_SDK_VERSION, 30);
         map.put(VERSION_NAME, "1.0");
@@ -23,7 +23,7 @@ public class SourceFileObject extends SimpleJavaFileObject {
 
 	public Path mFile;
 	private final Instant modified;
-	private final String mContents;
+	private final CharSequence mContents;
 	private final JavaModule mProject;
 	
 	public SourceFileObject(Path file) {
@@ -34,11 +34,15 @@ public class SourceFileObject extends SimpleJavaFileObject {
 		this(file, null, null, project);
 	}
 
-	public SourceFileObject(Path file, String contents, Instant modified) {
+	public SourceFileObject(Path file, CharSequence contents, Instant modified) {
 		this(file, contents, modified, null);
 	}
 	
-	public SourceFileObject(Path file, String contents, Instant modified, JavaModule project) {
+	/**
+	 * @param contents the contents of the file, must not be modified afterwards as it is
+	 *                 read directly by the compiler
+	 */
+	public SourceFileObject(Path file, CharSequence contents, Instant modified, JavaModule project) {
 		super(file.toUri(), JavaFileObject.Kind.SOURCE);
 		mContents = contents;
 		mFile = file;
@@ -5,13 +5,35 @@ import java.util.Optional;
 
 public interface FileManager {
 
-    void openFileForSnapshot(File file, String content);
+    /**
+     * Notified after the contents of a file have been written to disk through this manager
+     */
+    interface OnFileSavedListener {
+        void onFileSaved(File file);
+    }
 
-    void setSnapshotContent(File file, String content);
+    /**
+     * The contents of snapshots are returned as is by {@link #getFileContent(File)}, so they
+     * must be immutable, like a {@link String} or a snapshot of the editor text.
+     */
+    void openFileForSnapshot(File file, CharSequence content);
+
+    void setSnapshotContent(File file, CharSequence content);
 
     void closeFileForSnapshot(File file);
 
     Optional<CharSequence> getFileContent(File file);
 
+    /**
+     * Writes the snapshot of the file to disk, if it has one
+     *
+     * @return whether the file was written
+     */
+    boolean saveFile(File file);
+
+    void addOnFileSavedListener(OnFileSavedListener listener);
+
+    void removeOnFileSavedListener(OnFileSavedListener listener);
+
     void shutdown();
 }
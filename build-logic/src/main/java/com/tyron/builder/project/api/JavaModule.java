@@ -2,6 +2,8 @@ package com.tyron.builder.project.api;
 
 import androidx.annotation.NonNull;
 
+import com.tyron.builder.project.index.ClassIndex;
+
 import java.io.File;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +32,13 @@ public interface JavaModule extends Module {
      */
     List<String> getAllClasses();
 
+    /**
+     * @return The index of all the classes returned by {@link #getAllClasses()}, used
+     * to search classes by name without scanning all of them
+     */
+    @NonNull
+    ClassIndex getClassIndex();
+
     /**
      * @return The resources directory of the project. Note that
      * this is different from android's res directory
@@ -0,0 +1,62 @@
+package com.tyron.builder.project.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the keys or values of a persistent cache
+ */
+public interface CacheCodec<T> {
+
+    CacheCodec<Void> VOID = new CacheCodec<Void>() {
+        @Override
+        public void write(DataOutput out, Void value) {
+
+        }
+
+        @Override
+        public Void read(DataInput in) {
+            return null;
+        }
+    };
+
+    CacheCodec<String> STRING = new CacheCodec<String>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    CacheCodec<List<File>> FILES = new CacheCodec<List<File>>() {
+        @Override
+        public void write(DataOutput out, List<File> value) throws IOException {
+            out.writeInt(value.size());
+            for (File file : value) {
+                out.writeUTF(file.getAbsolutePath());
+            }
+        }
+
+        @Override
+        public List<File> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            List<File> files = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                files.add(new File(in.readUTF()));
+            }
+            return files;
+        }
+    };
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
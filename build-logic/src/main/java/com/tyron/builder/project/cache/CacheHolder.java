@@ -2,22 +2,57 @@ package com.tyron.builder.project.cache;
 
 import com.tyron.common.util.Cache;
 
+import java.io.IOException;
+
 public interface CacheHolder {
 
     class CacheKey<K, V> {
 
         private final String name;
+        private final CacheCodec<K> keyCodec;
+        private final CacheCodec<V> valueCodec;
 
         public CacheKey(String name) {
+            this(name, null, null);
+        }
+
+        /**
+         * Creates a key whose cache is persisted in the build directory, so it survives
+         * restarts of the app
+         */
+        public CacheKey(String name, CacheCodec<K> keyCodec, CacheCodec<V> valueCodec) {
             this.name = name;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
         }
 
         public String getName() {
             return name;
         }
+
+        public CacheCodec<K> getKeyCodec() {
+            return keyCodec;
+        }
+
+        public CacheCodec<V> getValueCodec() {
+            return valueCodec;
+        }
+
+        public boolean isPersistent() {
+            return keyCodec != null && valueCodec != null;
+        }
     }
 
+    /**
+     * Returns the cache associated with the key. If there is none yet and the key is
+     * persistent, the default value is filled with the entries stored on disk.
+     */
     public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue);
 
     public <K, V> void put(CacheKey<K, V> key, Cache<K, V> value);
+
+    /**
+     * Writes the caches of persistent keys that have been loaded to disk
+     */
+    public void persistCaches() throws IOException;
 }
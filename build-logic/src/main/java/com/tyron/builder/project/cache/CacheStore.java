@@ -0,0 +1,141 @@
+package com.tyron.builder.project.cache;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.common.util.Cache;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the entries of a {@link Cache} in a binary file.
+ *
+ * <p>The file starts with a header containing the format version and the name of the cache,
+ * followed by the entries and a CRC32 checksum of everything before it. Files with a
+ * different version, name or checksum are ignored, so the cache simply starts empty.
+ */
+public class CacheStore {
+
+    private static final int MAGIC = 0x43414348;
+    private static final int VERSION = 1;
+
+    private CacheStore() {
+
+    }
+
+    /**
+     * Loads the entries stored in the given file into the cache
+     *
+     * @return whether the file was read successfully
+     */
+    public static <K, V> boolean read(@NonNull File file, @NonNull CacheHolder.CacheKey<K, V> key,
+                                      @NonNull Cache<K, V> cache) {
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            byte[] bytes = FileUtils.readFileToByteArray(file);
+            if (bytes.length < Long.BYTES) {
+                return false;
+            }
+            int length = bytes.length - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, length);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            in.skipBytes(length);
+            if (in.readLong() != crc.getValue()) {
+                return false;
+            }
+
+            in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+                    !key.getName().equals(in.readUTF())) {
+                return false;
+            }
+            int count = in.readInt();
+            Cache<K, V> entries = new Cache<>();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                K k = key.getKeyCodec().read(in);
+                V v = key.getValueCodec().read(in);
+                Instant created = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                entries.load(Paths.get(path), k, v, created);
+            }
+            // only fill the cache once the whole file has been read
+            entries.forEach(cache::load);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the entries of the cache to a temporary file which then replaces the given file,
+     * so a build that is interrupted never leaves a partially written cache
+     */
+    public static <K, V> void write(@NonNull File file, @NonNull CacheHolder.CacheKey<K, V> key,
+                                    @NonNull Cache<K, V> cache) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(key.getName());
+
+        ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(entryBytes);
+        int[] count = new int[1];
+        IOException[] error = new IOException[1];
+        cache.forEach((path, k, v, created) -> {
+            if (error[0] != null) {
+                return;
+            }
+            try {
+                entries.writeUTF(path.toString());
+                key.getKeyCodec().write(entries, k);
+                key.getValueCodec().write(entries, v);
+                entries.writeLong(created.getEpochSecond());
+                entries.writeInt(created.getNano());
+                count[0]++;
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        out.writeInt(count[0]);
+        entryBytes.writeTo(out);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            bytes.writeTo(stream);
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            // renameTo does not replace existing files on some platforms
+            if (!file.delete() || !temp.renameTo(file)) {
+                throw new IOException("Unable to write cache " + file);
+            }
+        }
+    }
+}
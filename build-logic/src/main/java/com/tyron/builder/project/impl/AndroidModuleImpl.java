@@ -17,7 +17,6 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 
@@ -78,13 +77,6 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
         return new File(getRootFile(), "src/main/res");
     }
 
-    @Override
-    public List<String> getAllClasses() {
-        List<String> classes = super.getAllClasses();
-        classes.addAll(mKotlinFiles.keySet());
-        return classes;
-    }
-
     @Override
     public File getNativeLibrariesDirectory() {
         File custom = getPathSetting("native_libraries_directory");
@@ -157,5 +149,6 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
         }
         String fqn = packageName + "." + file.getName().replace(".kt", "");
         mKotlinFiles.put(fqn, file);
+        getClassIndex().putClass(fqn, file);
     }
 }
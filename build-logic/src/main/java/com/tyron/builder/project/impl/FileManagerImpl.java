@@ -11,8 +11,10 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -22,21 +24,23 @@ public class FileManagerImpl implements FileManager {
 
     private final ExecutorService mService;
     private final File mRoot;
-    private final Map<File, String> mSnapshots;
+    private final Map<File, CharSequence> mSnapshots;
+    private final List<OnFileSavedListener> mListeners;
 
     public FileManagerImpl(File root) {
         mRoot = root;
         mService = Executors.newSingleThreadExecutor();
         mSnapshots = new HashMap<>();
+        mListeners = new CopyOnWriteArrayList<>();
     }
 
     @Override
-    public void openFileForSnapshot(File file, String content) {
+    public void openFileForSnapshot(File file, CharSequence content) {
         mSnapshots.put(file, content);
     }
 
     @Override
-    public void setSnapshotContent(File file, String content) {
+    public void setSnapshotContent(File file, CharSequence content) {
         mSnapshots.computeIfPresent(file, (f, c) -> content);
     }
 
@@ -46,17 +50,41 @@ public class FileManagerImpl implements FileManager {
             return;
         }
         if (mSnapshots.containsKey(file)) {
-            try {
-                FileUtils.writeStringToFile(file, mSnapshots.get(file), StandardCharsets.UTF_8);
-            } catch (IOException e) {
-                if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "Failed to save file " + file.getName(), e);
-                }
-            }
+            saveFile(file);
             mSnapshots.remove(file);
         }
     }
 
+    @Override
+    public boolean saveFile(File file) {
+        CharSequence content = mSnapshots.get(file);
+        if (content == null) {
+            return false;
+        }
+        try {
+            FileUtils.write(file, content, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Failed to save file " + file.getName(), e);
+            }
+            return false;
+        }
+        for (OnFileSavedListener listener : mListeners) {
+            listener.onFileSaved(file);
+        }
+        return true;
+    }
+
+    @Override
+    public void addOnFileSavedListener(OnFileSavedListener listener) {
+        mListeners.add(listener);
+    }
+
+    @Override
+    public void removeOnFileSavedListener(OnFileSavedListener listener) {
+        mListeners.remove(listener);
+    }
+
     @Override
     public Optional<CharSequence> getFileContent(File file) {
         CharSequence content = mSnapshots.get(file);
@@ -76,9 +104,12 @@ public class FileManagerImpl implements FileManager {
     public void shutdown() {
         mSnapshots.forEach((k, v) -> mService.execute(() -> {
             try {
-                FileUtils.writeStringToFile(k, v, StandardCharsets.UTF_8);
+                FileUtils.write(k, v, StandardCharsets.UTF_8);
             } catch (IOException e) {
-                // ignored
+                return;
+            }
+            for (OnFileSavedListener listener : mListeners) {
+                listener.onFileSaved(k);
             }
         }));
     }
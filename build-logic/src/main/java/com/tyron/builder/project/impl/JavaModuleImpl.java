@@ -6,6 +6,7 @@ import androidx.annotation.Nullable;
 import com.google.common.collect.ImmutableList;
 import com.tyron.builder.BuildModule;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.index.ClassIndex;
 import com.tyron.common.util.StringSearch;
 
 import org.apache.commons.io.FileUtils;
@@ -15,27 +16,24 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.zip.ZipException;
 
 public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
-    // Map of fully qualified names and the jar they are contained in
-    private final Map<String, File> mClassFiles;
+    // Index of fully qualified names and the file they are contained in
+    private final ClassIndex mClassIndex;
     private final Map<String, File> mJavaFiles;
     private final Set<File> mLibraries;
 
     public JavaModuleImpl(File root) {
         super(root);
         mJavaFiles = new HashMap<>();
-        mClassFiles = new HashMap<>();
+        mClassIndex = new ClassIndex();
         mLibraries = new HashSet<>();
     }
 
@@ -54,6 +52,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     @Override
     public void removeJavaFile(@NonNull String packageName) {
         mJavaFiles.remove(packageName);
+        mClassIndex.removeClass(packageName);
     }
 
     @Override
@@ -69,14 +68,18 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
             className = packageName + "." + javaFile.getName().replace(".java", "");
         }
         mJavaFiles.put(className, javaFile);
+        mClassIndex.putClass(className, javaFile);
     }
 
     @Override
     public List<String> getAllClasses() {
-        List<String> classes = new ArrayList<>();
-        classes.addAll(mJavaFiles.keySet());
-        classes.addAll(mClassFiles.keySet());
-        return classes;
+        return new ArrayList<>(mClassIndex.getAllClasses());
+    }
+
+    @NonNull
+    @Override
+    public ClassIndex getClassIndex() {
+        return mClassIndex;
     }
 
     @Override
@@ -103,27 +106,14 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         if (file == null) {
             return;
         }
-        try (JarFile jar = new JarFile(file)) {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-
-                if (!entry.getName().endsWith(".class")) {
-                    continue;
-                }
-
-                // We only want top level classes, if it contains $ then
-                // its an inner class, we ignore it
-                if (entry.getName().contains("$")) {
-                    continue;
-                }
-
-                String packageName = entry.getName().replace("/", ".")
-                        .substring(0, entry.getName().length() - ".class".length());
+        mClassIndex.putJar(file);
+    }
 
-                mClassFiles.put(packageName, file);
-            }
-        }
+    /**
+     * @return the file where the classes of the libraries are persisted
+     */
+    private File getClassIndexFile() {
+        return new File(getBuildDirectory(), "intermediate/class_index.bin");
     }
 
     @NonNull
@@ -182,6 +172,9 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
     @Override
     public void index() {
+        File indexFile = getClassIndexFile();
+        mClassIndex.load(indexFile);
+
         if (getJavaDirectory().exists()) {
             FileUtils.iterateFiles(getJavaDirectory(),
                     FileFilterUtils.suffixFileFilter(".java"),
@@ -205,11 +198,18 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         } catch (IOException e) {
             // ignored
         }
+
+        try {
+            mClassIndex.save(indexFile);
+        } catch (IOException e) {
+            // ignored, the jars will be read again on the next index
+        }
     }
 
     @Override
     public void clear() {
         mJavaFiles.clear();
         mLibraries.clear();
+        mClassIndex.clear();
     }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import androidx.annotation.Nullable;
 import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.cache.CacheStore;
 import com.tyron.common.util.Cache;
 
 import org.jetbrains.annotations.NotNull;
@@ -148,9 +149,12 @@ public class ModuleImpl implements Module {
     private final Map<CacheKey<?, ?>, Cache<?, ?>> mCacheMap = new HashMap<>();
 
     @Override
-    public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
+    public synchronized <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
         Object o = mCacheMap.get(key);
         if (o == null) {
+            if (key.isPersistent()) {
+                CacheStore.read(getCacheFile(key), key, defaultValue);
+            }
             put(key, defaultValue);
             return defaultValue;
         }
@@ -159,7 +163,25 @@ public class ModuleImpl implements Module {
     }
 
     @Override
-    public <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
+    public synchronized <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
         mCacheMap.put(key, value);
     }
+
+    @Override
+    public synchronized void persistCaches() throws IOException {
+        for (Map.Entry<CacheKey<?, ?>, Cache<?, ?>> entry : mCacheMap.entrySet()) {
+            if (entry.getKey().isPersistent()) {
+                persistCache(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private <K, V> void persistCache(CacheKey<K, V> key, Cache<?, ?> cache) throws IOException {
+        //noinspection unchecked
+        CacheStore.write(getCacheFile(key), key, (Cache<K, V>) cache);
+    }
+
+    private File getCacheFile(CacheKey<?, ?> key) {
+        return new File(getBuildDirectory(), "intermediate/caches/" + key.getName() + ".bin");
+    }
 }
@@ -0,0 +1,560 @@
+package com.tyron.builder.project.index;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An index of the fully qualified names of the top level classes of a module, including its
+ * libraries and the bootstrap jar.
+ *
+ * <p>Names are looked up through sorted arrays that are built once after the index changes, so
+ * completion can search by qualified prefix, simple name prefix and camel humps without
+ * scanning every class. Classes added or removed one at a time, as source files are edited,
+ * are merged into the previous arrays instead of sorting all the classes again. The classes of
+ * each jar are persisted with {@link #save(File)} so reopening a project does not need to read
+ * the jars again.
+ */
+public class ClassIndex {
+
+    private static final int MAGIC = 0x43494458;
+    private static final int VERSION = 1;
+
+    private static final Comparator<Entry> SIMPLE_NAME_COMPARATOR =
+            Comparator.comparing((Entry it) -> it.lowerSimpleName).thenComparing(it -> it.className);
+    private static final Comparator<Entry> HUMPS_COMPARATOR =
+            Comparator.comparing((Entry it) -> it.humps).thenComparing(it -> it.className);
+
+    /**
+     * Fully qualified class name to the file it is declared in, either a java source or a jar
+     */
+    private final Map<String, File> mClasses = new HashMap<>();
+
+    /**
+     * Classes of jars hidden by a source file declaring the same name, they are restored when
+     * the source class is removed
+     */
+    private final Map<String, File> mShadowedClasses = new HashMap<>();
+
+    /**
+     * The classes read from each jar, along with the jar's size and modification time
+     */
+    private final Map<File, JarClasses> mJars = new HashMap<>();
+
+    /**
+     * Jar entries loaded from disk that have not been claimed by {@link #putJar(File)} yet
+     */
+    private final Map<File, JarClasses> mPersistedJars = new HashMap<>();
+
+    /**
+     * The snapshot returned by queries, null if the index changed since it was built
+     */
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * The last snapshot that was built and the class names added and removed since, null if
+     * the snapshot needs to be built from scratch
+     */
+    private Snapshot mBaseSnapshot;
+    private final Set<String> mAddedClasses = new HashSet<>();
+    private final Set<String> mRemovedClasses = new HashSet<>();
+
+    private boolean mDirty;
+
+    /**
+     * Adds a class declared in a source file
+     */
+    public synchronized void putClass(@NonNull String className, @NonNull File file) {
+        File previous = mClasses.put(className, file);
+        if (previous == null) {
+            if (!mRemovedClasses.remove(className)) {
+                mAddedClasses.add(className);
+            }
+            mSnapshot = null;
+        } else if (mJars.containsKey(previous)) {
+            mShadowedClasses.put(className, previous);
+        }
+    }
+
+    /**
+     * Removes a class declared in a source file. If a jar declares a class with the same name,
+     * it stays in the index.
+     */
+    public synchronized void removeClass(@NonNull String className) {
+        File file = mClasses.get(className);
+        if (file == null || mJars.containsKey(file)) {
+            return;
+        }
+        File jar = mShadowedClasses.remove(className);
+        if (jar != null) {
+            mClasses.put(className, jar);
+            return;
+        }
+        if (mClasses.remove(className) != null) {
+            if (!mAddedClasses.remove(className)) {
+                mRemovedClasses.add(className);
+            }
+            mSnapshot = null;
+        }
+    }
+
+    /**
+     * Discards the previous snapshot, used when many classes change at once
+     */
+    private void invalidateSnapshot() {
+        mSnapshot = null;
+        mBaseSnapshot = null;
+        mAddedClasses.clear();
+        mRemovedClasses.clear();
+    }
+
+    /**
+     * Adds all the top level classes of the jar file to the index. If the jar has
+     * not changed since it was last persisted, its contents are not read.
+     */
+    public synchronized void putJar(@NonNull File jar) throws IOException {
+        JarClasses classes = mJars.get(jar);
+        if (classes == null || !classes.isUpToDate(jar)) {
+            classes = mPersistedJars.remove(jar);
+        }
+        if (classes == null || !classes.isUpToDate(jar)) {
+            classes = JarClasses.read(jar);
+            mDirty = true;
+        }
+        JarClasses previous = mJars.put(jar, classes);
+        if (previous != null) {
+            removeClasses(jar, previous);
+        }
+        for (String className : classes.classes) {
+            File declared = mClasses.put(className, jar);
+            if (declared != null && !mJars.containsKey(declared)) {
+                // source classes take precedence over the classes of jars
+                mClasses.put(className, declared);
+                mShadowedClasses.put(className, jar);
+            }
+        }
+        invalidateSnapshot();
+    }
+
+    public synchronized void removeJar(@NonNull File jar) {
+        JarClasses classes = mJars.remove(jar);
+        if (classes != null) {
+            removeClasses(jar, classes);
+            invalidateSnapshot();
+            mDirty = true;
+        }
+    }
+
+    private void removeClasses(File jar, JarClasses classes) {
+        for (String className : classes.classes) {
+            // the class may have been redeclared by another jar or a source file
+            if (jar.equals(mClasses.get(className))) {
+                mClasses.remove(className);
+            }
+            if (jar.equals(mShadowedClasses.get(className))) {
+                mShadowedClasses.remove(className);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        mClasses.clear();
+        mShadowedClasses.clear();
+        mJars.clear();
+        invalidateSnapshot();
+    }
+
+    public boolean contains(@NonNull String className) {
+        return Arrays.binarySearch(getSnapshot().classNames, className) >= 0;
+    }
+
+    public int size() {
+        return getSnapshot().classNames.length;
+    }
+
+    /**
+     * @return all the fully qualified names in this index, sorted
+     */
+    @NonNull
+    public List<String> getAllClasses() {
+        return Collections.unmodifiableList(Arrays.asList(getSnapshot().classNames));
+    }
+
+    /**
+     * @return the fully qualified names that start with the given prefix, sorted
+     */
+    @NonNull
+    public List<String> findByQualifiedPrefix(@NonNull String prefix) {
+        String[] classNames = getSnapshot().classNames;
+        int start = lowerBound(classNames, prefix);
+        int end = start;
+        while (end < classNames.length && classNames[end].startsWith(prefix)) {
+            end++;
+        }
+        return Collections.unmodifiableList(Arrays.asList(classNames).subList(start, end));
+    }
+
+    /**
+     * Finds the classes whose simple name starts with the given partial name, ignoring case,
+     * or whose camel humps match it. For example {@code ArLi} and {@code AL} both match
+     * {@code ArrayList}.
+     *
+     * @param partial the partial simple name
+     * @param limit the maximum number of results
+     * @return the fully qualified names of the matching classes, prefix matches first
+     */
+    @NonNull
+    public List<String> findBySimpleName(@NonNull String partial, int limit) {
+        if (partial.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Snapshot snapshot = getSnapshot();
+        Set<String> result = new LinkedHashSet<>();
+
+        String lowerPartial = partial.toLowerCase();
+        Entry[] bySimpleName = snapshot.bySimpleName;
+        for (int i = lowerBound(bySimpleName, lowerPartial, it -> it.lowerSimpleName);
+             i < bySimpleName.length && result.size() < limit; i++) {
+            if (!bySimpleName[i].lowerSimpleName.startsWith(lowerPartial)) {
+                break;
+            }
+            result.add(bySimpleName[i].className);
+        }
+
+        String queryHumps = humps(partial);
+        if (queryHumps.length() > 1) {
+            Entry[] byHumps = snapshot.byHumps;
+            for (int i = lowerBound(byHumps, queryHumps, it -> it.humps);
+                 i < byHumps.length && result.size() < limit; i++) {
+                Entry entry = byHumps[i];
+                if (!entry.humps.startsWith(queryHumps)) {
+                    break;
+                }
+                if (matchesCamelHumps(entry.simpleName, partial)) {
+                    result.add(entry.className);
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Reads the persisted jar entries, jars that have not changed since then will not be read
+     * again when they are added with {@link #putJar(File)}
+     */
+    public synchronized void load(@NonNull File indexFile) {
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int jarCount = in.readInt();
+            Map<File, JarClasses> jars = new HashMap<>(jarCount);
+            for (int i = 0; i < jarCount; i++) {
+                File jar = new File(in.readUTF());
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                String[] classes = new String[in.readInt()];
+                for (int j = 0; j < classes.length; j++) {
+                    classes[j] = in.readUTF();
+                }
+                jars.put(jar, new JarClasses(length, lastModified, classes));
+            }
+            mPersistedJars.putAll(jars);
+        } catch (IOException e) {
+            // the index is only a cache, the jars will be read again
+        }
+    }
+
+    /**
+     * Writes the classes of all the jars in this index, does nothing if no jars have changed
+     * since the last load or save.
+     */
+    public synchronized void save(@NonNull File indexFile) throws IOException {
+        if (!mDirty && indexFile.exists()) {
+            return;
+        }
+        File parent = indexFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mJars.size());
+            for (Map.Entry<File, JarClasses> entry : mJars.entrySet()) {
+                JarClasses classes = entry.getValue();
+                out.writeUTF(entry.getKey().getAbsolutePath());
+                out.writeLong(classes.length);
+                out.writeLong(classes.lastModified);
+                out.writeInt(classes.classes.length);
+                for (String className : classes.classes) {
+                    out.writeUTF(className);
+                }
+            }
+        }
+        if (!temp.renameTo(indexFile)) {
+            // renameTo does not replace existing files on some platforms
+            if (!indexFile.delete() || !temp.renameTo(indexFile)) {
+                throw new IOException("Unable to write class index " + indexFile);
+            }
+        }
+        mDirty = false;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = mSnapshot;
+                if (snapshot == null) {
+                    if (mBaseSnapshot != null) {
+                        snapshot = mBaseSnapshot.update(mAddedClasses, mRemovedClasses);
+                    } else {
+                        snapshot = new Snapshot(mClasses.keySet());
+                    }
+                    mAddedClasses.clear();
+                    mRemovedClasses.clear();
+                    mBaseSnapshot = snapshot;
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the lowercase first letter of the name followed by its other uppercase letters
+     */
+    static String humps(String name) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (i == 0 || Character.isUpperCase(c)) {
+                builder.append(Character.toLowerCase(c));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Checks if each hump of the query is a prefix of the corresponding hump of the name,
+     * ignoring case. The last hump of the name may be followed by more humps.
+     */
+    static boolean matchesCamelHumps(String name, String query) {
+        int n = 0;
+        int q = 0;
+        while (q < query.length()) {
+            if (n >= name.length()) {
+                return false;
+            }
+            char qc = query.charAt(q);
+            char nc = name.charAt(n);
+            if (Character.toLowerCase(qc) == Character.toLowerCase(nc)) {
+                q++;
+                n++;
+                continue;
+            }
+            if (q == 0 || !Character.isUpperCase(qc)) {
+                return false;
+            }
+            // skip to the next hump of the name
+            n++;
+            while (n < name.length() && !Character.isUpperCase(name.charAt(n))) {
+                n++;
+            }
+        }
+        return true;
+    }
+
+    private static int lowerBound(String[] array, String key) {
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (array[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int lowerBound(Entry[] array, String key,
+                                  Function<Entry, String> keyExtractor) {
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keyExtractor.apply(array[mid]).compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static class Entry {
+        final String className;
+        final String simpleName;
+        final String lowerSimpleName;
+        final String humps;
+
+        Entry(String className) {
+            this.className = className;
+            this.simpleName = className.substring(className.lastIndexOf('.') + 1);
+            this.lowerSimpleName = simpleName.toLowerCase();
+            this.humps = humps(simpleName);
+        }
+    }
+
+    /**
+     * An immutable, sorted view of the index
+     */
+    private static class Snapshot {
+        final String[] classNames;
+        final Entry[] bySimpleName;
+        final Entry[] byHumps;
+
+        Snapshot(Set<String> classes) {
+            classNames = classes.toArray(new String[0]);
+            Arrays.sort(classNames);
+
+            bySimpleName = new Entry[classNames.length];
+            for (int i = 0; i < classNames.length; i++) {
+                bySimpleName[i] = new Entry(classNames[i]);
+            }
+            byHumps = bySimpleName.clone();
+            Arrays.sort(bySimpleName, SIMPLE_NAME_COMPARATOR);
+            Arrays.sort(byHumps, HUMPS_COMPARATOR);
+        }
+
+        private Snapshot(String[] classNames, Entry[] bySimpleName, Entry[] byHumps) {
+            this.classNames = classNames;
+            this.bySimpleName = bySimpleName;
+            this.byHumps = byHumps;
+        }
+
+        /**
+         * @return a snapshot with the given classes added and removed, only the added classes
+         * are sorted
+         */
+        Snapshot update(Set<String> added, Set<String> removed) {
+            Entry[] addedEntries = new Entry[added.size()];
+            int i = 0;
+            for (String className : added) {
+                addedEntries[i++] = new Entry(className);
+            }
+            String[] addedNames = added.toArray(new String[0]);
+            Arrays.sort(addedNames);
+            return new Snapshot(
+                    merge(classNames, addedNames, removed, Comparator.naturalOrder(),
+                            it -> it, String[]::new),
+                    merge(bySimpleName, sorted(addedEntries, SIMPLE_NAME_COMPARATOR), removed,
+                            SIMPLE_NAME_COMPARATOR, it -> it.className, Entry[]::new),
+                    merge(byHumps, sorted(addedEntries, HUMPS_COMPARATOR), removed,
+                            HUMPS_COMPARATOR, it -> it.className, Entry[]::new));
+        }
+
+        private static Entry[] sorted(Entry[] entries, Comparator<Entry> comparator) {
+            Entry[] copy = entries.clone();
+            Arrays.sort(copy, comparator);
+            return copy;
+        }
+
+        /**
+         * Merges two sorted arrays, skipping the elements of the first one that were removed
+         */
+        private static <T> T[] merge(T[] existing, T[] added, Set<String> removed,
+                                     Comparator<? super T> comparator,
+                                     Function<T, String> className,
+                                     IntFunction<T[]> factory) {
+            T[] result = factory.apply(existing.length - removed.size() + added.length);
+            int e = 0;
+            int a = 0;
+            int r = 0;
+            while (e < existing.length || a < added.length) {
+                if (e < existing.length && removed.contains(className.apply(existing[e]))) {
+                    e++;
+                } else if (a >= added.length || (e < existing.length
+                        && comparator.compare(existing[e], added[a]) <= 0)) {
+                    result[r++] = existing[e++];
+                } else {
+                    result[r++] = added[a++];
+                }
+            }
+            return r == result.length ? result : Arrays.copyOf(result, r);
+        }
+    }
+
+    private static class JarClasses {
+        final long length;
+        final long lastModified;
+        final String[] classes;
+
+        JarClasses(long length, long lastModified, String[] classes) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.classes = classes;
+        }
+
+        boolean isUpToDate(File jar) {
+            return jar.length() == length && jar.lastModified() == lastModified;
+        }
+
+        static JarClasses read(File file) throws IOException {
+            List<String> classes = new ArrayList<>();
+            try (JarFile jar = new JarFile(file)) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+
+                    if (!entry.getName().endsWith(".class")) {
+                        continue;
+                    }
+
+                    // We only want top level classes, if it contains $ then
+                    // its an inner class, we ignore it
+                    if (entry.getName().contains("$")) {
+                        continue;
+                    }
+
+                    String className = entry.getName().replace("/", ".")
+                            .substring(0, entry.getName().length() - ".class".length());
+                    classes.add(className);
+                }
+            }
+            return new JarClasses(file.length(), file.lastModified(),
+                    classes.toArray(new String[0]));
+        }
+    }
+}
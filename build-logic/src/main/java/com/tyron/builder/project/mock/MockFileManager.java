@@ -26,12 +26,12 @@ public class MockFileManager implements FileManager {
     }
 
     @Override
-    public void openFileForSnapshot(File file, String content) {
+    public void openFileForSnapshot(File file, CharSequence content) {
         mSnapshots.put(file, content);
     }
 
     @Override
-    public void setSnapshotContent(File file, String content) {
+    public void setSnapshotContent(File file, CharSequence content) {
         mSnapshots.computeIfPresent(file, (f, c) -> content);
     }
 
@@ -55,6 +55,21 @@ public class MockFileManager implements FileManager {
         return Optional.empty();
     }
 
+    @Override
+    public boolean saveFile(File file) {
+        return false;
+    }
+
+    @Override
+    public void addOnFileSavedListener(OnFileSavedListener listener) {
+        // no-op
+    }
+
+    @Override
+    public void removeOnFileSavedListener(OnFileSavedListener listener) {
+        // no-op
+    }
+
     @Override
     public void shutdown() {
         // no-op
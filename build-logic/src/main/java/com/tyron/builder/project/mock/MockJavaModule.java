@@ -5,6 +5,7 @@ import androidx.annotation.NonNull;
 import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.index.ClassIndex;
 import com.tyron.builder.project.impl.ModuleImpl;
 import com.tyron.common.util.StringSearch;
 
@@ -29,6 +30,7 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
 
     private final KeyFMap mDataMap = KeyFMap.EMPTY_MAP;
     private final Map<String, File> mJavaFiles = new HashMap<>();
+    private final ClassIndex mClassIndex = new ClassIndex();
 
     private final FileManager mFileManager;
     private final File mRootDir;
@@ -83,6 +85,12 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
         return Collections.emptyList();
     }
 
+    @NonNull
+    @Override
+    public ClassIndex getClassIndex() {
+        return mClassIndex;
+    }
+
     @NonNull
     @Override
     public File getResourcesDir() {
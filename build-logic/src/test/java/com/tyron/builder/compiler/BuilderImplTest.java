@@ -0,0 +1,121 @@
+package com.tyron.builder.compiler;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.project.api.Module;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+public class BuilderImplTest {
+
+    @Test
+    public void testIndependentTasks() {
+        List<Set<Integer>> dependencies = BuilderImpl.getDependencies(Arrays.asList(
+                task(EnumSet.of(Artifact.RESOURCES), EnumSet.of(Artifact.COMPILED_RESOURCES)),
+                task(EnumSet.of(Artifact.CLASSES), EnumSet.of(Artifact.LIBRARY_DEX)),
+                task(EnumSet.noneOf(Artifact.class), EnumSet.of(Artifact.MERGED_MANIFEST))));
+
+        assertThat(dependencies.get(0)).isEmpty();
+        assertThat(dependencies.get(1)).isEmpty();
+        assertThat(dependencies.get(2)).isEmpty();
+    }
+
+    @Test
+    public void testReadAfterWrite() {
+        List<Set<Integer>> dependencies = BuilderImpl.getDependencies(Arrays.asList(
+                task(EnumSet.noneOf(Artifact.class), EnumSet.of(Artifact.JAVA_SOURCES)),
+                task(EnumSet.of(Artifact.JAVA_SOURCES), EnumSet.of(Artifact.CLASSES)),
+                task(EnumSet.of(Artifact.CLASSES), EnumSet.of(Artifact.DEX))));
+
+        assertThat(dependencies.get(1)).containsExactly(0);
+        // the dex task does not read the java sources, it only waits for the classes
+        assertThat(dependencies.get(2)).containsExactly(1);
+    }
+
+    @Test
+    public void testWriteAfterRead() {
+        List<Set<Integer>> dependencies = BuilderImpl.getDependencies(Arrays.asList(
+                task(EnumSet.of(Artifact.RESOURCES), EnumSet.of(Artifact.COMPILED_RESOURCES)),
+                task(EnumSet.noneOf(Artifact.class), EnumSet.of(Artifact.RESOURCES))));
+
+        assertThat(dependencies.get(1)).containsExactly(0);
+    }
+
+    @Test
+    public void testWriteAfterWrite() {
+        List<Set<Integer>> dependencies = BuilderImpl.getDependencies(Arrays.asList(
+                task(EnumSet.noneOf(Artifact.class), EnumSet.of(Artifact.DEX)),
+                task(EnumSet.noneOf(Artifact.class), EnumSet.of(Artifact.DEX, Artifact.APK))));
+
+        assertThat(dependencies.get(1)).containsExactly(0);
+    }
+
+    @Test
+    public void testReadAfterRead() {
+        List<Set<Integer>> dependencies = BuilderImpl.getDependencies(Arrays.asList(
+                task(EnumSet.of(Artifact.CLASSES), EnumSet.of(Artifact.DEX)),
+                task(EnumSet.of(Artifact.CLASSES), EnumSet.of(Artifact.JAR))));
+
+        assertThat(dependencies.get(1)).isEmpty();
+    }
+
+    @Test
+    public void testUndeclaredArtifacts() {
+        List<Set<Integer>> dependencies = BuilderImpl.getDependencies(Arrays.asList(
+                task(EnumSet.noneOf(Artifact.class), EnumSet.of(Artifact.MERGED_MANIFEST)),
+                task(EnumSet.of(Artifact.RESOURCES), EnumSet.of(Artifact.COMPILED_RESOURCES)),
+                task(null, null),
+                task(EnumSet.noneOf(Artifact.class), EnumSet.of(Artifact.LIBRARY_DEX)),
+                task(EnumSet.of(Artifact.LIBRARY_DEX), EnumSet.of(Artifact.DEX)),
+                task(null, null),
+                task(null, null)));
+
+        // a task that does not declare its artifacts waits for every task before it
+        assertThat(dependencies.get(2)).containsExactly(0, 1);
+        // and every task after it waits for it
+        assertThat(dependencies.get(3)).containsExactly(2);
+        assertThat(dependencies.get(4)).containsExactly(2, 3);
+        assertThat(dependencies.get(5)).containsExactly(2, 3, 4);
+        assertThat(dependencies.get(6)).containsExactly(5);
+    }
+
+    @Test
+    public void testNoTasks() {
+        assertThat(BuilderImpl.getDependencies(Collections.emptyList())).isEmpty();
+    }
+
+    private static Task<Module> task(Set<Artifact> inputs, Set<Artifact> outputs) {
+        return new Task<Module>(null, null) {
+            @Override
+            public String getName() {
+                return "Test";
+            }
+
+            @Override
+            public Set<Artifact> getInputs() {
+                return inputs;
+            }
+
+            @Override
+            public Set<Artifact> getOutputs() {
+                return outputs;
+            }
+
+            @Override
+            public void prepare(BuildType type) {
+
+            }
+
+            @Override
+            public void run() {
+
+            }
+        };
+    }
+}
@@ -0,0 +1,178 @@
+package com.tyron.builder.compiler.incremental.dex;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class IncrementalD8TaskTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mOutputDirectory;
+    private File mShardDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        mOutputDirectory = mFolder.newFolder("dex");
+        mShardDirectory = mFolder.newFolder("dex-shards");
+    }
+
+    @Test
+    public void testInnerClassesShareTheShardOfTheirClass() {
+        int shard = IncrementalD8Task.getShard(Paths.get("com/test/Main.dex"));
+
+        assertThat(IncrementalD8Task.getShard(Paths.get("com/test/Main$1.dex")))
+                .isEqualTo(shard);
+        assertThat(IncrementalD8Task.getShard(Paths.get("com/test/Main$Inner.dex")))
+                .isEqualTo(shard);
+        assertThat(IncrementalD8Task.getShard(Paths.get("com/test/Main$Inner$1.dex")))
+                .isEqualTo(shard);
+        assertThat(IncrementalD8Task.getShard(
+                Paths.get("com/test/-$$Lambda$Main$AbCdEf.dex"))).isEqualTo(shard);
+    }
+
+    @Test
+    public void testShardIsStable() {
+        // the shard only depends on the name of the class, so it is the same across builds
+        assertThat(IncrementalD8Task.getShard(Paths.get("com/test/Main.dex")))
+                .isEqualTo(Math.floorMod("com/test/Main".hashCode(), 16));
+        assertThat(IncrementalD8Task.getShard(Paths.get("Main.dex")))
+                .isEqualTo(Math.floorMod("Main".hashCode(), 16));
+    }
+
+    @Test
+    public void testClassesAreSplitAcrossShards() throws IOException {
+        List<Path> dexFiles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            dexFiles.add(dexFile("com/test/Class" + i + ".dex", "dex"));
+        }
+
+        List<List<Path>> shards = IncrementalD8Task.getShards(mOutputDirectory.toPath(),
+                dexFiles);
+        assertThat(shards).hasSize(16);
+        int nonEmpty = 0;
+        int total = 0;
+        for (List<Path> shard : shards) {
+            List<Path> sorted = new ArrayList<>(shard);
+            sorted.sort(null);
+            assertThat(shard).isEqualTo(sorted);
+            if (!shard.isEmpty()) {
+                nonEmpty++;
+            }
+            total += shard.size();
+        }
+        assertThat(total).isEqualTo(100);
+        assertThat(nonEmpty).isGreaterThan(1);
+    }
+
+    @Test
+    public void testUnchangedShardsAreReused() throws IOException {
+        Path main = dexFile("com/test/Main.dex", "main");
+        Path inner = dexFile("com/test/Main$Inner.dex", "inner");
+        Path other = dexFile("com/test/Other.dex", "other");
+        List<Path> dexFiles = Arrays.asList(main, inner, other);
+        int mainShard = IncrementalD8Task.getShard(Paths.get("com/test/Main.dex"));
+        int otherShard = IncrementalD8Task.getShard(Paths.get("com/test/Other.dex"));
+        // the test relies on these classes being in different shards
+        assertThat(mainShard).isNotEqualTo(otherShard);
+
+        long[] fingerprints = readFingerprints();
+        List<Integer> changed = IncrementalD8Task.getChangedShards(mShardDirectory,
+                getShards(dexFiles), fingerprints);
+        // every shard is merged on the first build
+        assertThat(changed).hasSize(16);
+        mergeShards(changed, getShards(dexFiles));
+        IncrementalD8Task.writeFingerprints(fingerprintFile(), fingerprints);
+
+        fingerprints = readFingerprints();
+        assertThat(IncrementalD8Task.getChangedShards(mShardDirectory, getShards(dexFiles),
+                fingerprints)).isEmpty();
+
+        // changing an inner class only merges the shard of its class again
+        FileUtils.writeStringToFile(inner.toFile(), "changed inner", StandardCharsets.UTF_8);
+        assertThat(IncrementalD8Task.getChangedShards(mShardDirectory, getShards(dexFiles),
+                fingerprints)).containsExactly(mainShard);
+        // and the fingerprint is updated
+        assertThat(IncrementalD8Task.getChangedShards(mShardDirectory, getShards(dexFiles),
+                fingerprints)).isEmpty();
+
+        // removing a class merges its shard again
+        List<Path> withoutOther = Arrays.asList(main, inner);
+        assertThat(IncrementalD8Task.getChangedShards(mShardDirectory,
+                getShards(withoutOther), fingerprints)).containsExactly(otherShard);
+    }
+
+    @Test
+    public void testMissingShardIsMergedAgain() throws IOException {
+        Path main = dexFile("com/test/Main.dex", "main");
+        List<Path> dexFiles = Arrays.asList(main);
+        int mainShard = IncrementalD8Task.getShard(Paths.get("com/test/Main.dex"));
+
+        long[] fingerprints = readFingerprints();
+        mergeShards(IncrementalD8Task.getChangedShards(mShardDirectory, getShards(dexFiles),
+                fingerprints), getShards(dexFiles));
+
+        FileUtils.deleteDirectory(new File(mShardDirectory, String.valueOf(mainShard)));
+        assertThat(IncrementalD8Task.getChangedShards(mShardDirectory, getShards(dexFiles),
+                fingerprints)).containsExactly(mainShard);
+    }
+
+    @Test
+    public void testInvalidFingerprints() throws IOException {
+        File file = fingerprintFile();
+        FileUtils.writeStringToFile(file, "invalid", StandardCharsets.UTF_8);
+
+        long[] fingerprints = IncrementalD8Task.readFingerprints(file);
+        assertThat(fingerprints).hasLength(16);
+        for (long fingerprint : fingerprints) {
+            assertThat(fingerprint).isEqualTo(Long.MIN_VALUE);
+        }
+    }
+
+    private List<List<Path>> getShards(List<Path> dexFiles) {
+        return IncrementalD8Task.getShards(mOutputDirectory.toPath(), dexFiles);
+    }
+
+    /**
+     * Creates the output directories of the merged shards like D8 would
+     */
+    private void mergeShards(List<Integer> changed, List<List<Path>> shards)
+            throws IOException {
+        for (int i : changed) {
+            File output = new File(mShardDirectory, String.valueOf(i));
+            FileUtils.deleteQuietly(output);
+            if (!shards.get(i).isEmpty()) {
+                FileUtils.writeStringToFile(new File(output, "classes.dex"), "merged",
+                        StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private long[] readFingerprints() {
+        return IncrementalD8Task.readFingerprints(fingerprintFile());
+    }
+
+    private File fingerprintFile() {
+        return new File(mShardDirectory, "fingerprints.bin");
+    }
+
+    private Path dexFile(String path, String contents) throws IOException {
+        File file = new File(mOutputDirectory, path);
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+        return file.toPath();
+    }
+}
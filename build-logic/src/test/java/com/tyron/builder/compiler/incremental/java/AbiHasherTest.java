@@ -0,0 +1,140 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.common.TestUtil;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.javax.tools.StandardJavaFileManager;
+import org.openjdk.javax.tools.StandardLocation;
+import org.openjdk.tools.javac.api.JavacTool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class AbiHasherTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testMethodBodyChange() throws Exception {
+        assertThat(hash("public class Test { public int foo() { return 1; } }"))
+                .isEqualTo(hash("public class Test { public int foo() { return 2 + 3; } }"));
+    }
+
+    @Test
+    public void testLineNumberChange() throws Exception {
+        assertThat(hash("public class Test { public int foo() { return 1; } }"))
+                .isEqualTo(hash("\n\npublic class Test {\n\n public int foo() {\n"
+                        + " return 1;\n }\n}"));
+    }
+
+    @Test
+    public void testPrivateMemberChange() throws Exception {
+        assertThat(hash("public class Test { public void foo() {} }"))
+                .isEqualTo(hash("public class Test { private int mBar; public void foo() {}"
+                        + " private void bar(String s) {} }"));
+    }
+
+    @Test
+    public void testMemberOrderChange() throws Exception {
+        assertThat(hash("public class Test { public int a; public void foo() {}"
+                + " public void bar() {} }"))
+                .isEqualTo(hash("public class Test { public void bar() {} public void foo() {}"
+                        + " public int a; }"));
+    }
+
+    @Test
+    public void testFieldInitializerChange() throws Exception {
+        assertThat(hash("public class Test { public static int A = 1; }"))
+                .isEqualTo(hash("public class Test { public static int A = 2; }"));
+    }
+
+    @Test
+    public void testMethodSignatureChange() throws Exception {
+        assertThat(hash("public class Test { public int foo() { return 1; } }"))
+                .isNotEqualTo(hash("public class Test { public long foo() { return 1; } }"));
+        assertThat(hash("public class Test { public void foo() {} }"))
+                .isNotEqualTo(hash("public class Test { protected void foo() {} }"));
+        assertThat(hash("public class Test { public void foo() {} }"))
+                .isNotEqualTo(hash("public class Test { public void foo() throws Exception {} }"));
+    }
+
+    @Test
+    public void testMemberAdded() throws Exception {
+        assertThat(hash("public class Test { }"))
+                .isNotEqualTo(hash("public class Test { public void foo() {} }"));
+        assertThat(hash("public class Test { }"))
+                .isNotEqualTo(hash("public class Test { int foo; }"));
+    }
+
+    @Test
+    public void testConstantValueChange() throws Exception {
+        // constants are inlined in the classes using them
+        assertThat(hash("public class Test { public static final int A = 1; }"))
+                .isNotEqualTo(hash("public class Test { public static final int A = 2; }"));
+        assertThat(hash("public class Test { public static final String A = \"a\"; }"))
+                .isNotEqualTo(hash("public class Test { public static final String A = \"b\"; }"));
+    }
+
+    @Test
+    public void testDeclarationChange() throws Exception {
+        assertThat(hash("public class Test { }"))
+                .isNotEqualTo(hash("public class Test extends Exception { }"));
+        assertThat(hash("public class Test { }"))
+                .isNotEqualTo(hash("public class Test implements Runnable {"
+                        + " public void run() {} }"));
+        assertThat(hash("public class Test<T> { public T foo() { return null; } }"))
+                .isNotEqualTo(hash("public class Test<T extends Number> { public T foo() {"
+                        + " return null; } }"));
+    }
+
+    @Test
+    public void testDependentsOfChangedClass() throws Exception {
+        File source = new File(mFolder.getRoot(), "Main.java");
+        JavaDependencyGraph graph = new JavaDependencyGraph();
+        graph.update(source, Collections.singleton("test.Main"),
+                Collections.singleton("test.Test"));
+
+        assertThat(graph.putAbiHash("test.Test",
+                hash("public class Test { public int foo() { return 1; } }"))).isTrue();
+
+        // only the method body changed, classes using it do not need to be compiled again
+        assertThat(graph.putAbiHash("test.Test",
+                hash("public class Test { public int foo() { return 2; } }"))).isFalse();
+
+        assertThat(graph.putAbiHash("test.Test",
+                hash("public class Test { public long foo() { return 2; } }"))).isTrue();
+        assertThat(graph.getDependents(Collections.singleton("test.Test")))
+                .containsExactly(source);
+    }
+
+    private long hash(String contents) throws IOException {
+        File folder = mFolder.newFolder();
+        File source = new File(folder, "test/Test.java");
+        FileUtils.writeStringToFile(source, "package test;\n" + contents,
+                StandardCharsets.UTF_8);
+
+        File resourcesDirectory = TestUtil.getResourcesDirectory();
+        JavacTool tool = JavacTool.create();
+        StandardJavaFileManager fileManager = tool.getStandardFileManager(null, null,
+                StandardCharsets.UTF_8);
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT,
+                Collections.singletonList(folder));
+        fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH,
+                Arrays.asList(new File(resourcesDirectory, "bootstraps/rt.jar"),
+                        new File(resourcesDirectory, "bootstraps/core-lambda-stubs.jar")));
+        Boolean success = tool.getTask(null, fileManager, null, Collections.emptyList(), null,
+                fileManager.getJavaFileObjects(source)).call();
+        assertThat(success).isTrue();
+
+        return AbiHasher.hash(new File(folder, "test/Test.class"));
+    }
+}
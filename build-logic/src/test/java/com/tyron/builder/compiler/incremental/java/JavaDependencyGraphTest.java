@@ -0,0 +1,128 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class JavaDependencyGraphTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testDependents() throws Exception {
+        File main = mFolder.newFile("Main.java");
+        File other = mFolder.newFile("Other.java");
+
+        JavaDependencyGraph graph = new JavaDependencyGraph();
+        graph.update(main, set("test.Main"), set("test.A", "test.B"));
+        graph.update(other, set("test.Other", "test.Other$Inner"), set("test.B"));
+
+        assertThat(graph.getDependents(set("test.A"))).containsExactly(main);
+        assertThat(graph.getDependents(set("test.B"))).containsExactly(main, other);
+        assertThat(graph.getDependents(set("test.A", "test.C"))).containsExactly(main);
+        assertThat(graph.getDependents(set("test.C"))).isEmpty();
+        assertThat(graph.getDeclaredClasses(other))
+                .containsExactly("test.Other", "test.Other$Inner");
+
+        // the references of a file are replaced when it is compiled again
+        graph.update(main, set("test.Main"), set("test.C"));
+        assertThat(graph.getDependents(set("test.A"))).isEmpty();
+        assertThat(graph.getDependents(set("test.B"))).containsExactly(other);
+        assertThat(graph.getDependents(set("test.C"))).containsExactly(main);
+    }
+
+    @Test
+    public void testAbiHash() {
+        JavaDependencyGraph graph = new JavaDependencyGraph();
+
+        assertThat(graph.putAbiHash("test.A", 1)).isTrue();
+        assertThat(graph.putAbiHash("test.A", 1)).isFalse();
+        assertThat(graph.putAbiHash("test.A", 2)).isTrue();
+
+        graph.removeAbiHash("test.A");
+        assertThat(graph.putAbiHash("test.A", 2)).isTrue();
+    }
+
+    @Test
+    public void testRemoveSource() throws Exception {
+        File main = mFolder.newFile("Main.java");
+        File other = mFolder.newFile("Other.java");
+
+        JavaDependencyGraph graph = new JavaDependencyGraph();
+        graph.update(main, set("test.Main"), set("test.Other"));
+        graph.update(other, set("test.Other"), set("test.Main"));
+        graph.putAbiHash("test.Main", 1);
+        graph.markDirty(Collections.singleton(main));
+
+        assertThat(graph.removeSource(main)).containsExactly("test.Main");
+        assertThat(graph.getSourceFiles()).containsExactly(other);
+        assertThat(graph.getDependents(set("test.Other"))).isEmpty();
+        assertThat(graph.getDirtyFiles()).isEmpty();
+        // the class no longer exists, a new class with the same name is a change
+        assertThat(graph.putAbiHash("test.Main", 1)).isTrue();
+
+        assertThat(graph.removeSource(main)).isEmpty();
+    }
+
+    @Test
+    public void testDirtyFiles() throws Exception {
+        File main = mFolder.newFile("Main.java");
+        File other = mFolder.newFile("Other.java");
+
+        JavaDependencyGraph graph = new JavaDependencyGraph();
+        graph.markDirty(Arrays.asList(main, other));
+        assertThat(graph.getDirtyFiles()).containsExactly(main, other);
+
+        graph.clearDirty(Collections.singleton(main));
+        assertThat(graph.getDirtyFiles()).containsExactly(other);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File main = mFolder.newFile("Main.java");
+        File other = mFolder.newFile("Other.java");
+
+        JavaDependencyGraph graph = new JavaDependencyGraph();
+        graph.update(main, set("test.Main"), set("test.Other"));
+        graph.update(other, set("test.Other"), Collections.emptySet());
+        graph.putAbiHash("test.Main", 1);
+        graph.putAbiHash("test.Other", 2);
+        graph.markDirty(Collections.singleton(main));
+
+        File file = new File(mFolder.getRoot(), "intermediate/java_dependencies.bin");
+        graph.save(file);
+
+        JavaDependencyGraph loaded = JavaDependencyGraph.load(file);
+        assertThat(loaded.getSourceFiles()).containsExactly(main, other);
+        assertThat(loaded.getDeclaredClasses(main)).containsExactly("test.Main");
+        assertThat(loaded.getDependents(set("test.Other"))).containsExactly(main);
+        assertThat(loaded.getDirtyFiles()).containsExactly(main);
+        assertThat(loaded.putAbiHash("test.Main", 1)).isFalse();
+        assertThat(loaded.putAbiHash("test.Other", 3)).isTrue();
+    }
+
+    @Test
+    public void testLoadInvalidFile() throws Exception {
+        assertThat(JavaDependencyGraph.load(new File(mFolder.getRoot(), "missing.bin"))
+                .getSourceFiles()).isEmpty();
+
+        File file = mFolder.newFile("invalid.bin");
+        FileUtils.writeStringToFile(file, "invalid", StandardCharsets.UTF_8);
+        assertThat(JavaDependencyGraph.load(file).getSourceFiles()).isEmpty();
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
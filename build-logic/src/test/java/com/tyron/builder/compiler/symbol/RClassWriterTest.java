@@ -0,0 +1,114 @@
+package com.tyron.builder.compiler.symbol;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.zip.ZipOutputStream;
+
+public class RClassWriterTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testFinalIds() throws Exception {
+        ClassLoader loader = write(true);
+
+        Field appName = loader.loadClass("com.test.R$string").getField("app_name");
+        assertThat(Modifier.isFinal(appName.getModifiers())).isTrue();
+        assertThat(appName.get(null)).isEqualTo(0x7f0a0001);
+
+        Class<?> styleable = loader.loadClass("com.test.R$styleable");
+        assertThat((int[]) styleable.getField("ActionBar").get(null))
+                .asList().containsExactly(0x7f010000, 0x01010001).inOrder();
+    }
+
+    @Test
+    public void testNonFinalIds() throws Exception {
+        ClassLoader loader = write(false);
+
+        Field appName = loader.loadClass("com.test.R$string").getField("app_name");
+        assertThat(Modifier.isFinal(appName.getModifiers())).isFalse();
+        assertThat(appName.get(null)).isEqualTo(0x7f0a0001);
+
+        Class<?> styleable = loader.loadClass("com.test.R$styleable");
+        assertThat((int[]) styleable.getField("ActionBar").get(null))
+                .asList().containsExactly(0x7f010000, 0x01010001).inOrder();
+        assertThat((int[]) styleable.getField("Empty").get(null)).isEmpty();
+        assertThat(styleable.getField("ActionBar_background").get(null)).isEqualTo(1);
+
+        Class<?> id = loader.loadClass("com.test.R$id");
+        assertThat(id.getField("id_999").get(null)).isEqualTo(0x7f0b0000 + 999);
+    }
+
+    @Test
+    public void testInnerClasses() throws Exception {
+        ClassLoader loader = write(false);
+
+        Class<?> r = loader.loadClass("com.test.R");
+        assertThat(r.getDeclaredClasses()).hasLength(3);
+        assertThat(loader.loadClass("com.test.R$string").getDeclaringClass()).isEqualTo(r);
+    }
+
+    @Test
+    public void testLargeInitializer() throws Exception {
+        for (boolean finalIds : new boolean[]{true, false}) {
+            RClassWriter writer = new RClassWriter("com.test", finalIds);
+            StringBuilder attrs = new StringBuilder("{");
+            for (int i = 0; i < 8000; i++) {
+                attrs.append(" 0x").append(Integer.toHexString(0x7f010000 + i)).append(',');
+            }
+            attrs.append(" }");
+            writer.addSymbol("styleable", new SymbolLoader.SymbolEntry("Large", "int[]",
+                    attrs.toString()));
+            for (int i = 0; i < 12000; i++) {
+                writer.addSymbol("id", new SymbolLoader.SymbolEntry("id_" + i, "int",
+                        "0x" + Integer.toHexString(0x7f0b0000 + i)));
+            }
+            ClassLoader loader = load(writer, "R" + finalIds + ".jar");
+
+            int[] large = (int[]) loader.loadClass("com.test.R$styleable")
+                    .getField("Large").get(null);
+            assertThat(large).hasLength(8000);
+            assertThat(large[7999]).isEqualTo(0x7f010000 + 7999);
+
+            Class<?> id = loader.loadClass("com.test.R$id");
+            assertThat(id.getField("id_0").get(null)).isEqualTo(0x7f0b0000);
+            assertThat(id.getField("id_11999").get(null)).isEqualTo(0x7f0b0000 + 11999);
+        }
+    }
+
+    private ClassLoader write(boolean finalIds) throws Exception {
+        RClassWriter writer = new RClassWriter("com.test", finalIds);
+        writer.addSymbol("string", new SymbolLoader.SymbolEntry("app_name", "int",
+                "0x7f0a0001"));
+        writer.addSymbol("styleable", new SymbolLoader.SymbolEntry("ActionBar", "int[]",
+                "{ 0x7f010000, 0x01010001 }"));
+        writer.addSymbol("styleable", new SymbolLoader.SymbolEntry("ActionBar_background",
+                "int", "1"));
+        writer.addSymbol("styleable", new SymbolLoader.SymbolEntry("Empty", "int[]", "{  }"));
+        for (int i = 0; i < 1000; i++) {
+            writer.addSymbol("id", new SymbolLoader.SymbolEntry("id_" + i, "int",
+                    "0x" + Integer.toHexString(0x7f0b0000 + i)));
+        }
+
+        return load(writer, "R.jar");
+    }
+
+    private ClassLoader load(RClassWriter writer, String name) throws Exception {
+        File jar = mFolder.newFile(name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            writer.write(out);
+        }
+        return new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+    }
+}
@@ -0,0 +1,207 @@
+package com.tyron.builder.project.index;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class ClassIndexTest {
+
+    private static final File FILE = new File("Test.java");
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testPrefixMatchesAreSortedBySimpleName() {
+        ClassIndex index = create("java.util.ArrayList", "java.util.Arrays",
+                "android.util.ArrayMap", "java.lang.ArrayStoreException", "java.util.List");
+
+        assertThat(index.findBySimpleName("Array", 10)).containsExactly(
+                "java.util.ArrayList", "android.util.ArrayMap", "java.util.Arrays",
+                "java.lang.ArrayStoreException").inOrder();
+    }
+
+    @Test
+    public void testSameSimpleNameIsSortedByClassName() {
+        ClassIndex index = create("java.util.List", "java.awt.List", "a.List");
+
+        assertThat(index.findBySimpleName("List", 10))
+                .containsExactly("a.List", "java.awt.List", "java.util.List").inOrder();
+    }
+
+    @Test
+    public void testPrefixIgnoresCase() {
+        ClassIndex index = create("java.util.ArrayList", "java.util.List");
+
+        assertThat(index.findBySimpleName("arrayl", 10)).containsExactly("java.util.ArrayList");
+        assertThat(index.findBySimpleName("ARRAYL", 10)).containsExactly("java.util.ArrayList");
+    }
+
+    @Test
+    public void testCamelHumpsMatchesComeAfterPrefixMatches() {
+        ClassIndex index = create("java.util.ArrayList", "android.widget.AbsListView",
+                "java.util.AbstractList", "a.Alpha");
+
+        assertThat(index.findBySimpleName("AL", 10)).containsExactly(
+                "a.Alpha", "java.util.AbstractList", "java.util.ArrayList",
+                "android.widget.AbsListView").inOrder();
+        assertThat(index.findBySimpleName("ArLi", 10)).containsExactly("java.util.ArrayList");
+        assertThat(index.findBySimpleName("AbLiV", 10))
+                .containsExactly("android.widget.AbsListView");
+    }
+
+    @Test
+    public void testLimit() {
+        ClassIndex index = create("a.Alpha", "java.util.AbstractList", "java.util.ArrayList");
+
+        assertThat(index.findBySimpleName("A", 2)).hasSize(2);
+        assertThat(index.findBySimpleName("AL", 2))
+                .containsExactly("a.Alpha", "java.util.AbstractList").inOrder();
+        assertThat(index.findBySimpleName("A", 0)).isEmpty();
+        assertThat(index.findBySimpleName("A", -1)).isEmpty();
+    }
+
+    @Test
+    public void testEmptyPartial() {
+        ClassIndex index = create("java.util.ArrayList");
+
+        assertThat(index.findBySimpleName("", 10)).isEmpty();
+        assertThat(new ClassIndex().findBySimpleName("A", 10)).isEmpty();
+    }
+
+    @Test
+    public void testHumps() {
+        assertThat(ClassIndex.humps("ArrayList")).isEqualTo("al");
+        assertThat(ClassIndex.humps("arrayList")).isEqualTo("al");
+        assertThat(ClassIndex.humps("URL")).isEqualTo("url");
+        assertThat(ClassIndex.humps("")).isEmpty();
+    }
+
+    @Test
+    public void testMatchesCamelHumps() {
+        assertThat(ClassIndex.matchesCamelHumps("ArrayList", "AL")).isTrue();
+        assertThat(ClassIndex.matchesCamelHumps("ArrayList", "ArLi")).isTrue();
+        assertThat(ClassIndex.matchesCamelHumps("ArrayList", "ArrayList")).isTrue();
+        assertThat(ClassIndex.matchesCamelHumps("ArrayListView", "AL")).isTrue();
+        assertThat(ClassIndex.matchesCamelHumps("ArrayList", "")).isTrue();
+
+        // the first letter must match the first hump
+        assertThat(ClassIndex.matchesCamelHumps("ArrayList", "L")).isFalse();
+        // a lowercase letter can only continue the current hump
+        assertThat(ClassIndex.matchesCamelHumps("ArrayList", "Al")).isFalse();
+        // humps of the name may be skipped, but not humps of the query
+        assertThat(ClassIndex.matchesCamelHumps("ArrayListView", "AV")).isTrue();
+        assertThat(ClassIndex.matchesCamelHumps("ArrayList", "ALV")).isFalse();
+        assertThat(ClassIndex.matchesCamelHumps("", "A")).isFalse();
+    }
+
+    @Test
+    public void testFindByQualifiedPrefix() {
+        ClassIndex index = create("java.util.List", "java.util.ArrayList", "java.lang.String");
+
+        assertThat(index.findByQualifiedPrefix("java.util."))
+                .containsExactly("java.util.ArrayList", "java.util.List").inOrder();
+        assertThat(index.findByQualifiedPrefix("javax.")).isEmpty();
+    }
+
+    @Test
+    public void testIncrementalChanges() {
+        ClassIndex index = create("java.util.ArrayList", "java.util.List");
+        assertThat(index.findBySimpleName("AL", 10)).containsExactly("java.util.ArrayList");
+
+        index.putClass("java.util.AbstractList", FILE);
+        index.removeClass("java.util.ArrayList");
+        index.putClass("a.Alpha", FILE);
+        index.removeClass("a.Alpha");
+        index.putClass("java.util.Arrays", FILE);
+
+        assertThat(index.findBySimpleName("AL", 10)).containsExactly("java.util.AbstractList");
+        assertThat(index.findBySimpleName("Arr", 10)).containsExactly("java.util.Arrays");
+        assertThat(index.getAllClasses()).containsExactly("java.util.AbstractList",
+                "java.util.Arrays", "java.util.List").inOrder();
+
+        // removing and adding back a class before the next query
+        index.removeClass("java.util.List");
+        index.putClass("java.util.List", new File("List.java"));
+        assertThat(index.getAllClasses()).containsExactly("java.util.AbstractList",
+                "java.util.Arrays", "java.util.List").inOrder();
+    }
+
+    @Test
+    public void testRemovingSourceClassKeepsJarClass() throws Exception {
+        File jar = mFolder.newFile("classes.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("java/util/List.class"));
+            out.closeEntry();
+        }
+
+        ClassIndex index = new ClassIndex();
+        index.putJar(jar);
+        index.putClass("java.util.List", FILE);
+        index.removeClass("java.util.List");
+        assertThat(index.getAllClasses()).containsExactly("java.util.List");
+
+        // the jar is added again after the source class
+        index.putClass("java.util.List", FILE);
+        index.putJar(jar);
+        index.removeClass("java.util.List");
+        assertThat(index.getAllClasses()).containsExactly("java.util.List");
+
+        index.putClass("java.util.List", FILE);
+        index.removeJar(jar);
+        assertThat(index.getAllClasses()).containsExactly("java.util.List");
+        index.removeClass("java.util.List");
+        assertThat(index.getAllClasses()).isEmpty();
+    }
+
+    @Test
+    public void testIncrementalChangesMatchFullRebuild() {
+        Random random = new Random(0);
+        String[] simpleNames = {"ArrayList", "AbstractList", "List", "Arrays", "ArrayMap",
+                "Alpha", "AbsListView", "HashMap", "Map"};
+        String[] packages = {"a", "b.c", "java.util"};
+
+        ClassIndex index = new ClassIndex();
+        List<String> classes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String className = packages[random.nextInt(packages.length)] + "."
+                    + simpleNames[random.nextInt(simpleNames.length)];
+            if (random.nextBoolean()) {
+                index.putClass(className, FILE);
+                if (!classes.contains(className)) {
+                    classes.add(className);
+                }
+            } else {
+                index.removeClass(className);
+                classes.remove(className);
+            }
+
+            if (random.nextInt(5) == 0) {
+                ClassIndex rebuilt = create(classes.toArray(new String[0]));
+                assertThat(index.getAllClasses()).isEqualTo(rebuilt.getAllClasses());
+                for (String query : new String[]{"A", "AL", "ArLi", "Map", "L"}) {
+                    assertThat(index.findBySimpleName(query, 100))
+                            .isEqualTo(rebuilt.findBySimpleName(query, 100));
+                }
+            }
+        }
+    }
+
+    private static ClassIndex create(String... classes) {
+        ClassIndex index = new ClassIndex();
+        for (String className : classes) {
+            index.putClass(className, FILE);
+        }
+        return index;
+    }
+}
@@ -26,7 +26,6 @@ import com.tyron.builder.model.DiagnosticWrapper;
 
 import org.openjdk.javax.tools.Diagnostic;
 
-import java.util.Collection;
 import java.util.Objects;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -36,6 +35,9 @@ import io.github.rosemoe.sora.widget.EditorColorScheme;
 
 /**
  * The span model
+ * <p>
+ * Spans are copied into the {@link SpanLine} of their line when they are added to a result,
+ * so they can be recycled right after that.
  *
  * @author Rose
  */
@@ -109,14 +111,6 @@ public class Span {
         }
     }
 
-    public static void recycleAll(Collection<Span> spans) {
-        for (Span span : spans) {
-            if (!span.recycle()) {
-                return;
-            }
-        }
-    }
-
     /**
      * Set a underline for this region
      * Zero for no underline
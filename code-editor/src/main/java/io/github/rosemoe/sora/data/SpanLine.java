@@ -0,0 +1,317 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.data;
+
+import java.util.Arrays;
+
+import io.github.rosemoe.sora.interfaces.ExternalRenderer;
+
+/**
+ * The spans of a line, packed in an int array.
+ * <p>
+ * Every span takes three ints: its start column, its color id with its problem flags in the
+ * highest byte and its underline color. External renderers are kept in a separate array
+ * which is only created when one is set. Spans are accessed by index so that drawing and
+ * shifting them does not create any object.
+ *
+ * @see Span
+ */
+public final class SpanLine {
+
+    private static final int STRIDE = 3;
+    private static final int COLUMN = 0;
+    private static final int STYLE = 1;
+    private static final int UNDERLINE = 2;
+    private static final int COLOR_MASK = 0xFFFFFF;
+    private static final int FLAGS_SHIFT = 24;
+
+    private int[] mData;
+    private int mSize;
+    private ExternalRenderer[] mRenderers;
+
+    public SpanLine() {
+        mData = new int[STRIDE * 4];
+    }
+
+    private SpanLine(int[] data, int size, ExternalRenderer[] renderers) {
+        mData = data;
+        mSize = size;
+        mRenderers = renderers;
+    }
+
+    /**
+     * Create a line with a single span at column 0
+     */
+    public static SpanLine of(int colorId) {
+        SpanLine line = new SpanLine();
+        line.add(0, colorId);
+        return line;
+    }
+
+    /**
+     * @return Count of spans
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int getColumn(int index) {
+        return mData[index * STRIDE + COLUMN];
+    }
+
+    public void setColumn(int index, int column) {
+        mData[index * STRIDE + COLUMN] = column;
+    }
+
+    public int getColorId(int index) {
+        return mData[index * STRIDE + STYLE] & COLOR_MASK;
+    }
+
+    /**
+     * @see Span#problemFlags
+     */
+    public int getProblemFlags(int index) {
+        return mData[index * STRIDE + STYLE] >>> FLAGS_SHIFT;
+    }
+
+    public void setProblemFlags(int index, int flags) {
+        int i = index * STRIDE + STYLE;
+        mData[i] = (mData[i] & COLOR_MASK) | (flags << FLAGS_SHIFT);
+    }
+
+    public int getUnderlineColor(int index) {
+        return mData[index * STRIDE + UNDERLINE];
+    }
+
+    public void setUnderlineColor(int index, int color) {
+        mData[index * STRIDE + UNDERLINE] = color;
+    }
+
+    public ExternalRenderer getRenderer(int index) {
+        return mRenderers == null ? null : mRenderers[index];
+    }
+
+    /**
+     * Get the end column of the span, which is the start of the next span or the given line
+     * length for the last span
+     */
+    public int getEndColumn(int index, int lineLength) {
+        return index + 1 < mSize ? getColumn(index + 1) : lineLength;
+    }
+
+    /**
+     * Add a span at the end of the line
+     */
+    public void add(int column, int colorId) {
+        ensureCapacity(mSize + 1);
+        int i = mSize * STRIDE;
+        mData[i + COLUMN] = column;
+        mData[i + STYLE] = colorId & COLOR_MASK;
+        mData[i + UNDERLINE] = 0;
+        mSize++;
+    }
+
+    /**
+     * Add the given span at the end of the line
+     */
+    public void add(Span span) {
+        add(span.column, span.colorId);
+        int index = mSize - 1;
+        setProblemFlags(index, span.problemFlags);
+        setUnderlineColor(index, span.underlineColor);
+        if (span.renderer != null) {
+            setRenderer(index, span.renderer);
+        }
+    }
+
+    /**
+     * Add a copy of a span of the given line at the end of this line
+     */
+    public void add(SpanLine src, int srcIndex, int column) {
+        ensureCapacity(mSize + 1);
+        System.arraycopy(src.mData, srcIndex * STRIDE, mData, mSize * STRIDE, STRIDE);
+        mData[mSize * STRIDE + COLUMN] = column;
+        ExternalRenderer renderer = src.getRenderer(srcIndex);
+        mSize++;
+        if (renderer != null) {
+            setRenderer(mSize - 1, renderer);
+        }
+    }
+
+    /**
+     * Insert a copy of the span at index right after it, starting at the given column
+     */
+    public void split(int index, int column) {
+        ensureCapacity(mSize + 1);
+        int from = (index + 1) * STRIDE;
+        System.arraycopy(mData, index * STRIDE, mData, from, (mSize - index) * STRIDE);
+        mData[from + COLUMN] = column;
+        if (mRenderers != null) {
+            System.arraycopy(mRenderers, index, mRenderers, index + 1, mSize - index);
+        }
+        mSize++;
+    }
+
+    /**
+     * Insert a span at the given index
+     */
+    public void insert(int index, int column, int colorId) {
+        ensureCapacity(mSize + 1);
+        System.arraycopy(mData, index * STRIDE, mData, (index + 1) * STRIDE, (mSize - index) * STRIDE);
+        int i = index * STRIDE;
+        mData[i + COLUMN] = column;
+        mData[i + STYLE] = colorId & COLOR_MASK;
+        mData[i + UNDERLINE] = 0;
+        if (mRenderers != null) {
+            System.arraycopy(mRenderers, index, mRenderers, index + 1, mSize - index);
+            mRenderers[index] = null;
+        }
+        mSize++;
+    }
+
+    /**
+     * Remove spans in [start, end)
+     */
+    public void remove(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        System.arraycopy(mData, end * STRIDE, mData, start * STRIDE, (mSize - end) * STRIDE);
+        if (mRenderers != null) {
+            System.arraycopy(mRenderers, end, mRenderers, start, mSize - end);
+            Arrays.fill(mRenderers, mSize - (end - start), mSize, null);
+        }
+        mSize -= end - start;
+    }
+
+    /**
+     * Add the given delta to the columns of the spans from the given index
+     */
+    public void shiftColumns(int fromIndex, int delta) {
+        for (int i = fromIndex * STRIDE + COLUMN; i < mSize * STRIDE; i += STRIDE) {
+            mData[i] += delta;
+        }
+    }
+
+    /**
+     * Find the first span from the given index whose column is not before the given column
+     *
+     * @return Index of the span, or -1 if there is no such span
+     */
+    public int findSpanIndexFor(int fromIndex, int column) {
+        for (int i = fromIndex; i < mSize; i++) {
+            if (getColumn(i) >= column) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move the spans from the given index to the end of another line, shifting their columns
+     * by the given delta
+     */
+    public void moveTo(int fromIndex, SpanLine dst, int delta) {
+        int count = mSize - fromIndex;
+        if (count <= 0) {
+            return;
+        }
+        dst.ensureCapacity(dst.mSize + count);
+        System.arraycopy(mData, fromIndex * STRIDE, dst.mData, dst.mSize * STRIDE, count * STRIDE);
+        if (mRenderers != null) {
+            for (int i = 0; i < count; i++) {
+                if (mRenderers[fromIndex + i] != null) {
+                    dst.setRenderer(dst.mSize + i, mRenderers[fromIndex + i]);
+                }
+            }
+        }
+        int start = dst.mSize;
+        dst.mSize += count;
+        dst.shiftColumns(start, delta);
+        remove(fromIndex, mSize);
+    }
+
+    public void clear() {
+        mSize = 0;
+        mRenderers = null;
+    }
+
+    public SpanLine copy() {
+        return new SpanLine(Arrays.copyOf(mData, Math.max(mData.length, STRIDE)), mSize,
+                mRenderers == null ? null : mRenderers.clone());
+    }
+
+    public void setRenderer(int index, ExternalRenderer renderer) {
+        if (mRenderers == null) {
+            if (renderer == null) {
+                return;
+            }
+            mRenderers = new ExternalRenderer[mData.length / STRIDE];
+        }
+        mRenderers[index] = renderer;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size * STRIDE > mData.length) {
+            int capacity = Math.max(size, mData.length / STRIDE * 2);
+            mData = Arrays.copyOf(mData, capacity * STRIDE);
+            if (mRenderers != null) {
+                mRenderers = Arrays.copyOf(mRenderers, capacity);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SpanLine that = (SpanLine) o;
+        if (mSize != that.mSize) {
+            return false;
+        }
+        for (int i = 0; i < mSize * STRIDE; i++) {
+            if (mData[i] != that.mData[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < mSize; i++) {
+            if (getRenderer(i) != that.getRenderer(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = mSize;
+        for (int i = 0; i < mSize * STRIDE; i++) {
+            hash = 31 * hash + mData[i];
+        }
+        return hash;
+    }
+}
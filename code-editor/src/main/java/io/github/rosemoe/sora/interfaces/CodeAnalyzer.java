@@ -46,6 +46,8 @@ public interface CodeAnalyzer {
 
     /**
      * This is called still on the main thread, implementations must create their own thread.
+     * The contents are an immutable {@link io.github.rosemoe.sora.text.ContentSnapshot} so
+     * they can be kept and read from that thread without copying them.
      */
     default void analyzeInBackground(CharSequence contents) {
 
@@ -0,0 +1,93 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.interfaces;
+
+import java.util.Objects;
+
+import io.github.rosemoe.sora.text.LineStateCache;
+import io.github.rosemoe.sora.text.TextAnalyzeResult;
+import io.github.rosemoe.sora.text.TextAnalyzer;
+
+/**
+ * A {@link CodeAnalyzer} that can resume tokenizing from the start of any line,
+ * given the lexer state that was recorded there by a previous run.
+ * <p>
+ * {@link TextAnalyzer} keeps a {@link LineStateCache} for these analyzers, so after an
+ * edit only the lines from the first modified line are tokenized again, until the state at
+ * the start of a line matches the one recorded by the previous run.
+ *
+ * @param <S> Type of the lexer state, it must be immutable
+ */
+public interface IncrementalCodeAnalyzer<S> extends CodeAnalyzer {
+
+    /**
+     * @return The state of the lexer at the start of the text
+     */
+    S getInitialState();
+
+    /**
+     * Tokenize the text starting at the given line until the end of the text or until
+     * {@link LineStateCache#startLine(int, Object)} returns false.
+     * <p>
+     * Before lexing a token that starts at column 0 of a line, implementations must call
+     * {@link LineStateCache#startLine(int, Object)} with the state at that position.
+     * Spans and code blocks are reported to the cache instead of a {@link TextAnalyzeResult}.
+     *
+     * @param text     The whole text
+     * @param offset   Index of the first character of the line in the text
+     * @param line     The line to start from
+     * @param state    The state at the start of the line
+     * @param cache    The destination of the spans
+     * @param delegate Delegate between thread and analyzer
+     */
+    void tokenize(CharSequence text, int offset, int line, S state, LineStateCache<S> cache,
+                  TextAnalyzer.AnalyzeThread.Delegate delegate);
+
+    /**
+     * Whether tokenizing from two states will produce the same tokens
+     */
+    default boolean stateEquals(S first, S second) {
+        return Objects.equals(first, second);
+    }
+
+    /**
+     * Called on the analysis thread after the result has been built, used to apply
+     * information that is not tied to lines such as diagnostics.
+     */
+    default void afterAnalyze(CharSequence content, TextAnalyzeResult result) {
+
+    }
+
+    /**
+     * Analyze the whole text without a cache
+     */
+    @Override
+    default void analyze(CharSequence content, TextAnalyzeResult result,
+                         TextAnalyzer.AnalyzeThread.Delegate delegate) {
+        LineStateCache<S> cache = new LineStateCache<>(this);
+        if (cache.analyze(content, delegate)) {
+            cache.fill(result, false);
+            afterAnalyze(content, result);
+        }
+    }
+}
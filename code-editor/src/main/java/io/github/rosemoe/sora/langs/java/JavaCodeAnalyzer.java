@@ -24,12 +24,11 @@ public class JavaCodeAnalyzer implements CodeAnalyzer {
 
     @Override
     public void analyze(CharSequence content, TextAnalyzeResult result, TextAnalyzer.AnalyzeThread.Delegate delegate) {
-        StringBuilder text = content instanceof StringBuilder ? (StringBuilder) content : new StringBuilder(content);
-        JavaTextTokenizer tokenizer = new JavaTextTokenizer(text);
+        JavaTextTokenizer tokenizer = new JavaTextTokenizer(content);
         tokenizer.setCalculateLineColumn(false);
         Tokens token, previous = Tokens.UNKNOWN;
         int line = 0, column = 0;
-        LineNumberCalculator helper = new LineNumberCalculator(text);
+        LineNumberCalculator helper = new LineNumberCalculator(content);
         //IdentifierAutoComplete.Identifiers identifiers = new IdentifierAutoComplete.Identifiers();
        // identifiers.begin();
         Stack<BlockLine> stack = new Stack<>();
@@ -88,11 +87,11 @@ public class JavaCodeAnalyzer implements CodeAnalyzer {
                     if (previous == Tokens.CLASS) {
                         result.addIfNeeded(line, column, EditorColorScheme.IDENTIFIER_NAME);
                         //Add class name
-                        classNames.put(text, thisIndex, thisLength, OBJECT);
+                        classNames.put(content, thisIndex, thisLength, OBJECT);
                         break;
                     }
                     //Has class name
-                    if (classNames.get(text, thisIndex, thisLength) == OBJECT) {
+                    if (classNames.get(content, thisIndex, thisLength) == OBJECT) {
                         result.addIfNeeded(line, column, EditorColorScheme.IDENTIFIER_NAME);
                         //Mark it
                         classNamePrevious = true;
@@ -63,6 +63,18 @@ public class JavaTextTokenizer {
         this.skipComment = skip;
     }
 
+    /**
+     * Move to the given index of the source, the next token will start there
+     */
+    public void seek(int index) {
+        if (index < 0 || index > bufferLen) {
+            throw new IllegalArgumentException("index out of bounds");
+        }
+        offset = index;
+        this.index = index;
+        length = 0;
+    }
+
     public void pushBack(int length) {
         if (length > getTokenLength()) {
             throw new IllegalArgumentException("pushBack length too large");
@@ -24,6 +24,7 @@ package io.github.rosemoe.sora.text;
 
 import androidx.annotation.NonNull;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,6 +36,8 @@ import java.util.List;
 public class Content implements CharSequence {
 
     public final static int DEFAULT_MAX_UNDO_STACK_SIZE = 500;
+    public final static long DEFAULT_MAX_UNDO_MEMORY = 8 * 1024 * 1024;
+    public final static long DEFAULT_MAX_UNDO_JOURNAL_SIZE = 64 * 1024 * 1024;
     public final static int DEFAULT_LIST_CAPACITY = 1000;
 
     private static int sInitialListCapacity;
@@ -45,9 +48,11 @@ public class Content implements CharSequence {
 
     private List<ContentLine> mLines;
     private int mTextLength;
+    private int mVersion;
+    private ContentSnapshot mSnapshot;
     private int mNestedBatchEdit;
     private List<ContentListener> mListeners;
-    private Indexer mIndexer;
+    private final LineIndexer mIndexer;
     private UndoManager mUndoManager;
     private Cursor mCursor;
     private LineRemoveListener mLineListener;
@@ -76,7 +81,8 @@ public class Content implements CharSequence {
         mListeners = new ArrayList<>();
         mUndoManager = new UndoManager();
         setMaxUndoStackSize(Content.DEFAULT_MAX_UNDO_STACK_SIZE);
-        mIndexer = new NoCacheIndexer(this);
+        setMaxUndoMemory(Content.DEFAULT_MAX_UNDO_MEMORY);
+        mIndexer = new LineIndexer(this);
         if (src.length() == 0) {
             setUndoEnabled(true);
             return;
@@ -159,6 +165,42 @@ public class Content implements CharSequence {
         this.mLineListener = lis;
     }
 
+    /**
+     * Get an immutable snapshot of the current text, which can be read from any thread
+     * <p>
+     * Lines are shared between this object and its snapshots until they are modified, so
+     * taking a snapshot does not copy the text. Taking a snapshot again without modifying
+     * the text returns the same snapshot.
+     *
+     * @return Snapshot of the current text
+     * @see ContentSnapshot#getVersion()
+     */
+    public ContentSnapshot snapshot() {
+        if (mSnapshot == null || mSnapshot.getVersion() != mVersion) {
+            mSnapshot = new ContentSnapshot(mLines, mTextLength, mVersion);
+        }
+        return mSnapshot;
+    }
+
+    /**
+     * Get the line for modifying its text, the line is copied first if a snapshot shares it
+     */
+    private ContentLine getLineForModification(int line) {
+        ContentLine contentLine = mLines.get(line);
+        if (mSnapshot != null && contentLine.version <= mSnapshot.getVersion()) {
+            contentLine = contentLine.copy();
+            contentLine.version = mVersion;
+            mLines.set(line, contentLine);
+        }
+        return contentLine;
+    }
+
+    private ContentLine createLine() {
+        ContentLine line = new ContentLine();
+        line.version = mVersion;
+        return line;
+    }
+
     /**
      * Get the character at the given position
      * If (column == getColumnCount(line)),it returns '\n'
@@ -255,26 +297,37 @@ public class Content implements CharSequence {
         if (mCursor != null)
             mCursor.beforeInsert(line, column);
 
+        mVersion++;
         int workLine = line;
         int workIndex = column;
         if (workIndex == -1) {
             workIndex = 0;
         }
-        ContentLine currLine = mLines.get(workLine);
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (c == '\n') {
-                ContentLine newLine = new ContentLine();
-                newLine.append(currLine, workIndex, currLine.length());
-                currLine.delete(workIndex, currLine.length());
-                mLines.add(workLine + 1, newLine);
-                currLine = newLine;
-                workIndex = 0;
-                workLine++;
-            } else {
-                currLine.insert(workIndex, c);
-                workIndex++;
+        ContentLine currLine = getLineForModification(workLine);
+        int length = text.length();
+        int firstLineEnd = indexOfLineBreak(text, 0);
+        if (firstLineEnd == -1) {
+            currLine.insert(workIndex, text, 0, length);
+            workIndex += length;
+            mIndexer.onLineChanged(workLine, length);
+        } else {
+            // Create all the new lines first so the line list is only shifted once
+            List<ContentLine> newLines = new ArrayList<>();
+            int lineStart = firstLineEnd + 1;
+            int lineEnd;
+            while ((lineEnd = indexOfLineBreak(text, lineStart)) != -1) {
+                newLines.add(createLine().append(text, lineStart, lineEnd));
+                lineStart = lineEnd + 1;
             }
+            ContentLine lastLine = createLine().append(text, lineStart, length);
+            lastLine.append(currLine, workIndex, currLine.length());
+            newLines.add(lastLine);
+            currLine.delete(workIndex, currLine.length());
+            currLine.insert(workIndex, text, 0, firstLineEnd);
+            mLines.addAll(workLine + 1, newLines);
+            workLine += newLines.size();
+            workIndex = length - lineStart;
+            mIndexer.onLinesChanged();
         }
         mTextLength += text.length();
         this.dispatchAfterInsert(line, column, workLine, workIndex, text);
@@ -329,16 +382,20 @@ public class Content implements CharSequence {
                 else
                     mCursor.beforeDelete(startLine == 0 ? 0 : startLine - 1, startLine == 0 ? 0 : getColumnCount(startLine - 1), endLine, columnOnEndLine);
 
+            mVersion++;
+            curr = getLineForModification(startLine);
             changedContent.append(curr, beginIdx, columnOnEndLine);
             curr.delete(beginIdx, columnOnEndLine);
             mTextLength -= columnOnEndLine - columnOnStartLine;
+            mIndexer.onLineChanged(startLine, beginIdx - columnOnEndLine);
             if (columnOnStartLine == -1) {
                 if (startLine == 0) {
                     mTextLength++;
                 } else {
-                    ContentLine previous = mLines.get(startLine - 1);
+                    ContentLine previous = getLineForModification(startLine - 1);
                     previous.append(curr);
                     ContentLine rm = mLines.remove(startLine);
+                    mIndexer.onLinesChanged();
                     if (mLineListener != null) {
                         mLineListener.onRemove(this, rm);
                     }
@@ -355,29 +412,33 @@ public class Content implements CharSequence {
             if (mCursor != null)
                 mCursor.beforeDelete(startLine, columnOnStartLine, endLine, columnOnEndLine);
 
-            for (int i = 0; i < endLine - startLine - 1; i++) {
-                ContentLine line = mLines.remove(startLine + 1);
+            mVersion++;
+            // Remove the lines in between at once so the line list is only shifted once
+            List<ContentLine> removed = mLines.subList(startLine + 1, endLine);
+            for (ContentLine line : removed) {
                 if (mLineListener != null) {
                     mLineListener.onRemove(this, line);
                 }
                 mTextLength -= line.length() + 1;
                 changedContent.append('\n').append(line);
             }
+            removed.clear();
+            mIndexer.onLinesChanged();
             int currEnd = startLine + 1;
-            ContentLine start = mLines.get(startLine);
+            ContentLine start = getLineForModification(startLine);
             ContentLine end = mLines.get(currEnd);
             mTextLength -= start.length() - columnOnStartLine;
             changedContent.insert(0, start, columnOnStartLine, start.length());
             start.delete(columnOnStartLine, start.length());
             mTextLength -= columnOnEndLine;
             changedContent.append('\n').append(end, 0, columnOnEndLine);
-            end.delete(0, columnOnEndLine);
             mTextLength--;
             ContentLine r = mLines.remove(currEnd);
             if (mLineListener != null) {
                 mLineListener.onRemove(this, r);
             }
-            start.append(end);
+            // the removed line is not modified as it may be shared with a snapshot
+            start.append(end, columnOnEndLine, end.length());
         } else {
             throw new IllegalArgumentException("start line > end line");
         }
@@ -404,27 +465,21 @@ public class Content implements CharSequence {
     }
 
     /**
-     * When you are going to use {@link CharSequence#charAt(int)} frequently,you are required to call
-     * this method.Because the way Content save text,it is usually slow to transform index to
-     * (line,column) from the start of text when the text is big.
-     * By calling this method,you will be able to get faster because calling this will
-     * cause the ITextContent object use a Indexer with cache.
-     * The performance is highly improved while linearly getting characters.
+     * Used to switch to an indexer with cache before calling {@link CharSequence#charAt(int)}
+     * frequently. The indexer of Content now finds any position in O(log n) time so this
+     * is no longer needed.
      *
-     * @param initialIndex The Indexer with cache will take it into this index to its cache
+     * @param initialIndex Unused
      */
     public void beginStreamCharGetting(int initialIndex) {
-        mIndexer = new CachedIndexer(this);
-        mIndexer.getCharPosition(initialIndex);
+
     }
 
     /**
-     * When you finished calling {@link CharSequence#charAt(int)} frequently,you can call this method
-     * to free the Indexer with cache.
-     * This is not forced.
+     * Counterpart of {@link #beginStreamCharGetting(int)}, no longer needed.
      */
     public void endStreamCharGetting() {
-        mIndexer = new NoCacheIndexer(this);
+
     }
 
     /**
@@ -498,6 +553,47 @@ public class Content implements CharSequence {
         mUndoManager.setMaxUndoStackSize(maxSize);
     }
 
+    /**
+     * Get the max memory taken by the texts of modifications in UndoManager
+     *
+     * @return max memory in bytes
+     */
+    public long getMaxUndoMemory() {
+        return mUndoManager.getMaxUndoMemory();
+    }
+
+    /**
+     * Set the max memory taken by the texts of modifications in UndoManager.
+     * Older modifications beyond this limit are removed, or moved to the undo journal
+     * if there is one. The last modification is always kept.
+     *
+     * @param maxMemory New max memory in bytes
+     */
+    public void setMaxUndoMemory(long maxMemory) {
+        mUndoManager.setMaxUndoMemory(maxMemory);
+    }
+
+    /**
+     * Keep the modifications removed from UndoManager in the given file instead of
+     * dropping them, so they can still be undone.
+     * If the file was written by {@link #saveUndoJournal()} when the text was the same as now,
+     * the modifications saved in it can be undone as well.
+     *
+     * @param file The file of the journal, or null to stop using a journal
+     */
+    public void setUndoJournal(File file) {
+        mUndoManager.setJournal(this, file, DEFAULT_MAX_UNDO_JOURNAL_SIZE);
+    }
+
+    /**
+     * Copy modifications that can be undone to the undo journal, so they are available
+     * when the same text is opened again with {@link #setUndoJournal(File)}.
+     * The file is written in the background. Does nothing if there is no journal.
+     */
+    public void saveUndoJournal() {
+        mUndoManager.saveJournal(this);
+    }
+
     /**
      * A delegate method.
      * Notify the UndoManager to begin batch edit(enter a new layer).
@@ -518,8 +614,9 @@ public class Content implements CharSequence {
      */
     public boolean endBatchEdit() {
         mNestedBatchEdit--;
-        if (mNestedBatchEdit < 0) {
+        if (mNestedBatchEdit <= 0) {
             mNestedBatchEdit = 0;
+            mUndoManager.onExitBatchEdit();
         }
         return isInBatchEdit();
     }
@@ -568,9 +665,6 @@ public class Content implements CharSequence {
      * @return Indexer for this object
      */
     public Indexer getIndexer() {
-        if (mIndexer.getClass() != CachedIndexer.class && mCursor != null) {
-            return mCursor.getIndexer();
-        }
         return mIndexer;
     }
 
@@ -597,6 +691,7 @@ public class Content implements CharSequence {
             ContentLine end = mLines.get(endLine);
             c.mLines.add(new ContentLine().insert(0, end, 0, endColumn));
             c.mTextLength += endColumn + 1;
+            c.mIndexer.onLinesChanged();
         } else {
             throw new IllegalArgumentException("start > end");
         }
@@ -681,9 +776,6 @@ public class Content implements CharSequence {
         mUndoManager.beforeReplace(this);
         if (mCursor != null)
             mCursor.beforeReplace();
-        if (mIndexer instanceof ContentListener) {
-            ((ContentListener) mIndexer).beforeReplace(this);
-        }
         for (ContentListener lis : mListeners) {
             lis.beforeReplace(this);
         }
@@ -702,9 +794,6 @@ public class Content implements CharSequence {
         mUndoManager.afterDelete(this, a, b, c, d, e);
         if (mCursor != null)
             mCursor.afterDelete(a, b, c, d, e);
-        if (mIndexer instanceof ContentListener) {
-            ((ContentListener) mIndexer).afterDelete(this, a, b, c, d, e);
-        }
         for (ContentListener lis : mListeners) {
             lis.afterDelete(this, a, b, c, d, e);
         }
@@ -723,9 +812,6 @@ public class Content implements CharSequence {
         mUndoManager.afterInsert(this, a, b, c, d, e);
         if (mCursor != null)
             mCursor.afterInsert(a, b, c, d, e);
-        if (mIndexer instanceof ContentListener) {
-            ((ContentListener) mIndexer).afterInsert(this, a, b, c, d, e);
-        }
         for (ContentListener lis : mListeners) {
             lis.afterInsert(this, a, b, c, d, e);
         }
@@ -769,4 +855,13 @@ public class Content implements CharSequence {
         }
     }
 
+    private static int indexOfLineBreak(CharSequence text, int fromIndex) {
+        for (int i = fromIndex; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
 }
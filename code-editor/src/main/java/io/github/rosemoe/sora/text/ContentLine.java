@@ -43,6 +43,12 @@ public class ContentLine implements CharSequence, GetChars {
      */
     private int width;
 
+    /**
+     * Version of the {@link Content} in which this line was created, the line is shared with
+     * the snapshots of the Content taken since then
+     */
+    int version;
+
     public ContentLine() {
         this(true);
     }
@@ -107,6 +113,19 @@ public class ContentLine implements CharSequence, GetChars {
         }
     }
 
+    /**
+     * Copy the text of this line, with its id and width
+     */
+    ContentLine copy() {
+        ContentLine res = new ContentLine(false);
+        res.value = new char[Math.max(length + 16, 32)];
+        System.arraycopy(value, 0, res.value, 0, length);
+        res.length = length;
+        res.id = id;
+        res.width = width;
+        return res;
+    }
+
     public int getId() {
         return id;
     }
@@ -0,0 +1,166 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.text;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * An immutable view of the text of a {@link Content} at a given version, returned by
+ * {@link Content#snapshot()}.
+ * <p>
+ * The lines are shared with the Content, which copies a line before modifying it, so a
+ * snapshot is cheap to take and can be read from any thread while the Content is edited.
+ */
+public final class ContentSnapshot implements CharSequence {
+
+    private final ContentLine[] mLines;
+    private final int[] mLineStarts;
+    private final int mLength;
+    private final int mVersion;
+    /**
+     * Line of the last accessed character, characters are usually read in order
+     */
+    private volatile int mLastLine;
+    private volatile String mString;
+
+    ContentSnapshot(List<ContentLine> lines, int length, int version) {
+        mLines = lines.toArray(new ContentLine[0]);
+        mLineStarts = new int[mLines.length];
+        int start = 0;
+        for (int i = 0; i < mLines.length; i++) {
+            mLineStarts[i] = start;
+            start += mLines[i].length() + 1;
+        }
+        mLength = length;
+        mVersion = version;
+    }
+
+    /**
+     * Get the version of the text, which is changed by every modification of the Content.
+     * Two snapshots of the same Content with the same version have the same text.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public int getLineCount() {
+        return mLines.length;
+    }
+
+    /**
+     * Get the text of the given line, without its line separator
+     */
+    public CharSequence getLine(int line) {
+        return mLines[line];
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= mLength) {
+            throw new StringIndexOutOfBoundsException("Index " + index + " out of bounds. length:" + mLength);
+        }
+        int line = findLine(index);
+        int column = index - mLineStarts[line];
+        ContentLine contentLine = mLines[line];
+        return column == contentLine.length() ? '\n' : contentLine.charAt(column);
+    }
+
+    private int findLine(int index) {
+        int line = mLastLine;
+        if (index >= mLineStarts[line]) {
+            if (line + 1 == mLines.length || index < mLineStarts[line + 1]) {
+                return line;
+            }
+            if (line + 2 == mLines.length || index < mLineStarts[line + 2]) {
+                mLastLine = line + 1;
+                return line + 1;
+            }
+        }
+        int low = 0, high = mLines.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mLineStarts[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        mLastLine = low;
+        return low;
+    }
+
+    /**
+     * Copy characters in [srcBegin, srcEnd) to the given array
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if (srcBegin < 0 || srcEnd > mLength || srcBegin > srcEnd) {
+            throw new StringIndexOutOfBoundsException("srcBegin " + srcBegin + ", srcEnd " + srcEnd + ", length " + mLength);
+        }
+        if (srcBegin == srcEnd) {
+            return;
+        }
+        int line = findLine(srcBegin);
+        int column = srcBegin - mLineStarts[line];
+        while (srcBegin < srcEnd) {
+            ContentLine contentLine = mLines[line];
+            int end = Math.min(contentLine.length(), column + srcEnd - srcBegin);
+            contentLine.getChars(column, end, dst, dstBegin);
+            dstBegin += end - column;
+            srcBegin += end - column;
+            if (srcBegin < srcEnd) {
+                dst[dstBegin++] = '\n';
+                srcBegin++;
+            }
+            line++;
+            column = 0;
+        }
+    }
+
+    @NonNull
+    @Override
+    public String subSequence(int start, int end) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + mLength);
+        }
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        String string = mString;
+        if (string == null) {
+            string = mString = subSequence(0, mLength);
+        }
+        return string;
+    }
+}
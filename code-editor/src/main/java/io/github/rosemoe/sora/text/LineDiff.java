@@ -0,0 +1,287 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns the replacement of a large text into the replacements of the lines that actually
+ * changed, so the undo history does not keep two copies of the whole text when a formatter
+ * rewrites a file.
+ * <p>
+ * Lines are compared with Myers' algorithm. When the texts differ by more than
+ * {@link #MAX_EDITS} lines, only the common leading and trailing lines are left out.
+ */
+final class LineDiff {
+
+    static final int MAX_EDITS = 1000;
+
+    private final int mStartLine;
+    private final int mStartColumn;
+    private final String[] mOld;
+    private final String[] mNew;
+
+    private LineDiff(int startLine, int startColumn, String[] oldLines, String[] newLines) {
+        mStartLine = startLine;
+        mStartColumn = startColumn;
+        mOld = oldLines;
+        mNew = newLines;
+    }
+
+    /**
+     * Create an action equivalent to replacing the given text at the given position
+     *
+     * @return A {@link UndoManager.MultiAction} of the replacements of the changed lines,
+     * applied from the last one to the first one
+     */
+    static UndoManager.ContentAction diff(int startLine, int startColumn, CharSequence oldText, CharSequence newText) {
+        LineDiff diff = new LineDiff(startLine, startColumn, split(oldText), split(newText));
+        return diff.createAction(diff.findMatches());
+    }
+
+    private static String[] split(CharSequence text) {
+        return text.toString().split("\n", -1);
+    }
+
+    /**
+     * @return Pairs of indices of equal old and new lines, in order
+     */
+    private int[] findMatches() {
+        int n = mOld.length, m = mNew.length;
+        int prefix = 0;
+        while (prefix < n && prefix < m && mOld[prefix].equals(mNew[prefix])) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && mOld[n - 1 - suffix].equals(mNew[m - 1 - suffix])) {
+            suffix++;
+        }
+        int[] middle = myers(prefix, n - suffix, prefix, m - suffix);
+        int[] matches = new int[(prefix + suffix) * 2 + (middle == null ? 0 : middle.length)];
+        int count = 0;
+        for (int i = 0; i < prefix; i++) {
+            matches[count++] = i;
+            matches[count++] = i;
+        }
+        if (middle != null) {
+            System.arraycopy(middle, 0, matches, count, middle.length);
+            count += middle.length;
+        }
+        for (int i = suffix; i > 0; i--) {
+            matches[count++] = n - i;
+            matches[count++] = m - i;
+        }
+        return matches;
+    }
+
+    /**
+     * Find the longest common subsequence of old lines in [oldStart, oldEnd) and new lines
+     * in [newStart, newEnd)
+     *
+     * @return Pairs of matched indices, or null if there are too many differences
+     */
+    private int[] myers(int oldStart, int oldEnd, int newStart, int newEnd) {
+        int n = oldEnd - oldStart, m = newEnd - newStart;
+        int max = Math.min(n + m, MAX_EDITS);
+        int[] v = new int[2 * max + 3];
+        int offset = max + 1;
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && mOld[oldStart + x].equals(mNew[newStart + y])) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+                    return backtrack(trace, n, m, oldStart, newStart);
+                }
+            }
+            // trace.get(d)[k + d + 1] is the furthest x on diagonal k after d edits
+            trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+        }
+        return null;
+    }
+
+    private static int[] backtrack(List<int[]> trace, int n, int m, int oldStart, int newStart) {
+        int[] matches = new int[Math.min(n, m) * 2];
+        int count = 0;
+        int x = n, y = m;
+        for (int d = trace.size() - 1; d >= 0; d--) {
+            int k = x - y;
+            int prevX, prevY;
+            if (d == 0) {
+                prevX = 0;
+                prevY = 0;
+            } else {
+                int[] previous = trace.get(d - 1);
+                // previous[k + d] is the value of diagonal k after d - 1 edits
+                int prevK;
+                if (k == -d || (k != d && previous[k - 1 + d] < previous[k + 1 + d])) {
+                    prevK = k + 1;
+                } else {
+                    prevK = k - 1;
+                }
+                prevX = previous[prevK + d];
+                prevY = prevX - prevK;
+            }
+            while (x > prevX && y > prevY) {
+                x--;
+                y--;
+                matches[count++] = newStart + y;
+                matches[count++] = oldStart + x;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        // pairs were added backwards as (new, old)
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = matches[count - 1 - i];
+        }
+        return result;
+    }
+
+    private UndoManager.ContentAction createAction(int[] matches) {
+        UndoManager.MultiAction action = new UndoManager.MultiAction();
+        int oldEnd = mOld.length, newEnd = mNew.length;
+        for (int i = matches.length; i >= 0; i -= 2) {
+            int oldStart = i == 0 ? 0 : matches[i - 2] + 1;
+            int newStart = i == 0 ? 0 : matches[i - 1] + 1;
+            if (oldStart < oldEnd || newStart < newEnd) {
+                addHunk(action, oldStart, oldEnd, newStart, newEnd);
+            }
+            if (i > 0) {
+                oldEnd = matches[i - 2];
+                newEnd = matches[i - 1];
+            }
+        }
+        return action;
+    }
+
+    /**
+     * Add the replacement of old lines in [oldStart, oldEnd) by new lines in [newStart, newEnd)
+     */
+    private void addHunk(UndoManager.MultiAction action, int oldStart, int oldEnd, int newStart, int newEnd) {
+        int startLine, startColumn, endLine, endColumn;
+        StringBuilder deleted = new StringBuilder();
+        StringBuilder inserted = new StringBuilder();
+        if (oldEnd < mOld.length) {
+            // lines are replaced along with their line separators
+            startLine = oldStart;
+            startColumn = 0;
+            endLine = oldEnd;
+            endColumn = 0;
+            for (int i = oldStart; i < oldEnd; i++) {
+                deleted.append(mOld[i]).append('\n');
+            }
+            for (int i = newStart; i < newEnd; i++) {
+                inserted.append(mNew[i]).append('\n');
+            }
+        } else if (oldStart > 0) {
+            // the last lines are replaced along with the line separator before them
+            startLine = oldStart - 1;
+            startColumn = mOld[oldStart - 1].length();
+            endLine = oldEnd - 1;
+            endColumn = mOld[oldEnd - 1].length();
+            for (int i = oldStart; i < oldEnd; i++) {
+                deleted.append('\n').append(mOld[i]);
+            }
+            for (int i = newStart; i < newEnd; i++) {
+                inserted.append('\n').append(mNew[i]);
+            }
+        } else {
+            startLine = 0;
+            startColumn = 0;
+            endLine = oldEnd - 1;
+            endColumn = mOld[oldEnd - 1].length();
+            join(deleted, mOld, oldStart, oldEnd);
+            join(inserted, mNew, newStart, newEnd);
+        }
+        if (startLine == endLine && startColumn == endColumn && inserted.length() == 0) {
+            return;
+        }
+        UndoManager.DeleteAction delete = null;
+        if (startLine != endLine || startColumn != endColumn) {
+            delete = new UndoManager.DeleteAction();
+            delete.startLine = toLine(startLine);
+            delete.startColumn = toColumn(startLine, startColumn);
+            delete.endLine = toLine(endLine);
+            delete.endColumn = toColumn(endLine, endColumn);
+            delete.text = deleted.toString();
+        }
+        UndoManager.InsertAction insert = null;
+        if (inserted.length() != 0) {
+            insert = new UndoManager.InsertAction();
+            insert.startLine = toLine(startLine);
+            insert.startColumn = toColumn(startLine, startColumn);
+            insert.text = inserted.toString();
+            int lastBreak = insert.text.toString().lastIndexOf('\n');
+            int breaks = 0;
+            for (int i = 0; i < inserted.length(); i++) {
+                if (inserted.charAt(i) == '\n') {
+                    breaks++;
+                }
+            }
+            insert.endLine = insert.startLine + breaks;
+            insert.endColumn = lastBreak == -1 ? insert.startColumn + inserted.length()
+                    : inserted.length() - lastBreak - 1;
+        }
+        if (delete != null && insert != null) {
+            UndoManager.ReplaceAction replace = new UndoManager.ReplaceAction();
+            replace._delete = delete;
+            replace._insert = insert;
+            action.addAction(replace);
+        } else {
+            action.addAction(delete != null ? delete : insert);
+        }
+    }
+
+    private static void join(StringBuilder sb, String[] lines, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                sb.append('\n');
+            }
+            sb.append(lines[i]);
+        }
+    }
+
+    private int toLine(int line) {
+        return mStartLine + line;
+    }
+
+    private int toColumn(int line, int column) {
+        return line == 0 ? mStartColumn + column : column;
+    }
+}
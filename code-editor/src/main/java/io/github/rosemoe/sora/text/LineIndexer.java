@@ -0,0 +1,153 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.text;
+
+/**
+ * Indexer that keeps the line lengths of a {@link Content} in a Fenwick tree, so both
+ * (line,column) to index and index to (line,column) take O(log n) time wherever the
+ * position is.
+ * <p>
+ * Edits inside a line update the tree in O(log n). Edits that add or remove lines only mark
+ * the tree as invalid, it is rebuilt in O(n) on the next query, just like the line list of
+ * {@link Content} is shifted in that case.
+ * <p>
+ * It is updated directly by {@link Content} before any listener is called. Rebuilding the
+ * tree reads the lines of the {@link Content}, which are edited without any lock, so it must
+ * only be queried on the thread that edits the text, usually the UI thread. Other threads
+ * should read the lines of a {@link ContentSnapshot} instead.
+ */
+public final class LineIndexer implements Indexer {
+
+    private final Content mContent;
+    /**
+     * 1-based Fenwick tree of (line length + 1)
+     */
+    private int[] mTree = new int[0];
+    private int mLineCount;
+    private boolean mValid;
+
+    LineIndexer(Content content) {
+        mContent = content;
+    }
+
+    /**
+     * Called when characters are inserted or removed in a line without changing lines
+     */
+    synchronized void onLineChanged(int line, int delta) {
+        if (!mValid) {
+            return;
+        }
+        for (int i = line + 1; i <= mLineCount; i += i & -i) {
+            mTree[i] += delta;
+        }
+    }
+
+    /**
+     * Called when lines are added or removed
+     */
+    synchronized void onLinesChanged() {
+        mValid = false;
+    }
+
+    private void ensureValid() {
+        if (mValid) {
+            return;
+        }
+        int count = mContent.getLineCount();
+        if (mTree.length < count + 1 || mTree.length > (count + 1) * 4) {
+            mTree = new int[count + 1 + (count >> 3)];
+        }
+        for (int i = 1; i <= count; i++) {
+            mTree[i] = mContent.getLine(i - 1).length() + 1;
+        }
+        for (int i = 1; i <= count; i++) {
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                mTree[parent] += mTree[i];
+            }
+        }
+        mLineCount = count;
+        mValid = true;
+    }
+
+    /**
+     * @return Index of the first character of the given line
+     */
+    private int getLineStart(int line) {
+        int sum = 0;
+        for (int i = line; i > 0; i -= i & -i) {
+            sum += mTree[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public synchronized int getCharIndex(int line, int column) {
+        ensureValid();
+        if (line < 0 || line >= mLineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " out of bounds. line count:" + mLineCount);
+        }
+        return getLineStart(line) + column;
+    }
+
+    @Override
+    public int getCharLine(int index) {
+        return getCharPosition(index).line;
+    }
+
+    @Override
+    public int getCharColumn(int index) {
+        return getCharPosition(index).column;
+    }
+
+    @Override
+    public synchronized CharPosition getCharPosition(int index) {
+        ensureValid();
+        if (index < 0 || index > mContent.length()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds. length:" + mContent.length());
+        }
+        int line = 0;
+        int remaining = index;
+        for (int step = Integer.highestOneBit(mLineCount); step > 0; step >>= 1) {
+            int next = line + step;
+            if (next <= mLineCount && mTree[next] <= remaining) {
+                line = next;
+                remaining -= mTree[next];
+            }
+        }
+        CharPosition position = new CharPosition();
+        position.index = index;
+        position.line = line;
+        position.column = remaining;
+        return position;
+    }
+
+    @Override
+    public synchronized CharPosition getCharPosition(int line, int column) {
+        CharPosition position = new CharPosition();
+        position.index = getCharIndex(line, column);
+        position.line = line;
+        position.column = column;
+        return position;
+    }
+}
@@ -46,6 +46,19 @@ public class LineNumberCalculator {
         mLength = mTarget.length();
     }
 
+    /**
+     * Create a new helper for the given text and set offset to the start of the given line
+     *
+     * @param target Target text
+     * @param offset Index of the first character of the line
+     * @param line   The line at offset
+     */
+    public LineNumberCalculator(CharSequence target, int offset, int line) {
+        this(target);
+        mOffset = offset;
+        mLine = line;
+    }
+
     /**
      * Update line and column for the given advance
      *
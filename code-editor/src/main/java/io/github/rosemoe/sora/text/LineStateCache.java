@@ -0,0 +1,435 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.rosemoe.sora.data.BlockLine;
+import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.data.SpanLine;
+import io.github.rosemoe.sora.interfaces.IncrementalCodeAnalyzer;
+import io.github.rosemoe.sora.widget.EditorColorScheme;
+
+/**
+ * Per line results of an {@link IncrementalCodeAnalyzer}.
+ * <p>
+ * Every line keeps its spans, the code block braces found in it and the lexer state at its
+ * start. Edits only mark lines as dirty, the next analysis restarts the lexer from the
+ * closest clean line before the first dirty line and stops as soon as it reaches a line after
+ * the last dirty line whose state is equal to the state recorded by the previous analysis.
+ * <p>
+ * Span lines of clean lines are shared between the cache and the {@link TextAnalyzeResult}
+ * it fills, so they are not copied between analyses.
+ *
+ * @param <S> Type of the lexer state
+ * @see IncrementalCodeAnalyzer
+ */
+public final class LineStateCache<S> {
+
+    private static final int[] NO_BLOCKS = new int[0];
+
+    private final IncrementalCodeAnalyzer<S> mAnalyzer;
+    private final List<Line<S>> mLines = new ArrayList<>();
+
+    /**
+     * Range of lines modified since the last analysis, both inclusive
+     */
+    private int mDirtyStart = Integer.MAX_VALUE;
+    private int mDirtyEnd = -1;
+
+    /*
+     * State of the running analysis
+     */
+    private final List<Line<S>> mPending = new ArrayList<>();
+    private int mStartLine;
+    private int mCurrentLine;
+    private int mConvergedLine;
+    private boolean mExtensionOnly;
+    /**
+     * The line of the span last added, which is its last span
+     */
+    private SpanLine mLast;
+    private int[] mBlocks = new int[16];
+    private int mBlockCount;
+
+    public LineStateCache(IncrementalCodeAnalyzer<S> analyzer) {
+        mAnalyzer = analyzer;
+    }
+
+    /**
+     * Called when text is inserted, lines after startLine are shifted down
+     */
+    void onInsert(int startLine, int endLine) {
+        if (mLines.isEmpty()) {
+            return;
+        }
+        if (startLine >= mLines.size()) {
+            invalidate();
+            return;
+        }
+        int count = endLine - startLine;
+        if (count > 0) {
+            mLines.addAll(startLine + 1, Collections.nCopies(count, null));
+            if (mDirtyEnd > startLine) {
+                mDirtyEnd += count;
+            }
+        }
+        markDirty(startLine, endLine);
+    }
+
+    /**
+     * Called when text is deleted, the lines after startLine up to endLine are removed
+     */
+    void onDelete(int startLine, int endLine) {
+        if (mLines.isEmpty()) {
+            return;
+        }
+        if (endLine >= mLines.size()) {
+            invalidate();
+            return;
+        }
+        int count = endLine - startLine;
+        if (count > 0) {
+            mLines.subList(startLine + 1, endLine + 1).clear();
+            if (mDirtyEnd > endLine) {
+                mDirtyEnd -= count;
+            } else if (mDirtyEnd > startLine) {
+                mDirtyEnd = startLine;
+            }
+        }
+        markDirty(startLine, startLine);
+    }
+
+    private void markDirty(int startLine, int endLine) {
+        mDirtyStart = Math.min(mDirtyStart, startLine);
+        mDirtyEnd = Math.max(mDirtyEnd, endLine);
+    }
+
+    /**
+     * Drop all the cached lines, the next analysis will tokenize the whole text
+     */
+    void invalidate() {
+        mLines.clear();
+        mDirtyStart = Integer.MAX_VALUE;
+        mDirtyEnd = -1;
+    }
+
+    /**
+     * Tokenize the lines that were modified since the last analysis
+     *
+     * @param text     The whole text, its lines must match the edits reported to this cache
+     * @param delegate Delegate between thread and analyzer
+     * @return false if the analysis was interrupted, the cache is left unchanged in that case
+     */
+    public boolean analyze(CharSequence text, TextAnalyzer.AnalyzeThread.Delegate delegate) {
+        int lineCount = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lineCount++;
+            }
+        }
+        if (mLines.size() != lineCount) {
+            // edits were missed, start over
+            invalidate();
+        }
+
+        if (mLines.isEmpty()) {
+            mStartLine = 0;
+        } else if (mDirtyEnd < 0) {
+            return true;
+        } else {
+            int line = Math.min(mDirtyStart, mLines.size() - 1);
+            while (line > 0 && (mLines.get(line) == null || mLines.get(line).state == null)) {
+                line--;
+            }
+            mStartLine = line;
+        }
+
+        int offset = 0;
+        for (int line = 0; line < mStartLine; offset++) {
+            if (text.charAt(offset) == '\n') {
+                line++;
+            }
+        }
+
+        S state;
+        if (mStartLine == 0) {
+            state = mAnalyzer.getInitialState();
+            mLast = null;
+        } else {
+            state = mLines.get(mStartLine).state;
+            mLast = mLines.get(mStartLine - 1).spans;
+        }
+        mPending.clear();
+        mConvergedLine = -1;
+        mCurrentLine = mStartLine - 1;
+        openLine(state);
+
+        mAnalyzer.tokenize(text, offset, mStartLine, state, this, delegate);
+
+        if (!delegate.shouldAnalyze()) {
+            mPending.clear();
+            return false;
+        }
+
+        int end = mConvergedLine;
+        if (end == -1) {
+            ensureLine(lineCount - 1);
+            end = lineCount;
+        }
+        finishLine();
+        while (mStartLine + mPending.size() > end) {
+            mPending.remove(mPending.size() - 1);
+        }
+        mLines.subList(mStartLine, Math.min(end, mLines.size())).clear();
+        mLines.addAll(mStartLine, mPending);
+        mPending.clear();
+        mLast = null;
+        mDirtyStart = Integer.MAX_VALUE;
+        mDirtyEnd = -1;
+        return true;
+    }
+
+    /**
+     * Copy the cached lines to the given result, along with its code blocks
+     *
+     * @param shared Whether the span lines should be copied before they are modified
+     */
+    public void fill(TextAnalyzeResult result, boolean shared) {
+        int[] stack = new int[32];
+        int depth = 0;
+        int maxSwitch = 1, currSwitch = 0;
+        for (int i = 0; i < mLines.size(); i++) {
+            Line<S> line = mLines.get(i);
+            result.mSpanMap.add(line.spans);
+            for (int event : line.blocks) {
+                if (event >= 0) {
+                    if (depth == 0) {
+                        if (currSwitch > maxSwitch) {
+                            maxSwitch = currSwitch;
+                        }
+                        currSwitch = 0;
+                    }
+                    currSwitch++;
+                    if (depth * 2 == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[depth * 2] = i;
+                    stack[depth * 2 + 1] = event;
+                    depth++;
+                } else if (depth > 0) {
+                    depth--;
+                    if (stack[depth * 2] != i) {
+                        BlockLine block = result.obtainNewBlock();
+                        block.startLine = stack[depth * 2];
+                        block.startColumn = stack[depth * 2 + 1];
+                        block.endLine = i;
+                        block.endColumn = ~event;
+                        result.addBlockLine(block);
+                    }
+                }
+            }
+        }
+        if (depth == 0) {
+            if (currSwitch > maxSwitch) {
+                maxSwitch = currSwitch;
+            }
+        }
+        if (!mLines.isEmpty()) {
+            result.mLast = mLines.get(mLines.size() - 1).spans;
+        }
+        result.setSuppressSwitch(maxSwitch + 10);
+        result.determined = true;
+        if (shared) {
+            result.markShared();
+        }
+    }
+
+    /**
+     * Called by the analyzer before lexing a token that starts at column 0 of the line
+     *
+     * @param line  The line of the token
+     * @param state The state of the lexer before lexing the token
+     * @return false if the rest of the text is unchanged since the previous analysis, the
+     * analyzer must stop tokenizing in that case
+     */
+    public boolean startLine(int line, S state) {
+        if (line <= mCurrentLine) {
+            return true;
+        }
+        ensureLine(line - 1);
+        if (line > mDirtyEnd && line < mLines.size()) {
+            Line<S> previous = mLines.get(line);
+            if (previous != null && previous.state != null
+                    && previous.entryColor == getEntryColor()
+                    && mAnalyzer.stateEquals(previous.state, state)) {
+                mConvergedLine = line;
+                return false;
+            }
+        }
+        openLine(state);
+        return true;
+    }
+
+    /**
+     * Add a new span if required (colorId is different from last)
+     *
+     * @see TextAnalyzeResult#addIfNeeded(int, int, int)
+     */
+    public void addIfNeeded(int line, int column, int colorId) {
+        if (mLast != null && mLast.getColorId(mLast.size() - 1) == colorId) {
+            return;
+        }
+        add(line, column, colorId);
+    }
+
+    /**
+     * @see TextAnalyzeResult#addIfNeeded(int, Span)
+     */
+    public void addIfNeeded(int line, Span span) {
+        if (mLast != null && mLast.getColorId(mLast.size() - 1) == span.colorId) {
+            return;
+        }
+        add(line, span);
+    }
+
+    /**
+     * Add a span directly, spans must be added in order
+     *
+     * @see TextAnalyzeResult#add(int, int, int)
+     */
+    public void add(int line, int column, int colorId) {
+        getLineForAdd(line, column).add(column, colorId);
+    }
+
+    /**
+     * Add a span directly, the span is copied so modifying it afterwards has no effect
+     *
+     * @see TextAnalyzeResult#add(int, Span)
+     */
+    public void add(int line, Span span) {
+        getLineForAdd(line, span.column).add(span);
+    }
+
+    private SpanLine getLineForAdd(int line, int column) {
+        if (line < mCurrentLine) {
+            throw new IllegalStateException("Invalid position");
+        }
+        ensureLine(line);
+        SpanLine spans = mPending.get(mPending.size() - 1).spans;
+        if (mExtensionOnly && column == 0) {
+            spans.clear();
+        }
+        mExtensionOnly = false;
+        mLast = spans;
+        return spans;
+    }
+
+    /**
+     * Report an opening brace of a code block
+     */
+    public void openBlock(int line, int column) {
+        addBlockEvent(line, column);
+    }
+
+    /**
+     * Report a closing brace of a code block
+     */
+    public void closeBlock(int line, int column) {
+        addBlockEvent(line, ~column);
+    }
+
+    private void addBlockEvent(int line, int event) {
+        if (line < mCurrentLine) {
+            throw new IllegalStateException("Invalid position");
+        }
+        ensureLine(line);
+        if (mBlockCount == mBlocks.length) {
+            mBlocks = Arrays.copyOf(mBlocks, mBlocks.length * 2);
+        }
+        mBlocks[mBlockCount++] = event;
+    }
+
+    private void ensureLine(int line) {
+        while (mCurrentLine < line) {
+            openLine(null);
+        }
+    }
+
+    private int getEntryColor() {
+        return mLast == null ? EditorColorScheme.TEXT_NORMAL : mLast.getColorId(mLast.size() - 1);
+    }
+
+    private void openLine(S state) {
+        finishLine();
+        Line<S> line = new Line<>(state, getEntryColor());
+        if (mLast == null) {
+            line.spans.add(0, EditorColorScheme.TEXT_NORMAL);
+        } else {
+            line.spans.add(mLast, mLast.size() - 1, 0);
+            line.spans.setProblemFlags(0, 0);
+        }
+        mPending.add(line);
+        mCurrentLine++;
+        mExtensionOnly = true;
+    }
+
+    private void finishLine() {
+        if (mPending.isEmpty()) {
+            return;
+        }
+        Line<S> line = mPending.get(mPending.size() - 1);
+        if (mBlockCount > 0) {
+            line.blocks = Arrays.copyOf(mBlocks, mBlockCount);
+            mBlockCount = 0;
+        }
+    }
+
+    private static class Line<S> {
+
+        /**
+         * State at the start of the line, null if no token starts at the beginning of it
+         */
+        final S state;
+
+        /**
+         * Color of the span continued from the previous line
+         */
+        final int entryColor;
+
+        final SpanLine spans = new SpanLine();
+
+        /**
+         * Columns of the braces in this line, closing braces are stored inverted
+         */
+        int[] blocks = NO_BLOCKS;
+
+        Line(S state, int entryColor) {
+            this.state = state;
+            this.entryColor = entryColor;
+        }
+    }
+}
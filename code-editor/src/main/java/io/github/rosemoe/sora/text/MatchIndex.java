@@ -0,0 +1,280 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.text;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.rosemoe.sora.util.IntPair;
+import io.github.rosemoe.sora.util.LongArrayList;
+
+/**
+ * All the matches of a pattern in a {@link Content}.
+ * <p>
+ * Matches never span several lines. Each line keeps the start and end columns of its matches
+ * in a sorted int array, so the renderer only looks up the line it draws and edits only
+ * search the lines they touch again.
+ * <p>
+ * The first search is done by {@link #search(ContentSnapshot)}, usually on a worker thread,
+ * and its result is given to {@link #setResult(Content, List)} on the main thread. Edits
+ * made meanwhile are recorded and replayed on the result. Other methods must be called on
+ * the thread that modifies the Content.
+ */
+public final class MatchIndex {
+
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final Pattern mPattern;
+    private final boolean mWholeWord;
+    private List<int[]> mLines;
+    private int mMatchCount;
+    /**
+     * Edits received before the first search completes, packed as (start line, line delta)
+     */
+    private final LongArrayList mPendingEdits = new LongArrayList();
+
+    /**
+     * @param pattern   Pattern to find
+     * @param wholeWord Whether only matches not surrounded by word characters are kept
+     */
+    public MatchIndex(Pattern pattern, boolean wholeWord) {
+        mPattern = pattern;
+        mWholeWord = wholeWord;
+    }
+
+    /**
+     * Find the matches of every line of the given text
+     *
+     * @return Matches of each line, or null if the thread is interrupted
+     */
+    public List<int[]> search(ContentSnapshot text) {
+        Matcher matcher = mPattern.matcher("");
+        int lineCount = text.getLineCount();
+        List<int[]> lines = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            if ((i & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            lines.add(findMatches(matcher, text.getLine(i)));
+        }
+        return lines;
+    }
+
+    /**
+     * Use the result of {@link #search(ContentSnapshot)}, edits made to the content since the
+     * snapshot was taken are applied to it
+     */
+    public void setResult(Content content, List<int[]> lines) {
+        mLines = lines;
+        mMatchCount = 0;
+        for (int[] matches : lines) {
+            mMatchCount += matches.length / 2;
+        }
+        int dirtyStart = Integer.MAX_VALUE;
+        int dirtyEnd = -1;
+        for (int i = 0; i < mPendingEdits.size(); i++) {
+            long edit = mPendingEdits.get(i);
+            int line = IntPair.getFirst(edit);
+            int delta = IntPair.getSecond(edit);
+            shiftLines(line, delta);
+            if (delta < 0) {
+                if (dirtyEnd > line - delta) {
+                    dirtyEnd += delta;
+                } else if (dirtyEnd > line) {
+                    dirtyEnd = line;
+                }
+            } else if (dirtyEnd > line) {
+                dirtyEnd += delta;
+            }
+            dirtyStart = Math.min(dirtyStart, line);
+            dirtyEnd = Math.max(dirtyEnd, line + Math.max(delta, 0));
+        }
+        mPendingEdits.clear();
+        if (dirtyEnd >= 0) {
+            refresh(content, dirtyStart, Math.min(dirtyEnd, mLines.size() - 1));
+        }
+    }
+
+    /**
+     * @return Whether the result of the first search is available
+     */
+    public boolean isReady() {
+        return mLines != null;
+    }
+
+    /**
+     * Called after text is inserted
+     */
+    public void onInsert(Content content, int startLine, int endLine) {
+        onEdit(content, startLine, endLine - startLine);
+    }
+
+    /**
+     * Called after text is deleted
+     */
+    public void onDelete(Content content, int startLine, int endLine) {
+        onEdit(content, startLine, startLine - endLine);
+    }
+
+    private void onEdit(Content content, int line, int delta) {
+        if (mLines == null) {
+            mPendingEdits.add(IntPair.pack(line, delta));
+            return;
+        }
+        shiftLines(line, delta);
+        refresh(content, line, line + Math.max(delta, 0));
+    }
+
+    /**
+     * Add or remove lines after the given line
+     */
+    private void shiftLines(int line, int delta) {
+        if (delta > 0) {
+            mLines.addAll(line + 1, Collections.nCopies(delta, NO_MATCHES));
+        } else if (delta < 0) {
+            List<int[]> removed = mLines.subList(line + 1, line + 1 - delta);
+            for (int[] matches : removed) {
+                mMatchCount -= matches.length / 2;
+            }
+            removed.clear();
+        }
+    }
+
+    /**
+     * Search the given lines again, both inclusive
+     */
+    private void refresh(Content content, int startLine, int endLine) {
+        Matcher matcher = mPattern.matcher("");
+        for (int line = startLine; line <= endLine; line++) {
+            int[] matches = findMatches(matcher, content.getLine(line));
+            mMatchCount += (matches.length - mLines.get(line).length) / 2;
+            mLines.set(line, matches);
+        }
+    }
+
+    private int[] findMatches(Matcher matcher, CharSequence line) {
+        matcher.reset(line);
+        int[] matches = NO_MATCHES;
+        int count = 0;
+        int from = 0;
+        while (from <= line.length() && matcher.find(from)) {
+            int start = matcher.start();
+            int end = matcher.end();
+            if (end == start) {
+                // empty matches can not be shown nor replaced
+                from = end + 1;
+                continue;
+            }
+            if (mWholeWord && (isWordPart(line, start - 1) || isWordPart(line, end))) {
+                from = start + 1;
+                continue;
+            }
+            if (count * 2 == matches.length) {
+                int[] grown = new int[Math.max(4, matches.length * 2)];
+                System.arraycopy(matches, 0, grown, 0, matches.length);
+                matches = grown;
+            }
+            matches[count * 2] = start;
+            matches[count * 2 + 1] = end;
+            count++;
+            from = end;
+        }
+        if (matches.length != count * 2) {
+            int[] trimmed = new int[count * 2];
+            System.arraycopy(matches, 0, trimmed, 0, trimmed.length);
+            matches = trimmed;
+        }
+        return matches;
+    }
+
+    private static boolean isWordPart(CharSequence text, int index) {
+        if (index < 0 || index >= text.length()) {
+            return false;
+        }
+        char ch = text.charAt(index);
+        return Character.isLetterOrDigit(ch) || ch == '_';
+    }
+
+    /**
+     * Get the matches of the given line
+     *
+     * @return Start and end column of each match, in order. Empty if there is no match or the
+     * index is not ready
+     */
+    public int[] getMatches(int line) {
+        if (mLines == null || line < 0 || line >= mLines.size()) {
+            return NO_MATCHES;
+        }
+        return mLines.get(line);
+    }
+
+    /**
+     * @return Count of matches in the whole text
+     */
+    public int getMatchCount() {
+        return mMatchCount;
+    }
+
+    /**
+     * Find the first match starting at or after the given position
+     *
+     * @return Line, start column and end column of the match, or null if there is none
+     */
+    public int[] findNext(int line, int column) {
+        if (mLines == null) {
+            return null;
+        }
+        for (int i = Math.max(line, 0); i < mLines.size(); i++) {
+            int[] matches = mLines.get(i);
+            for (int j = 0; j < matches.length; j += 2) {
+                if (i > line || matches[j] >= column) {
+                    return new int[]{i, matches[j], matches[j + 1]};
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the last match starting before the given position
+     *
+     * @return Line, start column and end column of the match, or null if there is none
+     */
+    public int[] findPrevious(int line, int column) {
+        if (mLines == null) {
+            return null;
+        }
+        for (int i = Math.min(line, mLines.size() - 1); i >= 0; i--) {
+            int[] matches = mLines.get(i);
+            for (int j = matches.length - 2; j >= 0; j -= 2) {
+                if (i < line || matches[j] < column) {
+                    return new int[]{i, matches[j], matches[j + 1]};
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -22,10 +22,9 @@
  */
 package io.github.rosemoe.sora.text;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.data.SpanLine;
 import io.github.rosemoe.sora.widget.EditorColorScheme;
 
 /**
@@ -35,158 +34,117 @@ import io.github.rosemoe.sora.widget.EditorColorScheme;
  */
 public class SpanMapUpdater {
 
-    public static void shiftSpansOnMultiLineDelete(List<List<Span>> map, int startLine, int startColumn, int endLine, int endColumn) {
-        int lineCount = endLine - startLine - 1;
+    public static void shiftSpansOnMultiLineDelete(List<SpanLine> map, int startLine, int startColumn, int endLine, int endColumn) {
         // Remove unrelated lines
-        while (lineCount > 0) {
-            Span.recycleAll(map.remove(startLine + 1));
-            lineCount--;
+        int lineCount = endLine - startLine - 1;
+        if (lineCount > 0) {
+            map.subList(startLine + 1, startLine + 1 + lineCount).clear();
         }
         // Clean up start line
-        List<Span> startLineSpans = map.get(startLine);
-        int index = startLineSpans.size() - 1;
-        while (index > 0) {
-            if (startLineSpans.get(index).column >= startColumn) {
-                startLineSpans.remove(index).recycle();
-                index--;
-            } else {
-                break;
-            }
+        SpanLine startLineSpans = map.get(startLine);
+        int index = startLineSpans.size();
+        while (index > 1 && startLineSpans.getColumn(index - 1) >= startColumn) {
+            index--;
         }
+        startLineSpans.remove(index, startLineSpans.size());
         // Shift end line
-        List<Span> endLineSpans = map.get(startLine + 1);
-        while (endLineSpans.size() > 1) {
-            Span first = endLineSpans.get(0);
-            if (first.column >= endColumn) {
-                break;
-            } else {
-                int spanEnd = endLineSpans.get(1).column;
-                if (spanEnd <= endColumn) {
-                    endLineSpans.remove(first);
-                    first.recycle();
-                } else {
-                    break;
-                }
-            }
-        }
+        SpanLine endLineSpans = map.get(startLine + 1);
+        int removeCount = 0;
+        while (endLineSpans.size() - removeCount > 1
+                && endLineSpans.getColumn(removeCount) < endColumn
+                && endLineSpans.getColumn(removeCount + 1) <= endColumn) {
+            removeCount++;
+        }
+        endLineSpans.remove(0, removeCount);
         for (int i = 0; i < endLineSpans.size(); i++) {
-            Span span = endLineSpans.get(i);
-            if (span.column < endColumn) {
-                span.column = 0;
-            } else {
-                span.column -= endColumn;
-            }
+            int column = endLineSpans.getColumn(i);
+            endLineSpans.setColumn(i, column < endColumn ? 0 : column - endColumn);
         }
     }
 
-    public static void shiftSpansOnSingleLineDelete(List<List<Span>> map, int line, int startCol, int endCol) {
+    public static void shiftSpansOnSingleLineDelete(List<SpanLine> map, int line, int startCol, int endCol) {
         if (map == null || map.isEmpty()) {
             return;
         }
-        List<Span> spanList = map.get(line);
-        int startIndex = findSpanIndexFor(spanList, 0, startCol);
+        SpanLine spanLine = map.get(line);
+        int startIndex = spanLine.findSpanIndexFor(0, startCol);
         if (startIndex == -1) {
             //No span is to be updated
             return;
         }
-        int endIndex = findSpanIndexFor(spanList, startIndex, endCol);
+        int endIndex = spanLine.findSpanIndexFor(startIndex, endCol);
         if (endIndex == -1) {
-            endIndex = spanList.size();
+            endIndex = spanLine.size();
         }
         // Remove spans inside delete text
-        int removeCount = endIndex - startIndex;
-        for (int i = 0; i < removeCount; i++) {
-            spanList.remove(startIndex).recycle();
-        }
+        spanLine.remove(startIndex, endIndex);
         // Shift spans
-        int delta = endCol - startCol;
-        while (startIndex < spanList.size()) {
-            spanList.get(startIndex).column -= delta;
-            startIndex++;
-        }
+        spanLine.shiftColumns(startIndex, startCol - endCol);
         // Ensure there is span
-        if (spanList.isEmpty() || spanList.get(0).column != 0) {
-            spanList.add(0, Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
+        if (spanLine.isEmpty() || spanLine.getColumn(0) != 0) {
+            spanLine.insert(0, 0, EditorColorScheme.TEXT_NORMAL);
         }
         // Remove spans with length 0
-        for (int i = 0; i + 1 < spanList.size(); i++) {
-            if (spanList.get(i).column >= spanList.get(i + 1).column) {
-                spanList.remove(i).recycle();
+        for (int i = 0; i + 1 < spanLine.size(); i++) {
+            if (spanLine.getColumn(i) >= spanLine.getColumn(i + 1)) {
+                spanLine.remove(i, i + 1);
                 i--;
             }
         }
     }
 
-    public static void shiftSpansOnSingleLineInsert(List<List<Span>> map, int line, int startCol, int endCol) {
+    public static void shiftSpansOnSingleLineInsert(List<SpanLine> map, int line, int startCol, int endCol) {
         if (map == null || map.isEmpty()) {
             return;
         }
-        List<Span> spanList = map.get(line);
-        int index = findSpanIndexFor(spanList, 0, startCol);
+        SpanLine spanLine = map.get(line);
+        int index = spanLine.findSpanIndexFor(0, startCol);
         if (index == -1) {
             return;
         }
-        int originIndex = index;
         // Shift spans after insert position
-        int delta = endCol - startCol;
-        while (index < spanList.size()) {
-            spanList.get(index++).column += delta;
-        }
+        spanLine.shiftColumns(index, endCol - startCol);
         // Add extra span for line start
-        if (originIndex == 0) {
-            Span first = spanList.get(0);
-            if (first.colorId == EditorColorScheme.TEXT_NORMAL && first.underlineColor == 0) {
-                first.column = 0;
+        if (index == 0) {
+            if (spanLine.getColorId(0) == EditorColorScheme.TEXT_NORMAL
+                    && spanLine.getUnderlineColor(0) == 0) {
+                spanLine.setColumn(0, 0);
             } else {
-                spanList.add(0, Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
+                spanLine.insert(0, 0, EditorColorScheme.TEXT_NORMAL);
             }
         }
     }
 
-    public static void shiftSpansOnMultiLineInsert(List<List<Span>> map, int startLine, int startColumn, int endLine, int endColumn) {
+    public static void shiftSpansOnMultiLineInsert(List<SpanLine> map, int startLine, int startColumn, int endLine, int endColumn) {
         // Find extended span
-        List<Span> startLineSpans = map.get(startLine);
-        int extendedSpanIndex = findSpanIndexFor(startLineSpans, 0, startColumn);
+        SpanLine startLineSpans = map.get(startLine);
+        int extendedSpanIndex = startLineSpans.findSpanIndexFor(0, startColumn);
         if (extendedSpanIndex == -1) {
             extendedSpanIndex = startLineSpans.size() - 1;
         }
-        if (startLineSpans.get(extendedSpanIndex).column > startColumn) {
+        if (startLineSpans.getColumn(extendedSpanIndex) > startColumn) {
             extendedSpanIndex--;
         }
-        Span extendedSpan;
-        if (extendedSpanIndex < 0 || extendedSpanIndex >= startLineSpans.size()) {
-            extendedSpan = Span.obtain(0, EditorColorScheme.TEXT_NORMAL);
-        } else {
-            extendedSpan = startLineSpans.get(extendedSpanIndex);
-        }
+        boolean hasExtendedSpan = extendedSpanIndex >= 0 && extendedSpanIndex < startLineSpans.size();
         // Create map link for new lines
         for (int i = 0; i < endLine - startLine; i++) {
-            List<Span> list = new ArrayList<>();
-            list.add(extendedSpan.copy().setColumn(0));
-            map.add(startLine + 1, list);
-        }
-        // Add original spans to new line
-        List<Span> endLineSpans = map.get(endLine);
-        if (endColumn == 0 && extendedSpanIndex + 1 < startLineSpans.size()) {
-            endLineSpans.clear();
-        }
-        int delta = Integer.MIN_VALUE;
-        while (extendedSpanIndex + 1 < startLineSpans.size()) {
-            Span span = startLineSpans.remove(extendedSpanIndex + 1);
-            if (delta == Integer.MIN_VALUE) {
-                delta = span.column;
+            SpanLine spans = new SpanLine();
+            if (hasExtendedSpan) {
+                spans.add(startLineSpans, extendedSpanIndex, 0);
+            } else {
+                spans.add(0, EditorColorScheme.TEXT_NORMAL);
             }
-            endLineSpans.add(span.setColumn(span.column - delta + endColumn));
+            map.add(startLine + 1, spans);
         }
-    }
-
-    private static int findSpanIndexFor(List<Span> spans, int initialPosition, int targetCol) {
-        for (int i = initialPosition; i < spans.size(); i++) {
-            if (spans.get(i).column >= targetCol) {
-                return i;
+        // Add original spans to new line
+        SpanLine endLineSpans = map.get(endLine);
+        int moveIndex = extendedSpanIndex + 1;
+        if (moveIndex < startLineSpans.size()) {
+            if (endColumn == 0) {
+                endLineSpans.clear();
             }
+            startLineSpans.moveTo(moveIndex, endLineSpans, endColumn - startLineSpans.getColumn(moveIndex));
         }
-        return -1;
     }
 
 }
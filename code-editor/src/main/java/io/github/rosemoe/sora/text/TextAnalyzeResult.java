@@ -23,12 +23,16 @@
 package io.github.rosemoe.sora.text;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import io.github.rosemoe.sora.data.BlockLine;
 import io.github.rosemoe.sora.data.NavigationItem;
 import io.github.rosemoe.sora.data.ObjectAllocator;
 import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.data.SpanLine;
 import io.github.rosemoe.sora.widget.EditorColorScheme;
 
 /**
@@ -37,12 +41,20 @@ import io.github.rosemoe.sora.widget.EditorColorScheme;
 public class TextAnalyzeResult {
 
     protected final List<BlockLine> mBlocks;
-    protected final List<List<Span>> mSpanMap;
+    protected final List<SpanLine> mSpanMap;
     protected Object mExtra;
     protected List<NavigationItem> mLabels;
-    protected Span mLast;
+    /**
+     * The line of the span last added, which is its last span
+     */
+    protected SpanLine mLast;
     protected int mSuppressSwitch = Integer.MAX_VALUE;
     boolean determined = false;
+    /**
+     * Span lines that belong to this result when the others are shared with a
+     * {@link LineStateCache}, null if all of them belong to this result
+     */
+    private Set<SpanLine> mOwnedLines;
 
     /**
      * Create a new result
@@ -60,17 +72,15 @@ public class TextAnalyzeResult {
      * @param column   Column
      * @param colorId  Type
      */
-    public Span addIfNeeded(int spanLine, int column, int colorId) {
-        if (mLast != null && mLast.colorId == colorId) {
-            return mLast;
+    public void addIfNeeded(int spanLine, int column, int colorId) {
+        if (mLast != null && mLast.getColorId(mLast.size() - 1) == colorId) {
+            return;
         }
-        Span span = Span.obtain(column, colorId);
-        add(spanLine, span);
-        return span;
+        add(spanLine, column, colorId);
     }
 
     public void addIfNeeded(int line, Span span) {
-        if (mLast != null && mLast.colorId == span.colorId) {
+        if (mLast != null && mLast.getColorId(mLast.size() - 1) == span.colorId) {
             return;
         }
         add(line, span);
@@ -82,33 +92,58 @@ public class TextAnalyzeResult {
      * if two spans are on the same line, you must add them in order by their column
      *
      * @param spanLine The line position of span
+     * @param column   Start column of span
+     * @param colorId  Type of span
+     */
+    public void add(int spanLine, int column, int colorId) {
+        SpanLine line = getLineForAdd(spanLine, column);
+        line.add(column, colorId);
+        mLast = line;
+    }
+
+    /**
+     * Add a span directly, the span is copied so modifying it afterwards has no effect
+     *
+     * @param spanLine The line position of span
      * @param span     The span
+     * @see #add(int, int, int)
      */
-    public Span add(int spanLine, Span span) {
+    public void add(int spanLine, Span span) {
+        SpanLine line = getLineForAdd(spanLine, span.column);
+        line.add(span);
+        mLast = line;
+    }
+
+    private SpanLine getLineForAdd(int spanLine, int column) {
         int mapLine = mSpanMap.size() - 1;
         if (spanLine == mapLine) {
-            mSpanMap.get(spanLine).add(span);
+            return getLineForModification(spanLine);
         } else if (spanLine > mapLine) {
-            Span extendedSpan = mLast;
-            if (extendedSpan == null) {
-                extendedSpan = Span.obtain(0, EditorColorScheme.TEXT_NORMAL);
-            }
-            while (mapLine < spanLine) {
-                List<Span> lineSpans = new ArrayList<>();
-                lineSpans.add(extendedSpan.copy().setColumn(0));
-                mSpanMap.add(lineSpans);
-                mapLine++;
-            }
-            List<Span> lineSpans = mSpanMap.get(spanLine);
-            if (span.column == 0) {
-                lineSpans.clear();
+            extendTo(spanLine);
+            SpanLine line = mSpanMap.get(spanLine);
+            if (column == 0) {
+                line.clear();
             }
-            lineSpans.add(span);
+            return line;
         } else {
             throw new IllegalStateException("Invalid position");
         }
-        mLast = span;
-        return span;
+    }
+
+    /**
+     * Add lines up to the given line, continuing the last span
+     */
+    private void extendTo(int line) {
+        SpanLine last = mLast;
+        for (int mapLine = mSpanMap.size() - 1; mapLine < line; mapLine++) {
+            SpanLine spans = new SpanLine();
+            if (last == null) {
+                spans.add(0, EditorColorScheme.TEXT_NORMAL);
+            } else {
+                spans.add(last, last.size() - 1, 0);
+            }
+            mSpanMap.add(spans);
+        }
     }
 
     /**
@@ -117,17 +152,7 @@ public class TextAnalyzeResult {
      * @param line The line is the line last of text
      */
     public void determine(int line) {
-        int mapLine = mSpanMap.size() - 1;
-        Span extendedSpan = mLast;
-        if (mLast == null) {
-            extendedSpan = Span.obtain(0, EditorColorScheme.TEXT_NORMAL);
-        }
-        while (mapLine < line) {
-            List<Span> lineSpans = new ArrayList<>();
-            lineSpans.add(extendedSpan.copy().setColumn(0));
-            mSpanMap.add(lineSpans);
-            mapLine++;
-        }
+        extendTo(line);
         determined = true;
     }
 
@@ -164,9 +189,7 @@ public class TextAnalyzeResult {
      */
     public void addNormalIfNull() {
         if (mSpanMap.isEmpty()) {
-            List<Span> spanList = new ArrayList<>();
-            spanList.add(Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
-            mSpanMap.add(spanList);
+            mSpanMap.add(SpanLine.of(EditorColorScheme.TEXT_NORMAL));
         }
     }
 
@@ -221,7 +244,7 @@ public class TextAnalyzeResult {
     /**
      * Get span map
      */
-    public List<List<Span>> getSpanMap() {
+    public List<SpanLine> getSpanMap() {
         return mSpanMap;
     }
 
@@ -250,48 +273,74 @@ public class TextAnalyzeResult {
         for (int line = startLine; line <= endLine; line++) {
             int start = (line == startLine ? startColumn : 0);
             int end = (line == endLine ? endColumn : Integer.MAX_VALUE);
-            List<Span> spans = mSpanMap.get(line);
+            SpanLine spans = getLineForModification(line);
             int increment;
             for (int i = 0; i < spans.size(); i += increment) {
-                Span span = spans.get(i);
+                int column = spans.getColumn(i);
                 increment = 1;
-                if (span.column >= end) {
+                if (column >= end) {
                     break;
                 }
-                int spanEnd = (i + 1 >= spans.size() ? Integer.MAX_VALUE : spans.get(i + 1).column);
+                int spanEnd = (i + 1 >= spans.size() ? Integer.MAX_VALUE : spans.getColumn(i + 1));
                 if (spanEnd >= start) {
-                    int regionStartInSpan = Math.max(span.column, start);
+                    int regionStartInSpan = Math.max(column, start);
                     int regionEndInSpan = Math.min(end, spanEnd);
-                    if (regionStartInSpan == span.column) {
+                    if (regionStartInSpan == column) {
                         if (regionEndInSpan != spanEnd) {
                             increment = 2;
-                            Span nSpan = span.copy();
-                            nSpan.column = regionEndInSpan;
-                            spans.add(i + 1, nSpan);
+                            spans.split(i, regionEndInSpan);
                         }
-                        span.problemFlags |= newFlag;
+                        spans.setProblemFlags(i, spans.getProblemFlags(i) | newFlag);
                     } else {
-                        //regionStartInSpan > span.column
+                        //regionStartInSpan > column
                         if (regionEndInSpan == spanEnd) {
                             increment = 2;
-                            Span nSpan = span.copy();
-                            nSpan.column = regionStartInSpan;
-                            spans.add(i + 1, nSpan);
-                            nSpan.problemFlags |= newFlag;
+                            spans.split(i, regionStartInSpan);
                         } else {
                             increment = 3;
-                            Span span1 = span.copy();
-                            span1.column = regionStartInSpan;
-                            span1.problemFlags |= newFlag;
-                            Span span2 = span.copy();
-                            span2.column = regionEndInSpan;
-                            spans.add(i + 1, span1);
-                            spans.add(i + 2, span2);
+                            spans.split(i, regionStartInSpan);
+                            spans.split(i + 1, regionEndInSpan);
                         }
+                        spans.setProblemFlags(i + 1, spans.getProblemFlags(i + 1) | newFlag);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Get the spans of a line, copying them first if they are shared with a {@link LineStateCache}
+     */
+    private SpanLine getLineForModification(int line) {
+        SpanLine spans = mSpanMap.get(line);
+        if (mOwnedLines != null && !mOwnedLines.contains(spans)) {
+            SpanLine copy = spans.copy();
+            mSpanMap.set(line, copy);
+            mOwnedLines.add(copy);
+            spans = copy;
+        }
+        return spans;
+    }
+
+    /**
+     * Mark the span lines of this result as shared with a {@link LineStateCache}
+     */
+    void markShared() {
+        mOwnedLines = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Clear this result so it can be filled again
+     */
+    void reset() {
+        mSpanMap.clear();
+        mLast = null;
+        mBlocks.clear();
+        mSuppressSwitch = Integer.MAX_VALUE;
+        mLabels = null;
+        mExtra = null;
+        mOwnedLines = null;
+        determined = false;
+    }
+
 }
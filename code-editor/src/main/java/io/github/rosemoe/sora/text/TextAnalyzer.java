@@ -24,12 +24,14 @@ package io.github.rosemoe.sora.text;
 
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import io.github.rosemoe.sora.interfaces.CodeAnalyzer;
+import io.github.rosemoe.sora.interfaces.IncrementalCodeAnalyzer;
 import io.github.rosemoe.sora.data.BlockLine;
 import io.github.rosemoe.sora.data.ObjectAllocator;
-import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.data.SpanLine;
 
 /**
  * This is a manager of analyzing text
@@ -38,6 +40,8 @@ import io.github.rosemoe.sora.data.Span;
  */
 public class TextAnalyzer {
 
+    private static final int EDIT_INSERT = 0;
+    private static final int EDIT_DELETE = 1;
     private static int sThreadId = 0;
     public final RecycleObjContainer mObjContainer = new RecycleObjContainer();
     private final Object mLock = new Object();
@@ -49,6 +53,18 @@ public class TextAnalyzer {
     private Callback mCallback;
     private AnalyzeThread mThread;
     private final CodeAnalyzer mCodeAnalyzer;
+    /**
+     * Line cache of incremental analyzers, null if the analyzer does not support it
+     */
+    private final LineStateCache<?> mLineCache;
+    /**
+     * Edits made since the analysis thread last looked at them, as {start line, end line, type}
+     */
+    private final List<int[]> mEdits = new ArrayList<>();
+    /**
+     * Count of edits in {@link #mEdits} that are in the last snapshot sent to the thread
+     */
+    private int mSnapshotEdits;
     /**
      * Create a new manager for the given codeAnalyzer
      *
@@ -61,6 +77,15 @@ public class TextAnalyzer {
         mResult = new TextAnalyzeResult();
         mResult.addNormalIfNull();
         mCodeAnalyzer = codeAnalyzer0;
+        if (codeAnalyzer0 instanceof IncrementalCodeAnalyzer) {
+            mLineCache = createLineCache((IncrementalCodeAnalyzer<?>) codeAnalyzer0);
+        } else {
+            mLineCache = null;
+        }
+    }
+
+    private static <S> LineStateCache<S> createLineCache(IncrementalCodeAnalyzer<S> analyzer) {
+        return new LineStateCache<>(analyzer);
     }
 
     private synchronized static int nextThreadId() {
@@ -95,6 +120,48 @@ public class TextAnalyzer {
         mObjContainer.recycle();
     }
 
+    /**
+     * Called after text is inserted so that incremental analyzers only re-analyze the
+     * affected lines. Must be called before {@link #analyze(Content)}
+     */
+    public void notifyInsert(int startLine, int endLine) {
+        addEdit(startLine, endLine, EDIT_INSERT);
+    }
+
+    /**
+     * Called after text is deleted so that incremental analyzers only re-analyze the
+     * affected lines. Must be called before {@link #analyze(Content)}
+     */
+    public void notifyDelete(int startLine, int endLine) {
+        addEdit(startLine, endLine, EDIT_DELETE);
+    }
+
+    private void addEdit(int startLine, int endLine, int type) {
+        if (mLineCache == null) {
+            return;
+        }
+        synchronized (mEdits) {
+            mEdits.add(new int[]{startLine, endLine, type});
+        }
+    }
+
+    /**
+     * Apply the edits that are in the last snapshot to the line cache, called from the analysis
+     * thread with the lock of {@link #mEdits}
+     */
+    private void applyEdits() {
+        List<int[]> edits = mEdits.subList(0, mSnapshotEdits);
+        for (int[] edit : edits) {
+            if (edit[2] == EDIT_INSERT) {
+                mLineCache.onInsert(edit[0], edit[1]);
+            } else {
+                mLineCache.onDelete(edit[0], edit[1]);
+            }
+        }
+        edits.clear();
+        mSnapshotEdits = 0;
+    }
+
     /**
      * Analyze the given text
      *
@@ -110,18 +177,23 @@ public class TextAnalyzer {
      * @param origin The source text
      */
     public synchronized void analyze(Content origin, boolean bg) {
+        ContentSnapshot snapshot = origin.snapshot();
         AnalyzeThread thread = this.mThread;
-        if (thread == null || !thread.isAlive()) {
-            Log.d("TextAnalyzer", "Starting a new thread for analyzing");
-            thread = this.mThread = new AnalyzeThread(mLock, mCodeAnalyzer, origin);
-            thread.setName("TextAnalyzeDaemon-" + nextThreadId());
-            thread.setDaemon(true);
-            thread.start();
-        } else {
-            thread.restartWith(origin, bg);
-            synchronized (mLock) {
-                mLock.notify();
+        // the snapshot is sent along with the edits in it
+        synchronized (mEdits) {
+            mSnapshotEdits = mEdits.size();
+            if (thread == null || !thread.isAlive()) {
+                Log.d("TextAnalyzer", "Starting a new thread for analyzing");
+                thread = this.mThread = new AnalyzeThread(mLock, mCodeAnalyzer, snapshot);
+                thread.setName("TextAnalyzeDaemon-" + nextThreadId());
+                thread.setDaemon(true);
+                thread.start();
+                return;
             }
+            thread.restartWith(snapshot, bg);
+        }
+        synchronized (mLock) {
+            mLock.notify();
         }
     }
 
@@ -158,13 +230,12 @@ public class TextAnalyzer {
      */
     public static class RecycleObjContainer {
 
-        public List<List<Span>> spanMap;
+        public List<SpanLine> spanMap;
 
         public List<BlockLine> blockLines;
 
         void recycle() {
             ObjectAllocator.recycleBlockLine(blockLines);
-            SpanRecycler.getInstance().recycle(spanMap);
             clear();
         }
 
@@ -182,17 +253,27 @@ public class TextAnalyzer {
 
         private final CodeAnalyzer codeAnalyzer;
         private final Object lock;
+        /**
+         * Whether a new request is received since the current analysis started
+         */
         private volatile boolean waiting = false;
-        private Content content;
+        /**
+         * The latest text to analyze
+         */
+        private volatile ContentSnapshot content;
+        /**
+         * The text being analyzed
+         */
+        private volatile ContentSnapshot analyzing;
         private boolean bg;
 
         /**
          * Create a new thread
          *
          * @param a       The CodeAnalyzer to call
-         * @param content The Content to analyze
+         * @param content The text to analyze
          */
-        public AnalyzeThread(Object lock, CodeAnalyzer a, Content content) {
+        public AnalyzeThread(Object lock, CodeAnalyzer a, ContentSnapshot content) {
             this.lock = lock;
             codeAnalyzer = a;
             this.content = content;
@@ -205,26 +286,28 @@ public class TextAnalyzer {
                     TextAnalyzeResult colors = new TextAnalyzeResult();
                     Delegate d = new Delegate();
                     mOpStartTime = System.currentTimeMillis();
+                    boolean stale;
                     do {
                         waiting = false;
-                        StringBuilder c = content.toStringBuilder();
+                        ContentSnapshot text = takeSnapshot();
                         if (bg) {
-                            codeAnalyzer.analyzeInBackground(c);
+                            codeAnalyzer.analyzeInBackground(text);
                         }
-                        codeAnalyzer.analyze(c, colors, d);
-                        if (waiting) {
-                            colors.mSpanMap.clear();
-                            colors.mLast = null;
-                            colors.mBlocks.clear();
-                            colors.mSuppressSwitch = Integer.MAX_VALUE;
-                            colors.mLabels = null;
-                            colors.mExtra = null;
-                            colors.determined = false;
+                        if (mLineCache != null) {
+                            analyzeIncrementally(text, colors, d);
+                        } else {
+                            codeAnalyzer.analyze(text, colors, d);
                         }
-                    } while (waiting);
+                        // results of an outdated text are discarded, a new request for
+                        // the same text does not interrupt the analysis
+                        stale = isStale();
+                        if (stale) {
+                            colors.reset();
+                        }
+                    } while (stale);
 
                     mObjContainer.blockLines = mResult.mBlocks;
-                    mObjContainer.spanMap = mResult.mSpanMap;
+                    mObjContainer.spanMap = mResult.getSpanMap();
                     mResult = colors;
                     colors.addNormalIfNull();
                     try {
@@ -236,7 +319,9 @@ public class TextAnalyzer {
 
                     try {
                         synchronized (lock) {
-                            lock.wait();
+                            if (!waiting) {
+                                lock.wait();
+                            }
                         }
                     } catch (InterruptedException e) {
                         Log.d("AnalyzeThread", "Analyze daemon is being interrupted -> Exit");
@@ -248,13 +333,46 @@ public class TextAnalyzer {
             }
         }
 
+        /**
+         * Take the latest text along with the edits in it
+         */
+        private ContentSnapshot takeSnapshot() {
+            synchronized (mEdits) {
+                if (mLineCache != null) {
+                    applyEdits();
+                }
+                analyzing = content;
+                return analyzing;
+            }
+        }
+
+        private boolean isStale() {
+            ContentSnapshot text = analyzing;
+            return text != null && text.getVersion() != content.getVersion();
+        }
+
+        private void analyzeIncrementally(CharSequence text, TextAnalyzeResult colors,
+                                          Delegate d) {
+            try {
+                if (mLineCache.analyze(text, d)) {
+                    mLineCache.fill(colors, true);
+                    ((IncrementalCodeAnalyzer<?>) codeAnalyzer).afterAnalyze(text, colors);
+                }
+            } catch (RuntimeException e) {
+                Log.w("AnalyzeThread", "Incremental analysis failed, analyzing whole text", e);
+                mLineCache.invalidate();
+                colors.reset();
+                codeAnalyzer.analyze(text, colors, d);
+            }
+        }
+
         /**
          * New content has been sent
-         * Notify us to restart
+         * Notify us to restart if the text is changed
          *
          * @param content New source
          */
-        public synchronized void restartWith(Content content, boolean bg) {
+        public synchronized void restartWith(ContentSnapshot content, boolean bg) {
             waiting = true;
             this.bg = bg;
             this.content = content;
@@ -267,13 +385,13 @@ public class TextAnalyzer {
         public class Delegate {
 
             /**
-             * Whether new input is set
-             * If it returns true,you should stop your tokenizing at once
+             * Whether the text being analyzed is still the latest one
+             * If it returns false,you should stop your tokenizing at once
              *
-             * @return Whether re-analyze required
+             * @return Whether analysis should continue
              */
             public boolean shouldAnalyze() {
-                return !waiting;
+                return !isStale();
             }
 
         }
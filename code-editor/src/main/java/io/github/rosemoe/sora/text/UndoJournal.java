@@ -0,0 +1,599 @@
+/*
+ *    CodeEditor - the awesome code editor for Android
+ *    Copyright (C) 2020-2021  Rosemoe
+ *
+ *     This library is free software; you can redistribute it and/or
+ *     modify it under the terms of the GNU Lesser General Public
+ *     License as published by the Free Software Foundation; either
+ *     version 2.1 of the License, or (at your option) any later version.
+ *
+ *     This library is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *     Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public
+ *     License along with this library; if not, write to the Free Software
+ *     Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ *     USA
+ *
+ *     Please contact Rosemoe by email 2073412493@qq.com if you need
+ *     additional information or have any questions
+ */
+package io.github.rosemoe.sora.text;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stack of {@link UndoManager.ContentAction}s stored in a file, for the oldest actions of an
+ * {@link UndoManager}.
+ * <p>
+ * The newest actions of the stack are kept in memory, and are written to the file in batches
+ * on a background thread once there are too many of them. When they have been undone, the
+ * next actions are read back from the file in the background as well, so pushing and popping
+ * actions only waits for the file if the actions in memory run out before they are read.
+ * <p>
+ * The file starts with a header holding a checksum of the text the newest action leads to.
+ * It is only written by {@link #save(Content, List)}, and cleared as soon as the journal
+ * changes, so the actions are reused by {@link #open(Content)} only if the text is unchanged
+ * since the journal was saved. Each action is stored between two copies of its length so that
+ * the stack can be read from both ends.
+ * <p>
+ * Errors are logged and leave the journal empty, the history is just shorter in that case.
+ */
+final class UndoJournal {
+
+    private static final String LOG_TAG = "UndoJournal";
+    private static final int MAGIC = 0x534f5255;
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte TYPE_INSERT = 0;
+    private static final byte TYPE_DELETE = 1;
+    private static final byte TYPE_REPLACE = 2;
+    private static final byte TYPE_MULTI = 3;
+
+    /**
+     * Count and estimated memory of the actions kept in memory above which the oldest of them
+     * are written to the file, until half of each is left
+     */
+    private static final int MAX_TAIL_SIZE = 32;
+    private static final long MAX_TAIL_MEMORY = 1024 * 1024;
+
+    /**
+     * All the journals share one thread, so the writes of a journal are done before the
+     * same file is opened again
+     */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, LOG_TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File mFile;
+    private final long mMaxSize;
+
+    /*
+     * Accessed by the thread using the journal, guarded by mLock as the background thread
+     * updates them when actions are read back or dropped
+     */
+    private final Object mLock = new Object();
+    private final ArrayDeque<UndoManager.ContentAction> mTail = new ArrayDeque<>();
+    private long mTailMemory;
+    private int mFileSize;
+    /**
+     * Incremented whenever the actions in the file change, so that actions read back in the
+     * meantime are not put before actions that were written after them
+     */
+    private int mVersion;
+    private boolean mReading;
+
+    /*
+     * Only accessed on the background thread
+     */
+    private RandomAccessFile mRaf;
+    private int mWrittenSize;
+    private boolean mSaved;
+    /**
+     * Length of the file before the copies of the actions written by the last save, or -1,
+     * and the count of these copies
+     */
+    private long mCopiesStart = -1;
+    private int mCopiesSize;
+
+    /**
+     * @param file    The file of the journal
+     * @param maxSize Size of the file above which the oldest half of the actions is dropped
+     */
+    UndoJournal(File file, long maxSize) {
+        mFile = file;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Open the file, the actions in it are kept if they were saved for the given text.
+     * Waits for the journals that used the file before to finish writing it.
+     */
+    void open(Content content) {
+        long checksum = checksum(content);
+        await(sExecutor.submit(() -> {
+            try {
+                File parent = mFile.getParentFile();
+                if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                    throw new IOException("Unable to create " + parent);
+                }
+                mRaf = new RandomAccessFile(mFile, "rw");
+                if (mRaf.length() >= HEADER_SIZE) {
+                    mRaf.seek(0);
+                    int magic = mRaf.readInt();
+                    long savedChecksum = mRaf.readLong();
+                    int size = mRaf.readInt();
+                    if (magic == MAGIC && savedChecksum == checksum) {
+                        mWrittenSize = size;
+                        mSaved = true;
+                        synchronized (mLock) {
+                            mFileSize = size;
+                        }
+                        return;
+                    }
+                }
+                truncate();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }));
+    }
+
+    /**
+     * @return Count of actions in the journal
+     */
+    int size() {
+        synchronized (mLock) {
+            return mFileSize + mTail.size();
+        }
+    }
+
+    /**
+     * Add an action on top of the stack
+     */
+    void push(UndoManager.ContentAction action) {
+        List<UndoManager.ContentAction> batch = null;
+        synchronized (mLock) {
+            mTail.addLast(action);
+            mTailMemory += action.getMemoryUsage();
+            if (mTail.size() > MAX_TAIL_SIZE || mTailMemory > MAX_TAIL_MEMORY) {
+                batch = new ArrayList<>();
+                while (!mTail.isEmpty() && (mTail.size() > MAX_TAIL_SIZE / 2 ||
+                        mTailMemory > MAX_TAIL_MEMORY / 2)) {
+                    batch.add(removeFirst());
+                }
+                mFileSize += batch.size();
+                mVersion++;
+            }
+        }
+        if (batch != null) {
+            submitWrite(batch);
+        }
+    }
+
+    /**
+     * Remove the action on top of the stack. Only waits for the file if the actions in memory
+     * have all been popped before the next ones were read.
+     *
+     * @return The action, or null if the journal is empty
+     */
+    UndoManager.ContentAction pop() {
+        UndoManager.ContentAction action = removeLast();
+        if (action == null && size() > 0) {
+            await(read());
+            action = removeLast();
+        }
+        prefetch();
+        return action;
+    }
+
+    /**
+     * Start reading the next actions from the file if few actions are left in memory, so
+     * that they can be popped without waiting
+     */
+    void prefetch() {
+        synchronized (mLock) {
+            if (mReading || mFileSize == 0 || mTail.size() >= MAX_TAIL_SIZE / 4) {
+                return;
+            }
+        }
+        read();
+    }
+
+    /**
+     * Record that the given actions, which are newer than the actions in the journal, lead to
+     * the text of the given content, so the journal can be opened again with that text. The
+     * actions stay in the caller's history, they are only copied to the file.
+     */
+    void save(Content content, List<UndoManager.ContentAction> actions) {
+        List<UndoManager.ContentAction> batch;
+        synchronized (mLock) {
+            batch = new ArrayList<>(mTail);
+            mTail.clear();
+            mTailMemory = 0;
+            mFileSize += batch.size();
+            mVersion++;
+        }
+        if (!batch.isEmpty()) {
+            submitWrite(batch);
+        }
+
+        // the actions may still change, so they are written down now
+        long checksum = checksum(content);
+        List<byte[]> copies = new ArrayList<>(actions.size());
+        try {
+            for (UndoManager.ContentAction action : actions) {
+                copies.add(toBytes(action));
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to save undo journal " + mFile, e);
+            return;
+        }
+        sExecutor.execute(() -> {
+            if (mRaf == null) {
+                return;
+            }
+            try {
+                invalidate();
+                mCopiesStart = mRaf.length();
+                mCopiesSize = copies.size();
+                for (byte[] bytes : copies) {
+                    append(bytes);
+                }
+                writeHeader(checksum, mWrittenSize);
+                mSaved = true;
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+    }
+
+    void clear() {
+        synchronized (mLock) {
+            mTail.clear();
+            mTailMemory = 0;
+            mFileSize = 0;
+            mVersion++;
+        }
+        sExecutor.execute(() -> {
+            if (mRaf == null) {
+                return;
+            }
+            try {
+                truncate();
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+    }
+
+    void close() {
+        synchronized (mLock) {
+            mTail.clear();
+            mTailMemory = 0;
+            mFileSize = 0;
+            mVersion++;
+        }
+        sExecutor.execute(() -> {
+            if (mRaf != null) {
+                try {
+                    mRaf.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, e);
+                }
+                mRaf = null;
+            }
+        });
+    }
+
+    private UndoManager.ContentAction removeLast() {
+        synchronized (mLock) {
+            if (mTail.isEmpty()) {
+                return null;
+            }
+            UndoManager.ContentAction action = mTail.removeLast();
+            mTailMemory -= action.getMemoryUsage();
+            return action;
+        }
+    }
+
+    private UndoManager.ContentAction removeFirst() {
+        UndoManager.ContentAction action = mTail.removeFirst();
+        mTailMemory -= action.getMemoryUsage();
+        return action;
+    }
+
+    private void submitWrite(List<UndoManager.ContentAction> batch) {
+        // the actions are no longer modified once they are in the journal
+        sExecutor.execute(() -> {
+            if (mRaf == null) {
+                return;
+            }
+            try {
+                invalidate();
+                for (UndoManager.ContentAction action : batch) {
+                    append(toBytes(action));
+                }
+                if (mRaf.length() > mMaxSize) {
+                    dropOldest();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+    }
+
+    /**
+     * Read the newest actions of the file back into memory, they are dropped if the file
+     * changed in the meantime
+     */
+    private Future<?> read() {
+        int version;
+        synchronized (mLock) {
+            mReading = true;
+            version = mVersion;
+        }
+        return sExecutor.submit(() -> {
+            try {
+                if (mRaf == null) {
+                    return;
+                }
+                invalidate();
+                List<UndoManager.ContentAction> actions = new ArrayList<>();
+                long memory = 0;
+                long end = mRaf.length();
+                while (actions.size() < mWrittenSize && actions.size() < MAX_TAIL_SIZE / 2 &&
+                        memory < MAX_TAIL_MEMORY / 2) {
+                    mRaf.seek(end - 4);
+                    int length = mRaf.readInt();
+                    end -= 8 + length;
+                    byte[] bytes = new byte[length];
+                    mRaf.seek(end + 4);
+                    mRaf.readFully(bytes);
+                    UndoManager.ContentAction action =
+                            read(new DataInputStream(new ByteArrayInputStream(bytes)));
+                    actions.add(action);
+                    memory += action.getMemoryUsage();
+                }
+                synchronized (mLock) {
+                    if (version != mVersion) {
+                        return;
+                    }
+                    // the actions were read from the newest one
+                    for (UndoManager.ContentAction action : actions) {
+                        mTail.addFirst(action);
+                    }
+                    mTailMemory += memory;
+                    mFileSize -= actions.size();
+                }
+                // actions pushed from now on are written after this
+                mRaf.setLength(end);
+                mWrittenSize -= actions.size();
+            } catch (IOException e) {
+                fail(e);
+            } finally {
+                synchronized (mLock) {
+                    mReading = false;
+                }
+            }
+        });
+    }
+
+    private void append(byte[] bytes) throws IOException {
+        mRaf.seek(mRaf.length());
+        mRaf.writeInt(bytes.length);
+        mRaf.write(bytes);
+        mRaf.writeInt(bytes.length);
+        mWrittenSize++;
+    }
+
+    /**
+     * Clear the header and remove the copies of the last save, as the actions are about to
+     * change
+     */
+    private void invalidate() throws IOException {
+        if (mSaved) {
+            if (mCopiesStart >= 0) {
+                mRaf.setLength(mCopiesStart);
+                mWrittenSize -= mCopiesSize;
+                mCopiesStart = -1;
+            }
+            writeHeader(0, mWrittenSize);
+            mSaved = false;
+        }
+    }
+
+    private void truncate() throws IOException {
+        mRaf.setLength(0);
+        mWrittenSize = 0;
+        mSaved = false;
+        mCopiesStart = -1;
+        writeHeader(0, 0);
+    }
+
+    private void writeHeader(long checksum, int size) throws IOException {
+        mRaf.seek(0);
+        mRaf.writeInt(MAGIC);
+        mRaf.writeLong(checksum);
+        mRaf.writeInt(size);
+    }
+
+    private void dropOldest() throws IOException {
+        long length = mRaf.length();
+        long position = HEADER_SIZE;
+        int dropped = 0;
+        while (length - position > mMaxSize / 2 && dropped < mWrittenSize - 1) {
+            mRaf.seek(position);
+            position += mRaf.readInt() + 8;
+            dropped++;
+        }
+        byte[] buffer = new byte[8192];
+        long read = position, write = HEADER_SIZE;
+        while (read < length) {
+            mRaf.seek(read);
+            int count = mRaf.read(buffer, 0, (int) Math.min(buffer.length, length - read));
+            mRaf.seek(write);
+            mRaf.write(buffer, 0, count);
+            read += count;
+            write += count;
+        }
+        mRaf.setLength(write);
+        mWrittenSize -= dropped;
+        synchronized (mLock) {
+            mFileSize -= dropped;
+        }
+    }
+
+    private void fail(IOException e) {
+        Log.w(LOG_TAG, "Undo journal " + mFile + " is disabled", e);
+        if (mRaf != null) {
+            try {
+                mRaf.close();
+            } catch (IOException ignored) {
+            }
+            mRaf = null;
+        }
+        mWrittenSize = 0;
+        synchronized (mLock) {
+            mFileSize = 0;
+            mVersion++;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(LOG_TAG, "Undo journal task failed", e.getCause());
+        }
+    }
+
+    private static byte[] toBytes(UndoManager.ContentAction action) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(new DataOutputStream(bytes), action);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Checksum of the text of a content, never 0
+     */
+    static long checksum(Content content) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < content.getLineCount(); i++) {
+            ContentLine line = content.getLine(i);
+            for (int j = 0; j < line.length(); j++) {
+                hash = 31 * hash + line.charAt(j);
+            }
+            hash = 31 * hash + '\n';
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static void write(DataOutputStream out, UndoManager.ContentAction action) throws IOException {
+        if (action instanceof UndoManager.InsertAction) {
+            UndoManager.InsertAction insert = (UndoManager.InsertAction) action;
+            out.writeByte(TYPE_INSERT);
+            writeRange(out, insert.startLine, insert.startColumn, insert.endLine, insert.endColumn, insert.text);
+        } else if (action instanceof UndoManager.DeleteAction) {
+            UndoManager.DeleteAction delete = (UndoManager.DeleteAction) action;
+            out.writeByte(TYPE_DELETE);
+            writeRange(out, delete.startLine, delete.startColumn, delete.endLine, delete.endColumn, delete.text);
+        } else if (action instanceof UndoManager.ReplaceAction) {
+            UndoManager.ReplaceAction replace = (UndoManager.ReplaceAction) action;
+            out.writeByte(TYPE_REPLACE);
+            write(out, replace._delete);
+            write(out, replace._insert);
+        } else if (action instanceof UndoManager.MultiAction) {
+            List<UndoManager.ContentAction> actions = ((UndoManager.MultiAction) action).getActions();
+            out.writeByte(TYPE_MULTI);
+            out.writeInt(actions.size());
+            for (UndoManager.ContentAction child : actions) {
+                write(out, child);
+            }
+        } else {
+            throw new IOException("Unknown action " + action);
+        }
+    }
+
+    private static void writeRange(DataOutputStream out, int startLine, int startColumn, int endLine, int endColumn, CharSequence text) throws IOException {
+        out.writeInt(startLine);
+        out.writeInt(startColumn);
+        out.writeInt(endLine);
+        out.writeInt(endColumn);
+        out.writeInt(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            out.writeChar(text.charAt(i));
+        }
+    }
+
+    private static UndoManager.ContentAction read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_INSERT: {
+                UndoManager.InsertAction insert = new UndoManager.InsertAction();
+                insert.startLine = in.readInt();
+                insert.startColumn = in.readInt();
+                insert.endLine = in.readInt();
+                insert.endColumn = in.readInt();
+                insert.text = readText(in);
+                return insert;
+            }
+            case TYPE_DELETE: {
+                UndoManager.DeleteAction delete = new UndoManager.DeleteAction();
+                delete.startLine = in.readInt();
+                delete.startColumn = in.readInt();
+                delete.endLine = in.readInt();
+                delete.endColumn = in.readInt();
+                delete.text = readText(in);
+                return delete;
+            }
+            case TYPE_REPLACE: {
+                UndoManager.ReplaceAction replace = new UndoManager.ReplaceAction();
+                replace._delete = (UndoManager.DeleteAction) read(in);
+                replace._insert = (UndoManager.InsertAction) read(in);
+                return replace;
+            }
+            case TYPE_MULTI: {
+                UndoManager.MultiAction multi = new UndoManager.MultiAction();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    multi.addAction(read(in));
+                }
+                return multi;
+            }
+            default:
+                throw new IOException("Unknown action type " + type);
+        }
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        char[] chars = new char[in.readInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+}
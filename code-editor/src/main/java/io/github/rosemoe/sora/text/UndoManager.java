@@ -22,25 +22,54 @@
  */
 package io.github.rosemoe.sora.text;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Helper class for Content to take down modification
  * As well as provide Undo/Redo actions
+ * <p>
+ * The history is limited both by count of actions and by the memory their texts take. Oldest
+ * actions beyond these limits are dropped, or moved to an {@link UndoJournal} if one is set.
  *
  * @author Rose
  */
 final class UndoManager implements ContentListener {
 
+    /**
+     * Replacements of at least so many chars are recorded as the replacements of the changed
+     * lines only
+     */
+    static final int DIFF_THRESHOLD = 8192;
+
+    /**
+     * Estimated size of an action object, without its text
+     */
+    private static final int OBJECT_SIZE = 48;
+
+    /**
+     * Count of actions left in memory below which the next actions of the journal are read
+     * in the background
+     */
+    private static final int PREFETCH_THRESHOLD = 8;
+
     private final List<ContentAction> mActionStack;
     private boolean mUndoEnabled;
     private int mMaxStackSize;
+    private long mMaxMemory;
+    private long mMemoryUsage;
     private InsertAction mInsertAction;
     private DeleteAction mDeleteAction;
     private boolean mReplaceMark;
     private int mStackPointer;
     private boolean mIgnoreModification;
+    /**
+     * Action receiving the modifications of the current batch edit
+     */
+    private MultiAction mBatchAction;
+    private UndoJournal mJournal;
 
     /**
      * Create an UndoManager
@@ -52,6 +81,7 @@ final class UndoManager implements ContentListener {
         mDeleteAction = null;
         mStackPointer = 0;
         mIgnoreModification = false;
+        mMaxMemory = Long.MAX_VALUE;
     }
 
     /**
@@ -62,8 +92,22 @@ final class UndoManager implements ContentListener {
     public void undo(Content content) {
         if (canUndo()) {
             mIgnoreModification = true;
-            mActionStack.get(mStackPointer - 1).undo(content);
-            mStackPointer--;
+            mBatchAction = null;
+            if (mStackPointer == 0) {
+                ContentAction action = mJournal.pop();
+                if (action != null) {
+                    action.undo(content);
+                    mActionStack.add(0, action);
+                    mMemoryUsage += action.getMemoryUsage();
+                    cleanStack();
+                }
+            } else {
+                mActionStack.get(mStackPointer - 1).undo(content);
+                mStackPointer--;
+                if (mJournal != null && mStackPointer < PREFETCH_THRESHOLD) {
+                    mJournal.prefetch();
+                }
+            }
             mIgnoreModification = false;
         }
     }
@@ -76,6 +120,7 @@ final class UndoManager implements ContentListener {
     public void redo(Content content) {
         if (canRedo()) {
             mIgnoreModification = true;
+            mBatchAction = null;
             mActionStack.get(mStackPointer).redo(content);
             mStackPointer++;
             mIgnoreModification = false;
@@ -88,7 +133,7 @@ final class UndoManager implements ContentListener {
      * @return Whether can undo
      */
     public boolean canUndo() {
-        return isUndoEnabled() && (mStackPointer > 0);
+        return isUndoEnabled() && (mStackPointer > 0 || (mJournal != null && mJournal.size() > 0));
     }
 
     /**
@@ -144,6 +189,81 @@ final class UndoManager implements ContentListener {
         cleanStack();
     }
 
+    /**
+     * Get the max memory taken by actions in memory
+     *
+     * @return max memory in bytes
+     */
+    public long getMaxUndoMemory() {
+        return mMaxMemory;
+    }
+
+    /**
+     * Set the max memory taken by actions in memory. The last action is always kept.
+     *
+     * @param maxMemory max memory in bytes
+     */
+    public void setMaxUndoMemory(long maxMemory) {
+        if (maxMemory <= 0) {
+            throw new IllegalArgumentException("max memory can not be zero or smaller");
+        }
+        mMaxMemory = maxMemory;
+        cleanStack();
+    }
+
+    /**
+     * Get the estimated memory taken by actions in memory
+     *
+     * @return memory in bytes
+     */
+    public long getMemoryUsage() {
+        return mMemoryUsage;
+    }
+
+    /**
+     * Move the oldest actions to a journal in the given file instead of dropping them.
+     * Actions already in the file are reused if it was saved by {@link #saveJournal(Content)}
+     * with the current text of the content.
+     *
+     * @param file    The file of the journal, or null to remove the journal
+     * @param maxSize Max size of the file
+     */
+    public void setJournal(Content content, File file, long maxSize) {
+        if (mJournal != null) {
+            mJournal.close();
+        }
+        if (file == null) {
+            mJournal = null;
+            return;
+        }
+        mJournal = new UndoJournal(file, maxSize);
+        mJournal.open(content);
+        if (!mUndoEnabled) {
+            mJournal.clear();
+        }
+    }
+
+    /**
+     * Copy the actions that can be undone to the journal, so that they can be restored by
+     * {@link #setJournal(Content, File, long)} while the text is unchanged. The actions stay
+     * in memory, and the file is written in the background. Actions that can be redone are
+     * kept in memory only.
+     */
+    public void saveJournal(Content content) {
+        if (mJournal == null || !mUndoEnabled) {
+            return;
+        }
+        mBatchAction = null;
+        mJournal.save(content, mActionStack.subList(0, mStackPointer));
+    }
+
+    /**
+     * Called when the outermost batch edit of the content ends
+     */
+    void onExitBatchEdit() {
+        mBatchAction = null;
+    }
+
     /**
      * Clean stack after add or state change
      * This is to limit stack size
@@ -152,10 +272,19 @@ final class UndoManager implements ContentListener {
         if (!mUndoEnabled) {
             mActionStack.clear();
             mStackPointer = 0;
+            mMemoryUsage = 0;
+            mBatchAction = null;
+            if (mJournal != null) {
+                mJournal.clear();
+            }
         } else {
-            while (mStackPointer > 1 && mActionStack.size() > mMaxStackSize) {
-                mActionStack.remove(0);
+            while (mStackPointer > 1 && (mActionStack.size() > mMaxStackSize || mMemoryUsage > mMaxMemory)) {
+                ContentAction action = mActionStack.remove(0);
+                mMemoryUsage -= action.getMemoryUsage();
                 mStackPointer--;
+                if (mJournal != null) {
+                    mJournal.push(action);
+                }
             }
         }
     }
@@ -166,7 +295,7 @@ final class UndoManager implements ContentListener {
      */
     private void cleanBeforePush() {
         while (mStackPointer < mActionStack.size()) {
-            mActionStack.remove(mActionStack.size() - 1);
+            mMemoryUsage -= mActionStack.remove(mActionStack.size() - 1).getMemoryUsage();
         }
     }
 
@@ -181,36 +310,31 @@ final class UndoManager implements ContentListener {
             return;
         }
         cleanBeforePush();
+        ContentAction last = mActionStack.isEmpty() ? null : mActionStack.get(mActionStack.size() - 1);
         if (content.isInBatchEdit()) {
-            if (mActionStack.isEmpty()) {
-                MultiAction a = new MultiAction();
-                a.addAction(action);
-                mActionStack.add(a);
-                mStackPointer++;
-            } else {
-                ContentAction a = mActionStack.get(mActionStack.size() - 1);
-                if (a instanceof MultiAction) {
-                    MultiAction ac = (MultiAction) a;
-                    ac.addAction(action);
+            if (mBatchAction == null) {
+                // Typing through an input method makes a batch edit per key
+                if (last instanceof MultiAction && ((MultiAction) last).canAppend(action)) {
+                    mBatchAction = (MultiAction) last;
                 } else {
-                    MultiAction ac = new MultiAction();
-                    ac.addAction(action);
-                    mActionStack.add(ac);
+                    mBatchAction = new MultiAction();
+                    mActionStack.add(mBatchAction);
                     mStackPointer++;
                 }
             }
+            long memory = mBatchAction.getMemoryUsage();
+            mBatchAction.addAction(action);
+            mMemoryUsage += mBatchAction.getMemoryUsage() - memory;
         } else {
-            if (mActionStack.isEmpty()) {
+            mBatchAction = null;
+            if (last != null && last.canMerge(action)) {
+                long memory = last.getMemoryUsage();
+                last.merge(action);
+                mMemoryUsage += last.getMemoryUsage() - memory;
+            } else {
                 mActionStack.add(action);
                 mStackPointer++;
-            } else {
-                ContentAction last = mActionStack.get(mActionStack.size() - 1);
-                if (last.canMerge(action)) {
-                    last.merge(action);
-                } else {
-                    mActionStack.add(action);
-                    mStackPointer++;
-                }
+                mMemoryUsage += action.getMemoryUsage();
             }
         }
         cleanStack();
@@ -237,10 +361,14 @@ final class UndoManager implements ContentListener {
         mInsertAction.endColumn = endColumn;
         mInsertAction.text = insertedContent;
         if (mReplaceMark) {
-            ReplaceAction rep = new ReplaceAction();
-            rep._delete = mDeleteAction;
-            rep._insert = mInsertAction;
-            pushAction(content, rep);
+            if (mDeleteAction.text.length() + insertedContent.length() >= DIFF_THRESHOLD) {
+                pushAction(content, LineDiff.diff(startLine, startColumn, mDeleteAction.text, insertedContent));
+            } else {
+                ReplaceAction rep = new ReplaceAction();
+                rep._delete = mDeleteAction;
+                rep._insert = mInsertAction;
+                pushAction(content, rep);
+            }
         } else {
             pushAction(content, mInsertAction);
         }
@@ -300,6 +428,13 @@ final class UndoManager implements ContentListener {
          */
         void merge(ContentAction action);
 
+        /**
+         * Get the estimated memory taken by this action
+         *
+         * @return memory in bytes
+         */
+        int getMemoryUsage();
+
     }
 
     /**
@@ -350,6 +485,11 @@ final class UndoManager implements ContentListener {
             sb.append(ac.text);
         }
 
+        @Override
+        public int getMemoryUsage() {
+            return OBJECT_SIZE + text.length() * 2;
+        }
+
     }
 
     /**
@@ -360,20 +500,36 @@ final class UndoManager implements ContentListener {
     public static final class MultiAction implements ContentAction {
 
         private final List<ContentAction> _actions = new ArrayList<>();
+        private int _memory = OBJECT_SIZE;
 
         public void addAction(ContentAction action) {
             if (_actions.isEmpty()) {
                 _actions.add(action);
+                _memory += action.getMemoryUsage();
             } else {
                 ContentAction last = _actions.get(_actions.size() - 1);
                 if (last.canMerge(action)) {
+                    int memory = last.getMemoryUsage();
                     last.merge(action);
+                    _memory += last.getMemoryUsage() - memory;
                 } else {
                     _actions.add(action);
+                    _memory += action.getMemoryUsage();
                 }
             }
         }
 
+        /**
+         * Whether the given action can be merged with the last action of this one
+         */
+        boolean canAppend(ContentAction action) {
+            return !_actions.isEmpty() && _actions.get(_actions.size() - 1).canMerge(action);
+        }
+
+        List<ContentAction> getActions() {
+            return Collections.unmodifiableList(_actions);
+        }
+
         @Override
         public void undo(Content content) {
             for (int i = _actions.size() - 1; i >= 0; i--) {
@@ -398,6 +554,11 @@ final class UndoManager implements ContentListener {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public int getMemoryUsage() {
+            return _memory;
+        }
+
     }
 
     /**
@@ -448,6 +609,11 @@ final class UndoManager implements ContentListener {
             sb.insert(0, ac.text);
         }
 
+        @Override
+        public int getMemoryUsage() {
+            return OBJECT_SIZE + text.length() * 2;
+        }
+
     }
 
     /**
@@ -482,5 +648,10 @@ final class UndoManager implements ContentListener {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public int getMemoryUsage() {
+            return OBJECT_SIZE + _insert.getMemoryUsage() + _delete.getMemoryUsage();
+        }
+
     }
 }
@@ -41,6 +41,7 @@ import android.graphics.RenderNode;
 import android.graphics.Typeface;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
 import android.text.InputType;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -48,6 +49,7 @@ import android.util.MutableInt;
 import android.util.TypedValue;
 import android.view.ActionMode;
 import android.view.GestureDetector;
+import android.view.Gravity;
 import android.view.InputDevice;
 import android.view.KeyEvent;
 import android.view.Menu;
@@ -65,8 +67,10 @@ import android.view.inputmethod.ExtractedTextRequest;
 import android.view.inputmethod.InputConnection;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.OverScroller;
 import android.widget.SearchView;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -84,7 +88,6 @@ import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import io.github.rosemoe.sora.R;
@@ -92,6 +95,7 @@ import io.github.rosemoe.sora.annotations.Experimental;
 import io.github.rosemoe.sora.data.BlockLine;
 import io.github.rosemoe.sora.data.CompletionItem;
 import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.data.SpanLine;
 import io.github.rosemoe.sora.graphics.BufferedDrawPoints;
 import io.github.rosemoe.sora.graphics.FontCache;
 import io.github.rosemoe.sora.interfaces.EditorEventListener;
@@ -344,6 +348,11 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
     }
 
     public void analyze(boolean runBgAnalyzer) {
+        // the text can only be read on the thread that modifies it
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            post(() -> analyze(runBgAnalyzer));
+            return;
+        }
         if (mSpanner != null) {
             mSpanner.analyze(getText(), runBgAnalyzer);
         }
@@ -1235,7 +1244,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
     }
 
     @RequiresApi(29)
-    protected void updateBoringLineDisplayList(RenderNode renderNode, int line, List<Span> spans) {
+    protected void updateBoringLineDisplayList(RenderNode renderNode, int line, SpanLine spans) {
         final float waveLength = getDpUnit() * 8;
         final float amplitude = getDpUnit() * 2;
         prepareLine(line);
@@ -1243,23 +1252,23 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
         float widthLine = measureText(mBuffer, 0, columnCount);
         renderNode.setPosition(0, 0, (int)widthLine, getRowHeight() + (int)amplitude);
         Canvas canvas = renderNode.beginRecording();
-        if (spans == null || spans.size() == 0) {
-            spans = new LinkedList<>();
-            spans.add(Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
+        if (spans == null || spans.isEmpty()) {
+            spans = SpanLine.of(EditorColorScheme.TEXT_NORMAL);
         }
         int spanOffset = 0;
         float paintingOffset = 0;
         int row = 0;
         float phi = 0f;
-        Span span = spans.get(spanOffset);
         // Draw by spans
-        while (columnCount > span.column) {
-            int spanEnd = spanOffset + 1 >= spans.size() ? columnCount : spans.get(spanOffset + 1).column;
+        while (columnCount > spans.getColumn(spanOffset)) {
+            int spanStart = spans.getColumn(spanOffset);
+            int problemFlags = spans.getProblemFlags(spanOffset);
+            int spanEnd = spanOffset + 1 >= spans.size() ? columnCount : spans.getColumn(spanOffset + 1);
             spanEnd = Math.min(columnCount, spanEnd);
-            int paintStart = span.column;
+            int paintStart = spanStart;
             int paintEnd = Math.min(columnCount, spanEnd);
             float width = measureText(mBuffer, paintStart, paintEnd - paintStart);
-            ExternalRenderer renderer = span.renderer;
+            ExternalRenderer renderer = spans.getRenderer(spanOffset);
 
             // Invoke external renderer preDraw
             if (renderer != null && renderer.requirePreDraw()) {
@@ -1275,27 +1284,27 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
             }
 
             // Draw text
-            drawRegionText(canvas, paintingOffset, getRowBaseline(row), line, paintStart, paintEnd, columnCount, mColors.getColor(span.colorId));
+            drawRegionText(canvas, paintingOffset, getRowBaseline(row), line, paintStart, paintEnd, columnCount, mColors.getColor(spans.getColorId(spanOffset)));
 
             // Draw strikethrough
-            if ((span.problemFlags & Span.FLAG_DEPRECATED) != 0) {
+            if ((problemFlags & Span.FLAG_DEPRECATED) != 0) {
                 mPaintOther.setColor(Color.BLACK);
                 canvas.drawLine(paintingOffset, getRowTop(row) + getRowHeight() / 2f, paintingOffset + width, getRowTop(row) + getRowHeight() / 2f, mPaintOther);
             }
 
             // Draw underline
-            if (span.underlineColor != 0) {
+            if (spans.getUnderlineColor(spanOffset) != 0) {
                 mRect.bottom = getRowBottom(row) - mDpUnit * 1;
                 mRect.top = mRect.bottom - getRowHeight() * 0.08f;
                 mRect.left = paintingOffset;
                 mRect.right = paintingOffset + width;
-                drawColor(canvas, span.underlineColor, mRect);
+                drawColor(canvas, spans.getUnderlineColor(spanOffset), mRect);
             }
 
             // Draw issue curly underline
-            if (span.problemFlags > 0 && Integer.highestOneBit(span.problemFlags) != Span.FLAG_DEPRECATED) {
+            if (problemFlags > 0 && Integer.highestOneBit(problemFlags) != Span.FLAG_DEPRECATED) {
                 int color = 0;
-                switch (Integer.highestOneBit(span.problemFlags)) {
+                switch (Integer.highestOneBit(problemFlags)) {
                     case Span.FLAG_ERROR:
                         color = mColors.getColor(EditorColorScheme.PROBLEM_ERROR);
                         break;
@@ -1306,10 +1315,10 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                         color = mColors.getColor(EditorColorScheme.PROBLEM_TYPO);
                         break;
                 }
-                if (color != 0 && span.column >= 0 && spanEnd - span.column >= 0) {
+                if (color != 0 && spanStart >= 0 && spanEnd - spanStart >= 0) {
                     // Start and end X offset
-                    float startOffset = measureText(mBuffer, 0, span.column);
-                    float lineWidth = measureText(mBuffer, Math.max(0, span.column), spanEnd - span.column) + phi;
+                    float startOffset = measureText(mBuffer, 0, spanStart);
+                    float lineWidth = measureText(mBuffer, Math.max(0, spanStart), spanEnd - spanStart) + phi;
                     float centerY = getRowBottom(row);
                     // Clip region due not to draw outside the horizontal region
                     canvas.save();
@@ -1355,9 +1364,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                 break;
             }
             spanOffset++;
-            if (spanOffset < spans.size()) {
-                span = spans.get(spanOffset);
-            } else {
+            if (spanOffset >= spans.size()) {
                 spanOffset--;
             }
         }
@@ -1368,9 +1375,9 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
         final float waveLength = getDpUnit() * 8;
         final float amplitude = getDpUnit() * 2;
         RowIterator rowIterator = mLayout.obtainRowIterator(getFirstVisibleRow());
-        List<Span> temporaryEmptySpans = null;
-        List<List<Span>> spanMap = mSpanner.getResult().getSpanMap();
-        List<Integer> matchedPositions = new ArrayList<>();
+        SpanLine temporaryEmptySpans = null;
+        List<SpanLine> spanMap = mSpanner.getResult().getSpanMap();
+        int[] matchedRegions = null;
         int currentLine = mCursor.isSelected() ? -1 : mCursor.getLeftLine();
         int currentLineBgColor = mColors.getColor(EditorColorScheme.CURRENT_LINE);
         int lastPreparedLine = -1;
@@ -1395,7 +1402,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
             int line = rowInf.lineIndex;
             int columnCount = mText.getColumnCount(line);
             if (lastPreparedLine != line) {
-                computeMatchedPositions(line, matchedPositions);
+                matchedRegions = mSearcher.getMatchedRegions(line);
                 prepareLine(line);
                 lastPreparedLine = line;
             }
@@ -1425,9 +1432,9 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
             }
 
             // Draw matched text background
-            if (!matchedPositions.isEmpty()) {
-                for (int position : matchedPositions) {
-                    drawRowRegionBackground(canvas, paintingOffset, row, firstVisibleChar, lastVisibleChar, position, position + mSearcher.mSearchText.length(), mColors.getColor(EditorColorScheme.MATCHED_TEXT_BACKGROUND));
+            if (matchedRegions != null) {
+                for (int i = 0; i < matchedRegions.length; i += 2) {
+                    drawRowRegionBackground(canvas, paintingOffset, row, firstVisibleChar, lastVisibleChar, matchedRegions[i], matchedRegions[i + 1], mColors.getColor(EditorColorScheme.MATCHED_TEXT_BACKGROUND));
                 }
             }
 
@@ -1493,30 +1500,30 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
             // Draw text here
             if (!mHardwareAccAllowed || !canvas.isHardwareAccelerated() || isWordwrap() || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
                 // Get spans
-                List<Span> spans = null;
+                SpanLine spans = null;
                 if (line < spanMap.size() && line >= 0) {
                     spans = spanMap.get(line);
                 }
-                if (spans == null || spans.size() == 0) {
+                if (spans == null || spans.isEmpty()) {
                     if (temporaryEmptySpans == null) {
-                        temporaryEmptySpans = new LinkedList<>();
-                        temporaryEmptySpans.add(Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
+                        temporaryEmptySpans = SpanLine.of(EditorColorScheme.TEXT_NORMAL);
                     }
                     spans = temporaryEmptySpans;
                 }
                 // Seek for first span
                 float phi = 0f;
                 while (spanOffset + 1 < spans.size()) {
-                    if (spans.get(spanOffset + 1).column <= firstVisibleChar) {
+                    if (spans.getColumn(spanOffset + 1) <= firstVisibleChar) {
                         // Update phi
-                        Span span = spans.get(spanOffset);
-                        if (span.problemFlags > 0 && Integer.highestOneBit(span.problemFlags) != Span.FLAG_DEPRECATED) {
+                        int spanStart = spans.getColumn(spanOffset);
+                        int problemFlags = spans.getProblemFlags(spanOffset);
+                        if (problemFlags > 0 && Integer.highestOneBit(problemFlags) != Span.FLAG_DEPRECATED) {
                             float lineWidth;
-                            int spanEnd = Math.min(rowInf.endColumn, spans.get(spanOffset + 1).column);
+                            int spanEnd = Math.min(rowInf.endColumn, spans.getColumn(spanOffset + 1));
                             if (isWordwrap()) {
-                                lineWidth = measureText(mBuffer, Math.max(firstVisibleChar, span.column), spanEnd - Math.max(firstVisibleChar, span.column)) + phi;
+                                lineWidth = measureText(mBuffer, Math.max(firstVisibleChar, spanStart), spanEnd - Math.max(firstVisibleChar, spanStart)) + phi;
                             } else {
-                                lineWidth = measureText(mBuffer, span.column, spanEnd - span.column) + phi;
+                                lineWidth = measureText(mBuffer, spanStart, spanEnd - spanStart) + phi;
                             }
                             int waveCount = (int) Math.ceil(lineWidth / waveLength);
                             phi = waveLength - (waveCount * waveLength - lineWidth);
@@ -1528,12 +1535,13 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                         break;
                     }
                 }
-                Span span = spans.get(spanOffset);
                 // Draw by spans
-                while (lastVisibleChar > span.column) {
-                    int spanEnd = spanOffset + 1 >= spans.size() ? columnCount : spans.get(spanOffset + 1).column;
+                while (lastVisibleChar > spans.getColumn(spanOffset)) {
+                    int spanStart = spans.getColumn(spanOffset);
+                    int problemFlags = spans.getProblemFlags(spanOffset);
+                    int spanEnd = spanOffset + 1 >= spans.size() ? columnCount : spans.getColumn(spanOffset + 1);
                     spanEnd = Math.min(columnCount, spanEnd);
-                    int paintStart = Math.max(firstVisibleChar, span.column);
+                    int paintStart = Math.max(firstVisibleChar, spanStart);
                     if (paintStart >= columnCount) {
                         break;
                     }
@@ -1542,7 +1550,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                         break;
                     }
                     float width = measureText(mBuffer, paintStart, paintEnd - paintStart);
-                    ExternalRenderer renderer = span.renderer;
+                    ExternalRenderer renderer = spans.getRenderer(spanOffset);
 
                     // Invoke external renderer preDraw
                     if (renderer != null && renderer.requirePreDraw()) {
@@ -1558,27 +1566,27 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                     }
 
                     // Draw text
-                    drawRegionText(canvas, paintingOffset, getRowBaseline(row) - getOffsetY(), line, paintStart, paintEnd, columnCount, mColors.getColor(span.colorId));
+                    drawRegionText(canvas, paintingOffset, getRowBaseline(row) - getOffsetY(), line, paintStart, paintEnd, columnCount, mColors.getColor(spans.getColorId(spanOffset)));
 
                     // Draw strikethrough
-                    if ((span.problemFlags & Span.FLAG_DEPRECATED) != 0) {
+                    if ((problemFlags & Span.FLAG_DEPRECATED) != 0) {
                         mPaintOther.setColor(Color.BLACK);
                         canvas.drawLine(paintingOffset, getRowTop(row) + getRowHeight() / 2f - getOffsetY(), paintingOffset + width, getRowTop(row) + getRowHeight() / 2f - getOffsetY(), mPaintOther);
                     }
 
                     // Draw underline
-                    if (span.underlineColor != 0) {
+                    if (spans.getUnderlineColor(spanOffset) != 0) {
                         mRect.bottom = getRowBottom(line) - getOffsetY() - mDpUnit * 1;
                         mRect.top = mRect.bottom - getRowHeight() * 0.08f;
                         mRect.left = paintingOffset;
                         mRect.right = paintingOffset + width;
-                        drawColor(canvas, span.underlineColor, mRect);
+                        drawColor(canvas, spans.getUnderlineColor(spanOffset), mRect);
                     }
 
                     // Draw issue curly underline
-                    if (span.problemFlags > 0 && Integer.highestOneBit(span.problemFlags) != Span.FLAG_DEPRECATED) {
+                    if (problemFlags > 0 && Integer.highestOneBit(problemFlags) != Span.FLAG_DEPRECATED) {
                         int color = 0;
-                        switch (Integer.highestOneBit(span.problemFlags)) {
+                        switch (Integer.highestOneBit(problemFlags)) {
                             case Span.FLAG_ERROR:
                                 color = mColors.getColor(EditorColorScheme.PROBLEM_ERROR);
                                 break;
@@ -1589,16 +1597,16 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                                 color = mColors.getColor(EditorColorScheme.PROBLEM_TYPO);
                                 break;
                         }
-                        if (color != 0 && span.column >= 0 && spanEnd - span.column >= 0) {
+                        if (color != 0 && spanStart >= 0 && spanEnd - spanStart >= 0) {
                             // Start and end X offset
                             float startOffset;
                             float lineWidth;
                             if (isWordwrap()) {
-                                startOffset = measureTextRegionOffset() + measureText(mBuffer, firstVisibleChar, Math.max(0, span.column - firstVisibleChar)) - getOffsetX();
-                                lineWidth = measureText(mBuffer, Math.max(firstVisibleChar, span.column), spanEnd - Math.max(firstVisibleChar, span.column)) + phi;
+                                startOffset = measureTextRegionOffset() + measureText(mBuffer, firstVisibleChar, Math.max(0, spanStart - firstVisibleChar)) - getOffsetX();
+                                lineWidth = measureText(mBuffer, Math.max(firstVisibleChar, spanStart), spanEnd - Math.max(firstVisibleChar, spanStart)) + phi;
                             } else {
-                                startOffset = measureTextRegionOffset() + measureText(mBuffer, 0, span.column) - getOffsetX();
-                                lineWidth = measureText(mBuffer, span.column, spanEnd - span.column) + phi;
+                                startOffset = measureTextRegionOffset() + measureText(mBuffer, 0, spanStart) - getOffsetX();
+                                lineWidth = measureText(mBuffer, spanStart, spanEnd - spanStart) + phi;
                             }
                             float centerY = getRowBottom(row) - getOffsetY();
                             // Clip region due not to draw outside the horizontal region
@@ -1645,9 +1653,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                         break;
                     }
                     spanOffset++;
-                    if (spanOffset < spans.size()) {
-                        span = spans.get(spanOffset);
-                    } else {
+                    if (spanOffset >= spans.size()) {
                         spanOffset--;
                     }
                 }
@@ -1726,9 +1732,9 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
         final float waveLength = getDpUnit() * 8;
         final float amplitude = getDpUnit() * 2;
         RowIterator rowIterator = mLayout.obtainRowIterator(getFirstVisibleRow());
-        List<Span> temporaryEmptySpans = null;
-        List<List<Span>> spanMap = mSpanner.getResult().getSpanMap();
-        List<Integer> matchedPositions = new ArrayList<>();
+        SpanLine temporaryEmptySpans = null;
+        List<SpanLine> spanMap = mSpanner.getResult().getSpanMap();
+        int[] matchedRegions = null;
         int currentLine = mCursor.isSelected() ? -1 : mCursor.getLeftLine();
         int currentLineBgColor = mColors.getColor(EditorColorScheme.CURRENT_LINE);
         int lastPreparedLine = -1;
@@ -1753,7 +1759,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
             int line = rowInf.lineIndex;
             int columnCount = mText.getColumnCount(line);
             if (lastPreparedLine != line) {
-                computeMatchedPositions(line, matchedPositions);
+                matchedRegions = mSearcher.getMatchedRegions(line);
                 prepareLine(line);
                 lastPreparedLine = line;
             }
@@ -1783,9 +1789,9 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
             }
 
             // Draw matched text background
-            if (!matchedPositions.isEmpty()) {
-                for (int position : matchedPositions) {
-                    drawRowRegionBackground(canvas, paintingOffset, row, firstVisibleChar, lastVisibleChar, position, position + mSearcher.mSearchText.length(), mColors.getColor(EditorColorScheme.MATCHED_TEXT_BACKGROUND));
+            if (matchedRegions != null) {
+                for (int i = 0; i < matchedRegions.length; i += 2) {
+                    drawRowRegionBackground(canvas, paintingOffset, row, firstVisibleChar, lastVisibleChar, matchedRegions[i], matchedRegions[i + 1], mColors.getColor(EditorColorScheme.MATCHED_TEXT_BACKGROUND));
                 }
             }
 
@@ -1851,30 +1857,30 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
             // Draw text here
             if (!mHardwareAccAllowed || !canvas.isHardwareAccelerated() || isWordwrap() || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
                 // Get spans
-                List<Span> spans = null;
+                SpanLine spans = null;
                 if (line < spanMap.size() && line >= 0) {
                     spans = spanMap.get(line);
                 }
-                if (spans == null || spans.size() == 0) {
+                if (spans == null || spans.isEmpty()) {
                     if (temporaryEmptySpans == null) {
-                        temporaryEmptySpans = new LinkedList<>();
-                        temporaryEmptySpans.add(Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
+                        temporaryEmptySpans = SpanLine.of(EditorColorScheme.TEXT_NORMAL);
                     }
                     spans = temporaryEmptySpans;
                 }
                 // Seek for first span
                 float phi = 0f;
                 while (spanOffset + 1 < spans.size()) {
-                    if (spans.get(spanOffset + 1).column <= firstVisibleChar) {
+                    if (spans.getColumn(spanOffset + 1) <= firstVisibleChar) {
                         // Update phi
-                        Span span = spans.get(spanOffset);
-                        if (span.problemFlags > 0 && Integer.highestOneBit(span.problemFlags) != Span.FLAG_DEPRECATED) {
+                        int spanStart = spans.getColumn(spanOffset);
+                        int problemFlags = spans.getProblemFlags(spanOffset);
+                        if (problemFlags > 0 && Integer.highestOneBit(problemFlags) != Span.FLAG_DEPRECATED) {
                             float lineWidth;
-                            int spanEnd = Math.min(rowInf.endColumn, spans.get(spanOffset + 1).column);
+                            int spanEnd = Math.min(rowInf.endColumn, spans.getColumn(spanOffset + 1));
                             if (isWordwrap()) {
-                                lineWidth = measureText(mBuffer, Math.max(firstVisibleChar, span.column), spanEnd - Math.max(firstVisibleChar, span.column)) + phi;
+                                lineWidth = measureText(mBuffer, Math.max(firstVisibleChar, spanStart), spanEnd - Math.max(firstVisibleChar, spanStart)) + phi;
                             } else {
-                                lineWidth = measureText(mBuffer, span.column, spanEnd - span.column) + phi;
+                                lineWidth = measureText(mBuffer, spanStart, spanEnd - spanStart) + phi;
                             }
                             int waveCount = (int) Math.ceil(lineWidth / waveLength);
                             phi = waveLength - (waveCount * waveLength - lineWidth);
@@ -1886,12 +1892,13 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                         break;
                     }
                 }
-                Span span = spans.get(spanOffset);
                 // Draw by spans
-                while (lastVisibleChar > span.column) {
-                    int spanEnd = spanOffset + 1 >= spans.size() ? columnCount : spans.get(spanOffset + 1).column;
+                while (lastVisibleChar > spans.getColumn(spanOffset)) {
+                    int spanStart = spans.getColumn(spanOffset);
+                    int problemFlags = spans.getProblemFlags(spanOffset);
+                    int spanEnd = spanOffset + 1 >= spans.size() ? columnCount : spans.getColumn(spanOffset + 1);
                     spanEnd = Math.min(columnCount, spanEnd);
-                    int paintStart = Math.max(firstVisibleChar, span.column);
+                    int paintStart = Math.max(firstVisibleChar, spanStart);
                     if (paintStart >= columnCount) {
                         break;
                     }
@@ -1900,7 +1907,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                         break;
                     }
                     float width = measureText(mBuffer, paintStart, paintEnd - paintStart);
-                    ExternalRenderer renderer = span.renderer;
+                    ExternalRenderer renderer = spans.getRenderer(spanOffset);
 
                     // Invoke external renderer preDraw
                     if (renderer != null && renderer.requirePreDraw()) {
@@ -1916,27 +1923,27 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                     }
 
                     // Draw text
-                    drawRegionText(canvas, paintingOffset, getRowBaseline(row) - getOffsetY(), line, paintStart, paintEnd, columnCount, mColors.getColor(span.colorId));
+                    drawRegionText(canvas, paintingOffset, getRowBaseline(row) - getOffsetY(), line, paintStart, paintEnd, columnCount, mColors.getColor(spans.getColorId(spanOffset)));
 
                     // Draw strikethrough
-                    if ((span.problemFlags & Span.FLAG_DEPRECATED) != 0) {
+                    if ((problemFlags & Span.FLAG_DEPRECATED) != 0) {
                         mPaintOther.setColor(Color.BLACK);
                         canvas.drawLine(paintingOffset, getRowTop(row) + getRowHeight() / 2f - getOffsetY(), paintingOffset + width, getRowTop(row) + getRowHeight() / 2f - getOffsetY(), mPaintOther);
                     }
 
                     // Draw underline
-                    if (span.underlineColor != 0) {
+                    if (spans.getUnderlineColor(spanOffset) != 0) {
                         mRect.bottom = getRowBottom(line) - getOffsetY() - mDpUnit * 1;
                         mRect.top = mRect.bottom - getRowHeight() * 0.08f;
                         mRect.left = paintingOffset;
                         mRect.right = paintingOffset + width;
-                        drawColor(canvas, span.underlineColor, mRect);
+                        drawColor(canvas, spans.getUnderlineColor(spanOffset), mRect);
                     }
 
                     // Draw issue curly underline
-                    if (span.problemFlags > 0 && Integer.highestOneBit(span.problemFlags) != Span.FLAG_DEPRECATED) {
+                    if (problemFlags > 0 && Integer.highestOneBit(problemFlags) != Span.FLAG_DEPRECATED) {
                         int color = 0;
-                        switch (Integer.highestOneBit(span.problemFlags)) {
+                        switch (Integer.highestOneBit(problemFlags)) {
                             case Span.FLAG_ERROR:
                                 color = mColors.getColor(EditorColorScheme.PROBLEM_ERROR);
                                 break;
@@ -1947,16 +1954,16 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                                 color = mColors.getColor(EditorColorScheme.PROBLEM_TYPO);
                                 break;
                         }
-                        if (color != 0 && span.column >= 0 && spanEnd - span.column >= 0) {
+                        if (color != 0 && spanStart >= 0 && spanEnd - spanStart >= 0) {
                             // Start and end X offset
                             float startOffset;
                             float lineWidth;
                             if (isWordwrap()) {
-                                startOffset = measureTextRegionOffset() + measureText(mBuffer, firstVisibleChar, Math.max(0, span.column - firstVisibleChar)) - getOffsetX();
-                                lineWidth = measureText(mBuffer, Math.max(firstVisibleChar, span.column), spanEnd - Math.max(firstVisibleChar, span.column)) + phi;
+                                startOffset = measureTextRegionOffset() + measureText(mBuffer, firstVisibleChar, Math.max(0, spanStart - firstVisibleChar)) - getOffsetX();
+                                lineWidth = measureText(mBuffer, Math.max(firstVisibleChar, spanStart), spanEnd - Math.max(firstVisibleChar, spanStart)) + phi;
                             } else {
-                                startOffset = measureTextRegionOffset() + measureText(mBuffer, 0, span.column) - getOffsetX();
-                                lineWidth = measureText(mBuffer, span.column, spanEnd - span.column) + phi;
+                                startOffset = measureTextRegionOffset() + measureText(mBuffer, 0, spanStart) - getOffsetX();
+                                lineWidth = measureText(mBuffer, spanStart, spanEnd - spanStart) + phi;
                             }
                             float centerY = getRowBottom(row) - getOffsetY();
                             // Clip region due not to draw outside the horizontal region
@@ -2003,9 +2010,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                         break;
                     }
                     spanOffset++;
-                    if (spanOffset < spans.size()) {
-                        span = spans.get(spanOffset);
-                    } else {
+                    if (spanOffset >= spans.size()) {
                         spanOffset--;
                     }
                 }
@@ -2164,29 +2169,6 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
         return ch == '\t' || ch == ' ';
     }
 
-    /**
-     * Get matched text regions on line
-     *
-     * @param line      Target line
-     * @param positions Outputs start positions
-     */
-    protected void computeMatchedPositions(int line, List<Integer> positions) {
-        positions.clear();
-        CharSequence pattern = mSearcher.mSearchText;
-        if (pattern == null || pattern.length() == 0) {
-            return;
-        }
-        ContentLine seq = mText.getLine(line);
-        int index = 0;
-        while (index != -1) {
-            index = seq.indexOf(pattern, index);
-            if (index != -1) {
-                positions.add(index);
-                index += pattern.length();
-            }
-        }
-    }
-
     /**
      * Is inside the region
      *
@@ -2999,7 +2981,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
      * Whether span map is valid
      */
     protected boolean isSpanMapPrepared(boolean insert, int delta) {
-        List<List<Span>> map = mSpanner.getResult().getSpanMap();
+        List<SpanLine> map = mSpanner.getResult().getSpanMap();
         if (map != null) {
             if (insert) {
                 return map.size() == getLineCount() - delta;
@@ -3563,6 +3545,8 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
     public void beginSearchMode() {
         class SearchActionMode implements ActionMode.Callback {
 
+            private SearchView sv;
+
             @Override
             public boolean onCreateActionMode(ActionMode p1, Menu p2) {
                 mStartedActionMode = ACTION_MODE_SEARCH_TEXT;
@@ -3570,7 +3554,17 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                 p2.add(0, 1, 0, R.string.last).setShowAsActionFlags(MenuItem.SHOW_AS_ACTION_NEVER);
                 p2.add(0, 2, 0, R.string.replace).setShowAsActionFlags(MenuItem.SHOW_AS_ACTION_NEVER);
                 p2.add(0, 3, 0, R.string.replaceAll).setShowAsActionFlags(MenuItem.SHOW_AS_ACTION_NEVER);
-                SearchView sv = new SearchView(getContext());
+                EditorSearcher.SearchOptions options = getSearcher().getSearchOptions();
+                p2.add(0, 4, 0, R.string.match_case).setCheckable(true)
+                        .setChecked(!options.ignoreCase)
+                        .setShowAsActionFlags(MenuItem.SHOW_AS_ACTION_NEVER);
+                p2.add(0, 5, 0, R.string.regex).setCheckable(true)
+                        .setChecked(options.useRegex)
+                        .setShowAsActionFlags(MenuItem.SHOW_AS_ACTION_NEVER);
+                p2.add(0, 6, 0, R.string.whole_word).setCheckable(true)
+                        .setChecked(options.wholeWord)
+                        .setShowAsActionFlags(MenuItem.SHOW_AS_ACTION_NEVER);
+                sv = new SearchView(getContext());
                 sv.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
 
                     @Override
@@ -3586,7 +3580,17 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                     }
 
                 });
-                p1.setCustomView(sv);
+                TextView count = new TextView(getContext());
+                getSearcher().setOnMatchCountChangedListener(matchCount -> count.setText(
+                        matchCount == -1 ? "" : getContext().getString(R.string.match_count, matchCount)));
+
+                LinearLayout layout = new LinearLayout(getContext());
+                layout.setGravity(Gravity.CENTER_VERTICAL);
+                layout.addView(sv, new LinearLayout.LayoutParams(0,
+                        LinearLayout.LayoutParams.WRAP_CONTENT, 1));
+                layout.addView(count, new LinearLayout.LayoutParams(
+                        LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.WRAP_CONTENT));
+                p1.setCustomView(layout);
                 sv.performClick();
                 sv.setQueryHint(getContext().getString(R.string.text_to_search));
                 sv.setIconifiedByDefault(false);
@@ -3628,6 +3632,16 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
                                 })
                                 .show();
                         break;
+                    case 4:
+                    case 5:
+                    case 6:
+                        p2.setChecked(!p2.isChecked());
+                        Menu menu = am.getMenu();
+                        getSearcher().search(sv.getQuery().toString(),
+                                new EditorSearcher.SearchOptions(!menu.findItem(4).isChecked(),
+                                        menu.findItem(5).isChecked(),
+                                        menu.findItem(6).isChecked()));
+                        break;
                 }
                 return false;
             }
@@ -3635,6 +3649,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
             @Override
             public void onDestroyActionMode(ActionMode p1) {
                 mStartedActionMode = ACTION_MODE_NONE;
+                getSearcher().setOnMatchCountChangedListener(null);
                 getSearcher().stopSearch();
             }
 
@@ -4321,6 +4336,7 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
         TextAnalyzeResult colors = mSpanner.getResult();
         colors.getSpanMap().clear();
         mSpanner.analyze(getText());
+        mSearcher.restart();
 
         requestLayout();
 
@@ -5057,6 +5073,8 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
 
     @Override
     public void afterInsert(Content content, int startLine, int startColumn, int endLine, int endColumn, CharSequence insertedContent) {
+        mSpanner.notifyInsert(startLine, endLine);
+        mSearcher.onInsert(content, startLine, endLine);
         // Update spans
         if (isSpanMapPrepared(true, endLine - startLine)) {
             if (startLine == endLine) {
@@ -5131,6 +5149,8 @@ public class CodeEditor extends View implements ContentListener, TextAnalyzer.Ca
 
     @Override
     public void afterDelete(Content content, int startLine, int startColumn, int endLine, int endColumn, CharSequence deletedContent) {
+        mSpanner.notifyDelete(startLine, endLine);
+        mSearcher.onDelete(content, startLine, endLine);
         if (isSpanMapPrepared(false, endLine - startLine)) {
             if (startLine == endLine) {
                 SpanMapUpdater.shiftSpansOnSingleLineDelete(mSpanner.getResult().getSpanMap(), startLine, startColumn, endColumn);
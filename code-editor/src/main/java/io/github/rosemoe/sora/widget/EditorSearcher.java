@@ -22,22 +22,35 @@
  */
 package io.github.rosemoe.sora.widget;
 
-import android.app.ProgressDialog;
 import android.widget.Toast;
 
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 import io.github.rosemoe.sora.text.Content;
+import io.github.rosemoe.sora.text.ContentSnapshot;
 import io.github.rosemoe.sora.text.Cursor;
+import io.github.rosemoe.sora.text.MatchIndex;
 
 /**
  * Search text in editor
+ * <p>
+ * Matches are found on a background thread and kept in a {@link MatchIndex}, which is updated
+ * as the text is edited. The editor only reads the index to highlight matches.
  *
  * @author Rose
  */
-@SuppressWarnings("deprecated")
 public class EditorSearcher {
 
     private final CodeEditor mEditor;
     protected String mSearchText;
+    private SearchOptions mOptions = new SearchOptions(false, false, false);
+    private MatchIndex mIndex;
+    private SearchThread mThread;
+    private OnMatchCountChangedListener mListener;
 
     EditorSearcher(CodeEditor editor) {
         mEditor = editor;
@@ -50,21 +63,128 @@ public class EditorSearcher {
     }
 
     public void search(String text) {
+        search(text, mOptions);
+    }
+
+    /**
+     * Search the given text with the given options. Matches are highlighted once the search
+     * in background completes.
+     * An invalid regular expression matches nothing.
+     */
+    public void search(String text, SearchOptions options) {
         if (text != null && text.length() == 0) {
             text = null;
         }
         mSearchText = text;
+        mOptions = options;
+        restart();
+    }
+
+    public SearchOptions getSearchOptions() {
+        return mOptions;
+    }
+
+    /**
+     * Set a listener notified on the main thread when the count of matches changes, after a
+     * search completes or the text is edited
+     */
+    public void setOnMatchCountChangedListener(@Nullable OnMatchCountChangedListener listener) {
+        mListener = listener;
+    }
+
+    private void notifyMatchCount() {
+        if (mListener != null) {
+            mListener.onMatchCountChanged(getMatchCount());
+        }
+    }
+
+    /**
+     * Start searching the current text again
+     */
+    void restart() {
+        if (mThread != null) {
+            mThread.interrupt();
+            mThread = null;
+        }
+        mIndex = null;
+        if (mSearchText != null) {
+            int flags = mOptions.useRegex ? 0 : Pattern.LITERAL;
+            if (mOptions.ignoreCase) {
+                flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+            }
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(mSearchText, flags);
+            } catch (PatternSyntaxException e) {
+                pattern = null;
+            }
+            if (pattern != null) {
+                mIndex = new MatchIndex(pattern, mOptions.wholeWord);
+                mThread = new SearchThread(mIndex, mEditor.getText().snapshot());
+                mThread.start();
+            }
+        }
         mEditor.postInvalidate();
+        notifyMatchCount();
+    }
+
+    /**
+     * Get the matches of a line
+     *
+     * @return Start and end column of each match, empty if there is no match or the search
+     * has not completed
+     */
+    int[] getMatchedRegions(int line) {
+        MatchIndex index = mIndex;
+        if (index == null) {
+            return null;
+        }
+        int[] regions = index.getMatches(line);
+        return regions.length == 0 ? null : regions;
+    }
+
+    /**
+     * @return Count of matches, or -1 if the search has not completed
+     */
+    public int getMatchCount() {
+        MatchIndex index = mIndex;
+        return index != null && index.isReady() ? index.getMatchCount() : -1;
+    }
+
+    void onInsert(Content content, int startLine, int endLine) {
+        if (mIndex != null) {
+            mIndex.onInsert(content, startLine, endLine);
+            notifyMatchCount();
+        }
+    }
+
+    void onDelete(Content content, int startLine, int endLine) {
+        if (mIndex != null) {
+            mIndex.onDelete(content, startLine, endLine);
+            notifyMatchCount();
+        }
+    }
+
+    private boolean checkReady() {
+        checkState();
+        if (mIndex == null || !mIndex.isReady()) {
+            Toast.makeText(mEditor.getContext(), mIndex == null ? "Invalid pattern" : "Still searching, please wait", Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        return true;
     }
 
     @SuppressWarnings("UnusedReturnValue")
     public boolean replaceThis(String newText) {
-        checkState();
+        if (!checkReady()) {
+            return false;
+        }
         Content text = mEditor.getText();
         Cursor cursor = text.getCursor();
-        if (cursor.isSelected()) {
-            String selectedText = text.subContent(cursor.getLeftLine(), cursor.getLeftColumn(), cursor.getRightLine(), cursor.getRightColumn()).toString();
-            if (selectedText.equals(mSearchText)) {
+        if (cursor.isSelected() && cursor.getLeftLine() == cursor.getRightLine()) {
+            int[] match = mIndex.findNext(cursor.getLeftLine(), cursor.getLeftColumn());
+            if (match != null && match[0] == cursor.getLeftLine() && match[1] == cursor.getLeftColumn()
+                    && match[2] == cursor.getRightColumn()) {
                 cursor.onCommitText(newText);
                 mEditor.hideAutoCompleteWindow();
                 gotoNext(false);
@@ -75,39 +195,42 @@ public class EditorSearcher {
         return false;
     }
 
+    /**
+     * Replace all the matches with the given text, as a single undoable edit.
+     * The matches of a line are replaced at once, from the last line to the first.
+     */
     public void replaceAll(final String newText) {
-        checkState();
-        final ProgressDialog progressDialog = ProgressDialog.show(mEditor.getContext(), "Replacing", "Editor is now replacing texts, please wait", true, false);
-        final String searchText = mSearchText;
-        new Thread() {
-
-            @Override
-            public void run() {
-                String text = null;
-                Exception ex = null;
-                try {
-                    text = mEditor.getText().toString().replace(searchText, newText);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    ex = e;
+        if (!checkReady()) {
+            return;
+        }
+        Content text = mEditor.getText();
+        MatchIndex index = mIndex;
+        int line = mEditor.getCursor().getLeftLine();
+        int column = mEditor.getCursor().getLeftColumn();
+        StringBuilder replacement = new StringBuilder();
+        text.beginBatchEdit();
+        try {
+            for (int i = text.getLineCount() - 1; i >= 0; i--) {
+                int[] matches = index.getMatches(i);
+                if (matches.length == 0) {
+                    continue;
                 }
-                final Exception ex2 = ex;
-                final String text2 = text;
-                mEditor.post(() -> {
-                    if (text2 == null) {
-                        Toast.makeText(mEditor.getContext(), String.valueOf(ex2), Toast.LENGTH_SHORT).show();
-                    } else {
-                        int line = mEditor.getCursor().getLeftLine();
-                        int column = mEditor.getCursor().getLeftColumn();
-                        mEditor.getText().replace(0, 0, mEditor.getLineCount() - 1, mEditor.getText().getColumnCount(mEditor.getLineCount() - 1), text2);
-                        mEditor.setSelectionAround(line, column);
-                        mEditor.invalidate();
+                CharSequence lineText = text.getLine(i);
+                replacement.setLength(0);
+                for (int j = 0; j < matches.length; j += 2) {
+                    if (j > 0) {
+                        replacement.append(lineText, matches[j - 1], matches[j]);
                     }
-                    progressDialog.cancel();
-                });
+                    replacement.append(newText);
+                }
+                text.replace(i, matches[0], i, matches[matches.length - 1], replacement);
             }
-
-        }.start();
+        } finally {
+            text.endBatchEdit();
+        }
+        line = Math.min(line, text.getLineCount() - 1);
+        mEditor.setSelectionAround(line, Math.min(column, text.getColumnCount(line)));
+        mEditor.invalidate();
     }
 
     public void gotoNext() {
@@ -115,18 +238,14 @@ public class EditorSearcher {
     }
 
     private void gotoNext(boolean tip) {
-        checkState();
-        Content text = mEditor.getText();
-        Cursor cursor = text.getCursor();
-        int line = cursor.getRightLine();
-        int column = cursor.getRightColumn();
-        for (int i = line; i < text.getLineCount(); i++) {
-            int idx = column >= text.getColumnCount(i) ? -1 : text.getLine(i).indexOf(mSearchText, column);
-            if (idx != -1) {
-                mEditor.setSelectionRegion(i, idx, i, idx + mSearchText.length());
-                return;
-            }
-            column = 0;
+        if (!checkReady()) {
+            return;
+        }
+        Cursor cursor = mEditor.getText().getCursor();
+        int[] match = mIndex.findNext(cursor.getRightLine(), cursor.getRightColumn());
+        if (match != null) {
+            mEditor.setSelectionRegion(match[0], match[1], match[0], match[2]);
+            return;
         }
         if (tip) {
             Toast.makeText(mEditor.getContext(), "Not found in this direction", Toast.LENGTH_SHORT).show();
@@ -135,18 +254,14 @@ public class EditorSearcher {
     }
 
     public void gotoLast() {
-        checkState();
-        Content text = mEditor.getText();
-        Cursor cursor = text.getCursor();
-        int line = cursor.getLeftLine();
-        int column = cursor.getLeftColumn();
-        for (int i = line; i >= 0; i--) {
-            int idx = column - 1 < 0 ? -1 : text.getLine(i).lastIndexOf(mSearchText, column - 1);
-            if (idx != -1) {
-                mEditor.setSelectionRegion(i, idx, i, idx + mSearchText.length());
-                return;
-            }
-            column = i - 1 >= 0 ? text.getColumnCount(i - 1) : 0;
+        if (!checkReady()) {
+            return;
+        }
+        Cursor cursor = mEditor.getText().getCursor();
+        int[] match = mIndex.findPrevious(cursor.getLeftLine(), cursor.getLeftColumn());
+        if (match != null) {
+            mEditor.setSelectionRegion(match[0], match[1], match[0], match[2]);
+            return;
         }
         Toast.makeText(mEditor.getContext(), "Not found in this direction", Toast.LENGTH_SHORT).show();
     }
@@ -155,4 +270,67 @@ public class EditorSearcher {
         search(null);
     }
 
+    public interface OnMatchCountChangedListener {
+
+        /**
+         * @param count Count of matches, or -1 if there is no search or it has not completed
+         */
+        void onMatchCountChanged(int count);
+    }
+
+    /**
+     * Options of a search
+     */
+    public static class SearchOptions {
+
+        public final boolean ignoreCase;
+        public final boolean useRegex;
+        public final boolean wholeWord;
+
+        /**
+         * @param ignoreCase Whether letters of different cases match
+         * @param useRegex   Whether the text is a regular expression, matches never span
+         *                   several lines
+         * @param wholeWord  Whether matches next to a letter, a digit or an underscore are
+         *                   ignored
+         */
+        public SearchOptions(boolean ignoreCase, boolean useRegex, boolean wholeWord) {
+            this.ignoreCase = ignoreCase;
+            this.useRegex = useRegex;
+            this.wholeWord = wholeWord;
+        }
+    }
+
+    /**
+     * Finds the matches of a snapshot and gives them to the index on the main thread
+     */
+    private class SearchThread extends Thread {
+
+        private final MatchIndex mTarget;
+        private final ContentSnapshot mSnapshot;
+
+        SearchThread(MatchIndex target, ContentSnapshot snapshot) {
+            mTarget = target;
+            mSnapshot = snapshot;
+            setDaemon(true);
+            setName("EditorSearcher");
+        }
+
+        @Override
+        public void run() {
+            List<int[]> lines = mTarget.search(mSnapshot);
+            if (lines == null) {
+                return;
+            }
+            mEditor.post(() -> {
+                if (mIndex == mTarget) {
+                    mTarget.setResult(mEditor.getText(), lines);
+                    mThread = null;
+                    mEditor.invalidate();
+                    notifyMatchCount();
+                }
+            });
+        }
+    }
+
 }
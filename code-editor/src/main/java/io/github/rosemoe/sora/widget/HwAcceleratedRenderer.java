@@ -34,7 +34,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import io.github.rosemoe.sora.annotations.Experimental;
-import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.data.SpanLine;
 import io.github.rosemoe.sora.text.Content;
 import io.github.rosemoe.sora.text.ContentListener;
 import io.github.rosemoe.sora.util.ArrayList;
@@ -97,13 +97,13 @@ class HwAcceleratedRenderer implements ContentListener {
         cache.forEach(node -> node.isDirty = true);
     }
 
-    public void invalidateDirtyRegions(List<List<Span>> old, List<List<Span>> updated) {
-        //Simply compares hash code
+    public void invalidateDirtyRegions(List<SpanLine> old, List<SpanLine> updated) {
+        //Lines shared by both results are unchanged, others are compared by content
         cache.forEach((node) -> {
             try {
-                List<Span> olds = old.get(node.line);
-                List<Span> news = updated.get(node.line);
-                if (!node.needsRecord() && (olds.size() != news.size() || olds.hashCode() != news.hashCode())) {
+                SpanLine olds = old.get(node.line);
+                SpanLine news = updated.get(node.line);
+                if (!node.needsRecord() && olds != news && !olds.equals(news)) {
                     node.isDirty = true;
                 }
             } catch (IndexOutOfBoundsException | NullPointerException e) {
@@ -141,17 +141,16 @@ class HwAcceleratedRenderer implements ContentListener {
         if (!canvas.isHardwareAccelerated()) {
             throw new UnsupportedOperationException("Only hardware-accelerated canvas can be used");
         }
-        List<List<Span>> spanMap = editor.getTextAnalyzeResult().getSpanMap();
+        List<SpanLine> spanMap = editor.getTextAnalyzeResult().getSpanMap();
         // It's safe to use row directly because the mode is non-wordwrap
         TextRenderNode node = getNode(line);
         if (node.needsRecord()) {
-            List<Span> spans = null;
+            SpanLine spans = null;
             if (line < spanMap.size() && line >= 0) {
                 spans = spanMap.get(line);
             }
-            if (spans == null || spans.size() == 0) {
-                spans = new ArrayList<>();
-                spans.add(Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
+            if (spans == null || spans.isEmpty()) {
+                spans = SpanLine.of(EditorColorScheme.TEXT_NORMAL);
             }
             editor.updateBoringLineDisplayList(node.renderNode, line, spans);
             node.isDirty = false;
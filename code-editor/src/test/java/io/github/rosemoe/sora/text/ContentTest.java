@@ -0,0 +1,103 @@
+package io.github.rosemoe.sora.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ContentTest {
+
+    @Test
+    public void testEditsMatchStringBuilder() {
+        String[] pieces = {"a", "bc", "\n", "x\ny", "\n\n", "long line\nand\nmore\n", ""};
+        Random random = new Random(7);
+        StringBuilder expected = new StringBuilder();
+        Content content = new Content();
+
+        for (int i = 0; i < 2000; i++) {
+            if (random.nextInt(3) != 0 || expected.length() == 0) {
+                int index = random.nextInt(expected.length() + 1);
+                String piece = pieces[random.nextInt(pieces.length)];
+                CharPosition position = content.getIndexer().getCharPosition(index);
+                expected.insert(index, piece);
+                content.insert(position.line, position.column, piece);
+            } else {
+                int start = random.nextInt(expected.length());
+                int end = Math.min(expected.length(), start + 1 + random.nextInt(12));
+                expected.delete(start, end);
+                content.delete(start, end);
+            }
+            assertEquals(expected.length(), content.length());
+            if (i % 50 == 0) {
+                assertEquals(expected.toString(), content.toString());
+                assertIndexer(expected, content.getIndexer());
+            }
+        }
+        assertEquals(expected.toString(), content.toString());
+        assertIndexer(expected, content.getIndexer());
+    }
+
+    @Test
+    public void testSnapshotsDoNotChange() {
+        Content content = new Content("class A {\n    int a;\n}\n");
+        List<ContentSnapshot> snapshots = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            if (random.nextInt(4) == 0) {
+                ContentSnapshot snapshot = content.snapshot();
+                assertSame(snapshot, content.snapshot());
+                snapshots.add(snapshot);
+                expected.add(content.toString());
+            }
+            int start = random.nextInt(content.length() + 1);
+            if (random.nextBoolean() && start < content.length()) {
+                content.delete(start, Math.min(content.length(), start + 1 + random.nextInt(8)));
+            } else {
+                CharPosition position = content.getIndexer().getCharPosition(start);
+                content.insert(position.line, position.column, random.nextBoolean() ? "x" : "y\nz");
+            }
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+            ContentSnapshot snapshot = snapshots.get(i);
+            String text = expected.get(i);
+            assertEquals(text.length(), snapshot.length());
+            StringBuilder chars = new StringBuilder();
+            for (int j = 0; j < snapshot.length(); j++) {
+                chars.append(snapshot.charAt(j));
+            }
+            assertEquals(text, chars.toString());
+            assertEquals(text, snapshot.toString());
+            int start = text.length() / 3;
+            assertEquals(text.substring(start), snapshot.subSequence(start, text.length()));
+        }
+    }
+
+    @Test
+    public void testSubContent() {
+        Content content = new Content("first\nsecond\nthird\nfourth");
+        Content sub = content.subContent(0, 2, 2, 3);
+        assertEquals("rst\nsecond\nthi", sub.toString());
+        assertIndexer(new StringBuilder(sub.toString()), sub.getIndexer());
+    }
+
+    private static void assertIndexer(CharSequence text, Indexer indexer) {
+        int line = 0, column = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            CharPosition position = indexer.getCharPosition(i);
+            assertEquals(line, position.line);
+            assertEquals(column, position.column);
+            assertEquals(i, indexer.getCharIndex(line, column));
+            if (i < text.length() && text.charAt(i) == '\n') {
+                line++;
+                column = 0;
+            } else {
+                column++;
+            }
+        }
+    }
+}
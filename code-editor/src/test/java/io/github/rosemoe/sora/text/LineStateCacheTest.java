@@ -0,0 +1,191 @@
+package io.github.rosemoe.sora.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import io.github.rosemoe.sora.data.BlockLine;
+import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.data.SpanLine;
+import io.github.rosemoe.sora.interfaces.IncrementalCodeAnalyzer;
+import io.github.rosemoe.sora.widget.EditorColorScheme;
+
+public class LineStateCacheTest {
+
+    private final WordAnalyzer mAnalyzer = new WordAnalyzer();
+    private TextAnalyzer.AnalyzeThread.Delegate mDelegate;
+
+    @Before
+    public void setup() {
+        TextAnalyzer.AnalyzeThread thread =
+                new TextAnalyzer(mAnalyzer).new AnalyzeThread(new Object(), mAnalyzer, null);
+        mDelegate = thread.new Delegate();
+    }
+
+    @Test
+    public void testMatchesFullAnalysis() {
+        String[] pieces = {"if", "x", " ", "\n", "/*", "*/", "{", "}", "abc", "\n\n", "if y\n"};
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append(pieces[random.nextInt(pieces.length)]);
+        }
+        LineStateCache<Boolean> cache = new LineStateCache<>(mAnalyzer);
+
+        for (int i = 0; i < 500; i++) {
+            if (random.nextBoolean() || text.length() == 0) {
+                int index = random.nextInt(text.length() + 1);
+                String piece = pieces[random.nextInt(pieces.length)];
+                int startLine = getLine(text, index);
+                text.insert(index, piece);
+                cache.onInsert(startLine, getLine(text, index + piece.length()));
+            } else {
+                int start = random.nextInt(text.length());
+                int end = Math.min(text.length(), start + 1 + random.nextInt(5));
+                int startLine = getLine(text, start);
+                int endLine = getLine(text, end);
+                text.delete(start, end);
+                cache.onDelete(startLine, endLine);
+            }
+
+            assertTrue(cache.analyze(text, mDelegate));
+            TextAnalyzeResult incremental = new TextAnalyzeResult();
+            cache.fill(incremental, true);
+            TextAnalyzeResult full = new TextAnalyzeResult();
+            mAnalyzer.analyze(text, full, mDelegate);
+            assertEquals(toString(full), toString(incremental));
+
+            // problem marks must not leak into the cached lines
+            incremental.markProblemRegion(Span.FLAG_ERROR, 0, 0, 0, 1);
+        }
+    }
+
+    @Test
+    public void testStopsWhenStateConverges() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("if x { y }\n");
+        }
+        LineStateCache<Boolean> cache = new LineStateCache<>(mAnalyzer);
+        assertTrue(cache.analyze(text, mDelegate));
+
+        text.insert(text.indexOf("\n", 5000) + 1, "abc\n");
+        int line = getLine(text, text.indexOf("abc"));
+        cache.onInsert(line, line + 1);
+        mAnalyzer.mTokens = 0;
+        assertTrue(cache.analyze(text, mDelegate));
+        assertTrue(mAnalyzer.mTokens < 20);
+
+        // an unterminated comment changes the rest of the text
+        text.insert(0, "/*");
+        cache.onInsert(0, 0);
+        assertTrue(cache.analyze(text, mDelegate));
+        TextAnalyzeResult result = new TextAnalyzeResult();
+        cache.fill(result, true);
+        assertEquals(EditorColorScheme.COMMENT, result.getSpanMap().get(1000).getColorId(0));
+        assertTrue(result.getBlocks().isEmpty());
+    }
+
+    private static int getLine(CharSequence text, int index) {
+        int line = 0;
+        for (int i = 0; i < index; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    private static String toString(TextAnalyzeResult result) {
+        StringBuilder builder = new StringBuilder();
+        for (SpanLine spans : result.getSpanMap()) {
+            for (int i = 0; i < spans.size(); i++) {
+                builder.append(spans.getColumn(i)).append(':').append(spans.getColorId(i)).append(' ');
+            }
+            builder.append('\n');
+        }
+        List<String> blocks = new ArrayList<>();
+        for (BlockLine block : result.getBlocks()) {
+            blocks.add(block.startLine + "," + block.startColumn + "-" + block.endLine + ","
+                    + block.endColumn);
+        }
+        Collections.sort(blocks);
+        return builder.append(blocks).append(result.getSuppressSwitch()).toString();
+    }
+
+    /**
+     * Words, braces and block comments, the word after "if" has a different color so
+     * the state at the start of a line is whether the previous word is "if"
+     */
+    private static class WordAnalyzer implements IncrementalCodeAnalyzer<Boolean> {
+
+        private int mTokens;
+
+        @Override
+        public Boolean getInitialState() {
+            return false;
+        }
+
+        @Override
+        public void tokenize(CharSequence text, int offset, int line, Boolean state,
+                             LineStateCache<Boolean> cache,
+                             TextAnalyzer.AnalyzeThread.Delegate delegate) {
+            int index = offset, column = 0, stateLine = line;
+            boolean previousIf = state;
+            while (index < text.length()) {
+                if (column == 0 && line > stateLine) {
+                    if (!cache.startLine(line, previousIf)) {
+                        return;
+                    }
+                    stateLine = line;
+                }
+                mTokens++;
+                char ch = text.charAt(index);
+                int end = index + 1;
+                int color = EditorColorScheme.TEXT_NORMAL;
+                if (ch == '/' && end < text.length() && text.charAt(end) == '*') {
+                    end = index + 2;
+                    while (end < text.length() && !(text.charAt(end) == '/'
+                            && text.charAt(end - 1) == '*' && end - 1 > index + 1)) {
+                        end++;
+                    }
+                    end = Math.min(end + 1, text.length());
+                    color = EditorColorScheme.COMMENT;
+                } else if (Character.isLetter(ch)) {
+                    while (end < text.length() && Character.isLetter(text.charAt(end))) {
+                        end++;
+                    }
+                    boolean isIf = text.subSequence(index, end).toString().equals("if");
+                    color = isIf ? EditorColorScheme.KEYWORD
+                            : previousIf ? EditorColorScheme.IDENTIFIER_VAR
+                            : EditorColorScheme.TEXT_NORMAL;
+                    previousIf = isIf;
+                } else if (ch == '{') {
+                    cache.openBlock(line, column);
+                    color = EditorColorScheme.OPERATOR;
+                } else if (ch == '}') {
+                    cache.closeBlock(line, column);
+                    color = EditorColorScheme.OPERATOR;
+                }
+                if (ch != '\n') {
+                    cache.addIfNeeded(line, column, color);
+                }
+                for (; index < end; index++) {
+                    if (text.charAt(index) == '\n') {
+                        line++;
+                        column = 0;
+                    } else {
+                        column++;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.rosemoe.sora.text;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class MatchIndexTest {
+
+    @Test
+    public void testOptions() {
+        Content content = new Content("foo Foo food\n_foo foo\n");
+        assertMatches(content, Pattern.compile("foo", Pattern.LITERAL), false,
+                new int[]{0, 3, 8, 11}, new int[]{1, 4, 5, 8}, new int[0]);
+        assertMatches(content, Pattern.compile("foo", Pattern.LITERAL | Pattern.CASE_INSENSITIVE), true,
+                new int[]{0, 3, 4, 7}, new int[]{5, 8}, new int[0]);
+        assertMatches(content, Pattern.compile("f\\w*|x*"), false,
+                new int[]{0, 3, 8, 12}, new int[]{1, 4, 5, 8}, new int[0]);
+    }
+
+    @Test
+    public void testNavigation() {
+        Content content = new Content("a b\n\nb a b\n");
+        MatchIndex index = new MatchIndex(Pattern.compile("b", Pattern.LITERAL), false);
+        index.setResult(content, index.search(content.snapshot()));
+        assertEquals(3, index.getMatchCount());
+        assertArrayEquals(new int[]{0, 2, 3}, index.findNext(0, 0));
+        assertArrayEquals(new int[]{2, 0, 1}, index.findNext(0, 3));
+        assertArrayEquals(new int[]{2, 4, 5}, index.findNext(2, 1));
+        assertNull(index.findNext(2, 5));
+        assertArrayEquals(new int[]{2, 0, 1}, index.findPrevious(2, 4));
+        assertArrayEquals(new int[]{0, 2, 3}, index.findPrevious(2, 0));
+        assertNull(index.findPrevious(0, 2));
+    }
+
+    @Test
+    public void testMatchesFullSearchAfterEdits() {
+        String[] pieces = {"ab", "a", "b", "\n", "ba", " ", "\nab\n"};
+        Pattern pattern = Pattern.compile("ab", Pattern.LITERAL);
+        Random random = new Random(7);
+        Content content = new Content("ab\nab ab\n");
+        MatchIndex index = new MatchIndex(pattern, true);
+        ContentSnapshot snapshot = content.snapshot();
+
+        for (int i = 0; i < 400; i++) {
+            if (i == 50) {
+                // edits made while searching are applied to the result
+                index.setResult(content, index.search(snapshot));
+            }
+            if (random.nextBoolean() || content.length() == 0) {
+                int line = random.nextInt(content.getLineCount());
+                int column = random.nextInt(content.getColumnCount(line) + 1);
+                int lineCount = content.getLineCount();
+                content.insert(line, column, pieces[random.nextInt(pieces.length)]);
+                index.onInsert(content, line, line + content.getLineCount() - lineCount);
+            } else {
+                int start = random.nextInt(content.length());
+                int end = Math.min(content.length(), start + 1 + random.nextInt(4));
+                CharPosition startPos = content.getIndexer().getCharPosition(start);
+                CharPosition endPos = content.getIndexer().getCharPosition(end);
+                content.delete(start, end);
+                index.onDelete(content, startPos.line, endPos.line);
+            }
+            if (i >= 50) {
+                MatchIndex full = new MatchIndex(pattern, true);
+                List<int[]> lines = full.search(content.snapshot());
+                full.setResult(content, lines);
+                assertEquals(full.getMatchCount(), index.getMatchCount());
+                for (int line = 0; line < content.getLineCount(); line++) {
+                    assertArrayEquals(full.getMatches(line), index.getMatches(line));
+                }
+            }
+        }
+    }
+
+    private static void assertMatches(Content content, Pattern pattern, boolean wholeWord, int[]... lines) {
+        MatchIndex index = new MatchIndex(pattern, wholeWord);
+        index.setResult(content, index.search(content.snapshot()));
+        for (int i = 0; i < lines.length; i++) {
+            assertArrayEquals(lines[i], index.getMatches(i));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.rosemoe.sora.text;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.rosemoe.sora.data.Span;
+import io.github.rosemoe.sora.data.SpanLine;
+import io.github.rosemoe.sora.widget.EditorColorScheme;
+
+public class SpanMapUpdaterTest {
+
+    private static final int K = EditorColorScheme.KEYWORD;
+    private static final int N = EditorColorScheme.TEXT_NORMAL;
+    private static final int C = EditorColorScheme.COMMENT;
+
+    @Test
+    public void testSingleLineEdits() {
+        List<SpanLine> map = new ArrayList<>();
+        map.add(line(0, K, 6, N, 10, C));
+
+        SpanMapUpdater.shiftSpansOnSingleLineInsert(map, 0, 6, 9);
+        assertEquals("0:" + K + " 9:" + N + " 13:" + C, toString(map.get(0)));
+
+        SpanMapUpdater.shiftSpansOnSingleLineDelete(map, 0, 2, 11);
+        assertEquals("0:" + K + " 4:" + C, toString(map.get(0)));
+
+        SpanMapUpdater.shiftSpansOnSingleLineInsert(map, 0, 0, 2);
+        assertEquals("0:" + N + " 2:" + K + " 6:" + C, toString(map.get(0)));
+    }
+
+    @Test
+    public void testMultiLineEdits() {
+        List<SpanLine> map = new ArrayList<>();
+        map.add(line(0, K, 6, N, 10, C));
+        map.add(line(0, N));
+
+        SpanMapUpdater.shiftSpansOnMultiLineInsert(map, 0, 8, 1, 2);
+        assertEquals(3, map.size());
+        assertEquals("0:" + K + " 6:" + N, toString(map.get(0)));
+        assertEquals("0:" + N + " 2:" + C, toString(map.get(1)));
+
+        map.add(1, line(0, C));
+        SpanMapUpdater.shiftSpansOnMultiLineDelete(map, 0, 3, 2, 3);
+        assertEquals(3, map.size());
+        assertEquals("0:" + K, toString(map.get(0)));
+        assertEquals("0:" + C, toString(map.get(1)));
+    }
+
+    @Test
+    public void testMarkProblemRegion() {
+        TextAnalyzeResult result = new TextAnalyzeResult();
+        result.addIfNeeded(0, 0, K);
+        result.addIfNeeded(0, 6, N);
+        result.determine(1);
+
+        result.markProblemRegion(Span.FLAG_ERROR, 0, 2, 0, 4);
+        SpanLine spans = result.getSpanMap().get(0);
+        assertEquals("0:" + K + " 2:" + K + " 4:" + K + " 6:" + N, toString(spans));
+        assertEquals(0, spans.getProblemFlags(0));
+        assertEquals(Span.FLAG_ERROR, spans.getProblemFlags(1));
+        assertEquals(0, spans.getProblemFlags(2));
+
+        result.markProblemRegion(Span.FLAG_WARNING, 0, 8, 1, 0);
+        spans = result.getSpanMap().get(0);
+        assertEquals(Span.FLAG_WARNING, spans.getProblemFlags(spans.size() - 1));
+        assertEquals(N, result.getSpanMap().get(1).getColorId(0));
+    }
+
+    private static SpanLine line(int... spans) {
+        SpanLine line = new SpanLine();
+        for (int i = 0; i < spans.length; i += 2) {
+            line.add(spans[i], spans[i + 1]);
+        }
+        return line;
+    }
+
+    private static String toString(SpanLine spans) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < spans.size(); i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(spans.getColumn(i)).append(':').append(spans.getColorId(i));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.rosemoe.sora.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+public class UndoManagerTest {
+
+    @Test
+    public void testLargeReplacementsUndo() {
+        Random random = new Random(5);
+        for (int i = 0; i < 30; i++) {
+            String prefix = i % 3 == 0 ? "head " : "";
+            String oldText = randomText(random, 1500);
+            String newText = i % 5 == 0 ? randomText(random, 1500) : mutate(random, oldText);
+            Content content = new Content(prefix + oldText);
+            content.replace(0, prefix.length(), content.getLineCount() - 1,
+                    content.getColumnCount(content.getLineCount() - 1), newText);
+            assertEquals(prefix + newText, content.toString());
+            content.undo();
+            assertEquals(prefix + oldText, content.toString());
+            content.redo();
+            assertEquals(prefix + newText, content.toString());
+        }
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        Content content = new Content();
+        content.setMaxUndoMemory(1000);
+        for (int i = 0; i < 100; i++) {
+            content.insert(0, 0, randomText(new Random(i), 1));
+        }
+        int undone = 0;
+        while (content.canUndo()) {
+            content.undo();
+            undone++;
+        }
+        assertTrue(undone > 1 && undone < 20);
+    }
+
+    @Test
+    public void testBatchEditsAreSeparate() {
+        Content content = new Content("a\nb\nc");
+        content.beginBatchEdit();
+        content.insert(0, 0, "x");
+        content.endBatchEdit();
+        content.beginBatchEdit();
+        content.insert(2, 0, "y");
+        content.insert(1, 0, "z");
+        content.endBatchEdit();
+        content.undo();
+        assertEquals("xa\nb\nc", content.toString());
+        content.undo();
+        assertEquals("a\nb\nc", content.toString());
+    }
+
+    @Test
+    public void testJournal() throws IOException {
+        File file = File.createTempFile("undo", ".journal");
+        file.deleteOnExit();
+        String original = randomText(new Random(1), 50);
+        Content content = new Content(original);
+        content.setUndoJournal(file);
+        content.setMaxUndoMemory(2000);
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            int index = random.nextInt(content.length() + 1);
+            CharPosition position = content.getIndexer().getCharPosition(index);
+            content.insert(position.line, position.column, randomText(random, 1));
+            if (i % 3 == 0 && index < content.length()) {
+                content.delete(index, index + 1);
+            }
+        }
+        String edited = content.toString();
+        content.saveUndoJournal();
+        content.setUndoJournal(null);
+
+        Content reopened = new Content(edited);
+        reopened.setUndoJournal(file);
+        while (reopened.canUndo()) {
+            reopened.undo();
+        }
+        assertEquals(original, reopened.toString());
+        reopened.setUndoJournal(null);
+
+        // the journal changed after it was saved
+        Content other = new Content(edited);
+        other.setUndoJournal(file);
+        assertFalse(other.canUndo());
+        other.setUndoJournal(null);
+    }
+
+    @Test
+    public void testJournalWithUndoBetweenEdits() throws IOException {
+        File file = File.createTempFile("undo", ".journal");
+        file.deleteOnExit();
+        String original = randomText(new Random(3), 50);
+        Content content = new Content(original);
+        content.setUndoJournal(file);
+        content.setMaxUndoMemory(500);
+        // keeps the whole history in memory
+        Content expected = new Content(original);
+
+        Random random = new Random(4);
+        for (int i = 0; i < 300; i++) {
+            if (random.nextInt(10) == 0) {
+                int count = random.nextInt(80);
+                for (int j = 0; j < count && expected.canUndo(); j++) {
+                    assertTrue(content.canUndo());
+                    content.undo();
+                    expected.undo();
+                }
+            } else {
+                int index = random.nextInt(content.length() + 1);
+                CharPosition position = content.getIndexer().getCharPosition(index);
+                String text = randomText(random, 1);
+                content.insert(position.line, position.column, text);
+                expected.insert(position.line, position.column, text);
+            }
+            assertEquals(expected.toString(), content.toString());
+        }
+        while (expected.canUndo()) {
+            content.undo();
+            expected.undo();
+        }
+        assertEquals(original, content.toString());
+        content.setUndoJournal(null);
+    }
+
+    @Test
+    public void testSavedJournalKeepsHistory() throws IOException {
+        File file = File.createTempFile("undo", ".journal");
+        file.deleteOnExit();
+        String original = randomText(new Random(5), 20);
+        Content content = new Content(original);
+        content.setUndoJournal(file);
+        content.setMaxUndoMemory(500);
+        Random random = new Random(6);
+        for (int i = 0; i < 100; i++) {
+            int index = random.nextInt(content.length() + 1);
+            CharPosition position = content.getIndexer().getCharPosition(index);
+            content.insert(position.line, position.column, randomText(random, 1));
+        }
+        String edited = content.toString();
+        content.saveUndoJournal();
+
+        // the saved actions can still be undone and redone
+        content.undo();
+        content.redo();
+        assertEquals(edited, content.toString());
+        while (content.canUndo()) {
+            content.undo();
+        }
+        assertEquals(original, content.toString());
+        content.setUndoJournal(null);
+    }
+
+    private static String randomText(Random random, int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                sb.append((char) ('a' + random.nextInt(4)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String text) {
+        String[] lines = text.split("\n", -1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            int op = random.nextInt(20);
+            if (op == 0) {
+                continue;
+            }
+            if (op == 1) {
+                sb.append(randomText(random, 2)).append('\n');
+            }
+            sb.append(op == 2 ? randomText(random, 1) : lines[i]);
+            if (i + 1 < lines.length) {
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
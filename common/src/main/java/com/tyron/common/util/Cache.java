@@ -1,17 +1,40 @@
 package com.tyron.common.util;
 
+import android.content.ComponentCallbacks2;
+
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires.
+ *
+ * <p>Caches created with the default constructor keep every entry until it is removed, which is
+ * what the incremental build tasks rely on. Caches used by the editor should be created with
+ * {@link #newBuilder()} so they are bounded, see {@link Builder}.
+ */
 public class Cache<K, V> {
+
+    /**
+     * Computes the weight of an entry, entries are evicted once the total weight of a cache
+     * exceeds its maximum weight
+     */
+    public interface Weigher<K, V> {
+        long weigh(Path file, K key, V value);
+    }
+
     public static class Key<K> {
         public final Path file;
         public final K key;
@@ -34,67 +57,418 @@ public class Cache<K, V> {
         }
     }
 
+    public interface EntryVisitor<K, V> {
+        void visit(Path file, K key, V value, Instant created);
+    }
+
+    /**
+     * A snapshot of the counters of a cache
+     */
+    public static class Stats {
+        public final long hitCount;
+        public final long missCount;
+        public final long evictionCount;
+        public final int size;
+        public final long weight;
+
+        Stats(long hitCount, long missCount, long evictionCount, int size, long weight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public double hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 1.0 : (double) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hits=" + hitCount + ", misses=" + missCount + ", evictions=" +
+                    evictionCount + ", size=" + size + ", weight=" + weight + "}";
+        }
+    }
+
+    public static class Builder<K, V> {
+        private long maximumWeight = Long.MAX_VALUE;
+        private Weigher<? super K, ? super V> weigher;
+        private boolean softValues;
+        private boolean purgeOnChange;
+        private boolean trimOnMemoryPressure;
+        private long modificationCheckInterval;
+
+        /**
+         * Limits the number of entries, the least recently used entries are evicted first
+         */
+        public Builder<K, V> maximumSize(long size) {
+            this.maximumWeight = size;
+            this.weigher = null;
+            return this;
+        }
+
+        /**
+         * Limits the total weight of the entries, the least recently used entries are
+         * evicted first
+         */
+        public Builder<K, V> maximumWeight(long weight, Weigher<? super K, ? super V> weigher) {
+            this.maximumWeight = weight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Holds the values through {@link SoftReference}s so the garbage collector can reclaim
+         * them before running out of memory
+         */
+        public Builder<K, V> softValues() {
+            this.softValues = true;
+            return this;
+        }
+
+        /**
+         * Removes all the entries of a file once it is found to be modified, instead of
+         * only reporting that the entry needs to be loaded again
+         */
+        public Builder<K, V> purgeOnChange() {
+            this.purgeOnChange = true;
+            return this;
+        }
+
+        /**
+         * Allows {@link Cache#onTrimMemory(int)} to evict entries of this cache
+         */
+        public Builder<K, V> trimOnMemoryPressure() {
+            this.trimOnMemoryPressure = true;
+            return this;
+        }
+
+        /**
+         * Reuses the modification time of a file for the given duration instead of reading it
+         * on every {@link Cache#needs(Path, Object)} call
+         */
+        public Builder<K, V> modificationCheckInterval(long millis) {
+            this.modificationCheckInterval = millis;
+            return this;
+        }
+
+        public Cache<K, V> build() {
+            return new Cache<>(this);
+        }
+    }
+
     private class Value {
-        final V value;
-        final Instant created = Instant.now();
+        final V strong;
+        final SoftReference<V> soft;
+        final Instant created;
+        final long weight;
+
+        Value(Key<K> key, V value, Instant created) {
+            this.created = created;
+            if (softValues) {
+                this.strong = null;
+                this.soft = new SoftReference<>(value);
+            } else {
+                this.strong = value;
+                this.soft = null;
+            }
+            this.weight = weigher == null ? 1 : weigher.weigh(key.file, key.key, value);
+        }
+
+        /**
+         * @return whether the value has been reclaimed by the garbage collector
+         */
+        boolean isCleared() {
+            return soft != null && soft.get() == null;
+        }
+
+        V get() {
+            return soft != null ? soft.get() : strong;
+        }
+    }
+
+    private static class FileStat {
+        final FileTime modified;
+        final long checked;
 
-        Value(V value) {
-            this.value = value;
+        FileStat(FileTime modified, long checked) {
+            this.modified = modified;
+            this.checked = checked;
         }
     }
 
-    private final Map<Key<K>, Value> map = new HashMap<>();
+    /**
+     * The caches that can be trimmed when the system is low on memory
+     */
+    private static final Set<Cache<?, ?>> sTrimmableCaches =
+            Collections.newSetFromMap(new WeakHashMap<>());
+
+    private final long maximumWeight;
+    private final Weigher<? super K, ? super V> weigher;
+    private final boolean softValues;
+    private final boolean purgeOnChange;
+    private final long modificationCheckInterval;
+
+    // ordered from the least recently used entry
+    private final LinkedHashMap<Key<K>, Value> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, Set<Key<K>>> keysByFile = new HashMap<>();
+    private final Map<Path, FileStat> fileStats = new HashMap<>();
+
+    private long totalWeight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public Cache() {
+        this(new Builder<>());
+    }
+
+    private Cache(Builder<K, V> builder) {
+        this.maximumWeight = builder.maximumWeight;
+        this.weigher = builder.weigher;
+        this.softValues = builder.softValues;
+        this.purgeOnChange = builder.purgeOnChange;
+        this.modificationCheckInterval = builder.modificationCheckInterval;
+        if (builder.trimOnMemoryPressure) {
+            synchronized (sTrimmableCaches) {
+                sTrimmableCaches.add(this);
+            }
+        }
+    }
+
+    public static <K, V> Builder<K, V> newBuilder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Evicts entries of the caches built with {@link Builder#trimOnMemoryPressure()}, should be
+     * called from {@link ComponentCallbacks2#onTrimMemory(int)}. Half of the weight is kept
+     * when the app is only hidden or memory is getting low, everything is evicted once the
+     * system is about to kill the app.
+     *
+     * @param level the memory trim level given by the system
+     */
+    public static void onTrimMemory(int level) {
+        Set<Cache<?, ?>> caches;
+        synchronized (sTrimmableCaches) {
+            caches = new HashSet<>(sTrimmableCaches);
+        }
+        for (Cache<?, ?> cache : caches) {
+            switch (level) {
+                case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+                case ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN:
+                case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND:
+                    cache.trimToWeight(cache.getWeight() / 2);
+                    break;
+                case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+                case ComponentCallbacks2.TRIM_MEMORY_MODERATE:
+                case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
+                    cache.evictAll();
+                    break;
+                default:
+                    // TRIM_MEMORY_RUNNING_MODERATE, the caches are already bounded
+                    break;
+            }
+        }
+    }
 
     public boolean has(Path file, K k) {
         return !needs(file, k);
     }
 
-    public void clear() {
+    public synchronized void clear() {
         map.clear();
+        keysByFile.clear();
+        fileStats.clear();
+        totalWeight = 0;
     }
 
-    public boolean needs(Path file, K k) {
+    public synchronized boolean needs(Path file, K k) {
         // If key is not in map, it needs to be loaded
         Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) return true;
+        Value value = map.get(key);
+        if (value == null) {
+            missCount++;
+            return true;
+        }
+        if (value.isCleared()) {
+            removeEntry(key);
+            evictionCount++;
+            missCount++;
+            return true;
+        }
 
         // If key was loaded before file was last modified, it needs to be reloaded
-        Value value = map.get(key);
-        FileTime modified = null;
+        FileTime modified = getLastModifiedTime(file);
+        boolean before = value.created.isBefore(modified.toInstant());
+        if (before) {
+            if (purgeOnChange) {
+                invalidate(file);
+            }
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return before;
+    }
+
+    private FileTime getLastModifiedTime(Path file) {
+        long now = System.currentTimeMillis();
+        if (modificationCheckInterval > 0) {
+            FileStat stat = fileStats.get(file);
+            if (stat != null && now - stat.checked < modificationCheckInterval) {
+                return stat.modified;
+            }
+        }
+        FileTime modified;
         try {
             modified = Files.getLastModifiedTime(file);
         } catch (IOException e) {
             modified = FileTime.from(Instant.now());
         }
-        // TODO remove all keys associated with file when file changes
-        boolean before = value.created.isBefore(modified.toInstant());
-        return before;
+        if (modificationCheckInterval > 0) {
+            fileStats.put(file, new FileStat(modified, now));
+        }
+        return modified;
     }
 
     @SafeVarargs
-    public final void remove(Path file, K... keys) {
+    public final synchronized void remove(Path file, K... keys) {
         for (K k : keys) {
             Key<K> key = new Key<>(file, k);
-            map.remove(key);
+            removeEntry(key);
         }
     }
 
-    public Set<Key<K>> getKeys() {
-        return map.keySet();
+    /**
+     * Removes all the entries associated with the given file, for example when the file is
+     * known to be modified or deleted
+     */
+    public synchronized void invalidate(Path file) {
+        Set<Key<K>> keys = keysByFile.remove(file);
+        if (keys != null) {
+            for (Key<K> key : keys) {
+                Value value = map.remove(key);
+                if (value != null) {
+                    totalWeight -= value.weight;
+                }
+            }
+        }
+        fileStats.remove(file);
+    }
+
+    public synchronized Set<Key<K>> getKeys() {
+        return new HashSet<>(map.keySet());
     }
 
     public void load(Path file, K k, V v) {
-        // TODO limit total size of cache
+        load(file, k, v, Instant.now());
+    }
+
+    /**
+     * Loads a value that was created at the given time, used to restore entries that have
+     * been persisted
+     */
+    public synchronized void load(Path file, K k, V v, Instant created) {
         Key<K> key = new Key<>(file, k);
-        Value value = new Value(v);
+        removeEntry(key);
+        Value value = new Value(key, v, created);
         map.put(key, value);
+        totalWeight += value.weight;
+        Set<Key<K>> keys = keysByFile.get(file);
+        if (keys == null) {
+            keys = new HashSet<>();
+            keysByFile.put(file, keys);
+        }
+        keys.add(key);
+        // the modification time may have changed right before this was loaded
+        fileStats.remove(file);
+        trimToWeight(maximumWeight);
     }
 
-    public V get(Path file, K k) {
+    public synchronized V get(Path file, K k) {
         Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) {
+        Value value = map.get(key);
+        if (value == null) {
             throw new IllegalArgumentException(k + " is not in map " + map);
         }
-        return (V) map.get(key).value;
+        if (value.isCleared()) {
+            throw new IllegalArgumentException(k + " has been reclaimed");
+        }
+        return value.get();
+    }
+
+    /**
+     * Gets the value if it is present and up to date, in a single lookup. Unlike
+     * {@link #get(Path, Object)} this does not throw if the value has been evicted or
+     * reclaimed between a {@link #needs(Path, Object)} check and this call.
+     *
+     * @return the value, or null if it needs to be loaded
+     */
+    public synchronized V getIfPresent(Path file, K k) {
+        if (needs(file, k)) {
+            return null;
+        }
+        return map.get(new Key<>(file, k)).get();
+    }
+
+    /**
+     * Visits the entries whose values have not been reclaimed, from the least recently used
+     */
+    public synchronized void forEach(EntryVisitor<K, V> visitor) {
+        for (Map.Entry<Key<K>, Value> entry : map.entrySet()) {
+            Value value = entry.getValue();
+            if (!value.isCleared()) {
+                visitor.visit(entry.getKey().file, entry.getKey().key, value.get(),
+                        value.created);
+            }
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hitCount, missCount, evictionCount, map.size(), totalWeight);
+    }
+
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+
+    public synchronized void evictAll() {
+        evictionCount += map.size();
+        clear();
+    }
+
+    /**
+     * Evicts the least recently used entries until the total weight is not greater than
+     * the given weight
+     */
+    public synchronized void trimToWeight(long weight) {
+        Iterator<Map.Entry<Key<K>, Value>> iterator = map.entrySet().iterator();
+        while (totalWeight > weight && iterator.hasNext()) {
+            Map.Entry<Key<K>, Value> entry = iterator.next();
+            iterator.remove();
+            totalWeight -= entry.getValue().weight;
+            removeFromFile(entry.getKey());
+            evictionCount++;
+        }
+    }
+
+    private void removeEntry(Key<K> key) {
+        Value value = map.remove(key);
+        if (value != null) {
+            totalWeight -= value.weight;
+            removeFromFile(key);
+        }
+    }
+
+    private void removeFromFile(Key<K> key) {
+        Set<Key<K>> keys = keysByFile.get(key.file);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByFile.remove(key.file);
+            }
+        }
     }
-}
\ No newline at end of file
+}
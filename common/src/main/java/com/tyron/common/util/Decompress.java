@@ -6,7 +6,10 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import android.content.Context;
@@ -37,6 +40,42 @@ public class Decompress {
         }
     }
 
+    /**
+     * Extracts the entries of the zip file to the destination, each entry is written straight
+     * from the zip file without buffering the archive.
+     *
+     * @throws IOException if the zip file could not be read or an entry could not be written
+     */
+    public static void unzip(File zipFile, File destination) throws IOException {
+        String destinationPath = destination.getCanonicalPath() + File.separator;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                File file = new File(destination, entry.getName());
+                if (!file.getCanonicalPath().startsWith(destinationPath)) {
+                    throw new IOException("Entry " + entry.getName() + " is outside of "
+                            + destination);
+                }
+                File directory = entry.isDirectory() ? file : file.getParentFile();
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Failed to create folder " + directory);
+                }
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                try (InputStream in = zip.getInputStream(entry);
+                     OutputStream out = new FileOutputStream(file)) {
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                }
+            }
+        }
+    }
+
     public static void unzip(InputStream stream, String destination) {
         dirChecker(destination, "");
         byte[] buffer = new byte[BUFFER_SIZE];
@@ -190,12 +190,13 @@ public class StringSearch {
 //        }
         try (FileChannel channel = FileChannel.open(java)) {
             // Read up to 1 MB of data from file
-            int limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.nextWord(SEARCH_BUFFER) != -1;
+            ByteBuffer buffer = SEARCH_BUFFER.get();
+            int limit = Math.min((int) channel.size(), buffer.capacity());
+            buffer.position(0);
+            buffer.limit(limit);
+            channel.read(buffer);
+            buffer.position(0);
+            return search.nextWord(buffer) != -1;
         } catch (NoSuchFileException e) {
             return false;
         } catch (IOException e) {
@@ -308,12 +309,13 @@ public class StringSearch {
 //        }
         try (FileChannel channel = FileChannel.open(java)) {
             // Read up to 1 MB of data from file
-            int limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.next(SEARCH_BUFFER) != -1;
+            ByteBuffer buffer = SEARCH_BUFFER.get();
+            int limit = Math.min((int) channel.size(), buffer.capacity());
+            buffer.position(0);
+            buffer.limit(limit);
+            channel.read(buffer);
+            buffer.position(0);
+            return search.next(buffer) != -1;
         } catch (NoSuchFileException e) {
             return false;
         } catch (IOException e) {
@@ -344,5 +346,10 @@ public class StringSearch {
         }
     }
 
-    private static final ByteBuffer SEARCH_BUFFER = ByteBuffer.allocateDirect(1024 * 1024);
+    /**
+     * The buffers files are read into, searches run concurrently from the completion and the
+     * indexing threads so each thread has its own
+     */
+    private static final ThreadLocal<ByteBuffer> SEARCH_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1024 * 1024));
 }
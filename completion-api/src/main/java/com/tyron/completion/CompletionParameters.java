@@ -2,6 +2,7 @@ package com.tyron.completion;
 
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.Module;
+import com.tyron.completion.progress.ProgressIndicator;
 
 import java.io.File;
 
@@ -18,13 +19,15 @@ public class CompletionParameters {
     private final int mLine;
     private final int mColumn;
     private final long mIndex;
+    private final ProgressIndicator mProgressIndicator;
 
     public static Builder builder() {
         return new Builder();
     }
 
     private CompletionParameters(Project project, Module module, File file, String contents,
-                                 String prefix, int line, int column, long index) {
+                                 String prefix, int line, int column, long index,
+                                 ProgressIndicator progressIndicator) {
         mProject = project;
         mModule = module;
         mFile = file;
@@ -33,6 +36,7 @@ public class CompletionParameters {
         mLine = line;
         mColumn = column;
         mIndex = index;
+        mProgressIndicator = progressIndicator;
     }
 
     public Project getProject() {
@@ -67,6 +71,14 @@ public class CompletionParameters {
         return mIndex;
     }
 
+    /**
+     * @return The indicator of this request, canceled when the request is superseded or its
+     * deadline has passed
+     */
+    public ProgressIndicator getProgressIndicator() {
+        return mProgressIndicator;
+    }
+
     public static final class Builder {
 
         private Project project;
@@ -77,6 +89,7 @@ public class CompletionParameters {
         private int line;
         private int column;
         private long index;
+        private ProgressIndicator progressIndicator;
 
         private Builder() {
 
@@ -122,9 +135,17 @@ public class CompletionParameters {
             return this;
         }
 
+        public Builder setProgressIndicator(ProgressIndicator progressIndicator) {
+            this.progressIndicator = progressIndicator;
+            return this;
+        }
+
         public CompletionParameters build() {
+            if (progressIndicator == null) {
+                progressIndicator = new ProgressIndicator();
+            }
             return new CompletionParameters(project, module,
-                    file, contents, prefix, line, column, index);
+                    file, contents, prefix, line, column, index, progressIndicator);
         }
     }
 }
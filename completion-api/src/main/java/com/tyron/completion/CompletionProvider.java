@@ -12,7 +12,9 @@ import java.io.File;
  * <p>
  * Be sure to frequently call {@link ProgressManager#checkCanceled()} for the
  * user to have a smooth experience because the user may be typing fast and operations
- * may be cancelled at that time.
+ * may be cancelled at that time. Providers are run with the indicator of
+ * {@link CompletionParameters#getProgressIndicator()}, work handed to other threads
+ * should check that indicator directly.
  */
 public abstract class CompletionProvider {
 
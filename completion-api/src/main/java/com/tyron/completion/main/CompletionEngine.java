@@ -6,15 +6,15 @@ import com.tyron.completion.CompletionParameters;
 import com.tyron.completion.CompletionProvider;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressIndicator;
 import com.tyron.completion.progress.ProgressManager;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Main entry point for the completions api.
@@ -31,6 +31,7 @@ public class CompletionEngine {
     }
 
     private final Set<CompletionProvider> mCompletionProviders;
+    private final AtomicReference<ProgressIndicator> mCurrentIndicator = new AtomicReference<>();
 
     public CompletionEngine() {
         mCompletionProviders = new HashSet<>();
@@ -58,8 +59,28 @@ public class CompletionEngine {
                                    int line,
                                    int column,
                                    long index) {
-        if (ProgressManager.getInstance().isRunning()) {
-            ProgressManager.getInstance().setCanceled(true);
+        return complete(project, module, file, contents, prefix, line, column, index,
+                new ProgressIndicator());
+    }
+
+    /**
+     * Complete the given file, canceling the previous request if it is still running.
+     *
+     * @param indicator The indicator of this request, it may have a deadline after which
+     *                  the completions found so far are returned
+     */
+    public CompletionList complete(Project project,
+                                   Module module,
+                                   File file,
+                                   String contents,
+                                   String prefix,
+                                   int line,
+                                   int column,
+                                   long index,
+                                   ProgressIndicator indicator) {
+        ProgressIndicator previous = mCurrentIndicator.getAndSet(indicator);
+        if (previous != null) {
+            previous.cancel();
         }
         CompletionList list = new CompletionList();
         list.items = new ArrayList<>();
@@ -73,22 +94,24 @@ public class CompletionEngine {
                 .setLine(line)
                 .setColumn(column)
                 .setIndex(index)
+                .setProgressIndicator(indicator)
                 .build();
 
-        List<CompletionProvider> providers = getCompletionProviders(file);
-        for (CompletionProvider provider : providers) {
-            try {
-                ProgressManager.getInstance().setRunning(true);
-                ProgressManager.getInstance().setCanceled(false);
-                CompletionList complete = provider.complete(parameters);
-                list.items.addAll(complete.items);
-            } catch(ProcessCanceledException e) {
-                return list;
-            } {
-                ProgressManager.getInstance().setRunning(false);
+        try {
+            List<CompletionProvider> providers = getCompletionProviders(file);
+            for (CompletionProvider provider : providers) {
+                try {
+                    CompletionList complete = ProgressManager.getInstance()
+                            .runProcess(() -> provider.complete(parameters), indicator);
+                    list.items.addAll(complete.items);
+                } catch (ProcessCanceledException e) {
+                    return list;
+                }
             }
+            return list;
+        } finally {
+            mCurrentIndicator.compareAndSet(indicator, null);
         }
-        return list;
     }
 
     public void clear() {
@@ -0,0 +1,101 @@
+package com.tyron.completion.progress;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the progress of a single request and lets it be canceled.
+ * <p>
+ * Each request creates its own indicator, so canceling one request never affects another.
+ * Code running under {@link ProgressManager#runProcess(java.util.function.Supplier, ProgressIndicator)}
+ * can check it with {@link ProgressManager#checkCanceled()}, other code should be given the
+ * indicator and call {@link #checkCanceled()}.
+ */
+public class ProgressIndicator {
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final List<Runnable> mCancelListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean mCanceled;
+    private volatile long mDeadline = NO_DEADLINE;
+    private volatile String mText;
+    private volatile double mFraction;
+
+    public ProgressIndicator() {
+
+    }
+
+    /**
+     * Create an indicator that is canceled once the given time has elapsed
+     */
+    public ProgressIndicator(long timeout, TimeUnit unit) {
+        setTimeout(timeout, unit);
+    }
+
+    /**
+     * Cancel the request once the given time has elapsed from now
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        mDeadline = System.nanoTime() + unit.toNanos(timeout);
+    }
+
+    public void cancel() {
+        if (mCanceled) {
+            return;
+        }
+        mCanceled = true;
+        for (Runnable listener : mCancelListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @return whether the request was canceled or its deadline has passed
+     */
+    public boolean isCanceled() {
+        if (!mCanceled && mDeadline != NO_DEADLINE && System.nanoTime() - mDeadline >= 0) {
+            cancel();
+        }
+        return mCanceled;
+    }
+
+    /**
+     * @throws ProcessCanceledException if the request was canceled or its deadline has passed
+     */
+    public void checkCanceled() throws ProcessCanceledException {
+        if (isCanceled()) {
+            throw new ProcessCanceledException();
+        }
+    }
+
+    /**
+     * Adds a listener called once, on the thread that cancels this indicator or notices that
+     * its deadline has passed. It is called immediately if this indicator is already canceled.
+     */
+    public void addCancelListener(Runnable listener) {
+        mCancelListeners.add(listener);
+        if (mCanceled) {
+            listener.run();
+        }
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    public void setText(String text) {
+        mText = text;
+    }
+
+    /**
+     * @return the completed part of the request, from 0 to 1
+     */
+    public double getFraction() {
+        return mFraction;
+    }
+
+    public void setFraction(double fraction) {
+        mFraction = fraction;
+    }
+}
@@ -1,43 +1,64 @@
 package com.tyron.completion.progress;
 
+import java.util.function.Supplier;
+
+/**
+ * Associates a {@link ProgressIndicator} to the thread running a request, so that code deep
+ * in the request can check for cancellation without being given the indicator.
+ */
 public class ProgressManager {
 
-    private static ProgressManager sInstance = null;
+    private static final ProgressManager sInstance = new ProgressManager();
 
-    private volatile boolean mIsCanceled;
-    private volatile boolean mIsRunning;
+    private final ThreadLocal<ProgressIndicator> mIndicator = new ThreadLocal<>();
 
     public static ProgressManager getInstance() {
-        if (sInstance == null) {
-            sInstance = new ProgressManager();
-        }
         return sInstance;
     }
 
-    public synchronized void setRunning(boolean running) {
-        mIsRunning = running;
-    }
-
-    public synchronized void setCanceled(boolean cancel) {
-        mIsCanceled = cancel;
+    /**
+     * Runs the process on the current thread with the given indicator
+     */
+    public <T> T runProcess(Supplier<T> process, ProgressIndicator indicator) {
+        ProgressIndicator previous = mIndicator.get();
+        mIndicator.set(indicator);
+        try {
+            return process.get();
+        } finally {
+            if (previous == null) {
+                mIndicator.remove();
+            } else {
+                mIndicator.set(previous);
+            }
+        }
     }
 
-    public synchronized boolean isRunning() {
-        return mIsRunning;
+    public void runProcess(Runnable process, ProgressIndicator indicator) {
+        runProcess(() -> {
+            process.run();
+            return null;
+        }, indicator);
     }
 
-    public synchronized boolean isCanceled() {
-        return mIsCanceled;
+    /**
+     * @return the indicator of the process running on the current thread, or null
+     */
+    public ProgressIndicator getProgressIndicator() {
+        return mIndicator.get();
     }
 
+    /**
+     * Checks the indicator of the process running on the current thread, does nothing if
+     * the thread is not running a process
+     */
     public static void checkCanceled() throws ProcessCanceledException {
         getInstance().doCheckCancelled();
     }
 
-    public synchronized void doCheckCancelled() throws ProcessCanceledException {
-        if (mIsCanceled) {
-            mIsCanceled = false;
-            throw new ProcessCanceledException();
+    public void doCheckCancelled() throws ProcessCanceledException {
+        ProgressIndicator indicator = mIndicator.get();
+        if (indicator != null) {
+            indicator.checkCanceled();
         }
     }
 }
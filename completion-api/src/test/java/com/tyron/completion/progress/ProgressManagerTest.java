@@ -0,0 +1,74 @@
+package com.tyron.completion.progress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProgressManagerTest {
+
+    @Test
+    public void testCancelOnlyAffectsItsProcess() throws InterruptedException {
+        ProgressIndicator first = new ProgressIndicator();
+        ProgressIndicator second = new ProgressIndicator();
+        AtomicBoolean secondCanceled = new AtomicBoolean();
+        Thread thread = new Thread(() -> ProgressManager.getInstance().runProcess(() -> {
+            first.cancel();
+            try {
+                ProgressManager.checkCanceled();
+            } catch (ProcessCanceledException e) {
+                secondCanceled.set(true);
+            }
+        }, second));
+        thread.start();
+        thread.join();
+        assertFalse(secondCanceled.get());
+
+        ProgressManager.getInstance().runProcess(() -> {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    ProgressManager.checkCanceled();
+                    fail();
+                } catch (ProcessCanceledException expected) {
+                    // the indicator stays canceled after a check
+                }
+            }
+        }, first);
+    }
+
+    @Test
+    public void testIndicatorIsRestored() {
+        ProgressIndicator outer = new ProgressIndicator();
+        ProgressIndicator inner = new ProgressIndicator();
+        ProgressManager manager = ProgressManager.getInstance();
+        manager.runProcess(() -> {
+            manager.runProcess(() -> assertSame(inner, manager.getProgressIndicator()), inner);
+            assertSame(outer, manager.getProgressIndicator());
+        }, outer);
+        assertNull(manager.getProgressIndicator());
+        // no process is running on this thread
+        ProgressManager.checkCanceled();
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        ProgressIndicator indicator = new ProgressIndicator(10, TimeUnit.MILLISECONDS);
+        AtomicInteger listenerCalls = new AtomicInteger();
+        indicator.addCancelListener(listenerCalls::incrementAndGet);
+        Thread.sleep(50);
+        assertTrue(indicator.isCanceled());
+        assertTrue(indicator.isCanceled());
+        assertEquals(1, listenerCalls.get());
+
+        indicator.addCancelListener(listenerCalls::incrementAndGet);
+        assertEquals(2, listenerCalls.get());
+    }
+}
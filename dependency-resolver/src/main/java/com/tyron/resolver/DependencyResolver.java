@@ -1,5 +1,7 @@
 package com.tyron.resolver;
 
+import androidx.annotation.Nullable;
+
 import com.tyron.resolver.model.Dependency;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.repository.PomRepository;
@@ -11,9 +13,19 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DependencyResolver {
 
+    /**
+     * The maximum number of poms fetched at the same time, the repository may further limit
+     * the number of requests made to each of its urls
+     */
+    private static final int MAX_CONCURRENT_REQUESTS = 16;
+
     private final PomRepository repository;
     private final Map<Pom, String> resolvedPoms;
 
@@ -35,21 +47,33 @@ public class DependencyResolver {
     }
 
     public List<Pom> resolveDependencies(List<Dependency> declaredDependencies) {
-        List<Pom> poms = new ArrayList<>();
-        for (Dependency dependency : declaredDependencies) {
-            if (mListener != null) {
-                mListener.onResolve("Getting POM: " + dependency);
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS);
+        try {
+            List<Future<Pom>> futures = new ArrayList<>(declaredDependencies.size());
+            for (Dependency dependency : declaredDependencies) {
+                futures.add(executor.submit(() -> repository.getPom(dependency.toString())));
             }
-            Pom pom = repository.getPom(dependency.toString());
-            if (pom != null) {
-                poms.add(pom);
-            } else {
+
+            List<Pom> poms = new ArrayList<>();
+            for (int i = 0; i < declaredDependencies.size(); i++) {
+                Dependency dependency = declaredDependencies.get(i);
                 if (mListener != null) {
-                    mListener.onFailure("Unable to retrieve POM of " + dependency);
+                    mListener.onResolve("Getting POM: " + dependency);
+                }
+                Pom pom = getQuietly(futures.get(i));
+                if (pom != null) {
+                    poms.add(pom);
+                } else {
+                    if (mListener != null) {
+                        mListener.onFailure("Unable to retrieve POM of " + dependency);
+                    }
                 }
             }
+            fetchDependencies(poms, executor);
+            return resolveFetched(poms);
+        } finally {
+            executor.shutdownNow();
         }
-        return resolve(poms);
     }
 
     /**
@@ -57,12 +81,88 @@ public class DependencyResolver {
      * the conflicting libraries
      */
     public List<Pom> resolve(List<Pom> declaredDependencies) {
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS);
+        try {
+            fetchDependencies(declaredDependencies, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        return resolveFetched(declaredDependencies);
+    }
+
+    private List<Pom> resolveFetched(List<Pom> declaredDependencies) {
         for (Pom pom : declaredDependencies) {
             resolve(pom);
         }
         return new ArrayList<>(resolvedPoms.keySet());
     }
 
+    /**
+     * Fetches the poms of the dependency graph breadth first, each level of the graph is
+     * fetched concurrently so the resolution that follows finds them in the repository.
+     * The dependencies of a pom are skipped if a newer version of it has already been
+     * fetched since the resolution would discard them, they are still fetched on demand
+     * if they turn out to be needed.
+     */
+    private void fetchDependencies(Collection<Pom> poms, ExecutorService executor) {
+        Set<String> requested = new HashSet<>();
+        Map<Pom, ComparableVersion> newestVersions = new HashMap<>();
+        List<Pom> level = new ArrayList<>(poms);
+        while (!level.isEmpty()) {
+            List<Future<Pom>> futures = new ArrayList<>();
+            for (Pom pom : level) {
+                if (!isNewestVersion(pom, newestVersions)) {
+                    continue;
+                }
+                for (Dependency dependency : pom.getDependencies()) {
+                    if ("test".equals(dependency.getScope())) {
+                        continue;
+                    }
+                    String declaration = dependency.toString();
+                    if (requested.add(declaration)) {
+                        futures.add(executor.submit(() -> repository.getPom(declaration)));
+                    }
+                }
+            }
+
+            level = new ArrayList<>(futures.size());
+            for (Future<Pom> future : futures) {
+                Pom pom = getQuietly(future);
+                if (pom != null) {
+                    level.add(pom);
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private boolean isNewestVersion(Pom pom, Map<Pom, ComparableVersion> newestVersions) {
+        if (pom.getVersionName() == null) {
+            return true;
+        }
+        ComparableVersion version = new ComparableVersion(pom.getVersionName());
+        ComparableVersion newest = newestVersions.get(pom);
+        if (newest != null && newest.compareTo(version) >= 0) {
+            return false;
+        }
+        newestVersions.put(pom, version);
+        return true;
+    }
+
+    @Nullable
+    private static Pom getQuietly(Future<Pom> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
     private void resolve(Pom pom) {
         if (resolvedPoms.containsKey(pom)) {
             String resolvedVersion = resolvedPoms.get(pom);
@@ -0,0 +1,164 @@
+package com.tyron.resolver.repository;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.resolver.model.Dependency;
+import com.tyron.resolver.model.Pom;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parsed metadata of the cached poms, so they do not need to be parsed again when the
+ * repository is initialized.
+ *
+ * <p>The index is a header followed by one record per pom, records are appended as poms are
+ * parsed. A record left incomplete by an interrupted write is discarded on the next load.
+ */
+class PomIndex {
+
+    private static final int MAGIC = 0x504F4D49;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private final File mFile;
+
+    PomIndex(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return the indexed poms by their {@code groupId:artifactId:version} declaration
+     */
+    @NonNull
+    synchronized Map<String, Pom> load() {
+        Map<String, Pom> poms = new HashMap<>();
+        if (!mFile.exists()) {
+            return poms;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                // written by another version, it will be rebuilt as poms are parsed
+                deleteQuietly();
+                return poms;
+            }
+            validLength = HEADER_SIZE;
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                Pom pom = readPom(in);
+                poms.put(pom.getDeclarationString(), pom);
+                validLength += 4 + length;
+            }
+        } catch (IOException e) {
+            // the last record is incomplete, drop it so new records can be appended
+            truncate(validLength);
+        }
+        return poms;
+    }
+
+    /**
+     * Appends the metadata of the pom to the index
+     */
+    synchronized void add(@NonNull Pom pom) throws IOException {
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        boolean exists = mFile.exists() && mFile.length() >= HEADER_SIZE;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mFile, exists)))) {
+            if (!exists) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writePom(new DataOutputStream(bytes), pom);
+            // the record is prefixed by its length so incomplete records can be detected
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    private static void writePom(DataOutputStream out, Pom pom) throws IOException {
+        writeString(out, pom.getGroupId());
+        writeString(out, pom.getArtifactId());
+        writeString(out, pom.getVersionName());
+        writeString(out, pom.getPackaging());
+        List<Dependency> dependencies = pom.getDependencies();
+        out.writeInt(dependencies.size());
+        for (Dependency dependency : dependencies) {
+            writeString(out, dependency.getGroupId());
+            writeString(out, dependency.getArtifactId());
+            writeString(out, dependency.getVersionName());
+            writeString(out, dependency.getScope());
+            writeString(out, dependency.getType());
+        }
+    }
+
+    private static Pom readPom(DataInputStream in) throws IOException {
+        Pom pom = Pom.valueOf(readString(in), readString(in), readString(in));
+        pom.setPackaging(readString(in));
+        int count = in.readInt();
+        List<Dependency> dependencies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Dependency dependency = new Dependency(readString(in), readString(in),
+                    readString(in));
+            dependency.setScope(readString(in));
+            dependency.setType(readString(in));
+            dependencies.add(dependency);
+        }
+        pom.setDependencies(dependencies);
+        return pom;
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String string)
+            throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private void truncate(long length) {
+        if (length < HEADER_SIZE) {
+            deleteQuietly();
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(length);
+        } catch (IOException e) {
+            deleteQuietly();
+        }
+    }
+
+    private void deleteQuietly() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+}
@@ -2,8 +2,7 @@ package com.tyron.resolver.repository;
 
 import androidx.annotation.Nullable;
 
-import com.google.common.io.CharStreams;
-import com.tyron.common.util.FileUtilsEx;
+import com.google.common.io.ByteStreams;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.parser.PomParser;
 
@@ -11,28 +10,74 @@ import org.apache.commons.io.FileUtils;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
 import java.util.jar.JarFile;
-import java.util.zip.ZipException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.zip.ZipFile;
 
 import kotlin.text.Charsets;
 
+/**
+ * A {@link PomRepository} backed by a cache directory and a list of maven repositories.
+ *
+ * <p>This class is thread safe so the poms of a dependency graph can be fetched concurrently.
+ * The number of concurrent requests to each repository is bounded, and declarations that every
+ * repository answered as not found are remembered so they are not requested again. Failures
+ * that may be transient, like timeouts or server errors, are not remembered.
+ *
+ * <p>Parsed poms are kept by their declaration and recorded in a {@link PomIndex} in the cache
+ * directory, so once a pom has been fetched it is neither requested nor parsed again.
+ */
 public class PomRepositoryImpl implements PomRepository {
 
+    /**
+     * The maximum number of concurrent requests made to a single repository
+     */
+    private static final int MAX_REQUESTS_PER_REPOSITORY = 4;
+    private static final int CONNECT_TIMEOUT = 10_000;
+    private static final int READ_TIMEOUT = 30_000;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final String INDEX_FILE_NAME = "index.bin";
+    private static final Logger LOG = Logger.getLogger(PomRepositoryImpl.class.getName());
+
     private File cacheDir;
     private final List<String> repositoryUrls;
-    private final List<Pom> pomFiles;
+
+    /**
+     * The parsed poms by their {@code groupId:artifactId:version} declaration
+     */
+    private final Map<String, Pom> pomFiles = new ConcurrentHashMap<>();
+    private PomIndex pomIndex;
+
+    /**
+     * The declarations of the poms that were not found in any of the repositories
+     */
+    private final Set<String> missingPoms = ConcurrentHashMap.newKeySet();
+    private final Map<String, Object> fetchLocks = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> requestPermits = new ConcurrentHashMap<>();
 
     public PomRepositoryImpl() {
-        this.repositoryUrls = new ArrayList<>();
-        this.pomFiles = new ArrayList<>();
+        this.repositoryUrls = new CopyOnWriteArrayList<>();
     }
 
     @Override
@@ -42,60 +87,307 @@ public class PomRepositoryImpl implements PomRepository {
         if (pomNames == null) {
             return null;
         }
-        for (Pom pom : pomFiles) {
-            if (!pomNames[0].equals(pom.getGroupId())) {
-                continue;
+        String key = pomNames[0] + ":" + pomNames[1] + ":" + pomNames[2];
+        Pom pom = pomFiles.get(key);
+        if (pom != null) {
+            return pom;
+        }
+        if (missingPoms.contains(key)) {
+            return null;
+        }
+        // only one thread fetches a given pom, the others wait for its result
+        Object lock = fetchLocks.computeIfAbsent(key, k -> new Object());
+        synchronized (lock) {
+            pom = pomFiles.get(key);
+            if (pom == null && !missingPoms.contains(key)) {
+                pom = getPomFromCacheFile(pomNames);
+                if (pom == null) {
+                    try {
+                        pom = getPomFromUrls(pomNames);
+                        if (pom == null) {
+                            missingPoms.add(key);
+                        }
+                    } catch (IOException e) {
+                        // requested again the next time it is needed
+                        LOG.log(Level.WARNING, "Unable to fetch " + key, e);
+                    }
+                }
             }
-            if (!pomNames[1].equals(pom.getArtifactId())) {
-                continue;
+            // the lock of a failed fetch is kept, so the threads that retry it still
+            // fetch it one at a time
+            if (pom != null || missingPoms.contains(key)) {
+                fetchLocks.remove(key, lock);
             }
-            if (!pomNames[2].equals(pom.getVersionName())) {
-                continue;
+        }
+        return pom;
+    }
+
+    /**
+     * Parses a pom that was saved to the cache directory but is not in the index, e.g. the
+     * poms bundled with the app
+     */
+    @Nullable
+    private Pom getPomFromCacheFile(String[] names) {
+        File pomFile = new File(getPomCacheDirectory(),
+                names[0] + ":" + names[1] + ":" + names[2] + ".pom");
+        if (!pomFile.isFile()) {
+            return null;
+        }
+        try {
+            Pom parsed = new PomParser().parse(pomFile);
+            parsed.setGroupId(names[0]);
+            parsed.setArtifactId(names[1]);
+            parsed.setVersionName(names[2]);
+            addPom(parsed);
+            return parsed;
+        } catch (XmlPullParserException | IOException e) {
+            // fetch it again from the repositories
+            return null;
+        }
+    }
+
+    private void addPom(Pom pom) {
+        pomFiles.put(pom.getDeclarationString(), pom);
+        if (pomIndex != null) {
+            try {
+                pomIndex.add(pom);
+            } catch (IOException e) {
+                // the pom will be parsed again on the next initialization
             }
-            return pom;
         }
-        return getPomFromUrls(pomNames);
     }
 
-    private Pom getPomFromUrls(String[] names) {
-        InputStream is = getFromUrls(getPathFromDeclaration(names) + ".pom");
-        if (is != null) {
-            String contents = null;
+    /**
+     * @return null if no repository has the pom or it could not be parsed
+     * @throws IOException if a repository could not be reached, so the pom may still exist
+     */
+    @Nullable
+    private Pom getPomFromUrls(String[] names) throws IOException {
+        byte[] bytes = readFromUrls(getPathFromDeclaration(names) + ".pom");
+        if (bytes != null) {
             try {
-                contents = CharStreams.toString(new InputStreamReader(is));
+                String contents = new String(bytes, StandardCharsets.UTF_8);
                 Pom parsed = new PomParser().parse(contents);
                 parsed.setGroupId(names[0]);
                 parsed.setArtifactId(names[1]);
                 parsed.setVersionName(names[2]);
-                pomFiles.add(parsed);
                 savePomToCache(parsed, contents);
+                addPom(parsed);
                 return parsed;
             } catch (IOException | XmlPullParserException e) {
-                // ignored
+                // the pom is invalid, requesting it again will not fix it
             }
         }
         return null;
     }
 
-    private InputStream getFromUrls(String appendUrl) {
-        for (int i = 0; i < repositoryUrls.size(); i++) {
-            String url = repositoryUrls.get(i);
+    /**
+     * Reads the file at the given path from the first repository that has it
+     *
+     * @return null if all the repositories answered that the file does not exist
+     * @throws IOException if no repository returned the file and at least one of them failed,
+     *                     or the thread was interrupted
+     */
+    @Nullable
+    private byte[] readFromUrls(String appendUrl) throws IOException {
+        IOException exception = null;
+        for (String url : repositoryUrls) {
+            Semaphore permits = acquire(url);
+            if (permits == null) {
+                throw new InterruptedIOException("Interrupted while fetching " + appendUrl);
+            }
             try {
-                URL downloadUrl = new URL(url + "/" + appendUrl);
-                InputStream is = downloadUrl.openStream();
-                if (is != null) {
-                    return is;
+                URLConnection connection = openConnection(new URL(url + "/" + appendUrl), 0);
+                if (connection != null) {
+                    try (InputStream is = connection.getInputStream()) {
+                        return ByteStreams.toByteArray(is);
+                    }
                 }
             } catch (IOException e) {
-                if (i == repositoryUrls.size() - 1) {
-                    // The dependency is not found on all urls, log
-                    System.out.println("Dependency not found! " + appendUrl);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
                 }
+                // try the next repository
+                exception = e;
+            } finally {
+                permits.release();
             }
         }
+        if (exception != null) {
+            throw exception;
+        }
+        // The dependency is not found on all urls, log
+        System.out.println("Dependency not found! " + appendUrl);
         return null;
     }
 
+    /**
+     * Downloads the file at the given path from the first repository that has it. Partial
+     * downloads are resumed and the file is verified against the SHA-1 checksum published
+     * next to it, if any.
+     *
+     * @return false if the file is not found on all the repositories
+     * @throws IOException if the file could not be downloaded from the repository that has it
+     */
+    private boolean downloadFromUrls(String appendUrl, File destination) throws IOException {
+        IOException exception = null;
+        for (String url : repositoryUrls) {
+            Semaphore permits = acquire(url);
+            if (permits == null) {
+                throw new InterruptedIOException("Interrupted while downloading " + appendUrl);
+            }
+            try {
+                if (download(url + "/" + appendUrl, destination)) {
+                    return true;
+                }
+            } catch (IOException e) {
+                exception = e;
+            } finally {
+                permits.release();
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+        return false;
+    }
+
+    private boolean download(String url, File destination) throws IOException {
+        File partial = new File(destination.getPath() + ".part");
+        // the url the partial file was downloaded from, it is only resumed from the same url
+        File source = new File(destination.getPath() + ".part.url");
+        if (partial.exists() && !url.equals(readSource(source))) {
+            FileUtils.deleteQuietly(partial);
+        }
+        long offset = partial.length();
+        URLConnection connection = openConnection(new URL(url), offset);
+        if (connection == null) {
+            return false;
+        }
+        FileUtils.writeStringToFile(source, url, StandardCharsets.UTF_8);
+        boolean append = offset > 0 && connection instanceof HttpURLConnection
+                && ((HttpURLConnection) connection).getResponseCode()
+                == HttpURLConnection.HTTP_PARTIAL;
+        try (InputStream is = connection.getInputStream();
+             OutputStream os = new FileOutputStream(partial, append)) {
+            ByteStreams.copy(is, os);
+        }
+
+        String checksum = readChecksum(url + ".sha1");
+        if (checksum != null && !checksum.equalsIgnoreCase(sha1(partial))) {
+            FileUtils.deleteQuietly(partial);
+            FileUtils.deleteQuietly(source);
+            throw new IOException("Checksum mismatch for " + url);
+        }
+        FileUtils.deleteQuietly(destination);
+        if (!partial.renameTo(destination)) {
+            throw new IOException("Unable to move " + partial + " to " + destination);
+        }
+        FileUtils.deleteQuietly(source);
+        return true;
+    }
+
+    @Nullable
+    private static String readSource(File source) {
+        try {
+            return FileUtils.readFileToString(source, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the checksum published at the url, null if there is none
+     */
+    @Nullable
+    private String readChecksum(String url) {
+        try {
+            URLConnection connection = openConnection(new URL(url), 0);
+            if (connection == null) {
+                return null;
+            }
+            try (InputStream is = connection.getInputStream()) {
+                String contents = new String(ByteStreams.toByteArray(is),
+                        StandardCharsets.UTF_8).trim();
+                // the file may contain the name of the checksummed file after the checksum
+                String[] parts = contents.split("\\s+");
+                return parts.length > 0 && !parts[0].isEmpty() ? parts[0] : null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Opens a connection to the url, requesting the content after the offset if the server
+     * supports it
+     *
+     * @return null if the url does not exist
+     */
+    @Nullable
+    private URLConnection openConnection(URL url, long offset) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            if (offset > 0) {
+                http.setRequestProperty("Range", "bytes=" + offset + "-");
+            }
+            int code = http.getResponseCode();
+            if (offset > 0 && code == HTTP_RANGE_NOT_SATISFIABLE) {
+                // the partial file is not a prefix of this file, download all of it
+                http.disconnect();
+                return openConnection(url, 0);
+            }
+            if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+                http.disconnect();
+                return null;
+            }
+            if (code >= 400) {
+                http.disconnect();
+                throw new IOException("Server returned " + code + " for " + url);
+            }
+        } else {
+            try {
+                connection.connect();
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+        }
+        return connection;
+    }
+
+    @Nullable
+    private Semaphore acquire(String url) {
+        Semaphore permits = requestPermits.computeIfAbsent(url,
+                k -> new Semaphore(MAX_REQUESTS_PER_REPOSITORY));
+        try {
+            permits.acquire();
+            return permits;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static String sha1(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream is = new DigestInputStream(new FileInputStream(file), digest)) {
+            ByteStreams.exhaust(is);
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
     private void savePomToCache(Pom pom, String contents) throws IOException {
         File pomFile = new File(getPomCacheDirectory(), pom.getDeclarationString() + ".pom");
         if (!pomFile.exists() && !pomFile.createNewFile()) {
@@ -150,20 +442,15 @@ public class PomRepositoryImpl implements PomRepository {
                 }
             }
         }
-        InputStream is = getFromUrls(pom.getPath() + "/" + pom.getFileName() + extension);
-        if (is != null) {
-            File aarFile = new File(getLibraryCacheDirectory(), pom.getDeclarationString() + extension);
-            FileUtilsEx.createFile(aarFile);
-            FileUtils.copyInputStreamToFile(is, aarFile);
+        File aarFile = new File(getLibraryCacheDirectory(), pom.getDeclarationString() + extension);
+        if (downloadFromUrls(pom.getPath() + "/" + pom.getFileName() + extension, aarFile)) {
             return aarFile;
         }
         return null;
     }
 
     private boolean isValidJarFile(File file) {
-        try {
-            // noinspection unused
-            JarFile jarFile = new JarFile(file);
+        try (JarFile ignored = new JarFile(file)) {
             return true;
         } catch (IOException e) {
             return false;
@@ -171,9 +458,7 @@ public class PomRepositoryImpl implements PomRepository {
     }
 
     private boolean isValidZipFile(File file) {
-        try {
-            // noinspection unused
-            ZipFile zipFile = new ZipFile(file);
+        try (ZipFile ignored = new ZipFile(file)) {
             return true;
         } catch (IOException e) {
             return false;
@@ -218,25 +503,8 @@ public class PomRepositoryImpl implements PomRepository {
             throw new IllegalStateException("Cache directory is not set.");
         }
 
-        File[] pomFiles = getPomCacheDirectory().listFiles(c -> c.getName().endsWith(".pom"));
-        if (pomFiles != null) {
-            for (File pom : pomFiles) {
-                String[] pomNames = parsePomDeclaration(pom.getName());
-                if (pomNames == null) {
-                    continue;
-                }
-                PomParser parser = new PomParser();
-                try {
-                    Pom parsed = parser.parse(pom);
-                    parsed.setGroupId(pomNames[0]);
-                    parsed.setArtifactId(pomNames[1]);
-                    parsed.setVersionName(pomNames[2]);
-                    this.pomFiles.add(parsed);
-                } catch (XmlPullParserException | IOException e) {
-                    // ignored
-                    // TODO: should the file be deleted if its corrupt?
-                }
-            }
-        }
+        // the cached pom files are only parsed when they are not in the index
+        pomIndex = new PomIndex(new File(getPomCacheDirectory(), INDEX_FILE_NAME));
+        pomFiles.putAll(pomIndex.load());
     }
 }
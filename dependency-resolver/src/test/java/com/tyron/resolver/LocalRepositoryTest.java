@@ -0,0 +1,160 @@
+package com.tyron.resolver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.tyron.resolver.model.Dependency;
+import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.PomRepositoryImpl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves dependencies against a maven repository on the file system
+ */
+public class LocalRepositoryTest {
+
+    private static final byte[] LIBRARY_CONTENTS = "library".getBytes(StandardCharsets.UTF_8);
+
+    private File mRoot;
+    private File mRepositoryDir;
+    private PomRepositoryImpl mRepository;
+
+    @Before
+    public void setup() throws IOException {
+        mRoot = Files.createTempDirectory("repository").toFile();
+        mRepositoryDir = new File(mRoot, "maven");
+        File cacheDir = new File(mRoot, "cache");
+        FileUtils.forceMkdir(cacheDir);
+
+        writePom("com.example", "app", "1.0",
+                "com.example:core:1.0", "com.example:ui:1.0", "com.example:missing:1.0");
+        writePom("com.example", "ui", "1.0", "com.example:core:2.0");
+        writePom("com.example", "core", "1.0");
+        writePom("com.example", "core", "2.0");
+
+        mRepository = new PomRepositoryImpl();
+        mRepository.setCacheDirectory(cacheDir);
+        mRepository.addRepositoryUrl(mRepositoryDir.toURI().toString().replaceAll("/$", ""));
+        mRepository.initialize();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mRoot);
+    }
+
+    @Test
+    public void testResolveNewestVersion() {
+        DependencyResolver resolver = new DependencyResolver(mRepository);
+        List<Pom> poms = resolver.resolveDependencies(
+                Collections.singletonList(Dependency.valueOf("com.example:app:1.0")));
+
+        Map<String, String> versions = new HashMap<>();
+        for (Pom pom : poms) {
+            versions.put(pom.getArtifactId(), pom.getVersionName());
+        }
+        Map<String, String> expected = new HashMap<>();
+        expected.put("app", "1.0");
+        expected.put("ui", "1.0");
+        expected.put("core", "2.0");
+        assertEquals(expected, versions);
+    }
+
+    @Test
+    public void testMissingPom() throws IOException {
+        assertNull(mRepository.getPom("com.example:missing:1.0"));
+
+        // negative lookups are remembered
+        writePom("com.example", "missing", "1.0");
+        assertNull(mRepository.getPom("com.example:missing:1.0"));
+    }
+
+    @Test
+    public void testDownloadLibrary() throws IOException {
+        File jar = writeLibrary("core", "2.0", LIBRARY_CONTENTS);
+        FileUtils.writeStringToFile(new File(jar.getPath() + ".sha1"),
+                "ed2a8d5c42aad8b2e3ad2dc0ae8b9ea8f8e1d1b1  core-2.0.jar", StandardCharsets.UTF_8);
+        Pom pom = mRepository.getPom("com.example:core:2.0");
+        assertNotNull(pom);
+        try {
+            mRepository.getLibrary(pom);
+            fail("The checksum does not match the library");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        FileUtils.writeStringToFile(new File(jar.getPath() + ".sha1"),
+                sha1(LIBRARY_CONTENTS), StandardCharsets.UTF_8);
+        File library = mRepository.getLibrary(pom);
+        assertNotNull(library);
+        assertArrayEquals(LIBRARY_CONTENTS, FileUtils.readFileToByteArray(library));
+        assertEquals(Collections.singletonList(library.getName()),
+                Arrays.asList(library.getParentFile().list()));
+    }
+
+    private void writePom(String groupId, String artifactId, String version,
+                          String... dependencies) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<project>\n");
+        builder.append("  <packaging>jar</packaging>\n");
+        builder.append("  <dependencies>\n");
+        for (String declaration : dependencies) {
+            String[] names = declaration.split(":");
+            builder.append("    <dependency>\n")
+                    .append("      <groupId>").append(names[0]).append("</groupId>\n")
+                    .append("      <artifactId>").append(names[1]).append("</artifactId>\n")
+                    .append("      <version>").append(names[2]).append("</version>\n")
+                    .append("    </dependency>\n");
+        }
+        builder.append("  </dependencies>\n");
+        builder.append("</project>\n");
+
+        File pom = new File(getVersionDirectory(groupId, artifactId, version),
+                artifactId + "-" + version + ".pom");
+        FileUtils.writeStringToFile(pom, builder.toString(), StandardCharsets.UTF_8);
+    }
+
+    private File writeLibrary(String artifactId, String version, byte[] contents)
+            throws IOException {
+        File jar = new File(getVersionDirectory("com.example", artifactId, version),
+                artifactId + "-" + version + ".jar");
+        FileUtils.writeByteArrayToFile(jar, contents);
+        return jar;
+    }
+
+    private File getVersionDirectory(String groupId, String artifactId, String version) {
+        return new File(mRepositoryDir,
+                groupId.replace('.', '/') + "/" + artifactId + "/" + version);
+    }
+
+    private static String sha1(byte[] bytes) {
+        try {
+            StringBuilder builder = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
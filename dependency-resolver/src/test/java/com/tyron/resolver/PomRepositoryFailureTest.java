@@ -0,0 +1,149 @@
+package com.tyron.resolver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.PomRepositoryImpl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks which failures of a repository are remembered, against a local http server
+ */
+public class PomRepositoryFailureTest {
+
+    private static final String POM_PATH = "/com/example/lib/1.0/lib-1.0.pom";
+    private static final String JAR_PATH = "/com/example/lib/1.0/lib-1.0.jar";
+    private static final String POM = "<project><packaging>jar</packaging></project>";
+
+    private HttpServer mServer;
+    private File mCacheDir;
+    private final AtomicInteger mPomRequests = new AtomicInteger();
+    private final AtomicInteger mFailures = new AtomicInteger();
+    private final List<String> mRanges = Collections.synchronizedList(new ArrayList<>());
+    private byte[] mJar;
+
+    @Before
+    public void setup() throws IOException {
+        mCacheDir = Files.createTempDirectory("pom-cache").toFile();
+        mJar = new byte[50_000];
+        new Random(0).nextBytes(mJar);
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            byte[] body = null;
+            if (POM_PATH.equals(path)) {
+                mPomRequests.incrementAndGet();
+                if (mFailures.getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                body = POM.getBytes(StandardCharsets.UTF_8);
+            } else if (JAR_PATH.equals(path)) {
+                body = mJar;
+            }
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            int offset = 0;
+            if (range != null) {
+                mRanges.add(range);
+                offset = Integer.parseInt(range.replaceAll("\\D", ""));
+                exchange.sendResponseHeaders(206, body.length - offset);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+            }
+            exchange.getResponseBody().write(body, offset, body.length - offset);
+            exchange.close();
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.stop(0);
+        FileUtils.forceDelete(mCacheDir);
+    }
+
+    private PomRepositoryImpl createRepository() {
+        PomRepositoryImpl repository = new PomRepositoryImpl();
+        repository.setCacheDirectory(mCacheDir);
+        repository.addRepositoryUrl("http://127.0.0.1:" + mServer.getAddress().getPort());
+        repository.initialize();
+        return repository;
+    }
+
+    @Test
+    public void testServerErrorIsNotRemembered() {
+        mFailures.set(1);
+        PomRepositoryImpl repository = createRepository();
+        assertNull(repository.getPom("com.example:lib:1.0"));
+        assertNotNull(repository.getPom("com.example:lib:1.0"));
+        assertEquals(2, mPomRequests.get());
+    }
+
+    @Test
+    public void testNotFoundIsRemembered() {
+        PomRepositoryImpl repository = createRepository();
+        assertNull(repository.getPom("com.example:missing:1.0"));
+        assertNull(repository.getPom("com.example:missing:1.0"));
+        assertNotNull(repository.getPom("com.example:lib:1.0"));
+        assertEquals(1, mPomRequests.get());
+    }
+
+    @Test
+    public void testResumeOnlyFromSameRepository() throws IOException {
+        PomRepositoryImpl repository = createRepository();
+        Pom pom = repository.getPom("com.example:lib:1.0");
+        assertNotNull(pom);
+
+        File libraries = new File(mCacheDir, "library");
+        File partial = new File(libraries, "com.example:lib:1.0.jar.part");
+        File source = new File(libraries, "com.example:lib:1.0.jar.part.url");
+
+        // bytes downloaded from another repository
+        FileUtils.writeByteArrayToFile(partial, new byte[20_000]);
+        FileUtils.writeStringToFile(source, "http://other.example.com" + JAR_PATH,
+                StandardCharsets.UTF_8);
+        File library = repository.getLibrary(pom);
+        assertNotNull(library);
+        assertTrue(mRanges.isEmpty());
+        assertArrayEquals(mJar, FileUtils.readFileToByteArray(library));
+
+        // bytes downloaded from this repository
+        FileUtils.deleteQuietly(library);
+        FileUtils.writeByteArrayToFile(partial, Arrays.copyOf(mJar, 20_000));
+        FileUtils.writeStringToFile(source, "http://127.0.0.1:" + mServer.getAddress().getPort()
+                + JAR_PATH, StandardCharsets.UTF_8);
+        library = repository.getLibrary(pom);
+        assertNotNull(library);
+        assertEquals(Collections.singletonList("bytes=20000-"), mRanges);
+        assertArrayEquals(mJar, FileUtils.readFileToByteArray(library));
+        assertTrue(!source.exists());
+    }
+}
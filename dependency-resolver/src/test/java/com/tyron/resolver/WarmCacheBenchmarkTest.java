@@ -0,0 +1,124 @@
+package com.tyron.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.PomRepositoryImpl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Resolves a graph of 200 poms from the index of a previous resolution, without the
+ * repository or the cached pom files
+ */
+public class WarmCacheBenchmarkTest {
+
+    private static final int GRAPH_SIZE = 200;
+    private static final int ITERATIONS = 20;
+
+    private File mRoot;
+    private File mRepositoryDir;
+    private File mCacheDir;
+
+    @Before
+    public void setup() throws IOException {
+        mRoot = Files.createTempDirectory("repository").toFile();
+        mRepositoryDir = new File(mRoot, "maven");
+        mCacheDir = new File(mRoot, "cache");
+        FileUtils.forceMkdir(mCacheDir);
+
+        for (int i = 0; i < GRAPH_SIZE; i++) {
+            writePom(i, i + 1, i + 2, i * 2 + 1);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mRoot);
+    }
+
+    @Test
+    public void testResolveFromIndex() throws IOException {
+        PomRepositoryImpl cold = new PomRepositoryImpl();
+        cold.setCacheDirectory(mCacheDir);
+        cold.addRepositoryUrl(mRepositoryDir.toURI().toString().replaceAll("/$", ""));
+        cold.initialize();
+        Set<String> expected = resolve(cold);
+        assertEquals(GRAPH_SIZE, expected.size());
+
+        // only the index remains, any pom that is not in it can not be found
+        FileUtils.deleteDirectory(mRepositoryDir);
+        File[] pomFiles = new File(mCacheDir, "pom").listFiles(f -> f.getName().endsWith(".pom"));
+        assertNotNull(pomFiles);
+        for (File pomFile : pomFiles) {
+            FileUtils.forceDelete(pomFile);
+        }
+
+        long elapsed = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            PomRepositoryImpl warm = new PomRepositoryImpl();
+            warm.setCacheDirectory(mCacheDir);
+            warm.initialize();
+            Set<String> resolved = resolve(warm);
+            elapsed += System.nanoTime() - start;
+
+            assertEquals(expected, resolved);
+        }
+        System.out.println("Resolved " + GRAPH_SIZE + " poms from the index in "
+                + (elapsed / ITERATIONS / 1000) + "us on average");
+    }
+
+    private Set<String> resolve(PomRepositoryImpl repository) {
+        Pom root = repository.getPom(getDeclaration(0));
+        assertNotNull(root);
+        List<Pom> poms = new DependencyResolver(repository)
+                .resolve(Collections.singletonList(root));
+        Set<String> declarations = new TreeSet<>();
+        for (Pom pom : poms) {
+            declarations.add(pom.getDeclarationString());
+        }
+        return declarations;
+    }
+
+    private void writePom(int index, int... dependencies) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<project>\n");
+        builder.append("  <packaging>jar</packaging>\n");
+        builder.append("  <dependencies>\n");
+        for (int dependency : dependencies) {
+            if (dependency >= GRAPH_SIZE) {
+                continue;
+            }
+            builder.append("    <dependency>\n")
+                    .append("      <groupId>com.example</groupId>\n")
+                    .append("      <artifactId>lib").append(dependency).append("</artifactId>\n")
+                    .append("      <version>1.0</version>\n")
+                    .append("      <scope>compile</scope>\n")
+                    .append("    </dependency>\n");
+        }
+        builder.append("  </dependencies>\n");
+        builder.append("</project>\n");
+
+        File pom = new File(mRepositoryDir,
+                "com/example/lib" + index + "/1.0/lib" + index + "-1.0.pom");
+        FileUtils.writeStringToFile(pom, builder.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static String getDeclaration(int index) {
+        return "com.example:lib" + index + ":1.0";
+    }
+}
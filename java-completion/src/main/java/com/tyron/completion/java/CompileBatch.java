@@ -7,6 +7,7 @@ import org.openjdk.source.tree.CompilationUnitTree;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.common.TestUtil;
 import com.tyron.common.util.StringSearch;
+import com.tyron.completion.progress.ProcessCanceledException;
 
 import org.apache.commons.io.FileUtils;
 import org.openjdk.javax.lang.model.util.Elements;
@@ -44,7 +45,19 @@ public class CompileBatch implements AutoCloseable {
     /**
      * Indicates the task that requested the compilation is finished with it.
      */
-    public boolean closed;
+    public volatile boolean closed;
+    private boolean released;
+
+    /**
+     * The file manager used by this compilation, file managers are not thread safe
+     * so each compilation that may run concurrently gets its own.
+     */
+    final SourceFileManager fileManager;
+
+    /**
+     * The diagnostics reported by this compilation only
+     */
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
 
     public final JavacTask task;
     public final Trees trees;
@@ -54,7 +67,8 @@ public class CompileBatch implements AutoCloseable {
 
     public CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        this.fileManager = parent.obtainFileManager();
+        this.borrow = batchTask(this, files);
         this.task = borrow.task;
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
@@ -69,10 +83,31 @@ public class CompileBatch implements AutoCloseable {
             // You can get at `Element` values using `Trees`
             task.analyze();
         } catch (IOException e) {
+            release();
             throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            release();
+            if (e.getCause() instanceof ProcessCanceledException) {
+                // thrown by the task listener, see ReusableCompiler.ReusableContext
+                throw (ProcessCanceledException) e.getCause();
+            }
+            throw e;
         }
     }
 
+    public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
+        synchronized (diagnostics) {
+            return new ArrayList<>(diagnostics);
+        }
+    }
+
+    private void addDiagnostic(Diagnostic<? extends JavaFileObject> diagnostic) {
+        synchronized (diagnostics) {
+            diagnostics.add(diagnostic);
+        }
+        parent.addDiagnostic(diagnostic);
+    }
+
     /**
      * If the compilation failed because javac didn't find some package-private files in source
      * files with different
@@ -85,7 +120,7 @@ public class CompileBatch implements AutoCloseable {
         JavaModule module = parent.getCurrentModule();
         // Check for "class not found errors" that refer to package private classes
         Set<Path> addFiles = new HashSet<>();
-        for (Diagnostic<? extends JavaFileObject> err : parent.getDiagnostics()) {
+        for (Diagnostic<? extends JavaFileObject> err : getDiagnostics()) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) {
                 continue;
             }
@@ -153,15 +188,53 @@ public class CompileBatch implements AutoCloseable {
 
     @Override
     public void close() {
+        markClosed();
+        parent.onBatchClosed();
+    }
+
+    /**
+     * Marks this batch as closed without notifying the threads waiting for a compiler context,
+     * used while the lock of its container is still held
+     */
+    void markClosed() {
         closed = true;
     }
 
-    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent, Collection<?
+    /**
+     * Marks this batch as being used again by a task that requested a cached compilation
+     */
+    void reopen() {
+        closed = false;
+    }
+
+    /**
+     * Returns the compiler context and the file manager of this batch to their pools,
+     * the batch can no longer be used after this.
+     */
+    void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        try {
+            borrow.close();
+        } finally {
+            parent.recycleFileManager(fileManager);
+        }
+    }
+
+    private static ReusableCompiler.Borrow batchTask(CompileBatch batch, Collection<?
             extends JavaFileObject> sources) {
+        JavaCompilerService parent = batch.parent;
         parent.clearDiagnostics();
         List<String> options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
-                Collections.emptyList(), sources);
+        try {
+            return parent.compiler.getTask(batch.fileManager, batch::addDiagnostic, options,
+                    Collections.emptyList(), sources);
+        } catch (RuntimeException e) {
+            parent.recycleFileManager(batch.fileManager);
+            throw e;
+        }
     }
 
     /**
@@ -23,7 +23,7 @@ public class CompileTask implements AutoCloseable {
         mCompileBatch = batch;
         this.task = batch.task;
         this.roots = batch.roots;
-        this.diagnostics = batch.parent.getDiagnostics();
+        this.diagnostics = batch.getDiagnostics();
     }
 
     public CompilationUnitTree root() {
@@ -52,6 +52,10 @@ public class CompileTask implements AutoCloseable {
         throw new RuntimeException("not found");
     }
 
+    CompileBatch getBatch() {
+        return mCompileBatch;
+    }
+
     @Override
     public void close() {
         mCompileBatch.close();
@@ -2,21 +2,37 @@ package com.tyron.completion.java;
 
 import androidx.annotation.GuardedBy;
 
-import java.util.concurrent.Callable;
+import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.JavaFileObject;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
 
 import kotlin.jvm.functions.Function1;
 
 /**
- * A container class for compiled information, used for thread safety
+ * A container class for compiled information, used for thread safety.
+ *
+ * <p>Each container holds the cached compilation of one set of source files, containers
+ * of different source files can be used from different threads at the same time.
  */
 public class CompilerContainer {
 
     @GuardedBy("mLock")
     private volatile CompileTask mCompileTask;
 
-    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private CompileBatch mCachedCompile;
+
+    @GuardedBy("mLock")
+    private final Map<JavaFileObject, Long> mCachedModified = new HashMap<>();
+
+    private final ReentrantLock mLock = new ReentrantLock();
 
     /**
      * This is for codes that will use the compile information,
@@ -24,33 +40,171 @@ public class CompilerContainer {
      * are synchronized
      */
     public void run(Consumer<CompileTask> consumer) {
-        synchronized (mLock) {
-            try {
-                consumer.accept(mCompileTask);
-            } finally {
-                mCompileTask.close();
-            }
+        mLock.lock();
+        try {
+            consumer.accept(mCompileTask);
+        } finally {
+            CompileBatch closed = closeTask();
+            mLock.unlock();
+            notifyClosed(closed);
         }
     }
 
     public <T> T get(Function1<CompileTask, T> fun) {
-        synchronized (mLock) {
-            try {
-                return fun.invoke(mCompileTask);
-            } finally {
-                mCompileTask.close();
-            }
+        mLock.lock();
+        try {
+            return fun.invoke(mCompileTask);
+        } finally {
+            CompileBatch closed = closeTask();
+            mLock.unlock();
+            notifyClosed(closed);
+        }
+    }
+
+    /**
+     * Marks the compilation as no longer used, without waking the threads waiting for a
+     * compiler context since they could not release it while the lock is held.
+     *
+     * @return the batch that has been closed, to be passed to {@link #notifyClosed} once the
+     * lock is released
+     */
+    private CompileBatch closeTask() {
+        CompileTask task = mCompileTask;
+        if (task == null) {
+            return null;
+        }
+        CompileBatch batch = task.getBatch();
+        batch.markClosed();
+        return batch;
+    }
+
+    private static void notifyClosed(CompileBatch batch) {
+        if (batch != null) {
+            batch.parent.onBatchClosed();
         }
     }
 
+    /**
+     * Marks the compilation as no longer used, unless another thread is currently using it
+     */
+    void closeIfUnused() {
+        if (!mLock.tryLock()) {
+            return;
+        }
+        CompileBatch closed;
+        try {
+            closed = closeTask();
+        } finally {
+            mLock.unlock();
+        }
+        notifyClosed(closed);
+    }
+
     void initialize(Runnable runnable) {
-        synchronized (mLock) {
+        mLock.lock();
+        try {
             runnable.run();
+        } finally {
+            mLock.unlock();
         }
     }
 
-
     void setCompileTask(CompileTask task) {
         mCompileTask = task;
     }
+
+    /**
+     * Checks whether this list has been compiled before
+     *
+     * @param sources list of java files to compile
+     * @return true if there's a valid cache for it, false otherwise
+     */
+    boolean needsCompile(Collection<? extends JavaFileObject> sources) {
+        if (mCachedCompile == null) {
+            return true;
+        }
+        if (mCachedModified.size() != sources.size()) {
+            return true;
+        }
+        for (JavaFileObject f : sources) {
+            Long cached = mCachedModified.get(f);
+            if (cached == null) {
+                return true;
+            }
+            if (f.getLastModified() != cached) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the diagnostics reported by the cached compilation of this container
+     */
+    public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
+        mLock.lock();
+        try {
+            CompileBatch batch = mCachedCompile;
+            return batch != null ? batch.getDiagnostics() : Collections.emptyList();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    CompileBatch getCachedCompile() {
+        return mCachedCompile;
+    }
+
+    void setCachedCompile(CompileBatch batch, Collection<? extends JavaFileObject> sources) {
+        mCachedCompile = batch;
+        mCachedModified.clear();
+        if (sources != null) {
+            for (JavaFileObject f : sources) {
+                mCachedModified.put(f, f.getLastModified());
+            }
+        }
+    }
+
+    /**
+     * @return whether this container has a cached compilation that nobody is using
+     */
+    boolean isIdle() {
+        CompileBatch batch = mCachedCompile;
+        return batch != null && batch.closed;
+    }
+
+    /**
+     * Returns the compiler context held by this container to the pool, only if no thread is
+     * currently using this container.
+     *
+     * @return true if the context has been released
+     */
+    boolean tryRelease() {
+        if (!mLock.tryLock()) {
+            return false;
+        }
+        try {
+            if (!isIdle()) {
+                return false;
+            }
+            release();
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the cached compilation and returns its context to the pool, the caller must
+     * hold the lock of this container.
+     */
+    void release() {
+        CompileBatch batch = mCachedCompile;
+        mCompileTask = null;
+        setCachedCompile(null, null);
+        if (batch != null) {
+            batch.close();
+            batch.release();
+        }
+    }
 }
@@ -0,0 +1,288 @@
+package com.tyron.completion.java;
+
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+
+import org.openjdk.source.tree.BlockTree;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.tree.MethodTree;
+import org.openjdk.source.util.SourcePositions;
+import org.openjdk.source.util.TreeScanner;
+import org.openjdk.source.util.Trees;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the positions of the method bodies of recently parsed files so that an edit inside a
+ * method body only needs that body to be parsed again.
+ *
+ * <p>The edited range is found by comparing the new contents with the previous contents of
+ * the file, so several edits made between two calls are handled as one. If the edit touches
+ * anything outside of a single method body, the whole file is parsed again.
+ */
+public class IncrementalParser {
+
+    private static final String TAG = IncrementalParser.class.getSimpleName();
+
+    /**
+     * Placed right before the method body being reparsed so it is parsed as a method body
+     * while keeping the positions of the original file
+     */
+    private static final String BODY_HEADER = "class $ {void $()";
+
+    private static final int MAX_CACHED_FILES = 8;
+
+    private final Project mProject;
+
+    private final Map<Path, Snapshot> mSnapshots =
+            new LinkedHashMap<Path, Snapshot>(MAX_CACHED_FILES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, Snapshot> eldest) {
+                    return size() > MAX_CACHED_FILES;
+                }
+            };
+
+    /**
+     * The number of times a whole file was parsed
+     */
+    private final AtomicInteger mFullParseCount = new AtomicInteger();
+
+    public IncrementalParser(Project project) {
+        mProject = project;
+    }
+
+    /**
+     * Returns the start and end positions of all the method bodies of the given contents,
+     * sorted by their start position. Element {@code 2 * i} is the position of the opening
+     * brace of the i-th body and element {@code 2 * i + 1} is the position after its
+     * closing brace.
+     */
+    public long[] methodBodies(Path file, String contents) {
+        Snapshot previous;
+        synchronized (mSnapshots) {
+            previous = mSnapshots.get(file);
+        }
+
+        Snapshot snapshot = null;
+        if (previous != null) {
+            snapshot = reparse(file, previous, contents);
+        }
+        if (snapshot == null) {
+            snapshot = new Snapshot(contents, fullParse(file, contents));
+        }
+
+        synchronized (mSnapshots) {
+            mSnapshots.put(file, snapshot);
+        }
+        return snapshot.bodies;
+    }
+
+    public void invalidate(Path file) {
+        synchronized (mSnapshots) {
+            mSnapshots.remove(file);
+        }
+    }
+
+    /**
+     * @return the updated snapshot, or null if the file needs to be fully parsed
+     */
+    private Snapshot reparse(Path file, Snapshot previous, String contents) {
+        String old = previous.contents;
+        int max = Math.min(old.length(), contents.length());
+        int prefix = 0;
+        while (prefix < max && old.charAt(prefix) == contents.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == old.length() && prefix == contents.length()) {
+            return previous;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && old.charAt(old.length() - suffix - 1) == contents.charAt(contents.length() - suffix - 1)) {
+            suffix++;
+        }
+
+        int start = prefix;
+        int oldEnd = old.length() - suffix;
+        int delta = contents.length() - old.length();
+
+        // find the innermost method body that contains the edit, not including its braces
+        long[] bodies = previous.bodies;
+        int enclosing = -1;
+        for (int i = 0; i < bodies.length; i += 2) {
+            if (bodies[i] >= start) {
+                break;
+            }
+            if (oldEnd <= bodies[i + 1] - 1) {
+                enclosing = i;
+            }
+        }
+        if (enclosing == -1) {
+            return null;
+        }
+
+        long bodyStart = bodies[enclosing];
+        long bodyEnd = bodies[enclosing + 1] + delta;
+        if (bodyStart < BODY_HEADER.length()) {
+            return null;
+        }
+
+        long[] reparsed = parseBody(file, contents, (int) bodyStart, (int) bodyEnd);
+        if (reparsed == null) {
+            return null;
+        }
+
+        long oldBodyEnd = bodies[enclosing + 1];
+        long[] merged = new long[bodies.length + reparsed.length];
+        int size = 0;
+        for (int i = 0; i < bodies.length; i += 2) {
+            long s = bodies[i];
+            long e = bodies[i + 1];
+            if (s >= bodyStart && e <= oldBodyEnd) {
+                // the enclosing body and the bodies nested in it are replaced by the reparse
+                if (s == bodyStart) {
+                    System.arraycopy(reparsed, 0, merged, size, reparsed.length);
+                    size += reparsed.length;
+                }
+                continue;
+            }
+            merged[size++] = s < start ? s : s + delta;
+            merged[size++] = e < start ? e : e + delta;
+        }
+        Log.d(TAG, "Reparsed method body at " + bodyStart + " of " + file.getFileName());
+        return new Snapshot(contents, Arrays.copyOf(merged, size));
+    }
+
+    /**
+     * Parses only the method body between the given positions, the positions of the returned
+     * bodies are relative to the whole file.
+     *
+     * @return the bodies found, or null if the body no longer ends at the expected position
+     */
+    private long[] parseBody(Path file, String contents, int bodyStart, int bodyEnd) {
+        StringBuilder source = new StringBuilder(bodyEnd + 1);
+        for (int i = 0; i < bodyStart - BODY_HEADER.length(); i++) {
+            source.append(' ');
+        }
+        source.append(BODY_HEADER);
+        source.append(contents, bodyStart, bodyEnd);
+        source.append('}');
+
+        long[] bodies = new BodyScanner(parse(file, source.toString())).collect();
+        if (bodies.length < 2 || bodies[0] != bodyStart || bodies[1] != bodyEnd) {
+            return null;
+        }
+        return bodies;
+    }
+
+    private long[] fullParse(Path file, String contents) {
+        mFullParseCount.incrementAndGet();
+        return new BodyScanner(parse(file, contents)).collect();
+    }
+
+    @VisibleForTesting
+    int getFullParseCount() {
+        return mFullParseCount.get();
+    }
+
+    private Parser parse(Path file, String contents) {
+        SourceFileObject object = new SourceFileObject(file, contents, Instant.now());
+        return Parser.parseUncached(mProject, object);
+    }
+
+    /**
+     * Prunes the method bodies that do not contain the cursor, like {@link
+     * com.tyron.completion.java.provider.PruneMethodBodies} does with a parsed tree.
+     */
+    public static StringBuilder prune(CharSequence contents, long[] bodies, long cursor) {
+        StringBuilder buf = new StringBuilder(contents);
+        for (int b = 0; b < bodies.length; b += 2) {
+            long start = bodies[b];
+            long end = bodies[b + 1];
+            if (start <= cursor && cursor < end) {
+                continue;
+            }
+            for (int i = (int) start + 1; i < end - 1; i++) {
+                if (!Character.isWhitespace(buf.charAt(i))) {
+                    buf.setCharAt(i, ' ');
+                }
+            }
+        }
+        return buf;
+    }
+
+    private static class BodyScanner extends TreeScanner<Void, Void> {
+
+        private final CompilationUnitTree root;
+        private final SourcePositions positions;
+        private long[] bodies = new long[32];
+        private int size;
+
+        BodyScanner(Parser parser) {
+            this.root = parser.root;
+            this.positions = Trees.instance(parser.task).getSourcePositions();
+        }
+
+        long[] collect() {
+            scan(root, null);
+            long[] result = Arrays.copyOf(bodies, size);
+            sort(result);
+            return result;
+        }
+
+        @Override
+        public Void visitMethod(MethodTree t, Void unused) {
+            BlockTree body = t.getBody();
+            if (body != null) {
+                long start = positions.getStartPosition(root, body);
+                long end = positions.getEndPosition(root, body);
+                if (start >= 0 && end >= start) {
+                    if (size + 2 > bodies.length) {
+                        bodies = Arrays.copyOf(bodies, bodies.length * 2);
+                    }
+                    bodies[size++] = start;
+                    bodies[size++] = end;
+                }
+            }
+            return super.visitMethod(t, unused);
+        }
+
+        /**
+         * Sorts the pairs by their start position, outer bodies before the bodies nested in them
+         */
+        private static void sort(long[] pairs) {
+            // insertion sort, the scanner visits bodies almost in order
+            for (int i = 2; i < pairs.length; i += 2) {
+                long s = pairs[i];
+                long e = pairs[i + 1];
+                int j = i - 2;
+                while (j >= 0 && pairs[j] > s) {
+                    pairs[j + 2] = pairs[j];
+                    pairs[j + 3] = pairs[j + 1];
+                    j -= 2;
+                }
+                pairs[j + 2] = s;
+                pairs[j + 3] = e;
+            }
+        }
+    }
+
+    private static class Snapshot {
+        final String contents;
+        final long[] bodies;
+
+        Snapshot(String contents, long[] bodies) {
+            this.contents = contents;
+            this.bodies = bodies;
+        }
+    }
+}
@@ -1,24 +1,54 @@
 package com.tyron.completion.java;
 
+import android.util.Log;
+
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.common.SharedPreferenceKeys;
 import com.tyron.completion.index.CompilerProvider;
+import com.tyron.completion.java.index.SourceIndex;
+import com.tyron.completion.java.index.SourceIndexer;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService> {
     public static final String KEY = JavaCompilerProvider.class.getSimpleName();
+    private static final String TAG = KEY;
 
     private volatile JavaCompilerService mProvider;
     private final Set<File> mCachedPaths;
 
+    /**
+     * The source indexes of the modules by their root directory, they outlive the compiler
+     * which is created again when the class path changes
+     */
+    private final Map<File, SourceIndex> mSourceIndexes = new HashMap<>();
+
+    /**
+     * Saved files are indexed one at a time, off the thread that saved them
+     */
+    private final ExecutorService mIndexExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * The listeners registered to the file managers of the opened modules, by root directory.
+     * A module gets a new file manager each time its project is opened.
+     */
+    private final Map<File, SaveListener> mSaveListeners = new HashMap<>();
+
     public JavaCompilerProvider() {
         mCachedPaths = new HashSet<>();
     }
@@ -31,9 +61,105 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
         return null;
     }
 
-    public void destroy() {
+    /**
+     * Called when the project is closed, the indexes are read again from the build directory
+     * when a project is opened
+     */
+    public synchronized void destroy() {
         mCachedPaths.clear();
         mProvider = null;
+        for (SaveListener listener : mSaveListeners.values()) {
+            listener.fileManager.removeOnFileSavedListener(listener);
+        }
+        mSaveListeners.clear();
+        mSourceIndexes.clear();
+    }
+
+    /**
+     * @return the index of the sources of the module, read from the build directory the first
+     * time it is requested. From then on the files saved through the file manager of the module
+     * are indexed again as they are saved.
+     */
+    public synchronized SourceIndex getSourceIndex(Project project, JavaModule module) {
+        File root = module.getRootFile();
+        SourceIndex index = mSourceIndexes.get(root);
+        if (index == null) {
+            index = SourceIndex.read(getSourceIndexFile(module));
+            mSourceIndexes.put(root, index);
+        }
+
+        FileManager fileManager = module.getFileManager();
+        SaveListener listener = mSaveListeners.get(root);
+        if (listener == null || listener.fileManager != fileManager) {
+            if (listener != null) {
+                listener.fileManager.removeOnFileSavedListener(listener);
+            }
+            listener = new SaveListener(new SourceIndexer(project), index, module);
+            fileManager.addOnFileSavedListener(listener);
+            mSaveListeners.put(root, listener);
+        }
+        return index;
+    }
+
+    private class SaveListener implements FileManager.OnFileSavedListener {
+
+        final SourceIndexer indexer;
+        final SourceIndex index;
+        final JavaModule module;
+        final FileManager fileManager;
+
+        SaveListener(SourceIndexer indexer, SourceIndex index, JavaModule module) {
+            this.indexer = indexer;
+            this.index = index;
+            this.module = module;
+            this.fileManager = module.getFileManager();
+        }
+
+        @Override
+        public void onFileSaved(File file) {
+            if (file.getName().endsWith(".java")) {
+                mIndexExecutor.execute(() -> JavaCompilerProvider.this.onFileSaved(indexer, index,
+                        module, file));
+            }
+        }
+    }
+
+    private void onFileSaved(SourceIndexer indexer, SourceIndex index, JavaModule module,
+                             File file) {
+        // the contents changed even if the file has the same size and modification time
+        indexer.reindex(index, Collections.singleton(file));
+
+        // the compilation is usually cached already since the file was just edited
+        JavaCompilerService service = mProvider;
+        JavaModule current = service != null ? service.getCurrentModule() : null;
+        if (current != null && current.getRootFile().equals(module.getRootFile())
+                && service.isReady()) {
+            Path path = file.toPath();
+            try {
+                service.compile(path).run(task ->
+                        indexer.resolve(index, file, task.task, task.root(path)));
+            } catch (RuntimeException e) {
+                // the symbols are optional, the file stays indexed by name
+                Log.w(TAG, "Unable to resolve the symbols of " + file.getName(), e);
+            }
+        }
+
+        try {
+            index.save(getSourceIndexFile(module));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save the source index", e);
+        }
+    }
+
+    /**
+     * Writes the index of the sources of the module to its build directory, if it has changed
+     */
+    public void saveSourceIndex(Project project, JavaModule module) throws IOException {
+        getSourceIndex(project, module).save(getSourceIndexFile(module));
+    }
+
+    private static File getSourceIndexFile(JavaModule module) {
+        return new File(module.getBuildDirectory(), "intermediate/source_index.bin");
     }
 
     public synchronized JavaCompilerService getCompiler(Project project, JavaModule module) {
@@ -46,6 +172,10 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
         Set<File> paths = new HashSet<>();
         paths.addAll(module.getJavaFiles().values());
         paths.addAll(module.getLibraries());
+        File rJar = MergeSymbolsTask.getRJar(module);
+        if (rJar.exists()) {
+            paths.add(rJar);
+        }
 
         for (Module dependency : dependencies) {
             if (dependency instanceof JavaModule) {
@@ -62,6 +192,9 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
             mCachedPaths.addAll(paths);
             mProvider.setCurrentModule(module);
         }
+        if (project != null) {
+            mProvider.setSourceIndex(getSourceIndex(project, module));
+        }
 
         return mProvider;
     }
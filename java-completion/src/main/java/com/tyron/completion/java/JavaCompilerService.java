@@ -3,15 +3,18 @@ package com.tyron.completion.java;
 import android.annotation.SuppressLint;
 import android.util.Log;
 
+import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.google.common.collect.ImmutableList;
 import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.index.ClassIndex;
 import com.tyron.common.util.Cache;
 import com.tyron.common.util.StringSearch;
+import com.tyron.completion.java.index.SourceIndex;
 import com.tyron.completion.java.provider.CompletionEngine;
 
 import org.openjdk.javax.tools.Diagnostic;
@@ -27,10 +30,15 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -44,22 +52,42 @@ public class JavaCompilerService implements CompilerProvider {
     private DiagnosticListener<? super JavaFileObject> mDiagnosticListener;
     public final SourceFileManager mSourceFileManager;
 
-    private final List<Diagnostic<? extends JavaFileObject>> diagnostics =
-            new ArrayList<>();
-
     private final Project mProject;
     private JavaModule mCurrentModule;
     public final Set<File> classPath, docPath;
     public final Set<String> addExports;
     public final ReusableCompiler compiler = new ReusableCompiler();
     private final Docs docs;
+    private final IncrementalParser mIncrementalParser;
+
+    /**
+     * Cached compilations keyed by the source files they contain, ordered from the least
+     * recently used. Each container holds at most one context of the {@link #compiler} pool.
+     */
+    @GuardedBy("mContainers")
+    private final Map<Set<URI>, CompilerContainer> mContainers =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Containers that currently hold, or are about to check out, a context of the
+     * {@link #compiler} pool
+     */
+    @GuardedBy("mContainers")
+    private final Set<CompilerContainer> mHoldingContainers = new HashSet<>();
 
-    private final CompilerContainer mContainer = new CompilerContainer();
-    private CompileBatch cachedCompile;
-    private final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+    /**
+     * File managers that are not used by any compilation, javac's file manager is not
+     * thread safe so concurrent compilations cannot share one
+     */
+    private final Deque<SourceFileManager> mFileManagers = new ArrayDeque<>();
+    private final List<SourceFileManager> mAllFileManagers = new ArrayList<>();
 
     public final ReentrantLock mLock = new ReentrantLock();
 
+    /**
+     * The index of the sources of the current module, null until the project is indexed
+     */
+    private volatile SourceIndex mSourceIndex;
+
     public JavaCompilerService(Project project, Set<File> classPath, Set<File> docPath, Set<String> addExports) {
         mProject = project;
         this.classPath = Collections.unmodifiableSet(classPath);
@@ -67,6 +95,9 @@ public class JavaCompilerService implements CompilerProvider {
         this.addExports = Collections.unmodifiableSet(addExports);
         this.mSourceFileManager = new SourceFileManager(project);
         this.docs = new Docs(project, docPath);
+        this.mIncrementalParser = new IncrementalParser(project);
+        mFileManagers.add(mSourceFileManager);
+        mAllFileManagers.add(mSourceFileManager);
     }
 
     public Project getProject() {
@@ -74,45 +105,143 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     public void setCurrentModule(@NonNull JavaModule module) {
-        mSourceFileManager.setCurrentModule(module);
+        synchronized (mFileManagers) {
+            for (SourceFileManager fileManager : mAllFileManagers) {
+                fileManager.setCurrentModule(module);
+            }
+        }
         mCurrentModule = module;
     }
+
+    public void setSourceIndex(@Nullable SourceIndex index) {
+        mSourceIndex = index;
+    }
+
+    @Nullable
+    public SourceIndex getSourceIndex() {
+        return mSourceIndex;
+    }
+
     /**
-     * Checks whether this list has been compiled before
-     *
-     * @param sources list of java files to compile
-     * @return true if there's a valid cache for it, false otherwise
+     * Sets the maximum number of compilations that can run at the same time
      */
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedModified.size() != sources.size()) {
-            return true;
+    public void setMaxConcurrentCompilations(int size) {
+        compiler.setMaxPoolSize(size);
+        synchronized (mContainers) {
+            mContainers.notifyAll();
         }
-        for (JavaFileObject f : sources) {
-            if (!cachedModified.containsKey(f)) {
-                return true;
-            }
-            Long cached = cachedModified.get(f);
-            if (cached == null) {
-                return true;
-            }
-            if (f.getLastModified() != cached) {
-                return true;
+    }
+
+    SourceFileManager obtainFileManager() {
+        synchronized (mFileManagers) {
+            SourceFileManager fileManager = mFileManagers.poll();
+            if (fileManager == null) {
+                fileManager = new SourceFileManager(mProject);
+                fileManager.setCurrentModule(mCurrentModule);
+                mAllFileManagers.add(fileManager);
             }
+            return fileManager;
         }
-        return false;
     }
 
-    private void loadCompile(Collection<? extends JavaFileObject> sources) {
+    void recycleFileManager(SourceFileManager fileManager) {
+        synchronized (mFileManagers) {
+            mFileManagers.push(fileManager);
+        }
+    }
+
+    /**
+     * Called when a task has finished using a compilation, so threads waiting for a free
+     * compiler context can reclaim it.
+     */
+    void onBatchClosed() {
+        synchronized (mContainers) {
+            mContainers.notifyAll();
+        }
+    }
+
+    private void loadCompile(CompilerContainer container,
+                             Collection<? extends JavaFileObject> sources) {
+        CompileBatch cachedCompile = container.getCachedCompile();
         if (cachedCompile != null) {
             if (!cachedCompile.closed) {
                 throw new RuntimeException("Compiler is still in-use!");
             }
-            cachedCompile.borrow.close();
+            release(container);
         }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
-        for (JavaFileObject f : sources) {
-            cachedModified.put(f, f.getLastModified());
+        reserveCompiler(container);
+        boolean success = false;
+        try {
+            container.setCachedCompile(doCompile(sources), sources);
+            success = true;
+        } finally {
+            if (!success) {
+                synchronized (mContainers) {
+                    mHoldingContainers.remove(container);
+                    mContainers.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void release(CompilerContainer container) {
+        container.release();
+        synchronized (mContainers) {
+            mHoldingContainers.remove(container);
+            mContainers.notifyAll();
+        }
+    }
+
+    /**
+     * Releases the context held by the given container if it is idle, the caller
+     * must hold the lock of {@link #mContainers}
+     */
+    @GuardedBy("mContainers")
+    private boolean tryRelease(CompilerContainer container) {
+        if (container.tryRelease()) {
+            mHoldingContainers.remove(container);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits until the compiler pool has room for the given container, releasing the contexts
+     * held by the least recently used idle compilations if needed.
+     */
+    private void reserveCompiler(CompilerContainer container) {
+        synchronized (mContainers) {
+            while (true) {
+                if (mHoldingContainers.size() < compiler.getMaxPoolSize()) {
+                    mHoldingContainers.add(container);
+                    return;
+                }
+                boolean released = false;
+                // mContainers is ordered from the least recently used
+                for (CompilerContainer c : mContainers.values()) {
+                    if (mHoldingContainers.contains(c) && c.isIdle() && tryRelease(c)) {
+                        released = true;
+                        break;
+                    }
+                }
+                if (!released) {
+                    for (CompilerContainer c : new ArrayList<>(mHoldingContainers)) {
+                        if (c.isIdle() && tryRelease(c)) {
+                            released = true;
+                            break;
+                        }
+                    }
+                }
+                if (released) {
+                    continue;
+                }
+                try {
+                    mContainers.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for a compiler", e);
+                }
+            }
         }
     }
 
@@ -125,7 +254,7 @@ public class JavaCompilerService implements CompilerProvider {
         //  LOG.info("...need to recompile with " + addFiles);
         Log.d("JavaCompilerService", "Need to recompile with " + addFiles);
         firstAttempt.close();
-        firstAttempt.borrow.close();
+        firstAttempt.release();
         List<JavaFileObject> moreSources = new ArrayList<>(sources);
         for (Path add : addFiles) {
             moreSources.add(new SourceFileObject(add, mCurrentModule));
@@ -133,6 +262,37 @@ public class JavaCompilerService implements CompilerProvider {
         return new CompileBatch(this, moreSources);
     }
 
+    private CompilerContainer getContainer(Collection<? extends JavaFileObject> sources) {
+        Set<URI> key = new HashSet<>();
+        for (JavaFileObject source : sources) {
+            key.add(source.toUri());
+        }
+        synchronized (mContainers) {
+            CompilerContainer container = mContainers.get(key);
+            if (container == null) {
+                container = new CompilerContainer();
+                mContainers.put(key, container);
+                trimContainers();
+            }
+            return container;
+        }
+    }
+
+    /**
+     * Removes the least recently used containers that no longer hold a compiler context
+     */
+    @GuardedBy("mContainers")
+    private void trimContainers() {
+        int max = compiler.getMaxPoolSize() * 2;
+        Iterator<CompilerContainer> iterator = mContainers.values().iterator();
+        while (mContainers.size() > max && iterator.hasNext()) {
+            CompilerContainer container = iterator.next();
+            if (!mHoldingContainers.contains(container) || tryRelease(container)) {
+                iterator.remove();
+            }
+        }
+    }
+
     /**
      * Creates a compile batch only if it has not been compiled before
      *
@@ -140,29 +300,31 @@ public class JavaCompilerService implements CompilerProvider {
      * @return CompileBatch for this compilation
      */
     private CompilerContainer compileBatch(Collection<? extends JavaFileObject> sources) {
-        synchronized (mContainer) {
-            mContainer.initialize(() -> {
-                if (needsCompile(sources)) {
-                    loadCompile(sources);
-                } else {
-                    Log.d("JavaCompilerService", "Using cached compile");
-                }
-                CompileTask task = new CompileTask(cachedCompile);
-                mContainer.setCompileTask(task);
-            });
-            return mContainer;
-        }
+        CompilerContainer container = getContainer(sources);
+        container.initialize(() -> {
+            if (container.needsCompile(sources)) {
+                loadCompile(container, sources);
+            } else {
+                Log.d("JavaCompilerService", "Using cached compile");
+                container.getCachedCompile().reopen();
+            }
+            CompileTask task = new CompileTask(container.getCachedCompile());
+            container.setCompileTask(task);
+        });
+        return container;
     }
     
+    /**
+     * Notifies the listener that a new compilation started, the diagnostics of each compilation
+     * are kept by its own {@link CompileBatch}
+     */
     public void clearDiagnostics() {
-        diagnostics.clear();
         if (mDiagnosticListener != null) {
             mDiagnosticListener.report(null);
         }
     }
 
     public void addDiagnostic(Diagnostic<? extends JavaFileObject> diagnostic) {
-        diagnostics.add(diagnostic);
         if (mDiagnosticListener != null) {
             mDiagnosticListener.report(diagnostic);
         }
@@ -172,8 +334,39 @@ public class JavaCompilerService implements CompilerProvider {
         mDiagnosticListener = listener;
     }
 
-    public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
-        return ImmutableList.copyOf(diagnostics);
+    /**
+     * @return the diagnostics of the most recent compilation that contains the file, empty if
+     * the file has not been compiled
+     */
+    public List<Diagnostic<? extends JavaFileObject>> getDiagnostics(Path file) {
+        Set<URI> key = findContainerKey(file);
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        CompilerContainer container;
+        synchronized (mContainers) {
+            container = mContainers.get(key);
+        }
+        return container != null ? container.getDiagnostics() : Collections.emptyList();
+    }
+
+    /**
+     * @return the sources of the most recently used compilation that contains the file, null if
+     * the file has not been compiled
+     */
+    @Nullable
+    private Set<URI> findContainerKey(Path file) {
+        URI uri = file.toUri();
+        Set<URI> found = null;
+        synchronized (mContainers) {
+            // iterating does not change the access order
+            for (Set<URI> key : mContainers.keySet()) {
+                if (key.contains(uri)) {
+                    found = key;
+                }
+            }
+        }
+        return found;
     }
 
     @Override
@@ -185,13 +378,52 @@ public class JavaCompilerService implements CompilerProvider {
     @Override
     public List<String> publicTopLevelTypes() {
         List<String> classes = new ArrayList<>();
-        classes.addAll(mCurrentModule.getAllClasses());
+        for (ClassIndex index : getClassIndexes()) {
+            classes.addAll(index.getAllClasses());
+        }
+        return classes;
+    }
+
+    /**
+     * Finds the classes of the current module and its dependencies whose simple name
+     * starts with the given partial name or matches its camel humps
+     *
+     * @param partial the partial simple name of the class
+     * @param limit the maximum number of results
+     * @return list of fully qualified names
+     */
+    public List<String> findClassNames(String partial, int limit) {
+        Set<String> classes = new LinkedHashSet<>();
+        for (ClassIndex index : getClassIndexes()) {
+            classes.addAll(index.findBySimpleName(partial, limit - classes.size()));
+            if (classes.size() >= limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(classes);
+    }
+
+    /**
+     * @return the fully qualified names of the classes of the current module and its
+     * dependencies that start with the given prefix
+     */
+    public List<String> findClassesByPrefix(String prefix) {
+        Set<String> classes = new LinkedHashSet<>();
+        for (ClassIndex index : getClassIndexes()) {
+            classes.addAll(index.findByQualifiedPrefix(prefix));
+        }
+        return new ArrayList<>(classes);
+    }
+
+    private List<ClassIndex> getClassIndexes() {
+        List<ClassIndex> indexes = new ArrayList<>();
+        indexes.add(mCurrentModule.getClassIndex());
         for (Module module : mProject.getDependencies(mCurrentModule)) {
             if (module instanceof JavaModule) {
-                classes.addAll(((JavaModule) module).getAllClasses());
+                indexes.add(((JavaModule) module).getClassIndex());
             }
         }
-        return classes;
+        return indexes;
     }
 
     @Override
@@ -262,25 +494,44 @@ public class JavaCompilerService implements CompilerProvider {
         return "";
     }
 
-    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
+    /**
+     * How long the modification time of a file is reused by the caches below, a single
+     * completion request usually checks the same files many times
+     */
+    private static final long MODIFICATION_CHECK_INTERVAL = 500;
+
+    private static final Cache<String, Boolean> cacheContainsWord = Cache.<String, Boolean>newBuilder()
+            .maximumSize(10_000)
+            .purgeOnChange()
+            .trimOnMemoryPressure()
+            .modificationCheckInterval(MODIFICATION_CHECK_INTERVAL)
+            .build();
 
     private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
+        Boolean contains = cacheContainsWord.getIfPresent(file, word);
+        if (contains == null) {
+            contains = StringSearch.containsWord(file, word);
+            cacheContainsWord.load(file, word, contains);
         }
-        return cacheContainsWord.get(file, word);
+        return contains;
     }
 
-    private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
+    private static final Cache<Void, List<String>> cacheContainsType = Cache.<Void, List<String>>newBuilder()
+            .maximumWeight(50_000, (file, key, types) -> 1 + types.size())
+            .purgeOnChange()
+            .trimOnMemoryPressure()
+            .modificationCheckInterval(MODIFICATION_CHECK_INTERVAL)
+            .build();
 
     private boolean containsType(Path file, String className) {
-        if (cacheContainsType.needs(file, null)) {
+        List<String> types = cacheContainsType.getIfPresent(file, null);
+        if (types == null) {
             CompilationUnitTree root = parse(file).root;
-            List<String> types = new ArrayList<>();
+            types = new ArrayList<>();
             new FindTypeDeclarations().scan(root, types);
             cacheContainsType.load(file, null, types);
         }
-        return cacheContainsType.get(file, null).contains(className);
+        return types.contains(className);
     }
 
 
@@ -291,9 +542,19 @@ public class JavaCompilerService implements CompilerProvider {
             return fastFind;
         }
 
+        SourceIndex index = mSourceIndex;
+        File declaration = index != null ? index.findDeclaration(className) : null;
+        if (declaration != null && declaration.exists()) {
+            return declaration.toPath();
+        }
+
         String packageName = packageName(className);
         String simpleName = simpleName(className);
         for (File file : SourceFileManager.list(mCurrentModule, packageName)) {
+            if (index != null && index.isUpToDate(file)) {
+                // the declarations of the file are already known
+                continue;
+            }
             if (containsWord(file.toPath(), simpleName) && containsType(file.toPath(), className)) {
                 if (file.getName().endsWith(".java")) {
                     return file.toPath();
@@ -330,24 +591,60 @@ public class JavaCompilerService implements CompilerProvider {
         return Optional.ofNullable(source);
     }
 
+    /**
+     * @see SourceIndex#findTypeReferences(String)
+     */
     @Override
     public Path[] findTypeReferences(String className) {
-        return null;
+        SourceIndex index = mSourceIndex;
+        if (index == null) {
+            return new Path[0];
+        }
+        return toPaths(index.findTypeReferences(className));
     }
 
+    /**
+     * @see SourceIndex#findMemberReferences(String, String)
+     */
     @Override
     public Path[] findMemberReferences(String className, String memberName) {
-        return null;
+        SourceIndex index = mSourceIndex;
+        if (index == null) {
+            return new Path[0];
+        }
+        return toPaths(index.findMemberReferences(className, memberName));
     }
 
-    private final Cache<String, ParseTask> parseCache = new Cache<>();
+    private static Path[] toPaths(List<File> files) {
+        Path[] paths = new Path[files.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = files.get(i).toPath();
+        }
+        return paths;
+    }
+
+    /**
+     * Parsed trees hold on to their own javac context, so only a few of them are kept and the
+     * garbage collector is allowed to reclaim them
+     */
+    private static final int MAX_CACHED_PARSES = 32;
+
+    private final Cache<String, ParseTask> parseCache = Cache.<String, ParseTask>newBuilder()
+            .maximumSize(MAX_CACHED_PARSES)
+            .softValues()
+            .purgeOnChange()
+            .trimOnMemoryPressure()
+            .modificationCheckInterval(MODIFICATION_CHECK_INTERVAL)
+            .build();
 
     private ParseTask cachedParse(Path file) {
-        if (parseCache.needs(file, file.toFile().getName())) {
+        ParseTask task = parseCache.getIfPresent(file, file.toFile().getName());
+        if (task == null) {
             Parser parser = Parser.parseFile(mProject, file);
-            parseCache.load(file, file.toFile().getName(), new ParseTask(parser.task, parser.root));
+            task = new ParseTask(parser.task, parser.root);
+            parseCache.load(file, file.toFile().getName(), task);
         }
-        return parseCache.get(file, file.toFile().getName());
+        return task;
     }
 
     private ParseTask cachedParse(JavaFileObject file) {
@@ -357,13 +654,15 @@ public class JavaCompilerService implements CompilerProvider {
                     .substring(4, file.toUri().toString().lastIndexOf("!"));
 
             Path parsedPath = new File(URI.create(path)).toPath();
-            if (parseCache.needs(parsedPath, file.getName())) {
+            ParseTask task = parseCache.getIfPresent(parsedPath, file.getName());
+            if (task == null) {
                 Parser parser = Parser.parseJavaFileObject(mProject, file);
-                parseCache.load(parsedPath, file.getName(), new ParseTask(parser.task, parser.root));
+                task = new ParseTask(parser.task, parser.root);
+                parseCache.load(parsedPath, file.getName(), task);
             } else {
                 Log.d("JavaCompilerService", "Using cached parse for " + file.getName());
             }
-            return parseCache.get(parsedPath, file.getName());
+            return task;
         } else if (file instanceof SourceFileObject) {
             return cachedParse(((SourceFileObject) file).mFile);
         }
@@ -394,12 +693,26 @@ public class JavaCompilerService implements CompilerProvider {
         return cachedParse(file);
     }
 
-    public ParseTask parse(Path file, String contents) {
+    public ParseTask parse(Path file, CharSequence contents) {
         SourceFileObject object = new SourceFileObject(file, contents, Instant.now());
         Parser parser = Parser.parseJavaFileObject(mProject, object);
         return new ParseTask(parser.task, parser.root);
     }
 
+    /**
+     * Returns the contents of the file with the bodies of the methods that do not contain the
+     * cursor erased. Only the method body that has been edited since the last call is parsed
+     * again, see {@link IncrementalParser}.
+     *
+     * @param file the path of the file, used to find the previous parse
+     * @param contents the current contents of the file
+     * @param cursor the position of the cursor
+     */
+    public StringBuilder pruneMethodBodies(Path file, String contents, long cursor) {
+        long[] bodies = mIncrementalParser.methodBodies(file, contents);
+        return IncrementalParser.prune(contents, bodies, cursor);
+    }
+
     /**
      * Convenience method to compile a list of paths, this just wraps them in a
      * SourceFileObject and calls {@link JavaCompilerService#compile(Collection)}
@@ -429,22 +742,36 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     public synchronized void close() {
-        if (cachedCompile != null && !cachedCompile.closed) {
-            cachedCompile.close();
+        List<CompilerContainer> containers;
+        synchronized (mContainers) {
+            containers = new ArrayList<>(mContainers.values());
+        }
+        for (CompilerContainer container : containers) {
+            container.closeIfUnused();
         }
         if (mLock.isHeldByCurrentThread() && mLock.isLocked()) {
             mLock.unlock();
         }
     }
 
+    /**
+     * @return true if a compilation can be started without waiting for another one to finish
+     */
     public synchronized boolean isReady() {
         if (CompletionEngine.isIndexing()) {
             return false;
         }
-        if (cachedCompile == null) {
-            return true;
+        synchronized (mContainers) {
+            if (mHoldingContainers.size() < compiler.getMaxPoolSize()) {
+                return true;
+            }
+            for (CompilerContainer container : mHoldingContainers) {
+                if (container.isIdle()) {
+                    return true;
+                }
+            }
+            return false;
         }
-        return cachedCompile.closed;
     }
 
     public JavaModule getCurrentModule() {
@@ -452,11 +779,31 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     public void destroy() {
-        cachedCompile = null;
+        synchronized (mContainers) {
+            for (CompilerContainer container : new ArrayList<>(mHoldingContainers)) {
+                tryRelease(container);
+            }
+            mContainers.values().removeIf(it -> !mHoldingContainers.contains(it));
+        }
+        parseCache.evictAll();
     }
 
-    @NonNull
-    public CompilerContainer getCachedContainer() {
-        return mContainer;
+    /**
+     * Returns the container of the most recent compilation that contains the given file,
+     * without compiling it again. Trees obtained earlier are only valid if their compilation
+     * unit is one of the roots of the task of the container, the file may have been compiled
+     * again since then or the context of the compilation released, leaving the task null.
+     *
+     * @return the container, null if the file has not been compiled
+     */
+    @Nullable
+    public CompilerContainer getCachedContainer(@NonNull Path file) {
+        Set<URI> key = findContainerKey(file);
+        if (key == null) {
+            return null;
+        }
+        synchronized (mContainers) {
+            return mContainers.get(key);
+        }
     }
 }
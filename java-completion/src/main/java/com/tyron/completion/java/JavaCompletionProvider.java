@@ -11,7 +11,6 @@ import com.tyron.completion.model.CachedCompletion;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.progress.ProcessCanceledException;
-import com.tyron.completion.progress.ProgressManager;
 
 import java.io.File;
 import java.util.Comparator;
@@ -38,7 +37,7 @@ public class JavaCompletionProvider extends CompletionProvider {
         if (!(params.getModule() instanceof JavaModule)) {
             return CompletionList.EMPTY;
         }
-        ProgressManager.checkCanceled();
+        params.getProgressIndicator().checkCanceled();
 
         if (isIncrementalCompletion(mCachedCompletion, params)) {
             String partial = partialIdentifier(params.getPrefix(),
@@ -103,6 +103,14 @@ public class Parser {
         return cachedParse;
     }
 
+    /**
+     * Parses the file without looking up or replacing the cached parse, used for files
+     * whose contents may change more than once within the same millisecond
+     */
+    public static Parser parseUncached(Project project, JavaFileObject file) {
+        return new Parser(project, file);
+    }
+
     public Set<Name> packagePrivateClasses() {
         Set<Name> result = new HashSet<>();
         for (Tree t : root.getTypeDecls()) {
@@ -24,6 +24,9 @@ import org.openjdk.tools.javac.util.Context;
 import org.openjdk.tools.javac.util.DefinedBy;
 import org.openjdk.tools.javac.util.Log;
 
+import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressManager;
+
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -66,15 +69,69 @@ public class ReusableCompiler {
     private static final Logger LOG = Logger.getLogger("main");
     private static final JavacTool systemProvider = JavacTool.create();
 
-    private final List<String> currentOptions = new ArrayList<>();
-    private ReusableContext currentContext;
-    private boolean checkedOut;
+    /**
+     * The default number of contexts that may be checked out at the same time. At least two
+     * so that completion of the foreground file does not have to wait for a background
+     * diagnostics compile, but never more than the cores that can actually run them.
+     */
+    public static final int DEFAULT_POOL_SIZE =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    private final Object lock = new Object();
+    private final List<ReusableContext> idleContexts = new ArrayList<>();
+    private int liveContexts;
+    private int maxPoolSize;
+
+    public ReusableCompiler() {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+    public ReusableCompiler(int maxPoolSize) {
+        setMaxPoolSize(maxPoolSize);
+    }
+
+    /**
+     * Sets the maximum number of contexts that can be checked out at the same time. Lowering
+     * the size does not affect contexts that are currently checked out, they are discarded
+     * as they are returned.
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        if (maxPoolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        synchronized (lock) {
+            this.maxPoolSize = maxPoolSize;
+            while (liveContexts > maxPoolSize && !idleContexts.isEmpty()) {
+                idleContexts.remove(0);
+                liveContexts--;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    public int getMaxPoolSize() {
+        synchronized (lock) {
+            return maxPoolSize;
+        }
+    }
+
+    /**
+     * @return the number of contexts that are currently checked out
+     */
+    public int getBorrowedCount() {
+        synchronized (lock) {
+            return liveContexts - idleContexts.size();
+        }
+    }
 
     /**
      * Creates a new task as if by JavaCompiler and runs the provided worker with it. The
      * task is only valid while the worker is running. The internal structures may be reused from some previous
      * compilation.
      *
+     * <p>If all the contexts of the pool are checked out, this blocks until one of them
+     * is returned through {@link Borrow#close()}.
+     *
      * @param fileManager a file manager; if {@code null} use the compiler's standard filemanager
      * @param diagnosticListener a diagnostic listener; if {@code null} use the compiler's default method for reporting
      *     diagnostics
@@ -93,53 +150,110 @@ public class ReusableCompiler {
 		Iterable<String> options,
 		Iterable<String> classes,
 		Iterable<? extends JavaFileObject> compilationUnits) {
-        if (checkedOut) {
-            throw new RuntimeException("Compiler is already in-use!");
-        }
-        checkedOut = true;
         List<String> opts =
 			StreamSupport.stream(options.spliterator(), false)
                     .collect(Collectors.toList());
-        if (!opts.equals(currentOptions)) {
-            List<String> difference = new ArrayList<>(currentOptions);
-            difference.removeAll(opts);
-            LOG.warning("Options changed, creating new compiler \n difference: " + difference);
-            currentOptions.clear();
-            currentOptions.addAll(opts);
-            currentContext = new ReusableContext(new ArrayList<>(opts));
+        ReusableContext context = checkOut(opts);
+        JavacTaskImpl task;
+        try {
+            task = (JavacTaskImpl) systemProvider.getTask(
+                    null, fileManager, diagnosticListener, opts, classes, compilationUnits, context);
+        } catch (RuntimeException e) {
+            discard(context);
+            throw e;
         }
-        JavacTaskImpl task =
-			(JavacTaskImpl)
-			systemProvider.getTask(
-			null, fileManager, diagnosticListener, opts, classes, compilationUnits, currentContext);
 
-        task.addTaskListener(currentContext);
-        return new Borrow(task, currentContext);
+        task.addTaskListener(context);
+        return new Borrow(task, context);
+    }
+
+    /**
+     * Takes an idle context created with the same options, creating a new one if the pool
+     * still has room. Blocks until a context is returned otherwise.
+     */
+    private ReusableContext checkOut(List<String> opts) {
+        synchronized (lock) {
+            while (true) {
+                for (int i = idleContexts.size() - 1; i >= 0; i--) {
+                    if (idleContexts.get(i).arguments.equals(opts)) {
+                        return idleContexts.remove(i);
+                    }
+                }
+                if (liveContexts < maxPoolSize) {
+                    liveContexts++;
+                    return new ReusableContext(new ArrayList<>(opts));
+                }
+                if (!idleContexts.isEmpty()) {
+                    // no idle context matches these options, drop the least recently used one
+                    ReusableContext evicted = idleContexts.remove(0);
+                    List<String> difference = new ArrayList<>(evicted.arguments);
+                    difference.removeAll(opts);
+                    LOG.warning("Options changed, creating new compiler \n difference: " + difference);
+                    liveContexts--;
+                    continue;
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for a compiler", e);
+                }
+            }
+        }
+    }
+
+    private void checkIn(ReusableContext context) {
+        synchronized (lock) {
+            if (liveContexts > maxPoolSize) {
+                liveContexts--;
+            } else {
+                idleContexts.add(context);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void discard(ReusableContext context) {
+        synchronized (lock) {
+            liveContexts--;
+            lock.notifyAll();
+        }
     }
 
     public class Borrow implements AutoCloseable {
         final JavacTask task;
+        final ReusableContext context;
         boolean closed;
 
         Borrow(JavacTask task, ReusableContext ctx) {
             this.task = task;
+            this.context = ctx;
         }
 
         @Override
-        public void close() {
+        public synchronized void close() {
             if (closed) return;
-            // not returning the context to the pool if task crashes with an exception
-            // the task/context may be in a broken state
-            currentContext.clear();
+            closed = true;
+            if (context.canceled) {
+                // the phase that was interrupted may have left the context half updated
+                discard(context);
+                return;
+            }
             try {
+                context.clear();
                 Method method = JavacTaskImpl.class.getDeclaredMethod("cleanup");
                 method.setAccessible(true);
                 method.invoke(task);
             } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                // not returning the context to the pool if the cleanup fails,
+                // the task/context may be in a broken state
+                discard(context);
                 throw new RuntimeException(e);
+            } catch (RuntimeException e) {
+                discard(context);
+                throw e;
             }
-            checkedOut = false;
-            closed = true;
+            checkIn(context);
         }
     }
 
@@ -147,6 +261,11 @@ public class ReusableCompiler {
 
         List<String> arguments;
 
+        /**
+         * Whether a task was interrupted in the middle of a phase
+         */
+        volatile boolean canceled;
+
         ReusableContext(List<String> arguments) {
             super();
             this.arguments = arguments;
@@ -181,13 +300,26 @@ public class ReusableCompiler {
         @Override
         @DefinedBy(DefinedBy.Api.COMPILER_TREE)
         public void finished(TaskEvent e) {
-            // do nothing
+            checkCanceled();
         }
 
         @Override
         @DefinedBy(DefinedBy.Api.COMPILER_TREE)
         public void started(TaskEvent e) {
-            // do nothing
+            checkCanceled();
+        }
+
+        /**
+         * Stops the task between two phases of a file if the request running it was canceled,
+         * javac wraps the exception in a RuntimeException.
+         */
+        private void checkCanceled() {
+            try {
+                ProgressManager.checkCanceled();
+            } catch (ProcessCanceledException e) {
+                canceled = true;
+                throw e;
+            }
         }
 
         <T> void drop(Key<T> k) {
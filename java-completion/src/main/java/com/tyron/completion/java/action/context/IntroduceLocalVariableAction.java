@@ -7,6 +7,7 @@ import com.tyron.actions.AnAction;
 import com.tyron.actions.AnActionEvent;
 import com.tyron.actions.CommonDataKeys;
 import com.tyron.actions.Presentation;
+import com.tyron.common.util.ThreadUtil;
 import com.tyron.completion.java.CompileTask;
 import com.tyron.completion.java.CompilerContainer;
 import com.tyron.completion.java.JavaCompilerService;
@@ -78,18 +79,24 @@ public class IntroduceLocalVariableAction extends AnAction {
         TreePath currentPath = e.getData(CommonJavaContextKeys.CURRENT_PATH);
         File file = e.getData(CommonDataKeys.FILE);
         JavaCompilerService compiler = e.getData(CommonJavaContextKeys.COMPILER);
-        CompilerContainer cachedContainer = compiler.getCachedContainer();
 
-        JavaRewrite rewrite = cachedContainer.get(task -> {
-            if (task != null) {
-                return performInternal(task, currentPath, file);
+        ThreadUtil.runOnBackgroundThread(() -> {
+            CompilerContainer cachedContainer = compiler.getCachedContainer(file.toPath());
+            if (cachedContainer == null) {
+                return;
+            }
+            JavaRewrite rewrite = cachedContainer.get(task -> {
+                // the path is stale if the file has been compiled again since
+                if (task != null && task.roots.contains(currentPath.getCompilationUnit())) {
+                    return performInternal(task, currentPath, file);
+                }
+                return null;
+            });
+
+            if (rewrite != null) {
+                RewriteUtil.performRewrite(editor, file, compiler, rewrite);
             }
-            return null;
         });
-
-        if (rewrite != null) {
-            RewriteUtil.performRewrite(editor, file, compiler, rewrite);
-        }
     }
 
     private JavaRewrite performInternal(CompileTask task, TreePath path, File file) {
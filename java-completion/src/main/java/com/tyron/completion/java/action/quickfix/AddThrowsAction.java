@@ -79,10 +79,19 @@ public class AddThrowsAction extends ExceptionsQuickFix {
         String exceptionName = DiagnosticUtil.extractExceptionName(diagnostic.getMessage(Locale.ENGLISH));
 
         ThreadUtil.runOnBackgroundThread(() -> {
-            CompilerContainer container = compiler.getCachedContainer();
+            CompilerContainer container = compiler.getCachedContainer(file.toPath());
+            if (container == null) {
+                return;
+            }
             AtomicReference<JavaRewrite> rewrite = new AtomicReference<>();
-            container.run(task ->
-                    rewrite.set(performInternal(task, exceptionName, diagnostic)));
+            container.run(task -> {
+                // the diagnostic is stale if the file has been compiled again since
+                if (task != null && currentPath != null
+                        && !task.roots.contains(currentPath.getCompilationUnit())) {
+                    return;
+                }
+                rewrite.set(performInternal(task, exceptionName, diagnostic));
+            });
             JavaRewrite r = rewrite.get();
             if (r != null) {
                 RewriteUtil.performRewrite(editor, file, compiler, r);
@@ -68,7 +68,7 @@ public class ImportClassAction extends AnAction {
 
         String simpleName = String.valueOf(diagnosticSourceUnwrapper.d.getArgs()[1]);
         List<String> classNames = new ArrayList<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
+        for (String qualifiedName : compiler.findClassNames(simpleName, Integer.MAX_VALUE)) {
             if (qualifiedName.endsWith("." + simpleName)) {
                 classNames.add(qualifiedName);
             }
@@ -105,7 +105,7 @@ public class ImportClassAction extends AnAction {
         Path file = e.getData(CommonDataKeys.FILE).toPath();
 
         Map<String, JavaRewrite> map = new TreeMap<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
+        for (String qualifiedName : compiler.findClassNames(simpleName, Integer.MAX_VALUE)) {
             if (qualifiedName.endsWith("." + simpleName)) {
                 String title = e.getDataContext().getString(R.string.import_class_name, qualifiedName);
                 JavaRewrite addImport = new AddImport(file.toFile(), qualifiedName);
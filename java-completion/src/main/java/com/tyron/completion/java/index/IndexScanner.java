@@ -0,0 +1,336 @@
+package com.tyron.completion.java.index;
+
+import androidx.annotation.Nullable;
+
+import org.openjdk.javax.lang.model.element.Element;
+import org.openjdk.javax.lang.model.element.TypeElement;
+import org.openjdk.javax.lang.model.type.TypeKind;
+import org.openjdk.source.tree.ClassTree;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.tree.IdentifierTree;
+import org.openjdk.source.tree.ImportTree;
+import org.openjdk.source.tree.MemberReferenceTree;
+import org.openjdk.source.tree.MemberSelectTree;
+import org.openjdk.source.tree.MethodTree;
+import org.openjdk.source.tree.Tree;
+import org.openjdk.source.tree.VariableTree;
+import org.openjdk.source.util.SourcePositions;
+import org.openjdk.source.util.TreePathScanner;
+import org.openjdk.source.util.Trees;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts the declarations and the identifiers of a parsed file, the tree does not need to
+ * be attributed. If it is, the symbols the identifiers resolve to are recorded as well.
+ */
+class IndexScanner extends TreePathScanner<Void, Void> {
+
+    private static final String INIT = "<init>";
+
+    private final CompilationUnitTree mRoot;
+    private final SourcePositions mPositions;
+    private final String mContents;
+    @Nullable
+    private final Trees mTrees;
+
+    private String mPackageName = "";
+    private final List<String> mImports = new ArrayList<>();
+    private final List<String> mTypes = new ArrayList<>();
+    private final List<String> mMembers = new ArrayList<>();
+    private final Postings mIdentifiers = new Postings();
+    private final Postings mSymbols = new Postings();
+    private final Set<String> mUnresolved = new HashSet<>();
+
+    /**
+     * The fully qualified names of the enclosing classes, empty for anonymous and local classes
+     */
+    private final Deque<String> mClassNames = new ArrayDeque<>();
+
+    private IndexScanner(CompilationUnitTree root, SourcePositions positions, String contents,
+                         @Nullable Trees trees) {
+        mRoot = root;
+        mPositions = positions;
+        mContents = contents;
+        mTrees = trees;
+    }
+
+    /**
+     * @param trees the trees of the task that attributed the root, or null if the root is only
+     *              parsed
+     */
+    static IndexedFile index(File file, long length, long lastModified, long hash,
+                             CompilationUnitTree root, SourcePositions positions,
+                             String contents, @Nullable Trees trees) {
+        IndexScanner scanner = new IndexScanner(root, positions, contents, trees);
+        scanner.scan(root, null);
+        return new IndexedFile(file, length, lastModified, hash, scanner.mPackageName,
+                scanner.mImports, scanner.mTypes, scanner.mMembers,
+                scanner.mIdentifiers.build(), trees != null ? scanner.mSymbols.build() : null,
+                scanner.mUnresolved);
+    }
+
+    /**
+     * @return the key of a class or a member as recorded in the index, null for other elements
+     * such as local variables
+     */
+    @Nullable
+    static String getKey(@Nullable Element element) {
+        if (element == null) {
+            return null;
+        }
+        switch (element.getKind()) {
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                return ((TypeElement) element).getQualifiedName().toString();
+            case FIELD:
+            case ENUM_CONSTANT:
+            case METHOD:
+            case CONSTRUCTOR:
+                Element owner = element.getEnclosingElement();
+                if (owner instanceof TypeElement) {
+                    return ((TypeElement) owner).getQualifiedName() + "#"
+                            + element.getSimpleName();
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return whether javac could not find the symbol of an identifier, e.g. a class or a
+     * method that did not exist when the file was compiled
+     */
+    static boolean isUnresolved(@Nullable Element element) {
+        return element == null || (element instanceof TypeElement
+                && element.asType().getKind() == TypeKind.ERROR);
+    }
+
+    @Override
+    public Void visitCompilationUnit(CompilationUnitTree t, Void unused) {
+        if (t.getPackageName() != null) {
+            mPackageName = t.getPackageName().toString();
+        }
+        // the segments of the package name are not references
+        scan(t.getImports(), null);
+        scan(t.getTypeDecls(), null);
+        return null;
+    }
+
+    @Override
+    public Void visitImport(ImportTree t, Void unused) {
+        mImports.add(t.getQualifiedIdentifier().toString());
+        return super.visitImport(t, unused);
+    }
+
+    @Override
+    public Void visitClass(ClassTree t, Void unused) {
+        String simpleName = t.getSimpleName().toString();
+        String className = "";
+        Tree parent = getCurrentPath().getParentPath().getLeaf();
+        if (!(parent instanceof ClassTree) && !(parent instanceof CompilationUnitTree)) {
+            // local classes can not be referenced outside of their method
+            addDeclaration(simpleName, mPositions.getStartPosition(mRoot, t));
+        } else if (!simpleName.isEmpty()) {
+            String enclosing = mClassNames.peek();
+            if (enclosing != null && !enclosing.isEmpty()) {
+                className = enclosing + "." + simpleName;
+            } else if (mPackageName.isEmpty()) {
+                className = simpleName;
+            } else {
+                className = mPackageName + "." + simpleName;
+            }
+            mTypes.add(className);
+            addDeclaration(simpleName, mPositions.getStartPosition(mRoot, t));
+        }
+        mClassNames.push(className);
+        try {
+            return super.visitClass(t, unused);
+        } finally {
+            mClassNames.pop();
+        }
+    }
+
+    @Override
+    public Void visitMethod(MethodTree t, Void unused) {
+        String className = mClassNames.peek();
+        String name = t.getName().toString();
+        if (className != null && !className.isEmpty()) {
+            mMembers.add(className + "#" + name);
+        }
+        if (INIT.equals(name)) {
+            if (className != null && !className.isEmpty()) {
+                // the name of a constructor is a reference to its class
+                String simpleName = className.substring(className.lastIndexOf('.') + 1);
+                addDeclaration(simpleName, mPositions.getStartPosition(mRoot, t), className);
+            }
+        } else {
+            addDeclaration(name, getEndPosition(t.getReturnType(), t));
+        }
+        return super.visitMethod(t, unused);
+    }
+
+    @Override
+    public Void visitVariable(VariableTree t, Void unused) {
+        Tree parent = getCurrentPath().getParentPath().getLeaf();
+        String className = mClassNames.peek();
+        if (parent instanceof ClassTree && className != null && !className.isEmpty()) {
+            mMembers.add(className + "#" + t.getName());
+        }
+        addDeclaration(t.getName().toString(), getEndPosition(t.getType(), t));
+        return super.visitVariable(t, unused);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree t, Void unused) {
+        addOffset(t.getName().toString(), mPositions.getStartPosition(mRoot, t));
+        return null;
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree t, Void unused) {
+        super.visitMemberSelect(t, unused);
+        String name = t.getIdentifier().toString();
+        long end = mPositions.getEndPosition(mRoot, t);
+        if (end >= 0) {
+            addOffset(name, end - name.length());
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitMemberReference(MemberReferenceTree t, Void unused) {
+        super.visitMemberReference(t, unused);
+        String name = t.getName().toString();
+        long end = mPositions.getEndPosition(mRoot, t);
+        if (!INIT.equals(name) && end >= 0) {
+            addOffset(name, end - name.length());
+        }
+        return null;
+    }
+
+    /**
+     * @return the end of the type of a declaration, or the start of the declaration if the
+     * type is implicit
+     */
+    private long getEndPosition(Tree type, Tree declaration) {
+        long end = type != null ? mPositions.getEndPosition(mRoot, type) : -1;
+        return end >= 0 ? end : mPositions.getStartPosition(mRoot, declaration);
+    }
+
+    /**
+     * Records the name of a declaration, the trees of declarations do not hold the position
+     * of their name so it is searched from the given position
+     */
+    private void addDeclaration(String name, long from) {
+        addDeclaration(name, from, null);
+    }
+
+    private void addDeclaration(String name, long from, @Nullable String key) {
+        if (from < 0) {
+            return;
+        }
+        int offset = indexOfWord(mContents, name, (int) from);
+        if (offset >= 0) {
+            addOffset(name, offset, key);
+        }
+    }
+
+    private void addOffset(String name, long offset) {
+        addOffset(name, offset, null);
+    }
+
+    /**
+     * Records an identifier of the current path
+     *
+     * @param key the symbol the identifier resolves to, or null to resolve the current path
+     */
+    private void addOffset(String name, long offset, @Nullable String key) {
+        if (offset < 0 || name.isEmpty()) {
+            return;
+        }
+        mIdentifiers.add(name, (int) offset);
+        if (mTrees != null) {
+            if (key == null) {
+                Element element = mTrees.getElement(getCurrentPath());
+                if (isUnresolved(element)) {
+                    mUnresolved.add(name);
+                    return;
+                }
+                key = getKey(element);
+            }
+            if (key != null) {
+                mSymbols.add(key, (int) offset);
+            }
+        }
+    }
+
+    /**
+     * Offsets by key, each list of offsets is sorted when it is built
+     */
+    private static class Postings {
+
+        private final Map<String, int[]> mOffsets = new HashMap<>();
+        private final Map<String, Integer> mCounts = new HashMap<>();
+
+        void add(String key, int offset) {
+            int[] offsets = mOffsets.get(key);
+            int count = offsets == null ? 0 : mCounts.get(key);
+            if (offsets == null) {
+                offsets = new int[1];
+                mOffsets.put(key, offsets);
+            } else if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                mOffsets.put(key, offsets);
+            }
+            offsets[count] = offset;
+            mCounts.put(key, count + 1);
+        }
+
+        Map<String, int[]> build() {
+            Map<String, int[]> map = new HashMap<>(mOffsets.size() * 2);
+            for (Map.Entry<String, int[]> entry : mOffsets.entrySet()) {
+                int[] offsets = Arrays.copyOf(entry.getValue(), mCounts.get(entry.getKey()));
+                Arrays.sort(offsets);
+                map.put(entry.getKey(), distinct(offsets));
+            }
+            return map;
+        }
+
+        private static int[] distinct(int[] sorted) {
+            int size = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (size == 0 || sorted[size - 1] != sorted[i]) {
+                    sorted[size++] = sorted[i];
+                }
+            }
+            return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+        }
+    }
+
+    static int indexOfWord(String contents, String word, int from) {
+        int index = contents.indexOf(word, from);
+        while (index >= 0) {
+            int end = index + word.length();
+            boolean start = index == 0 || !Character.isJavaIdentifierPart(contents.charAt(index - 1));
+            if (start && (end == contents.length()
+                    || !Character.isJavaIdentifierPart(contents.charAt(end)))) {
+                return index;
+            }
+            index = contents.indexOf(word, index + 1);
+        }
+        return -1;
+    }
+}
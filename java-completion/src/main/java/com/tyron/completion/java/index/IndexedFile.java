@@ -0,0 +1,281 @@
+package com.tyron.completion.java.index;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The declarations and references of a single java file, as extracted from its syntax tree.
+ *
+ * <p>Types are recorded by their fully qualified name and members as {@code className#name}.
+ * Every identifier of the file is recorded along with the offsets it occurs at, including the
+ * names of the declarations themselves.
+ *
+ * <p>A file that has been attributed by javac also records the symbols its identifiers resolve
+ * to, using the same keys as the declarations, see {@link #isResolved()}. The identifiers that
+ * did not resolve, such as a class that did not exist yet, are recorded by name only.
+ */
+public class IndexedFile {
+
+    private static final int[] NO_OFFSETS = new int[0];
+
+    private final File mFile;
+    private final long mLength;
+    private final long mLastModified;
+    private final long mHash;
+    private final String mPackageName;
+    private final List<String> mImports;
+    private final List<String> mTypes;
+    private final List<String> mMembers;
+    private final Map<String, int[]> mIdentifiers;
+    @Nullable
+    private final Map<String, int[]> mSymbols;
+    private final Set<String> mUnresolved;
+
+    IndexedFile(File file, long length, long lastModified, long hash, String packageName,
+                List<String> imports, List<String> types, List<String> members,
+                Map<String, int[]> identifiers, @Nullable Map<String, int[]> symbols,
+                Set<String> unresolved) {
+        mFile = file;
+        mLength = length;
+        mLastModified = lastModified;
+        mHash = hash;
+        mPackageName = packageName;
+        mImports = Collections.unmodifiableList(imports);
+        mTypes = Collections.unmodifiableList(types);
+        mMembers = Collections.unmodifiableList(members);
+        mIdentifiers = Collections.unmodifiableMap(identifiers);
+        mSymbols = symbols != null ? Collections.unmodifiableMap(symbols) : null;
+        mUnresolved = Collections.unmodifiableSet(unresolved);
+    }
+
+    @NonNull
+    public File getFile() {
+        return mFile;
+    }
+
+    public long getLength() {
+        return mLength;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * @return the hash of the contents the file was indexed from
+     */
+    public long getHash() {
+        return mHash;
+    }
+
+    /**
+     * @return the package of the file, empty for the default package
+     */
+    @NonNull
+    public String getPackageName() {
+        return mPackageName;
+    }
+
+    /**
+     * @return the imported names, on demand imports end with {@code .*}
+     */
+    @NonNull
+    public List<String> getImports() {
+        return mImports;
+    }
+
+    /**
+     * @return the fully qualified names of the classes declared in the file, including nested
+     * classes
+     */
+    @NonNull
+    public List<String> getTypes() {
+        return mTypes;
+    }
+
+    /**
+     * @return the fields and methods declared in the file as {@code className#name}
+     */
+    @NonNull
+    public List<String> getMembers() {
+        return mMembers;
+    }
+
+    @NonNull
+    public Set<String> getIdentifiers() {
+        return mIdentifiers.keySet();
+    }
+
+    /**
+     * @return the sorted offsets where the identifier occurs in the file
+     */
+    @NonNull
+    public int[] getOffsets(@NonNull String identifier) {
+        int[] offsets = mIdentifiers.get(identifier);
+        return offsets != null ? offsets : NO_OFFSETS;
+    }
+
+    /**
+     * @return whether the symbols of the identifiers are known, only the files that were
+     * compiled after they were saved are resolved
+     */
+    public boolean isResolved() {
+        return mSymbols != null;
+    }
+
+    /**
+     * @return the sorted offsets of the identifiers that resolve to the given class or member,
+     * empty if the file is not resolved
+     */
+    @NonNull
+    public int[] getSymbolOffsets(@NonNull String key) {
+        int[] offsets = mSymbols != null ? mSymbols.get(key) : null;
+        return offsets != null ? offsets : NO_OFFSETS;
+    }
+
+    /**
+     * @return whether some occurrences of the identifier have no known symbol and may refer to
+     * any class or member of that name, either because the file is not resolved or because
+     * they did not resolve when the file was compiled
+     */
+    public boolean isUnresolved(@NonNull String identifier) {
+        return mSymbols == null ? mIdentifiers.containsKey(identifier)
+                : mUnresolved.contains(identifier);
+    }
+
+    /**
+     * @return whether the file is the same size and has the same modification time as when it
+     * was indexed
+     */
+    public boolean isUpToDate(@NonNull File file) {
+        return file.length() == mLength && file.lastModified() == mLastModified;
+    }
+
+    /**
+     * @return this entry for a file that has been touched without changing its contents
+     */
+    @NonNull
+    IndexedFile withTimestamps(long length, long lastModified) {
+        return new IndexedFile(mFile, length, lastModified, mHash, mPackageName, mImports,
+                mTypes, mMembers, mIdentifiers, mSymbols, mUnresolved);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(mFile.getAbsolutePath());
+        out.writeLong(mLength);
+        out.writeLong(mLastModified);
+        out.writeLong(mHash);
+        out.writeUTF(mPackageName);
+        writeStrings(out, mImports);
+        writeStrings(out, mTypes);
+        writeStrings(out, mMembers);
+        writeOffsets(out, mIdentifiers);
+        out.writeBoolean(mSymbols != null);
+        if (mSymbols != null) {
+            writeOffsets(out, mSymbols);
+            writeStrings(out, mUnresolved);
+        }
+    }
+
+    static IndexedFile read(DataInputStream in) throws IOException {
+        File file = new File(in.readUTF());
+        long length = in.readLong();
+        long lastModified = in.readLong();
+        long hash = in.readLong();
+        String packageName = in.readUTF();
+        List<String> imports = readStrings(in);
+        List<String> types = readStrings(in);
+        List<String> members = readStrings(in);
+        Map<String, int[]> identifiers = readOffsets(in);
+        Map<String, int[]> symbols = null;
+        Set<String> unresolved = Collections.emptySet();
+        if (in.readBoolean()) {
+            symbols = readOffsets(in);
+            unresolved = new HashSet<>(readStrings(in));
+        }
+        return new IndexedFile(file, length, lastModified, hash, packageName, imports, types,
+                members, identifiers, symbols, unresolved);
+    }
+
+    private static void writeOffsets(DataOutputStream out, Map<String, int[]> map)
+            throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, int[]> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            int[] offsets = entry.getValue();
+            out.writeInt(offsets.length);
+            // offsets are sorted, the deltas are written so most of them fit in a short
+            int previous = 0;
+            for (int offset : offsets) {
+                writeVarInt(out, offset - previous);
+                previous = offset;
+            }
+        }
+    }
+
+    private static Map<String, int[]> readOffsets(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, int[]> map = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            int[] offsets = new int[in.readInt()];
+            int previous = 0;
+            for (int j = 0; j < offsets.length; j++) {
+                previous += readVarInt(in);
+                offsets[j] = previous;
+            }
+            map.put(key, offsets);
+        }
+        return map;
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings)
+            throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed offset");
+    }
+}
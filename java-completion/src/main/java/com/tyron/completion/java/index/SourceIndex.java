@@ -0,0 +1,278 @@
+package com.tyron.completion.java.index;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the declarations and references of the java sources of a module, see
+ * {@link IndexedFile}.
+ *
+ * <p>Each file is indexed along with the hash of its contents, so reopening a project only
+ * parses the files that changed since the index was saved with {@link #save(File)}. Lookups go
+ * through maps from declarations and identifiers to the files that contain them, which are
+ * built once after the index changes.
+ */
+public class SourceIndex {
+
+    private static final int MAGIC = 0x53524958;
+    private static final int VERSION = 3;
+
+    private final Map<File, IndexedFile> mFiles = new HashMap<>();
+
+    private volatile Snapshot mSnapshot;
+    private boolean mDirty;
+
+    /**
+     * Reads the index saved to the given file, an empty index is returned if the file does not
+     * exist or was written by another version
+     */
+    @NonNull
+    public static SourceIndex read(@NonNull File indexFile) {
+        SourceIndex index = new SourceIndex();
+        if (!indexFile.exists()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return index;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                IndexedFile file = IndexedFile.read(in);
+                index.mFiles.put(file.getFile(), file);
+            }
+        } catch (IOException e) {
+            // the index is only a cache, the files will be parsed again
+            index.mFiles.clear();
+        }
+        return index;
+    }
+
+    /**
+     * Writes the index to the given file if it has changed since it was read
+     */
+    public synchronized void save(@NonNull File indexFile) throws IOException {
+        if (!mDirty && indexFile.exists()) {
+            return;
+        }
+        File parent = indexFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mFiles.size());
+            for (IndexedFile file : mFiles.values()) {
+                file.write(out);
+            }
+        }
+        if (indexFile.exists() && !indexFile.delete() || !temp.renameTo(indexFile)) {
+            throw new IOException("Unable to write source index " + indexFile);
+        }
+        mDirty = false;
+    }
+
+    /**
+     * @return the entry of the file, null if it has not been indexed
+     */
+    @Nullable
+    public synchronized IndexedFile get(@NonNull File file) {
+        return mFiles.get(file);
+    }
+
+    /**
+     * @return whether the file has been indexed and has not been modified since
+     */
+    public synchronized boolean isUpToDate(@NonNull File file) {
+        IndexedFile indexed = mFiles.get(file);
+        return indexed != null && indexed.isUpToDate(file);
+    }
+
+    public synchronized void put(@NonNull IndexedFile file) {
+        mFiles.put(file.getFile(), file);
+        mSnapshot = null;
+        mDirty = true;
+    }
+
+    public synchronized void remove(@NonNull File file) {
+        if (mFiles.remove(file) != null) {
+            mSnapshot = null;
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Removes the files that are not in the given collection, e.g. files that were deleted
+     * while the project was closed
+     */
+    public synchronized void retainAll(@NonNull Collection<File> files) {
+        if (mFiles.keySet().retainAll(new HashSet<>(files))) {
+            mSnapshot = null;
+            mDirty = true;
+        }
+    }
+
+    public synchronized int size() {
+        return mFiles.size();
+    }
+
+    /**
+     * @return the file that declares the class, null if no indexed file declares it
+     */
+    @Nullable
+    public File findDeclaration(@NonNull String className) {
+        return getSnapshot().declarations.get(className);
+    }
+
+    /**
+     * @return the entries of the files in which the identifier occurs
+     */
+    @NonNull
+    public List<IndexedFile> findFiles(@NonNull String identifier) {
+        IndexedFile[] files = getSnapshot().identifiers.get(identifier);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(files));
+    }
+
+    /**
+     * Finds the files that may reference the class. The identifiers of the files that were
+     * compiled since they were last saved are matched by their symbol. The other identifiers
+     * with the simple name of the class are filtered by the package and the imports of their
+     * file.
+     */
+    @NonNull
+    public List<File> findTypeReferences(@NonNull String className) {
+        String packageName = packageName(className);
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        String firstSegment = packageName.isEmpty()
+                ? "" : packageName.split("\\.", 2)[0];
+        List<File> found = new ArrayList<>();
+        for (IndexedFile file : findFiles(simpleName)) {
+            boolean references = file.getSymbolOffsets(className).length > 0;
+            if (!references && file.isUnresolved(simpleName)) {
+                references = file.getTypes().contains(className)
+                        || file.getPackageName().equals(packageName)
+                        || importsType(file, className, packageName)
+                        || (!firstSegment.isEmpty()
+                        && file.getOffsets(firstSegment).length > 0);
+            }
+            if (references) {
+                found.add(file.getFile());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the files that may reference the field or method. The member can be accessed
+     * through an expression of any type, so the identifiers with its name that have no known
+     * symbol are all considered references.
+     */
+    @NonNull
+    public List<File> findMemberReferences(@NonNull String className,
+                                           @NonNull String memberName) {
+        String key = className + "#" + memberName;
+        List<File> found = new ArrayList<>();
+        for (IndexedFile file : findFiles(memberName)) {
+            if (file.getSymbolOffsets(key).length > 0 || file.isUnresolved(memberName)) {
+                found.add(file.getFile());
+            }
+        }
+        return found;
+    }
+
+    private static boolean importsType(IndexedFile file, String className, String packageName) {
+        for (String imported : file.getImports()) {
+            if (imported.endsWith(".*")) {
+                String prefix = imported.substring(0, imported.length() - 2);
+                if (prefix.equals(packageName) || className.startsWith(prefix + ".")) {
+                    return true;
+                }
+            } else if (imported.equals(className) || className.startsWith(imported + ".")) {
+                // also covers the outer class of a nested class
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the leading segments of the class name that start with a lowercase letter
+     */
+    private static String packageName(String className) {
+        int end = 0;
+        int start = 0;
+        while (start < className.length() && Character.isLowerCase(className.charAt(start))) {
+            int dot = className.indexOf('.', start);
+            if (dot < 0) {
+                break;
+            }
+            end = dot;
+            start = dot + 1;
+        }
+        return className.substring(0, end);
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = mSnapshot;
+                if (snapshot == null) {
+                    snapshot = new Snapshot(mFiles.values());
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Immutable lookup tables built from the indexed files
+     */
+    private static class Snapshot {
+
+        final Map<String, File> declarations = new HashMap<>();
+        final Map<String, IndexedFile[]> identifiers;
+
+        Snapshot(Collection<IndexedFile> files) {
+            Map<String, List<IndexedFile>> identifierFiles = new HashMap<>();
+            for (IndexedFile file : files) {
+                for (String type : file.getTypes()) {
+                    declarations.put(type, file.getFile());
+                }
+                for (String identifier : file.getIdentifiers()) {
+                    identifierFiles.computeIfAbsent(identifier, k -> new ArrayList<>(1))
+                            .add(file);
+                }
+            }
+            identifiers = new HashMap<>(identifierFiles.size() * 2);
+            for (Map.Entry<String, List<IndexedFile>> entry : identifierFiles.entrySet()) {
+                identifiers.put(entry.getKey(), entry.getValue().toArray(new IndexedFile[0]));
+            }
+        }
+    }
+}
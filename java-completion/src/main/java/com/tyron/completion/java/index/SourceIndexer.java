@@ -0,0 +1,247 @@
+package com.tyron.completion.java.index;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.completion.java.SourceFileManager;
+
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.util.JavacTask;
+import org.openjdk.source.util.SourcePositions;
+import org.openjdk.source.util.Trees;
+import org.openjdk.tools.javac.api.JavacTool;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a {@link SourceIndex} up to date with the source files of a module.
+ *
+ * <p>Files are only parsed when they are indexed. The files that need to be indexed again are
+ * split in a few batches that are parsed concurrently, each batch by a single javac task.
+ * A file that was touched but whose contents did not change is not parsed again. The symbols
+ * of a file are only recorded when it has been compiled anyway, see
+ * {@link #resolve(SourceIndex, File, JavacTask, CompilationUnitTree)}.
+ */
+public class SourceIndexer {
+
+    private static final String TAG = SourceIndexer.class.getSimpleName();
+
+    /**
+     * The minimum number of files parsed by a single task, starting a javac task has a cost
+     * so small batches are not worth a thread
+     */
+    private static final int MIN_BATCH_SIZE = 32;
+
+    private final Project mProject;
+
+    public SourceIndexer(Project project) {
+        mProject = project;
+    }
+
+    /**
+     * Indexes the files that changed since they were last indexed and removes the files that
+     * are not in the given collection from the index
+     *
+     * @return the number of files that were parsed
+     */
+    public int update(@NonNull SourceIndex index, @NonNull Collection<File> files) {
+        index.retainAll(files);
+        return index(index, files);
+    }
+
+    /**
+     * Indexes the given files if they changed since they were last indexed, the other files of
+     * the index are left as is
+     *
+     * @return the number of files that were parsed
+     */
+    public int index(@NonNull SourceIndex index, @NonNull Collection<File> files) {
+        List<File> stale = new ArrayList<>();
+        for (File file : files) {
+            if (!index.isUpToDate(file)) {
+                stale.add(file);
+            }
+        }
+        return indexFiles(index, stale);
+    }
+
+    /**
+     * Indexes the given files even if they have the same size and modification time as when
+     * they were last indexed. Used for files that are known to have been written, e.g. a file
+     * saved twice within the granularity of the modification time of the file system. Files
+     * whose contents did not change keep their entry.
+     *
+     * @return the number of files that were parsed
+     */
+    public int reindex(@NonNull SourceIndex index, @NonNull Collection<File> files) {
+        return indexFiles(index, new ArrayList<>(files));
+    }
+
+    private int indexFiles(SourceIndex index, List<File> stale) {
+        if (stale.isEmpty()) {
+            return 0;
+        }
+
+        int batchCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                stale.size() / MIN_BATCH_SIZE));
+        if (batchCount == 1) {
+            return indexBatch(index, stale);
+        }
+        List<List<File>> batches = new ArrayList<>(batchCount);
+        for (int i = 0; i < batchCount; i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (int i = 0; i < stale.size(); i++) {
+            batches.get(i % batchCount).add(stale.get(i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(batchCount);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>(batchCount);
+            for (List<File> batch : batches) {
+                futures.add(executor.submit(() -> indexBatch(index, batch)));
+            }
+            int parsed = 0;
+            for (Future<Integer> future : futures) {
+                try {
+                    parsed += future.get();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Failed to index files", e.getCause());
+                }
+            }
+            return parsed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses the files with a single javac task
+     *
+     * @return the number of files that were parsed
+     */
+    private int indexBatch(SourceIndex index, List<File> files) {
+        List<JavaFileObject> sources = new ArrayList<>(files.size());
+        Map<URI, Source> sourcesByUri = new HashMap<>();
+        for (File file : files) {
+            long length = file.length();
+            long lastModified = file.lastModified();
+            byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                index.remove(file);
+                continue;
+            }
+            long hash = hash(bytes);
+            IndexedFile previous = index.get(file);
+            if (previous != null && previous.getHash() == hash) {
+                index.put(previous.withTimestamps(length, lastModified));
+                continue;
+            }
+            String contents = new String(bytes, StandardCharsets.UTF_8);
+            SourceFileObject source = new SourceFileObject(file.toPath(), contents,
+                    Instant.ofEpochMilli(lastModified));
+            sources.add(source);
+            sourcesByUri.put(source.toUri(), new Source(file, length, lastModified, hash,
+                    contents));
+        }
+        if (sources.isEmpty()) {
+            return 0;
+        }
+
+        JavacTask task = (JavacTask) JavacTool.create().getTask(null,
+                new SourceFileManager(mProject), diagnostic -> {
+                }, Collections.emptyList(), null, sources);
+        SourcePositions positions = Trees.instance(task).getSourcePositions();
+        Iterable<? extends CompilationUnitTree> roots;
+        try {
+            roots = task.parse();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to parse files", e);
+            return 0;
+        }
+        for (CompilationUnitTree root : roots) {
+            Source source = sourcesByUri.get(root.getSourceFile().toUri());
+            if (source != null) {
+                index.put(IndexScanner.index(source.file, source.length, source.lastModified,
+                        source.hash, root, positions, source.contents, null));
+            }
+        }
+        return sources.size();
+    }
+
+    /**
+     * Records the symbols of a file from the tree of a task that has attributed it. Nothing is
+     * recorded if the tree was compiled from contents other than the indexed ones.
+     *
+     * @return whether the entry of the file was updated
+     */
+    public boolean resolve(@NonNull SourceIndex index, @NonNull File file, @NonNull JavacTask task,
+                           @NonNull CompilationUnitTree root) {
+        IndexedFile previous = index.get(file);
+        if (previous == null) {
+            return false;
+        }
+        String contents;
+        try {
+            contents = root.getSourceFile().getCharContent(true).toString();
+        } catch (IOException e) {
+            return false;
+        }
+        long hash = hash(contents.getBytes(StandardCharsets.UTF_8));
+        if (hash != previous.getHash()) {
+            return false;
+        }
+        Trees trees = Trees.instance(task);
+        index.put(IndexScanner.index(file, previous.getLength(), previous.getLastModified(), hash,
+                root, trees.getSourcePositions(), contents, trees));
+        return true;
+    }
+
+    private static long hash(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private static class Source {
+
+        final File file;
+        final long length;
+        final long lastModified;
+        final long hash;
+        final String contents;
+
+        Source(File file, long length, long lastModified, long hash, String contents) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.contents = contents;
+        }
+    }
+}
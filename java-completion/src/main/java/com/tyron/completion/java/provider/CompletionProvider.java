@@ -98,6 +98,12 @@ public class CompletionProvider {
 
     private static final int MAX_COMPLETION_ITEMS = 50;
 
+    /**
+     * The maximum number of class names searched from the class index, the results
+     * are sorted afterwards so this only needs to be large enough to contain the best matches
+     */
+    private static final int MAX_CLASS_NAME_ITEMS = 500;
+
     public CompletionProvider(JavaCompilerService compiler) {
         this.compiler = compiler;
     }
@@ -105,10 +111,9 @@ public class CompletionProvider {
     public CompletionList complete(File file, String fileContents, long index) {
         checkCanceled();
 
-        ParseTask task = compiler.parse(file.toPath(), fileContents);
         StringBuilder contents;
         try {
-            contents = new PruneMethodBodies(task.task).scan(task.root, index);
+            contents = compiler.pruneMethodBodies(file.toPath(), fileContents, index);
             int end = StringSearch.endOfLine(contents, (int) index);
             contents.insert(end, ';');
         } catch (IndexOutOfBoundsException e) {
@@ -612,20 +617,18 @@ public class CompletionProvider {
 
         Set<String> names = new HashSet<>();
         CompletionList list = new CompletionList();
-        for (String className : compiler.publicTopLevelTypes()) {
-            if (className.startsWith(path)) {
-                int start = path.lastIndexOf('.');
-                int end = className.indexOf('.', path.length());
-                if (end == -1) end = className.length();
-                String segment = className.substring(start + 1, end);
-                if (names.contains(segment)) continue;
-                names.add(segment);
-                boolean isClass = end == path.length();
-                if (isClass) {
-                    list.items.add(classItem(className));
-                } else {
-                    list.items.add(packageItem(segment));
-                }
+        for (String className : compiler.findClassesByPrefix(path)) {
+            int start = path.lastIndexOf('.');
+            int end = className.indexOf('.', path.length());
+            if (end == -1) end = className.length();
+            String segment = className.substring(start + 1, end);
+            if (names.contains(segment)) continue;
+            names.add(segment);
+            boolean isClass = end == path.length();
+            if (isClass) {
+                list.items.add(classItem(className));
+            } else {
+                list.items.add(packageItem(segment));
             }
         }
         return list;
@@ -761,8 +764,7 @@ public class CompletionProvider {
             list.items.add(classItem(className));
             uniques.add(className);
         }
-        for (String className : compiler.publicTopLevelTypes()) {
-            if (FuzzySearch.partialRatio(className, partial) < 90) continue;
+        for (String className : compiler.findClassNames(partial, MAX_CLASS_NAME_ITEMS)) {
             if (uniques.contains(className)) continue;
             list.items.add(classItem(className));
             uniques.add(className);
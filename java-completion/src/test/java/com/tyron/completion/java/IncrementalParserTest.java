@@ -0,0 +1,209 @@
+package com.tyron.completion.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.project.Project;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+public class IncrementalParserTest {
+
+    private static final String CONTENTS = "package com.test;\n" +
+            "\n" +
+            "public class Main {\n" +
+            "    private int mField;\n" +
+            "\n" +
+            "    public Main() {\n" +
+            "        mField = 1;\n" +
+            "    }\n" +
+            "\n" +
+            "    void run() {\n" +
+            "        Runnable runnable = new Runnable() {\n" +
+            "            @Override\n" +
+            "            public void run() {\n" +
+            "                mField++;\n" +
+            "            }\n" +
+            "        };\n" +
+            "    }\n" +
+            "\n" +
+            "    int get() {\n" +
+            "        return mField;\n" +
+            "    }\n" +
+            "\n" +
+            "    abstract static class Inner {\n" +
+            "        abstract void inner();\n" +
+            "\n" +
+            "        void other() {\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Project mProject;
+    private Path mFile;
+    private IncrementalParser mParser;
+
+    @Before
+    public void setup() {
+        mProject = new Project(mFolder.getRoot());
+        mFile = mFolder.getRoot().toPath().resolve("Main.java");
+        mParser = new IncrementalParser(mProject);
+    }
+
+    @Test
+    public void testFullParse() {
+        long[] bodies = mParser.methodBodies(mFile, CONTENTS);
+
+        // the constructor, run(), the anonymous run(), get() and other()
+        assertThat(bodies).hasLength(10);
+        for (int i = 0; i < bodies.length; i += 2) {
+            assertThat(CONTENTS.charAt((int) bodies[i])).isEqualTo('{');
+            assertThat(CONTENTS.charAt((int) bodies[i + 1] - 1)).isEqualTo('}');
+        }
+        // the anonymous class method comes after the method it is declared in
+        assertThat(bodies[4]).isGreaterThan(bodies[2]);
+        assertThat(bodies[5]).isLessThan(bodies[3]);
+        assertThat(mParser.getFullParseCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnchangedContents() {
+        long[] bodies = mParser.methodBodies(mFile, CONTENTS);
+
+        assertThat(mParser.methodBodies(mFile, CONTENTS)).isEqualTo(bodies);
+        assertThat(mParser.getFullParseCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEditInsideMethodBody() {
+        mParser.methodBodies(mFile, CONTENTS);
+
+        String edited = insertAfter(CONTENTS, "return mField;", "\n        int x = 1;");
+        assertReparsed(edited);
+
+        // deleting is an edit as well
+        assertReparsed(CONTENTS);
+    }
+
+    @Test
+    public void testEditAddingNestedBody() {
+        mParser.methodBodies(mFile, CONTENTS);
+
+        String edited = insertAfter(CONTENTS, "mField = 1;",
+                "\n        new Thread() { public void run() { } }.start();");
+        assertReparsed(edited);
+    }
+
+    @Test
+    public void testEditInsideNestedBody() {
+        mParser.methodBodies(mFile, CONTENTS);
+
+        String edited = insertAfter(CONTENTS, "mField++;", "\n                mField--;");
+        assertReparsed(edited);
+    }
+
+    @Test
+    public void testEditOutsideMethodBody() {
+        mParser.methodBodies(mFile, CONTENTS);
+
+        String edited = insertAfter(CONTENTS, "private int mField;",
+                "\n    void added() { int y; }");
+        assertFullyParsed(edited);
+    }
+
+    @Test
+    public void testEditClosingMethodBody() {
+        mParser.methodBodies(mFile, CONTENTS);
+
+        // the body of get() no longer ends at the same brace
+        String edited = insertAfter(CONTENTS, "return mField;", "\n    }\n    void added() {");
+        assertFullyParsed(edited);
+    }
+
+    @Test
+    public void testEditsInSeveralBodies() {
+        mParser.methodBodies(mFile, CONTENTS);
+
+        String edited = insertAfter(CONTENTS, "mField = 1;", " mField = 2;");
+        edited = insertAfter(edited, "return mField;", " // comment");
+        assertFullyParsed(edited);
+    }
+
+    @Test
+    public void testRandomEditsMatchFullParse() {
+        String[] snippets = {"int a = 0;", "foo();", "if (x) { y(); }", "}", "{", "\"}\"",
+                "/* } */", "new Object() { void m() {} };", "class Local { void l() {} }"};
+        Random random = new Random(0);
+        String contents = CONTENTS;
+        mParser.methodBodies(mFile, contents);
+        for (int i = 0; i < 200; i++) {
+            long[] bodies = mParser.methodBodies(mFile, contents);
+            int position;
+            if (bodies.length > 0 && random.nextInt(4) != 0) {
+                // mostly edit inside a method body, like completion does
+                int body = random.nextInt(bodies.length / 2) * 2;
+                position = (int) bodies[body] + 1 + random.nextInt(
+                        (int) (bodies[body + 1] - bodies[body] - 1));
+            } else {
+                position = random.nextInt(contents.length() + 1);
+            }
+            if (random.nextInt(3) == 0 && position < contents.length()) {
+                contents = contents.substring(0, position) + contents.substring(position + 1);
+            } else {
+                contents = contents.substring(0, position) +
+                        snippets[random.nextInt(snippets.length)] + contents.substring(position);
+            }
+
+            assertThat(mParser.methodBodies(mFile, contents)).isEqualTo(fullParse(contents));
+        }
+        // most edits only parsed the edited body again
+        assertThat(mParser.getFullParseCount()).isLessThan(100);
+    }
+
+    @Test
+    public void testPrune() {
+        long[] bodies = mParser.methodBodies(mFile, CONTENTS);
+        int cursor = CONTENTS.indexOf("return mField;");
+
+        String pruned = IncrementalParser.prune(CONTENTS, bodies, cursor).toString();
+        assertThat(pruned).hasLength(CONTENTS.length());
+        assertThat(pruned).contains("return mField;");
+        assertThat(pruned).doesNotContain("mField = 1;");
+        assertThat(pruned).doesNotContain("new Runnable()");
+        // the declarations are kept
+        assertThat(pruned).contains("void run() {");
+        assertThat(pruned).contains("void other() {");
+    }
+
+    private void assertReparsed(String contents) {
+        int fullParses = mParser.getFullParseCount();
+        assertThat(mParser.methodBodies(mFile, contents)).isEqualTo(fullParse(contents));
+        assertThat(mParser.getFullParseCount()).isEqualTo(fullParses);
+    }
+
+    private void assertFullyParsed(String contents) {
+        int fullParses = mParser.getFullParseCount();
+        assertThat(mParser.methodBodies(mFile, contents)).isEqualTo(fullParse(contents));
+        assertThat(mParser.getFullParseCount()).isEqualTo(fullParses + 1);
+    }
+
+    private long[] fullParse(String contents) {
+        return new IncrementalParser(mProject).methodBodies(mFile, contents);
+    }
+
+    private static String insertAfter(String contents, String anchor, String text) {
+        int index = contents.indexOf(anchor) + anchor.length();
+        return contents.substring(0, index) + text + contents.substring(index);
+    }
+}
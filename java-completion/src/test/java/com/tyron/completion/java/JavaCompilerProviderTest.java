@@ -0,0 +1,72 @@
+package com.tyron.completion.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.impl.FileManagerImpl;
+import com.tyron.builder.project.mock.MockJavaModule;
+import com.tyron.completion.java.index.SourceIndex;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+
+@RunWith(RobolectricTestRunner.class)
+public class JavaCompilerProviderTest {
+
+    private static final long LAST_MODIFIED = 1_600_000_000_000L;
+    private static final long TIMEOUT = 10_000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testSavedFilesAreIndexed() throws Exception {
+        File root = mFolder.getRoot();
+        FileManagerImpl fileManager = new FileManagerImpl(root) {
+            @Override
+            public void addOnFileSavedListener(OnFileSavedListener listener) {
+                // every save keeps the same modification time, as on a file system with a
+                // coarse granularity when a file is saved twice in a row
+                super.addOnFileSavedListener(file -> {
+                    assertThat(file.setLastModified(LAST_MODIFIED)).isTrue();
+                    listener.onFileSaved(file);
+                });
+            }
+        };
+        MockJavaModule module = new MockJavaModule(root, fileManager);
+        JavaCompilerProvider provider = new JavaCompilerProvider();
+        SourceIndex index = provider.getSourceIndex(new Project(root), module);
+
+        File file = mFolder.newFile("Saved.java");
+        fileManager.openFileForSnapshot(file, "package com.test;\nclass First {}");
+        assertThat(fileManager.saveFile(file)).isTrue();
+        awaitDeclaration(index, "com.test.First", file);
+
+        // the same length as the previous contents
+        fileManager.setSnapshotContent(file, "package com.test;\nclass Other {}");
+        assertThat(fileManager.saveFile(file)).isTrue();
+        awaitDeclaration(index, "com.test.Other", file);
+        assertThat(index.findDeclaration("com.test.First")).isNull();
+
+        provider.destroy();
+    }
+
+    /**
+     * Saved files are indexed in the background, waits until the class is declared in the index
+     */
+    private static void awaitDeclaration(SourceIndex index, String className, File file)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!file.equals(index.findDeclaration(className))) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError(className + " was not indexed");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
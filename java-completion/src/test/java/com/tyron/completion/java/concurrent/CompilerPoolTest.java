@@ -0,0 +1,55 @@
+package com.tyron.completion.java.concurrent;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.completion.java.ReusableCompiler;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that multiple compiler contexts can be borrowed at the same time and that
+ * borrowing from an exhausted pool waits for a context to be returned.
+ */
+public class CompilerPoolTest {
+
+    @Test
+    public void testConcurrentBorrow() {
+        ReusableCompiler compiler = new ReusableCompiler(2);
+
+        ReusableCompiler.Borrow first = borrow(compiler);
+        ReusableCompiler.Borrow second = borrow(compiler);
+        assertThat(compiler.getBorrowedCount()).isEqualTo(2);
+
+        first.close();
+        second.close();
+        assertThat(compiler.getBorrowedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testExhaustedPoolWaits() throws InterruptedException {
+        ReusableCompiler compiler = new ReusableCompiler(1);
+        ReusableCompiler.Borrow first = borrow(compiler);
+
+        CountDownLatch borrowed = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            ReusableCompiler.Borrow second = borrow(compiler);
+            borrowed.countDown();
+            second.close();
+        });
+        thread.start();
+
+        assertThat(borrowed.await(500, TimeUnit.MILLISECONDS)).isFalse();
+        first.close();
+        assertThat(borrowed.await(5, TimeUnit.SECONDS)).isTrue();
+        thread.join();
+    }
+
+    private ReusableCompiler.Borrow borrow(ReusableCompiler compiler) {
+        return compiler.getTask(null, null, Collections.singletonList("-proc:none"),
+                Collections.emptyList(), Collections.emptyList());
+    }
+}
@@ -1,5 +1,6 @@
 package com.tyron.completion.java.concurrent;
 
+import static com.google.common.truth.Truth.assertThat;
 import static com.tyron.completion.TestUtil.resolveBasePath;
 
 import androidx.test.core.app.ApplicationProvider;
@@ -25,6 +26,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The java language server is single threaded and requires threads that
@@ -110,6 +113,38 @@ public class MultiThreadTest {
         });
     }
 
+    /**
+     * Two files compiled concurrently with a single compiler context, each compilation has to
+     * release the context of the other one once it is no longer used.
+     */
+    @Test
+    public void testSingleCompilerWithTwoFiles() throws InterruptedException {
+        File first = mModule.getJavaFile("com.tyron.test.MemberSelect");
+        File second = mModule.getJavaFile("com.tyron.test.Scope");
+        assert first != null && second != null;
+
+        mService.setMaxConcurrentCompilations(1);
+        AtomicInteger completed = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (File file : new File[]{first, second}) {
+            Thread t = new Thread(() -> {
+                for (int i = 0; i < 10; i++) {
+                    CompilerContainer container = mService.compile(file.toPath());
+                    container.run(task -> w(10));
+                    completed.incrementAndGet();
+                }
+            }, "Compile " + file.getName());
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+        }
+        assertThat(completed.get()).isEqualTo(20);
+    }
+
     private void w(long millis) {
         try {
             Thread.sleep(millis);
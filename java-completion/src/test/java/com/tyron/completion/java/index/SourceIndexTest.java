@@ -0,0 +1,280 @@
+package com.tyron.completion.java.index;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.completion.java.SourceFileManager;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.util.JavacTask;
+import org.openjdk.tools.javac.api.JavacTool;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class SourceIndexTest {
+
+    private static final String CLASS_TEMPLATE = "package com.test;\n" +
+            "\n" +
+            "import java.util.List;\n" +
+            "\n" +
+            "public class Class%1$d {\n" +
+            "    public static int sField%1$d;\n" +
+            "\n" +
+            "    public Class%1$d() {\n" +
+            "    }\n" +
+            "\n" +
+            "    void run(List<String> list) {\n" +
+            "        int value = Class%2$d.sField%2$d;\n" +
+            "        Object object = new Object() {\n" +
+            "            int anonymous;\n" +
+            "        };\n" +
+            "    }\n" +
+            "\n" +
+            "    static class Inner {\n" +
+            "        String name;\n" +
+            "    }\n" +
+            "}\n";
+    private static final int FILE_COUNT = 100;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SourceIndexer mIndexer;
+    private List<File> mFiles;
+
+    @Before
+    public void setup() throws IOException {
+        mIndexer = new SourceIndexer(new Project(mFolder.getRoot()));
+        mFiles = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            File file = mFolder.newFile("Class" + i + ".java");
+            FileUtils.writeStringToFile(file, String.format(CLASS_TEMPLATE, i,
+                    (i + 1) % FILE_COUNT), StandardCharsets.UTF_8);
+            mFiles.add(file);
+        }
+    }
+
+    @Test
+    public void testDeclarations() {
+        SourceIndex index = new SourceIndex();
+        assertThat(mIndexer.update(index, mFiles)).isEqualTo(FILE_COUNT);
+
+        IndexedFile file = index.get(mFiles.get(1));
+        assertThat(file).isNotNull();
+        assertThat(file.getPackageName()).isEqualTo("com.test");
+        assertThat(file.getImports()).containsExactly("java.util.List");
+        assertThat(file.getTypes()).containsExactly("com.test.Class1", "com.test.Class1.Inner");
+        assertThat(file.getMembers()).containsExactly("com.test.Class1#sField1",
+                "com.test.Class1#<init>", "com.test.Class1#run", "com.test.Class1.Inner#name");
+
+        assertThat(index.findDeclaration("com.test.Class1.Inner")).isEqualTo(mFiles.get(1));
+        assertThat(index.findFiles("sField2")).hasSize(2);
+    }
+
+    @Test
+    public void testOffsets() throws IOException {
+        SourceIndex index = new SourceIndex();
+        mIndexer.update(index, mFiles);
+
+        IndexedFile file = index.get(mFiles.get(1));
+        String contents = FileUtils.readFileToString(mFiles.get(1), StandardCharsets.UTF_8);
+        for (String identifier : file.getIdentifiers()) {
+            for (int offset : file.getOffsets(identifier)) {
+                assertThat(contents.startsWith(identifier, offset)).isTrue();
+            }
+        }
+        // the declaration, the constructor and the reference from Class0
+        assertThat(file.getOffsets("Class1")).hasLength(2);
+        assertThat(index.get(mFiles.get(0)).getOffsets("Class1")).hasLength(1);
+    }
+
+    @Test
+    public void testReindexChangedFiles() throws IOException {
+        SourceIndex index = new SourceIndex();
+        mIndexer.update(index, mFiles);
+        File indexFile = new File(mFolder.getRoot(), "build/source_index.bin");
+        index.save(indexFile);
+
+        SourceIndex saved = SourceIndex.read(indexFile);
+        assertThat(saved.size()).isEqualTo(FILE_COUNT);
+        assertThat(mIndexer.update(saved, mFiles)).isEqualTo(0);
+
+        // touched without changing its contents
+        File touched = mFiles.get(2);
+        assertThat(touched.setLastModified(touched.lastModified() + 10_000)).isTrue();
+        assertThat(mIndexer.update(saved, mFiles)).isEqualTo(0);
+
+        File changed = mFiles.get(3);
+        FileUtils.writeStringToFile(changed, "package com.test;\nclass Changed {}",
+                StandardCharsets.UTF_8);
+        assertThat(mIndexer.update(saved, mFiles)).isEqualTo(1);
+        assertThat(saved.findDeclaration("com.test.Changed")).isEqualTo(changed);
+        assertThat(saved.findDeclaration("com.test.Class3")).isNull();
+
+        mFiles.remove(changed);
+        mIndexer.update(saved, mFiles);
+        assertThat(saved.findDeclaration("com.test.Changed")).isNull();
+    }
+
+    @Test
+    public void testReindexSameSizeAndTimestamp() throws IOException {
+        SourceIndex index = new SourceIndex();
+        mIndexer.update(index, mFiles);
+
+        // saved again within the granularity of the modification time
+        File changed = mFiles.get(3);
+        long lastModified = changed.lastModified();
+        FileUtils.writeStringToFile(changed, String.format(CLASS_TEMPLATE, 3, 5),
+                StandardCharsets.UTF_8);
+        assertThat(changed.setLastModified(lastModified)).isTrue();
+        assertThat(mIndexer.index(index, Collections.singleton(changed))).isEqualTo(0);
+
+        assertThat(mIndexer.reindex(index, Collections.singleton(changed))).isEqualTo(1);
+        assertThat(index.findFiles("sField5")).contains(index.get(changed));
+        // the contents did not change since
+        assertThat(mIndexer.reindex(index, Collections.singleton(changed))).isEqualTo(0);
+    }
+
+    @Test
+    public void testResolvedSymbols() throws IOException {
+        SourceIndex index = new SourceIndex();
+        mIndexer.update(index, mFiles);
+        assertThat(index.get(mFiles.get(1)).isResolved()).isFalse();
+
+        resolve(index, mFiles.subList(0, 3));
+
+        IndexedFile file = index.get(mFiles.get(1));
+        assertThat(file.isResolved()).isTrue();
+        // the declaration and the constructor
+        assertThat(file.getSymbolOffsets("com.test.Class1")).hasLength(2);
+        assertThat(file.getSymbolOffsets("com.test.Class2")).hasLength(1);
+        assertThat(file.getSymbolOffsets("com.test.Class2#sField2")).hasLength(1);
+        // the import and the parameter
+        assertThat(file.getSymbolOffsets("java.util.List")).hasLength(2);
+        assertThat(file.getSymbolOffsets("com.test.Class1.Inner#name")).hasLength(1);
+
+        File indexFile = new File(mFolder.getRoot(), "build/source_index.bin");
+        index.save(indexFile);
+        SourceIndex saved = SourceIndex.read(indexFile);
+        assertThat(saved.get(mFiles.get(1)).getSymbolOffsets("com.test.Class2#sField2"))
+                .isEqualTo(file.getSymbolOffsets("com.test.Class2#sField2"));
+
+        // the symbols of a file are dropped once it changes
+        FileUtils.writeStringToFile(mFiles.get(1), "package com.test;\nclass Changed {}",
+                StandardCharsets.UTF_8);
+        mIndexer.index(saved, Collections.singleton(mFiles.get(1)));
+        assertThat(saved.get(mFiles.get(1)).isResolved()).isFalse();
+    }
+
+    @Test
+    public void testFindTypeReferences() throws IOException {
+        SourceIndex index = indexReferences();
+        File user = new File(mFolder.getRoot(), "User.java");
+        File other = new File(mFolder.getRoot(), "Other.java");
+        assertThat(index.get(user).isResolved()).isTrue();
+
+        assertThat(index.findTypeReferences("com.test.Class2"))
+                .containsExactly(mFiles.get(1), mFiles.get(2), user);
+        assertThat(index.findTypeReferences("other.Other.Class2")).containsExactly(other);
+
+        // the class did not exist when the file was compiled
+        assertThat(index.findTypeReferences("com.test.Later")).containsExactly(user);
+        File later = mFolder.newFile("Later.java");
+        FileUtils.writeStringToFile(later, "package com.test;\nclass Later {}",
+                StandardCharsets.UTF_8);
+        mIndexer.index(index, Collections.singleton(later));
+        assertThat(index.findTypeReferences("com.test.Later")).containsExactly(user, later);
+    }
+
+    @Test
+    public void testFindMemberReferences() throws IOException {
+        SourceIndex index = indexReferences();
+        File user = new File(mFolder.getRoot(), "User.java");
+
+        assertThat(index.findMemberReferences("com.test.Class2", "sField2"))
+                .containsExactly(mFiles.get(1), mFiles.get(2), user);
+        // the local variable of the same name is not a reference
+        assertThat(index.findMemberReferences("com.test.Class1", "sField1"))
+                .containsExactly(mFiles.get(0), mFiles.get(1));
+
+        // the method did not exist when the file was compiled
+        assertThat(index.findMemberReferences("com.test.Class2", "added"))
+                .containsExactly(user);
+        File indexFile = new File(mFolder.getRoot(), "build/source_index.bin");
+        index.save(indexFile);
+        assertThat(SourceIndex.read(indexFile).findMemberReferences("com.test.Class2", "added"))
+                .containsExactly(user);
+    }
+
+    /**
+     * Indexes the files along with a file referencing a class and a method that do not exist
+     * and a file declaring a class with the same simple name as another one, then resolves
+     * some of them
+     */
+    private SourceIndex indexReferences() throws IOException {
+        File user = mFolder.newFile("User.java");
+        FileUtils.writeStringToFile(user, "package com.test;\n" +
+                "class User {\n" +
+                "    Class2 existing;\n" +
+                "    Later later;\n" +
+                "\n" +
+                "    void run() {\n" +
+                "        Class2.sField2 = 1;\n" +
+                "        Class2.added();\n" +
+                "        int sField1 = 0;\n" +
+                "    }\n" +
+                "}\n", StandardCharsets.UTF_8);
+        File other = mFolder.newFile("Other.java");
+        FileUtils.writeStringToFile(other, "package other;\n" +
+                "class Other {\n" +
+                "    static class Class2 {}\n" +
+                "    Class2 local;\n" +
+                "}\n", StandardCharsets.UTF_8);
+
+        List<File> files = new ArrayList<>(mFiles);
+        files.add(user);
+        files.add(other);
+        SourceIndex index = new SourceIndex();
+        mIndexer.update(index, files);
+        resolve(index, Arrays.asList(mFiles.get(1), mFiles.get(2), user, other));
+        return index;
+    }
+
+    /**
+     * Compiles the files and records their symbols in the index
+     */
+    private void resolve(SourceIndex index, List<File> files) throws IOException {
+        List<JavaFileObject> sources = new ArrayList<>();
+        for (File file : files) {
+            sources.add(new SourceFileObject(file.toPath(),
+                    FileUtils.readFileToString(file, StandardCharsets.UTF_8),
+                    Instant.ofEpochMilli(file.lastModified())));
+        }
+        JavacTask task = (JavacTask) JavacTool.create().getTask(null,
+                new SourceFileManager(new Project(mFolder.getRoot())), diagnostic -> {
+                }, Collections.emptyList(), null, sources);
+        Iterable<? extends CompilationUnitTree> roots = task.parse();
+        task.analyze();
+        for (CompilationUnitTree root : roots) {
+            File file = new File(root.getSourceFile().toUri());
+            assertThat(mIndexer.resolve(index, file, task, root)).isTrue();
+        }
+    }
+}
@@ -88,6 +88,15 @@ public class CompilerClassPath implements Closeable {
         dest.addAll(added);
     }
 
+    /**
+     * @return the libraries and the bootstrap jar
+     */
+    public Set<ClassPathEntry> getClassPath() {
+        synchronized (mClassPath) {
+            return new HashSet<>(mClassPath);
+        }
+    }
+
     public Compiler getCompiler() {
         return compiler;
     }
@@ -5,10 +5,13 @@ import android.util.Pair;
 
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.api.FileManager;
 import com.tyron.common.util.Debouncer;
 import com.tyron.completion.model.CachedCompletion;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressIndicator;
 import com.tyron.completion.progress.ProgressManager;
 import com.tyron.kotlin_completion.completion.CompletionUtilsKt;
 import com.tyron.kotlin_completion.completion.Completions;
@@ -16,6 +19,7 @@ import com.tyron.kotlin_completion.diagnostic.ConvertDiagnosticKt;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
 import com.tyron.kotlin_completion.util.StringUtilsKt;
 
+import org.jetbrains.kotlin.com.intellij.openapi.progress.EmptyProgressIndicator;
 import org.jetbrains.kotlin.diagnostics.Diagnostic;
 import org.jetbrains.kotlin.resolve.BindingContext;
 import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics;
@@ -28,6 +32,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import kotlin.Unit;
@@ -43,9 +48,15 @@ public class CompletionEngine {
 
     private final SourcePath sp;
     private final CompilerClassPath classPath;
+    private final FileManager.OnFileSavedListener mSaveListener;
     private final AsyncExecutor async = new AsyncExecutor();
     private CachedCompletion cachedCompletion;
 
+    /**
+     * Indicator of the latest completion request, canceled when a new one is made
+     */
+    private volatile ProgressIndicator mCompletionIndicator;
+
     private final Debouncer debounceLint = new Debouncer(Duration.ofMillis(500));
     private Set<File> lintTodo = new HashSet<>();
     private int lintCount = 0;
@@ -53,7 +64,10 @@ public class CompletionEngine {
     private CompletionEngine(AndroidModule project) {
         mProject = project;
         classPath = new CompilerClassPath(project);
-        sp = new SourcePath(classPath);
+        sp = new SourcePath(classPath,
+                new File(project.getBuildDirectory(), "intermediate/kotlin_symbol_index.bin"));
+        mSaveListener = sp::onFileSaved;
+        project.getFileManager().addOnFileSavedListener(mSaveListener);
     }
 
     private static volatile CompletionEngine INSTANCE = null;
@@ -64,12 +78,17 @@ public class CompletionEngine {
         } else {
             if (project != INSTANCE.mProject) {
                 Log.d("CompletionEngine", "Creating new instance");
+                INSTANCE.mProject.getFileManager().removeOnFileSavedListener(INSTANCE.mSaveListener);
                 INSTANCE = new CompletionEngine(project);
             }
         }
         return INSTANCE;
     }
 
+    /**
+     * @return whether the symbol index is being refreshed, completions can still be requested
+     * meanwhile and use the symbols indexed so far
+     */
     public boolean isIndexing() {
         return sp.getIndex().getIndexing();
     }
@@ -105,10 +124,6 @@ public class CompletionEngine {
     public CompletableFuture<CompletionList> complete(File file,
                                                       String contents,
                                                       int cursor) {
-        if (isIndexing()) {
-            return CompletableFuture.completedFuture(CompletionList.EMPTY);
-        }
-
         return async.compute(() -> {
             Pair<CompiledFile, Integer> pair = recover(file, contents, Recompile.NEVER, cursor);
             return new Completions().completions(pair.first, cursor, sp.getIndex());
@@ -121,10 +136,6 @@ public class CompletionEngine {
                                                       int line,
                                                       int column,
                                                       int cursor) {
-        if (isIndexing()) {
-            return CompletableFuture.completedFuture(CompletionList.EMPTY);
-        }
-
         if (isIncrementalCompletion(cachedCompletion, file, prefix, line, column)) {
             String partialIdentifier = partialIdentifier(prefix, prefix.length());
             CompletionList cachedList = cachedCompletion.getCompletionList();
@@ -148,21 +159,38 @@ public class CompletionEngine {
 
         debounceLint.cancel();
 
-        try {
-            ProgressManager.getInstance().setCanceled(true);
-            return async.compute(() -> {
-                ProgressManager.getInstance().setCanceled(false);
-                ProgressManager.getInstance().setRunning(true);
-                Pair<CompiledFile, Integer> recover = recover(file, contents, Recompile.NEVER, cursor);
-                String partialIdentifier = partialIdentifier(contents, cursor);
-                CompletionList completions = CompletionUtilsKt.completions(recover.first, cursor,
-                        sp.getIndex(), partialIdentifier);
-                cachedCompletion = new CachedCompletion(file, line, column, partialIdentifier, completions);
-                return completions;
-            });
-        } finally {
-            ProgressManager.getInstance().setRunning(false);
+        ProgressIndicator indicator = new ProgressIndicator();
+        ProgressIndicator previous = mCompletionIndicator;
+        mCompletionIndicator = indicator;
+        if (previous != null) {
+            previous.cancel();
         }
+        return async.compute(() -> {
+            try {
+                return runProcess(() -> {
+                    Pair<CompiledFile, Integer> recover = recover(file, contents, Recompile.NEVER, cursor);
+                    String partialIdentifier = partialIdentifier(contents, cursor);
+                    CompletionList completions = CompletionUtilsKt.completions(recover.first, cursor,
+                            sp.getIndex(), partialIdentifier);
+                    cachedCompletion = new CachedCompletion(file, line, column, partialIdentifier, completions);
+                    return completions;
+                }, indicator);
+            } catch (ProcessCanceledException | org.jetbrains.kotlin.com.intellij.openapi.progress.ProcessCanceledException e) {
+                return CompletionList.EMPTY;
+            }
+        });
+    }
+
+    /**
+     * Runs the process with the given indicator, also as the indicator of the Kotlin compiler
+     * so that the analysis stops when the request is canceled
+     */
+    private static <T> T runProcess(Supplier<T> process, ProgressIndicator indicator) {
+        EmptyProgressIndicator compilerIndicator = new EmptyProgressIndicator();
+        indicator.addCancelListener(compilerIndicator::cancel);
+        return org.jetbrains.kotlin.com.intellij.openapi.progress.ProgressManager.getInstance()
+                .runProcess(() -> ProgressManager.getInstance().runProcess(process, indicator),
+                        compilerIndicator);
     }
 
     private String partialIdentifier(String contents, int end) {
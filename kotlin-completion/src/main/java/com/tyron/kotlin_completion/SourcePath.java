@@ -12,6 +12,7 @@ import org.jetbrains.kotlin.com.intellij.lang.Language;
 import org.jetbrains.kotlin.container.ComponentProvider;
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
 import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.psi.KtFile;
 import org.jetbrains.kotlin.resolve.BindingContext;
 
@@ -22,7 +23,10 @@ import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
@@ -41,13 +45,29 @@ public class SourcePath {
     private final Map<URI, SourceFile> files = new HashMap<>();
     private final ReentrantLock parsedDataWriteLock = new ReentrantLock();
     private final AsyncExecutor indexAsync = new AsyncExecutor();
-    private final SymbolIndex index = new SymbolIndex();
-    private boolean indexEnabled = false;
-    private boolean indexInitialized;
+    private final SymbolIndex index;
+    private boolean indexEnabled = true;
+    private volatile boolean indexInitialized;
+    /**
+     * Whether a source file has been saved since the source packages were last indexed
+     */
+    private volatile boolean sourcesSaved;
+    /**
+     * The hashes of the contents of each source package, when it was last indexed
+     */
+    private Map<FqName, Long> indexedSourceHashes = Collections.emptyMap();
 
 
     public SourcePath(CompilerClassPath classPath) {
+        this(classPath, null);
+    }
+
+    /**
+     * @param indexFile The file where the symbols of the libraries are persisted, may be null
+     */
+    public SourcePath(CompilerClassPath classPath, File indexFile) {
         cp = classPath;
+        index = new SymbolIndex(indexFile);
     }
 
     public CompilerClassPath getCompilerClassPath() {
@@ -58,6 +78,16 @@ public class SourcePath {
         return index;
     }
 
+    /**
+     * Called when a file has been saved. The source packages whose contents have changed are
+     * indexed again after the next compilation, which resolves their new declarations.
+     */
+    public void onFileSaved(File file) {
+        if (file.getName().endsWith(".kt")) {
+            sourcesSaved = true;
+        }
+    }
+
     public class SourceFile {
 
         private final URI uri;
@@ -152,7 +182,7 @@ public class SourcePath {
                     parsedDataWriteLock.unlock();
                 }
             }
-            initializeIndexAsyncIfNeeded(compiledcontainer);
+            updateIndexAsyncIfNeeded(compiledcontainer);
         }
         public CompiledFile prepareCompiledFile() {
             parseIfChanged();
@@ -213,16 +243,77 @@ public class SourcePath {
         return UtilKt.util(sourcesContext, sources, allChanged);
     }
 
-    private void initializeIndexAsyncIfNeeded(ComponentProvider container) {
+    private void updateIndexAsyncIfNeeded(ComponentProvider container) {
+        if (!indexEnabled) {
+            return;
+        }
+        if (indexInitialized) {
+            updateSourcePackagesAsyncIfNeeded(container);
+            return;
+        }
+        // collected here since the files are not accessed by the index thread
+        Map<FqName, Long> sourceHashes = sourcePackageHashes();
+        Set<FqName> sourcePackages = sourceHashes.keySet();
+        List<File> classPath = cp.getClassPath().stream()
+                .map(it -> it.getCompiledJar().toFile())
+                .collect(Collectors.toList());
+        indexedSourceHashes = sourceHashes;
         indexAsync.execute(() -> {
-            if (indexEnabled && !indexInitialized) {
+            if (!indexInitialized) {
                 ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
-                index.refresh(module, true);
+                index.refresh(module, classPath, sourcePackages, false);
                 indexInitialized = true;
             }
         });
     }
 
+    /**
+     * Indexes again the source packages whose contents have changed since they were indexed,
+     * if a source file has been saved meanwhile. The libraries are left as they are.
+     */
+    private void updateSourcePackagesAsyncIfNeeded(ComponentProvider container) {
+        if (!sourcesSaved) {
+            return;
+        }
+        sourcesSaved = false;
+
+        Map<FqName, Long> sourceHashes = sourcePackageHashes();
+        Set<FqName> changed = new HashSet<>();
+        for (Map.Entry<FqName, Long> entry : sourceHashes.entrySet()) {
+            if (!entry.getValue().equals(indexedSourceHashes.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (FqName pkg : indexedSourceHashes.keySet()) {
+            if (!sourceHashes.containsKey(pkg)) {
+                changed.add(pkg);
+            }
+        }
+        indexedSourceHashes = sourceHashes;
+        if (changed.isEmpty()) {
+            return;
+        }
+        indexAsync.execute(() -> {
+            ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
+            index.refreshSources(module, changed);
+        });
+    }
+
+    /**
+     * @return a hash of the paths and contents of the parsed source files of each package
+     */
+    private Map<FqName, Long> sourcePackageHashes() {
+        Map<FqName, Long> hashes = new HashMap<>();
+        for (SourceFile file : files.values()) {
+            if (file.parsed == null) {
+                continue;
+            }
+            long hash = file.uri.hashCode() * 31L + file.content.hashCode();
+            hashes.merge(file.parsed.getPackageFqName(), hash, Long::sum);
+        }
+        return hashes;
+    }
+
 
     private BindingContext compileAndUpdate(Set<SourceFile> changed) {
         if (changed.isEmpty()) return null;
@@ -246,7 +337,7 @@ public class SourcePath {
             }
         });
 
-        initializeIndexAsyncIfNeeded(pair.getSecond());
+        updateIndexAsyncIfNeeded(pair.getSecond());
         return pair.getFirst();
     }
 
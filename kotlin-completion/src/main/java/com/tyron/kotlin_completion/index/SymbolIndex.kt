@@ -2,129 +2,388 @@ package com.tyron.kotlin_completion.index
 
 import android.util.Log
 import com.tyron.kotlin_completion.util.PsiUtils
-import org.jetbrains.exposed.sql.*
-import org.jetbrains.exposed.sql.transactions.transaction
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
 import org.jetbrains.kotlin.resolve.scopes.MemberScope
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
 import java.lang.IllegalStateException
 import java.time.Duration
 import java.time.Instant
+import java.util.zip.ZipFile
 import kotlin.sequences.Sequence
 
-private const val MAX_FQNAME_LENGTH = 255
-private const val MAX_SHORT_NAME_LENGTH = 80
+private const val TAG = "SymbolIndex"
+private const val MAGIC = 0x4b53594d
+private const val VERSION = 1
 
-private object Symbols : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH) references FqNames.fqName
-    val kind = integer("kind")
-    val visibility = integer("visibility")
-    val extensionReceiverType = varchar("extensionreceivertype", length = MAX_FQNAME_LENGTH).nullable()
+/**
+ * Index of the symbols declared in the packages of a module, used to complete names that
+ * are not imported yet.
+ *
+ * Symbols without extension receiver are looked up by short name prefix in a [SymbolTrie],
+ * extensions in a map from their receiver type to their symbols sorted by short name. Queries
+ * read an immutable snapshot of the index and never wait for [refresh].
+ *
+ * The symbols of each package are stored with a hash of the jars declaring the package, and
+ * are only extracted again when one of these jars changes. Packages that come from jars only
+ * are persisted to [cacheFile], so the libraries are not indexed again when the project
+ * is reopened. Packages with sources are extracted again by [refreshSources] when their
+ * files change.
+ */
+class SymbolIndex(private val cacheFile: File? = null) {
 
-    override val primaryKey = PrimaryKey(fqName)
-}
+    @Volatile
+    var indexing: Boolean = false
+        private set
 
-private object FqNames : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH)
-    val shortName = varchar("shortname", length = MAX_SHORT_NAME_LENGTH)
+    @Volatile
+    private var snapshot = Snapshot(emptyList())
 
-    override val primaryKey = PrimaryKey(fqName)
-}
-class SymbolIndex {
-    private val db = Database.connect("jdbc:h2:mem:symbolindex;DB_CLOSE_DELAY=-1", "org.h2.Driver")
+    /** Symbols of each package, with the hash of the jars declaring it or 0 if it has sources */
+    private val packages = HashMap<FqName, PackageSymbols>()
 
-    var indexing: Boolean = false
+    /** Packages of each jar of the class path */
+    private val jars = HashMap<File, JarPackages>()
 
-    init {
-       transaction (db) {
-           SchemaUtils.create(Symbols, FqNames)
-       }
-    }
+    private var loaded = false
+    private var dirty = false
 
-    fun refresh(module: ModuleDescriptor, forced: Boolean = true) {
+    /**
+     * Update the symbols of the packages of the given module
+     *
+     * @param classPath The jars of the module
+     * @param sourcePackages The packages declared in source files, which are always extracted
+     * again since their symbols may have changed
+     * @param forced Whether to extract the symbols of all packages again
+     */
+    @Synchronized
+    fun refresh(
+        module: ModuleDescriptor,
+        classPath: Collection<File> = emptyList(),
+        sourcePackages: Set<FqName> = emptySet(),
+        forced: Boolean = false
+    ) {
         val started = System.currentTimeMillis()
-        Log.d("SymbolIndex", "Updating symbol index...");
+        Log.d(TAG, "Updating symbol index...")
 
         indexing = true
         try {
-            transaction(db) {
-                if (forced) {
-                    Symbols.deleteAll()
-                }
-                for (descriptor in allDescriptors(module)) {
-                    val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
-                    val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
+            if (!loaded) {
+                loaded = true
+                load()
+                // completions can use the persisted symbols while the index is refreshed
+                snapshot = Snapshot(packages.values)
+            }
 
-                    if (canStoreFqName(descriptorFqn) && (extensionReceiverFqn?.let { canStoreFqName(it) } != false)) {
+            val packageHashes = packageHashes(classPath)
+            val updated = HashMap<FqName, PackageSymbols>()
+            var extracted = 0
+            for (pkg in allPackages(module)) {
+                val hash = if (pkg in sourcePackages) 0L else packageHashes[pkg] ?: 0L
+                val cached = packages[pkg]
+                if (!forced && hash != 0L && cached != null && cached.hash == hash) {
+                    updated[pkg] = cached
+                } else {
+                    updated[pkg] = PackageSymbols(hash, extractSymbols(module, pkg))
+                    extracted++
+                    if (hash != 0L) {
+                        dirty = true
+                    }
+                }
+            }
+            if (persistedPackages(updated) != persistedPackages(packages)) {
+                dirty = true
+            }
+            packages.clear()
+            packages.putAll(updated)
+            snapshot = Snapshot(packages.values)
 
-                        for (fqn in listOfNotNull(descriptorFqn, extensionReceiverFqn)) {
-                            FqNames.replace {
-                                it[fqName] = fqn.toString()
-                                it[shortName] = fqn.shortName().toString()
-                            }
-                        }
+            if (dirty) {
+                save()
+            }
+            Log.d(TAG, "Extracted the symbols of $extracted out of ${packages.size} packages in " +
+                    "${System.currentTimeMillis() - started} ms")
+        } catch (e: Exception) {
+            Log.e(TAG, "Error while updating symbol index", e)
+        } finally {
+            indexing = false
+        }
+    }
 
+    /**
+     * Extract again the symbols of the given packages, after their source files have changed.
+     * The other packages are kept as they are, packages without symbols anymore are removed.
+     */
+    @Synchronized
+    fun refreshSources(module: ModuleDescriptor, sourcePackages: Set<FqName>) {
+        if (!loaded) {
+            // the sources will be indexed with the libraries by the first refresh
+            return
+        }
+        val started = System.currentTimeMillis()
 
-                        Symbols.replace {
-                            it[fqName] = descriptorFqn.toString()
-                            it[kind] = descriptor.accept(ExtractSymbolKind, Unit).rawValue
-                            it[visibility] = descriptor.accept(ExtractSymbolVisibility, Unit).rawValue
-                            it[extensionReceiverType] = extensionReceiverFqn?.toString()
-                        }
-                    } else {
-                        Log.w("SymbolIndex",
-                            "Excluding symbol $descriptorFqn from index since its name is too long"
-                        );
-                    }
+        indexing = true
+        try {
+            for (pkg in sourcePackages) {
+                val symbols = extractSymbols(module, pkg)
+                if (symbols.isEmpty()) {
+                    packages.remove(pkg)
+                } else {
+                    packages[pkg] = PackageSymbols(0L, symbols)
                 }
-
-                indexing = false
             }
+            // packages with sources are not persisted, so there is nothing to save
+            snapshot = Snapshot(packages.values)
+            Log.d(TAG, "Extracted the symbols of ${sourcePackages.size} source packages in " +
+                    "${System.currentTimeMillis() - started} ms")
         } catch (e: Exception) {
-            Log.e("SymbolIndex", "Error while updating symbol index", e);
+            Log.e(TAG, "Error while updating symbol index", e)
+        } finally {
+            indexing = false
         }
     }
 
     fun query(prefix: String, receiverType: FqName? = null, limit: Int = 20): List<Symbol> {
         val start = Instant.now()
         try {
-            return transaction(db) {
-                (Symbols innerJoin FqNames)
-                    .select { FqNames.shortName.like("$prefix%") and (Symbols.extensionReceiverType eq receiverType?.toString()) }
-                    .limit(limit)
-                    .map {
-                        Symbol(
-                            fqName = FqName(it[Symbols.fqName]),
-                            kind = Symbol.Kind.fromRaw(it[Symbols.kind]),
-                            visibility = Symbol.Visibility.fromRaw(it[Symbols.visibility]),
-                            extensionReceiverType = it[Symbols.extensionReceiverType]?.let(::FqName)
-                        )
-                    }
+            val snapshot = snapshot
+            if (receiverType == null) {
+                return snapshot.trie.find(prefix, limit)
             }
+            val extensions = snapshot.extensions[receiverType] ?: return emptyList()
+            var low = 0
+            var high = extensions.size
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (shortName(extensions[mid]) < prefix) {
+                    low = mid + 1
+                } else {
+                    high = mid
+                }
+            }
+            val result = mutableListOf<Symbol>()
+            var i = low
+            while (i < extensions.size && result.size < limit && shortName(extensions[i]).startsWith(prefix)) {
+                result.add(extensions[i++])
+            }
+            return result
         } finally {
-            Log.d("SymbolIndex", "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
+            Log.d(TAG, "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
         }
     }
 
-    private fun canStoreFqName(fqName: FqName) =
-        fqName.toString().length <= MAX_FQNAME_LENGTH
-                && fqName.shortName().toString().length <= MAX_SHORT_NAME_LENGTH
+    /**
+     * Read the packages of the jars, and combine the hashes of the jars declaring each package
+     */
+    private fun packageHashes(classPath: Collection<File>): Map<FqName, Long> {
+        val current = HashMap<File, JarPackages>()
+        for (file in classPath) {
+            val cached = jars[file]
+            if (cached != null && cached.isUpToDate(file)) {
+                current[file] = cached
+                continue
+            }
+            current[file] = try {
+                JarPackages.read(file)
+            } catch (e: IOException) {
+                Log.w(TAG, "Unable to read jar $file", e)
+                continue
+            }
+            dirty = true
+        }
+        if (current.keys != jars.keys) {
+            dirty = true
+        }
+        jars.clear()
+        jars.putAll(current)
 
-    private fun allDescriptors(module: ModuleDescriptor) : Sequence<DeclarationDescriptor> = allPackages(module)
-        .map(module::getPackage)
-        .flatMap {
-            try {
-                it.memberScope.getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
-            } catch (e: IllegalStateException) {
-                Log.w("SymbolIndex", "Couldn't query descriptors in package $it")
-                emptyList()
+        val hashes = HashMap<FqName, Long>()
+        for ((file, jar) in jars) {
+            val hash = jar.hash(file)
+            for (pkg in jar.packages) {
+                hashes.merge(FqName(pkg), hash) { a, b -> a + b }
             }
         }
+        return hashes
+    }
+
+    private fun extractSymbols(module: ModuleDescriptor, pkg: FqName): List<Symbol> {
+        val descriptors = try {
+            module.getPackage(pkg).memberScope
+                .getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
+        } catch (e: IllegalStateException) {
+            Log.w(TAG, "Couldn't query descriptors in package $pkg")
+            emptyList<DeclarationDescriptor>()
+        }
+        return descriptors
+            .map { descriptor ->
+                Symbol(
+                    fqName = PsiUtils.getFqNameSafe(descriptor),
+                    kind = descriptor.accept(ExtractSymbolKind, Unit),
+                    visibility = descriptor.accept(ExtractSymbolVisibility, Unit),
+                    extensionReceiverType = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
+                )
+            }
+            .distinctBy { it.fqName }
+    }
 
     private fun allPackages(module: ModuleDescriptor, pkgName: FqName = FqName.ROOT) : Sequence<FqName> = module
         .getSubPackagesOf(pkgName) { it.toString()  != "META-INF"}
         .asSequence()
         .flatMap { sequenceOf(it) + allPackages(module, it) }
-}
\ No newline at end of file
+
+    private fun load() {
+        val file = cacheFile ?: return
+        if (!file.exists()) {
+            return
+        }
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    return
+                }
+                repeat(input.readInt()) {
+                    val jar = File(input.readUTF())
+                    val length = input.readLong()
+                    val lastModified = input.readLong()
+                    val jarPackages = Array(input.readInt()) { input.readUTF() }
+                    jars[jar] = JarPackages(length, lastModified, jarPackages)
+                }
+                repeat(input.readInt()) {
+                    val pkg = FqName(input.readUTF())
+                    val hash = input.readLong()
+                    val symbols = List(input.readInt()) {
+                        val fqName = FqName(input.readUTF())
+                        val kind = Symbol.Kind.fromRaw(input.readByte().toInt())
+                        val visibility = Symbol.Visibility.fromRaw(input.readByte().toInt())
+                        val receiver = input.readUTF()
+                        Symbol(fqName, kind, visibility, if (receiver.isEmpty()) null else FqName(receiver))
+                    }
+                    packages[pkg] = PackageSymbols(hash, symbols)
+                }
+            }
+        } catch (e: IOException) {
+            // the index is only a cache, the symbols will be extracted again
+            Log.w(TAG, "Unable to read symbol index $file", e)
+            jars.clear()
+            packages.clear()
+        }
+    }
+
+    private fun save() {
+        val file = cacheFile ?: return
+        try {
+            val parent = file.parentFile
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw IOException("Unable to create directory $parent")
+            }
+            val temp = File(file.path + ".tmp")
+            DataOutputStream(BufferedOutputStream(FileOutputStream(temp))).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(VERSION)
+                out.writeInt(jars.size)
+                for ((jar, jarPackages) in jars) {
+                    out.writeUTF(jar.absolutePath)
+                    out.writeLong(jarPackages.length)
+                    out.writeLong(jarPackages.lastModified)
+                    out.writeInt(jarPackages.packages.size)
+                    jarPackages.packages.forEach(out::writeUTF)
+                }
+                val persisted = persistedPackages(packages)
+                out.writeInt(persisted.size)
+                for (pkg in persisted) {
+                    val symbols = packages.getValue(pkg)
+                    out.writeUTF(pkg.asString())
+                    out.writeLong(symbols.hash)
+                    out.writeInt(symbols.symbols.size)
+                    for (symbol in symbols.symbols) {
+                        out.writeUTF(symbol.fqName.asString())
+                        out.writeByte(symbol.kind.rawValue)
+                        out.writeByte(symbol.visibility.rawValue)
+                        out.writeUTF(symbol.extensionReceiverType?.asString() ?: "")
+                    }
+                }
+            }
+            // renameTo does not replace existing files on some platforms
+            if (!temp.renameTo(file) && (!file.delete() || !temp.renameTo(file))) {
+                throw IOException("Unable to write symbol index $file")
+            }
+            dirty = false
+        } catch (e: IOException) {
+            Log.w(TAG, "Unable to save symbol index", e)
+        }
+    }
+
+    /**
+     * Packages with sources are extracted again anyway, so they are not persisted
+     */
+    private fun persistedPackages(packages: Map<FqName, PackageSymbols>) =
+        packages.filterValues { it.hash != 0L }.keys
+
+    private class PackageSymbols(val hash: Long, val symbols: List<Symbol>)
+
+    private class JarPackages(val length: Long, val lastModified: Long, val packages: Array<String>) {
+
+        fun isUpToDate(file: File) = file.length() == length && file.lastModified() == lastModified
+
+        fun hash(file: File): Long {
+            var hash = file.absolutePath.hashCode().toLong()
+            hash = hash * 1000003 xor length
+            hash = hash * 1000003 xor lastModified
+            return hash
+        }
+
+        companion object {
+            fun read(file: File): JarPackages {
+                val packages = HashSet<String>()
+                ZipFile(file).use { zip ->
+                    for (entry in zip.entries()) {
+                        val name = entry.name
+                        if (name.startsWith("META-INF/")
+                            || !(name.endsWith(".class") || name.endsWith(".kotlin_builtins"))) {
+                            continue
+                        }
+                        packages.add(name.substringBeforeLast('/', "").replace('/', '.'))
+                    }
+                }
+                return JarPackages(file.length(), file.lastModified(), packages.toTypedArray())
+            }
+        }
+    }
+
+    /**
+     * Immutable lookup structures built from the symbols of all packages
+     */
+    private class Snapshot(packages: Collection<PackageSymbols>) {
+        val trie = SymbolTrie()
+        val extensions: Map<FqName, Array<Symbol>>
+
+        init {
+            val byReceiver = HashMap<FqName, MutableList<Symbol>>()
+            for (pkg in packages) {
+                for (symbol in pkg.symbols) {
+                    val receiver = symbol.extensionReceiverType
+                    if (receiver == null) {
+                        trie.add(symbol)
+                    } else {
+                        byReceiver.getOrPut(receiver) { mutableListOf() }.add(symbol)
+                    }
+                }
+            }
+            extensions = byReceiver.mapValues { (_, symbols) ->
+                symbols.sortedBy(::shortName).toTypedArray()
+            }
+        }
+    }
+}
+
+private fun shortName(symbol: Symbol) = symbol.fqName.shortName().asString()
@@ -0,0 +1,78 @@
+package com.tyron.kotlin_completion.index
+
+/**
+ * Symbols keyed by their short name, to find the symbols whose name starts with a prefix
+ * without looking at the others.
+ *
+ * Children of a node are kept in arrays sorted by their character, so names are visited
+ * in order and a node takes little more memory than its children.
+ */
+class SymbolTrie {
+
+    private class Node {
+        var keys = CharArray(0)
+        var children = arrayOfNulls<Node>(0)
+        var symbols = NO_SYMBOLS
+    }
+
+    private val root = Node()
+
+    var size = 0
+        private set
+
+    fun add(symbol: Symbol) {
+        val name = symbol.fqName.shortName().asString()
+        var node = root
+        for (ch in name) {
+            var i = node.keys.binarySearch(ch)
+            if (i < 0) {
+                i = -i - 1
+                node.keys = node.keys.copyOfRange(0, i) + ch + node.keys.copyOfRange(i, node.keys.size)
+                node.children = arrayOf<Node?>(
+                    *node.children.copyOfRange(0, i),
+                    Node(),
+                    *node.children.copyOfRange(i, node.children.size)
+                )
+            }
+            node = node.children[i]!!
+        }
+        node.symbols = node.symbols + symbol
+        size++
+    }
+
+    /**
+     * Find the symbols whose short name starts with the given prefix, shortest names first
+     */
+    fun find(prefix: String, limit: Int, filter: (Symbol) -> Boolean = { true }): List<Symbol> {
+        var node = root
+        for (ch in prefix) {
+            val i = node.keys.binarySearch(ch)
+            if (i < 0) {
+                return emptyList()
+            }
+            node = node.children[i]!!
+        }
+        val result = mutableListOf<Symbol>()
+        var level = listOf(node)
+        while (level.isNotEmpty() && result.size < limit) {
+            val next = mutableListOf<Node>()
+            for (current in level) {
+                for (symbol in current.symbols) {
+                    if (result.size >= limit) {
+                        return result
+                    }
+                    if (filter(symbol)) {
+                        result.add(symbol)
+                    }
+                }
+                current.children.mapNotNullTo(next) { it }
+            }
+            level = next
+        }
+        return result
+    }
+
+    private companion object {
+        val NO_SYMBOLS = emptyArray<Symbol>()
+    }
+}
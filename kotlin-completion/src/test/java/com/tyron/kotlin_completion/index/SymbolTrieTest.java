@@ -0,0 +1,53 @@
+package com.tyron.kotlin_completion.index;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jetbrains.kotlin.name.FqName;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SymbolTrieTest {
+
+    @Test
+    public void testFindByPrefix() {
+        SymbolTrie trie = new SymbolTrie();
+        trie.add(symbol("kotlin.collections.listOf", Symbol.Kind.FUNCTION));
+        trie.add(symbol("kotlin.collections.List", Symbol.Kind.INTERFACE));
+        trie.add(symbol("kotlin.collections.listOfNotNull", Symbol.Kind.FUNCTION));
+        trie.add(symbol("java.util.List", Symbol.Kind.INTERFACE));
+        trie.add(symbol("kotlin.let", Symbol.Kind.FUNCTION));
+        assertEquals(5, trie.getSize());
+
+        assertEquals(names("kotlin.collections.listOf", "kotlin.collections.listOfNotNull"),
+                names(trie.find("list", 10, it -> true)));
+        assertEquals(names("kotlin.collections.List", "java.util.List"),
+                names(trie.find("List", 10, it -> true)));
+        assertEquals(names("kotlin.collections.listOf"),
+                names(trie.find("li", 1, it -> true)));
+        assertEquals(names("kotlin.let"),
+                names(trie.find("", 10, it -> it.getFqName().shortName().asString().length() == 3)));
+        assertEquals(names(), names(trie.find("map", 10, it -> true)));
+    }
+
+    private static Symbol symbol(String fqName, Symbol.Kind kind) {
+        return new Symbol(new FqName(fqName), kind, Symbol.Visibility.PUBLIC, null);
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<>();
+        for (String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+
+    private static List<String> names(List<Symbol> symbols) {
+        List<String> list = new ArrayList<>();
+        for (Symbol symbol : symbols) {
+            list.add(symbol.getFqName().asString());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,190 @@
+package com.tyron.layoutpreview.convert;
+
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.flipkart.android.proteus.FunctionManager;
+import com.flipkart.android.proteus.ProteusConstants;
+import com.flipkart.android.proteus.ProteusContext;
+import com.flipkart.android.proteus.ViewTypeParser;
+import com.flipkart.android.proteus.value.Array;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.ObjectValue;
+import com.flipkart.android.proteus.value.Value;
+import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles layout XML directly to a Proteus {@link Layout}, producing the same values as
+ * {@link XmlToJsonConverter} followed by {@link ProteusTypeAdapterFactory#VALUE_TYPE_ADAPTER}
+ * without building and serializing the intermediate JSON.
+ *
+ * <p>The converter also remembers the source of the attributes of each element it converts,
+ * see {@link #getSignature(Value)}, so two conversions of the same file can be compared
+ * without comparing the compiled values.
+ */
+public class XmlToLayoutConverter {
+
+    private static final String CHILDREN = "children";
+
+    private final ProteusContext mContext;
+    private final Map<Value, String> mSignatures = new IdentityHashMap<>();
+
+    public XmlToLayoutConverter(@NonNull ProteusContext context) {
+        mContext = context;
+    }
+
+    /**
+     * @param contents The xml string to parse
+     * @return The {@link Layout} of the root element, or an {@link ObjectValue} if the root
+     * element is not a layout such as a vector drawable
+     * @throws IOException if an error has occurred while reading the string content
+     * @throws XmlPullParserException if the XML content is malformed
+     * @throws ConvertException if the XML has no root element
+     */
+    @NonNull
+    public Value convert(@NonNull String contents) throws IOException, XmlPullParserException,
+            ConvertException {
+        return convert(newParser(contents), false);
+    }
+
+    /**
+     * Converts the element at the current position of the parser along with its children,
+     * the parser is left at the end tag of the element.
+     */
+    @NonNull
+    public Value convert(@NonNull XmlPullParser parser) throws IOException,
+            XmlPullParserException {
+        return convert(parser, false);
+    }
+
+    /**
+     * Converts every element to an {@link ObjectValue} holding its type, attributes and
+     * children, as used for drawables and color state lists.
+     */
+    @NonNull
+    public ObjectValue convertToObject(@NonNull String contents) throws IOException,
+            XmlPullParserException, ConvertException {
+        return convert(newParser(contents), true).getAsObject();
+    }
+
+    @NonNull
+    public ObjectValue convertToObject(@NonNull XmlPullParser parser) throws IOException,
+            XmlPullParserException {
+        return convert(parser, true).getAsObject();
+    }
+
+    private XmlPullParser newParser(String contents) throws XmlPullParserException, IOException,
+            ConvertException {
+        XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+        parser.setInput(new StringReader(contents));
+
+        int type;
+        while ((type = parser.next()) != XmlPullParser.START_TAG &&
+                type != XmlPullParser.END_DOCUMENT) {
+            // Empty
+        }
+        if (type != XmlPullParser.START_TAG) {
+            throw new ConvertException(parser.getPositionDescription()
+                    + ": No start tag found!");
+        }
+        return parser;
+    }
+
+    private Value convert(XmlPullParser parser, boolean objects) throws IOException,
+            XmlPullParserException {
+        String type = parser.getName();
+        int count = parser.getAttributeCount();
+        String[] names = new String[count];
+        String[] values = new String[count];
+        StringBuilder signature = new StringBuilder(type);
+        for (int i = 0; i < count; i++) {
+            names[i] = parser.getAttributeName(i);
+            values[i] = parser.getAttributeValue(i);
+            signature.append('\0').append(names[i]).append('=').append(values[i]);
+        }
+
+        Array children = new Array();
+        final int depth = parser.getDepth();
+        int next;
+        while (((next = parser.next()) != XmlPullParser.END_TAG ||
+                parser.getDepth() > depth) && next != XmlPullParser.END_DOCUMENT) {
+            if (next == XmlPullParser.START_TAG) {
+                children.add(convert(parser, objects));
+            }
+        }
+
+        Value value;
+        if (!objects && ProteusTypeAdapterFactory.PROTEUS_INSTANCE_HOLDER.isLayout(type)) {
+            value = createLayout(type, names, values, children);
+        } else {
+            value = createObject(type, names, values, children);
+        }
+        mSignatures.put(value, signature.toString());
+        return value;
+    }
+
+    /**
+     * @return the tag and the attributes of the element the value was converted from, without
+     * its children. Null if the value was not converted by this converter.
+     */
+    @Nullable
+    public String getSignature(@NonNull Value value) {
+        return mSignatures.get(value);
+    }
+
+    private Layout createLayout(String type, String[] names, String[] values, Array children) {
+        ViewTypeParser<View> parser = mContext.getParser(type);
+        FunctionManager manager =
+                ProteusTypeAdapterFactory.PROTEUS_INSTANCE_HOLDER.getProteus().functions;
+        List<Layout.Attribute> attributes = new ArrayList<>();
+        ObjectValue extras = new ObjectValue();
+        for (int i = 0; i < names.length; i++) {
+            addAttribute(parser, manager, attributes, extras, names[i],
+                    ProteusTypeAdapterFactory.compileString(mContext, values[i]));
+        }
+        if (children.size() > 0) {
+            addAttribute(parser, manager, attributes, extras, CHILDREN, children);
+        }
+        return new Layout(type, attributes.size() > 0 ? attributes : null, null,
+                extras.entrySet().size() > 0 ? extras : null);
+    }
+
+    private void addAttribute(@Nullable ViewTypeParser<View> parser, FunctionManager manager,
+                              List<Layout.Attribute> attributes, ObjectValue extras,
+                              String name, Value value) {
+        ViewTypeParser.AttributeSet.Attribute attribute =
+                parser != null ? parser.getAttributeSet().getAttribute(name) : null;
+        if (attribute != null) {
+            Value compiled = attribute.processor.precompile(value, mContext, manager);
+            attributes.add(new Layout.Attribute(attribute.id, compiled));
+        } else {
+            extras.add(name, value);
+        }
+    }
+
+    private ObjectValue createObject(String type, String[] names, String[] values,
+                                     Array children) {
+        ObjectValue object = new ObjectValue();
+        object.add(ProteusConstants.TYPE, ProteusTypeAdapterFactory.compileString(mContext, type));
+        for (int i = 0; i < names.length; i++) {
+            object.add(names[i], ProteusTypeAdapterFactory.compileString(mContext, values[i]));
+        }
+        if (children.size() > 0) {
+            object.add(CHILDREN, children);
+        }
+        return object;
+    }
+}
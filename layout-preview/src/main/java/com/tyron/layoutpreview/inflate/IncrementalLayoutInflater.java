@@ -0,0 +1,267 @@
+package com.tyron.layoutpreview.inflate;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.flipkart.android.proteus.DataContext;
+import com.flipkart.android.proteus.ProteusContext;
+import com.flipkart.android.proteus.ProteusView;
+import com.flipkart.android.proteus.ViewTypeParser;
+import com.flipkart.android.proteus.toolbox.Attributes;
+import com.flipkart.android.proteus.value.Array;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.ObjectValue;
+import com.flipkart.android.proteus.value.Value;
+import com.tyron.layoutpreview.convert.ConvertException;
+import com.tyron.layoutpreview.convert.XmlToLayoutConverter;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Inflates a layout file and keeps its views up to date as the file is edited.
+ *
+ * <p>Each update compiles the XML again and compares it with the previous {@link Layout} using
+ * the source of the attributes of each element. Elements whose own attributes did not change
+ * keep their views, only the subtrees of the elements that were changed, added or removed are
+ * inflated again. The {@link Layout} held by the kept views is updated in place so it always
+ * matches the views, as expected by the layout editor.
+ *
+ * <p>Updates must be made on the main thread.
+ */
+public class IncrementalLayoutInflater {
+
+    private final ProteusContext mContext;
+
+    /**
+     * The signatures of the layouts currently shown, by identity
+     */
+    private Map<Value, String> mSignatures = new IdentityHashMap<>();
+    private ProteusView mRoot;
+
+    public IncrementalLayoutInflater(@NonNull ProteusContext context) {
+        mContext = context;
+    }
+
+    /**
+     * @return the root view of the last inflated layout, null if nothing has been inflated
+     */
+    @Nullable
+    public ProteusView getRoot() {
+        return mRoot;
+    }
+
+    /**
+     * Inflates the layout from scratch, discarding the previous views
+     */
+    @NonNull
+    public ProteusView inflate(@NonNull String xml) throws IOException, XmlPullParserException,
+            ConvertException {
+        XmlToLayoutConverter converter = new XmlToLayoutConverter(mContext);
+        Layout layout = convert(converter, xml);
+        mSignatures = new IdentityHashMap<>();
+        collectSignatures(layout, converter, mSignatures);
+        mRoot = mContext.getInflater().inflate(layout, new ObjectValue());
+        return mRoot;
+    }
+
+    /**
+     * Updates the views of the previously inflated layout to match the new contents.
+     *
+     * @return the root view, which is a new view if the root element itself has changed
+     */
+    @NonNull
+    public ProteusView update(@NonNull String xml) throws IOException, XmlPullParserException,
+            ConvertException {
+        if (mRoot == null) {
+            return inflate(xml);
+        }
+        XmlToLayoutConverter converter = new XmlToLayoutConverter(mContext);
+        Layout layout = convert(converter, xml);
+
+        Layout current = mRoot.getViewManager().getLayout();
+        if (!isSameElement(current, layout, converter)) {
+            mRoot = mContext.getInflater().inflate(layout, new ObjectValue());
+        } else {
+            updateChildren(mRoot, current, layout, converter);
+        }
+
+        Map<Value, String> signatures = new IdentityHashMap<>();
+        collectSignatures(mRoot.getViewManager().getLayout(), converter, signatures);
+        mSignatures = signatures;
+        return mRoot;
+    }
+
+    private Layout convert(XmlToLayoutConverter converter, String xml) throws IOException,
+            XmlPullParserException, ConvertException {
+        Value value = converter.convert(xml);
+        if (!value.isLayout()) {
+            throw new ConvertException("The root element is not a layout");
+        }
+        return value.getAsLayout();
+    }
+
+    /**
+     * Updates the children of a view whose own attributes have not changed. Children are
+     * matched from the start and from the end while their own attributes are the same, the
+     * children in between are replaced.
+     */
+    private void updateChildren(ProteusView view, Layout current, Layout layout,
+                                XmlToLayoutConverter converter) {
+        Array oldChildren = getChildren(current);
+        Array newChildren = getChildren(layout);
+        int oldSize = oldChildren == null ? 0 : oldChildren.size();
+        int newSize = newChildren == null ? 0 : newChildren.size();
+        if (oldSize == 0 && newSize == 0) {
+            return;
+        }
+        if (oldChildren == null || !hasChildViews(view, oldChildren)) {
+            // the views do not map to the children, e.g. the view wraps its children
+            // or the children are new, only inflating the whole element is safe
+            replace(view, layout);
+            return;
+        }
+        ViewGroup group = (ViewGroup) view.getAsView();
+
+        int start = 0;
+        while (start < oldSize && start < newSize
+                && isSameElement(oldChildren.get(start), newChildren.get(start), converter)) {
+            start++;
+        }
+        int end = 0;
+        while (end < oldSize - start && end < newSize - start
+                && isSameElement(oldChildren.get(oldSize - end - 1),
+                newChildren.get(newSize - end - 1), converter)) {
+            end++;
+        }
+
+        for (int i = 0; i < start; i++) {
+            updateChildren((ProteusView) group.getChildAt(i), oldChildren.get(i).getAsLayout(),
+                    newChildren.get(i).getAsLayout(), converter);
+        }
+        for (int i = 0; i < end; i++) {
+            int index = oldSize - end + i;
+            updateChildren((ProteusView) group.getChildAt(index),
+                    oldChildren.get(index).getAsLayout(),
+                    newChildren.get(newSize - end + i).getAsLayout(), converter);
+        }
+
+        for (int i = oldSize - end - 1; i >= start; i--) {
+            group.removeViewAt(i);
+            oldChildren.remove(i);
+        }
+        DataContext dataContext = view.getViewManager().getDataContext();
+        for (int i = start; i < newSize - end; i++) {
+            Layout child = newChildren.get(i).getAsLayout();
+            ProteusView inflated = mContext.getInflater().inflate(child,
+                    dataContext.getData(), group, dataContext.getIndex());
+            group.addView(inflated.getAsView(), i);
+            oldChildren.add(i, child);
+        }
+    }
+
+    /**
+     * Replaces a view with a new view inflated from the given layout, the layout of its
+     * parent is updated to reference the new layout
+     */
+    private void replace(ProteusView view, Layout layout) {
+        if (view == mRoot) {
+            mRoot = mContext.getInflater().inflate(layout, new ObjectValue());
+            return;
+        }
+        ViewGroup group = (ViewGroup) view.getAsView().getParent();
+        int index = group.indexOfChild(view.getAsView());
+        Array siblings = getChildren(((ProteusView) group).getViewManager().getLayout());
+
+        DataContext dataContext = ((ProteusView) group).getViewManager().getDataContext();
+        ProteusView inflated = mContext.getInflater().inflate(layout, dataContext.getData(),
+                group, dataContext.getIndex());
+        group.removeViewAt(index);
+        group.addView(inflated.getAsView(), index);
+        if (siblings != null) {
+            siblings.set(index, layout);
+        }
+    }
+
+    /**
+     * @return whether the child views of the view are the views inflated from the children
+     */
+    private boolean hasChildViews(ProteusView view, Array children) {
+        if (!(view.getAsView() instanceof ViewGroup)) {
+            return false;
+        }
+        ViewGroup group = (ViewGroup) view.getAsView();
+        if (group.getChildCount() != children.size()) {
+            return false;
+        }
+        for (int i = 0; i < children.size(); i++) {
+            View child = group.getChildAt(i);
+            if (!(child instanceof ProteusView)
+                    || ((ProteusView) child).getViewManager() == null
+                    || ((ProteusView) child).getViewManager().getLayout() != children.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether both values are layouts of the same type with the same attributes,
+     * without comparing their children
+     */
+    private boolean isSameElement(Value current, Value value, XmlToLayoutConverter converter) {
+        if (!current.isLayout() || !value.isLayout()) {
+            return false;
+        }
+        String signature = mSignatures.get(current);
+        return signature != null && signature.equals(converter.getSignature(value));
+    }
+
+    @Nullable
+    private Array getChildren(Layout layout) {
+        ViewTypeParser<View> parser = mContext.getParser(layout.type);
+        ViewTypeParser.AttributeSet.Attribute attribute = parser != null
+                ? parser.getAttributeSet().getAttribute(Attributes.ViewGroup.Children) : null;
+        Value children = null;
+        if (attribute != null) {
+            for (Layout.Attribute child : layout.getAttributes()) {
+                if (child.id == attribute.id) {
+                    children = child.value;
+                    break;
+                }
+            }
+        } else if (layout.extras != null) {
+            children = layout.extras.get(Attributes.ViewGroup.Children);
+        }
+        return children != null && children.isArray() ? children.getAsArray() : null;
+    }
+
+    /**
+     * Records the signature of each layout of the tree, from the previous signatures for the
+     * layouts that were kept and from the converter for the new ones
+     */
+    private void collectSignatures(Layout layout, XmlToLayoutConverter converter,
+                                   Map<Value, String> signatures) {
+        String signature = mSignatures.get(layout);
+        if (signature == null) {
+            signature = converter.getSignature(layout);
+        }
+        if (signature != null) {
+            signatures.put(layout, signature);
+        }
+        Array children = getChildren(layout);
+        if (children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                if (children.get(i).isLayout()) {
+                    collectSignatures(children.get(i).getAsLayout(), converter, signatures);
+                }
+            }
+        }
+    }
+}
@@ -33,7 +33,7 @@ import com.tyron.layout.appcompat.AppCompatModule;
 import com.tyron.layout.cardview.CardViewModule;
 import com.tyron.layout.constraintlayout.ConstraintLayoutModule;
 import com.tyron.layoutpreview.ResourceManager;
-import com.tyron.layoutpreview.convert.XmlToJsonConverter;
+import com.tyron.layoutpreview.convert.XmlToLayoutConverter;
 import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
 import com.tyron.layoutpreview.manager.ResourceDrawableManager;
 import com.tyron.layoutpreview.manager.ResourceLayoutManager;
@@ -176,10 +176,7 @@ public class PreviewLayoutInflater {
             File sources = extractAndGetAndroidXml();
             File valuesFile = new File(sources, "android-31/data/res/values");
             if (valuesFile.exists()) {
-                File[] children = valuesFile.listFiles(c -> c.getName().endsWith(".xml"));
-                if (children != null) {
-                    mParser.parse(children, "android");
-                }
+                mParser.parseValuesDirectory(valuesFile, "android");
             }
 
             try {
@@ -216,12 +213,18 @@ public class PreviewLayoutInflater {
                 inflate(name, value));
     }
 
+    /**
+     * @return an inflater that keeps the views of a layout up to date while it is edited
+     */
+    public IncrementalLayoutInflater newIncrementalInflater() {
+        return new IncrementalLayoutInflater(mContext);
+    }
+
     @Deprecated
     public ProteusView inflate(String xml) throws InflateException {
         try {
-            JsonObject object = new XmlToJsonConverter()
-                    .convert(xml);
-            return inflate(object);
+            Value value = new XmlToLayoutConverter(mContext).convert(xml);
+            return inflate(value.getAsLayout());
         } catch (Exception e) {
             throw new InflateException("Unable to inflate layout: " + e.getMessage());
         }
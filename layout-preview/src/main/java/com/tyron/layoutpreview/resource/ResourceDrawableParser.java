@@ -5,20 +5,15 @@ import androidx.annotation.Nullable;
 import com.flipkart.android.proteus.ProteusContext;
 import com.flipkart.android.proteus.value.DrawableValue;
 import com.flipkart.android.proteus.value.ObjectValue;
-import com.flipkart.android.proteus.value.Value;
-import com.google.gson.JsonObject;
-import com.google.gson.stream.JsonReader;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.layoutpreview.convert.ConvertException;
-import com.tyron.layoutpreview.convert.XmlToJsonConverter;
-import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
+import com.tyron.layoutpreview.convert.XmlToLayoutConverter;
 import com.tyron.vectorparser.VectorValue;
 
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -84,11 +79,8 @@ public class ResourceDrawableParser {
         Optional<CharSequence> contents = mFileManager.getFileContent(file);
         if (contents.isPresent()) {
             String contentsString = contents.get().toString();
-            JsonObject converted = new XmlToJsonConverter()
-                    .convert(contentsString);
-            Value value = new ProteusTypeAdapterFactory(mContext)
-                    .VALUE_TYPE_ADAPTER.read(new JsonReader(new StringReader(converted.toString())), true);
-            ObjectValue objectValue = value.getAsObject();
+            ObjectValue objectValue = new XmlToLayoutConverter(mContext)
+                    .convertToObject(contentsString);
             if (objectValue != null) {
                 if ("vector".equals(objectValue.getAsString("type"))) {
                     return new VectorValue(contentsString);
@@ -20,12 +20,8 @@ import com.flipkart.android.proteus.value.DrawableValue;
 import com.flipkart.android.proteus.value.ObjectValue;
 import com.flipkart.android.proteus.value.Style;
 import com.flipkart.android.proteus.value.Value;
-import com.google.gson.JsonObject;
-import com.google.gson.stream.JsonReader;
 import com.tyron.builder.project.api.AndroidModule;
-import com.tyron.layoutpreview.convert.ConvertException;
-import com.tyron.layoutpreview.convert.XmlToJsonConverter;
-import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
+import com.tyron.layoutpreview.convert.XmlToLayoutConverter;
 import com.tyron.layoutpreview.util.XmlUtils;
 
 import org.xmlpull.v1.XmlPullParser;
@@ -36,18 +32,26 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 public class ResourceValueParser {
 
+    private static final int MAX_CACHED_DIRECTORIES = 128;
+
     private static final Set<String> sSupportedDirs = new HashSet<>();
 
     static {
@@ -91,6 +95,17 @@ public class ResourceValueParser {
         }
     };
 
+    /**
+     * The parsed values of the most recently used directories, by path and name prefix
+     */
+    private static final Map<String, CachedValues> sCache =
+            new LinkedHashMap<String, CachedValues>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedValues> eldest) {
+                    return size() > MAX_CACHED_DIRECTORIES;
+                }
+            };
+
     private ProteusContext mContext;
 
     public void setProteusContext(ProteusContext context) {
@@ -126,28 +141,137 @@ public class ResourceValueParser {
         }
     }
 
+    /**
+     * Parses the values of a res directory, the values are cached by the contents of its
+     * files so unchanged libraries are not parsed again. The contents are only read again
+     * when the size or modification time of a file has changed.
+     */
     private void parseResDirectory(File resDir, String prefix) {
         if (resDir == null || !resDir.exists()) {
             return;
         }
 
-        File[] files = resDir.listFiles(File::isDirectory);
-        if (files != null) {
-            for (File file : files) {
-                if (!sSupportedDirs.contains(file.getName())) {
-                    continue;
+        List<File> files = new ArrayList<>();
+        File[] dirs = resDir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (sSupportedDirs.contains(dir.getName())) {
+                    addXmlFiles(dir, files);
                 }
+            }
+        }
+        parseCached(resDir, prefix, files, parser -> parser.parseResDirectoryInternal(dirs, prefix));
+    }
+
+    /**
+     * Parses the xml files of a values directory, the values are cached by the contents of
+     * its files.
+     */
+    public void parseValuesDirectory(@NonNull File valuesDir, String namePrefix) {
+        List<File> files = new ArrayList<>();
+        addXmlFiles(valuesDir, files);
+        parseCached(valuesDir, namePrefix, files,
+                parser -> parser.parse(files.toArray(new File[0]), namePrefix));
+    }
+
+    private void parseResDirectoryInternal(@Nullable File[] dirs, String prefix) {
+        if (dirs == null) {
+            return;
+        }
+        for (File file : dirs) {
+            if (!sSupportedDirs.contains(file.getName())) {
+                continue;
+            }
+
+            File[] children = file.listFiles(c -> c.getName().endsWith(".xml"));
+            if (children != null) {
+                if ("color".equals(file.getName())) {
+                    parseColor(children, prefix);
+                } else {
+                    parse(children, prefix);
+                }
+            }
+        }
+    }
+
+    private void parseCached(File dir, String prefix, List<File> files,
+                             Consumer<ResourceValueParser> parse) {
+        String key = dir.getAbsolutePath() + File.pathSeparator + prefix;
+        long stamp = stampFiles(files);
+        CachedValues values;
+        synchronized (sCache) {
+            values = sCache.get(key);
+        }
+        if (values == null || values.stamp != stamp) {
+            // the files were touched, their contents may still be the same
+            long hash = hashContents(files);
+            if (values == null || values.hash != hash || hash == -1) {
+                ResourceValueParser parser = new ResourceValueParser();
+                parser.setProteusContext(mContext);
+                parse.accept(parser);
+                values = new CachedValues(stamp, hash, parser);
+            } else {
+                values = new CachedValues(stamp, values);
+            }
+            synchronized (sCache) {
+                sCache.put(key, values);
+            }
+        }
 
-                File[] children = file.listFiles(c -> c.getName().endsWith(".xml"));
-                if (children != null) {
-                    if ("color".equals(file.getName())) {
-                        parseColor(children, prefix);
-                    } else {
-                        parse(children, prefix);
-                    }
+        // directories parsed first take precedence, as when they were parsed in one pass
+        for (Map.Entry<String, Value> entry : values.strings.entrySet()) {
+            mStrings.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Style> entry : values.styles.entrySet()) {
+            mStyles.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Value> entry : values.colors.entrySet()) {
+            mColors.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        mDimensions.putAll(values.dimensions);
+    }
+
+    private static void addXmlFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles(c -> c.getName().endsWith(".xml"));
+        if (children != null) {
+            // sorted so the hash does not depend on the order of the listing
+            Arrays.sort(children);
+            files.addAll(Arrays.asList(children));
+        }
+    }
+
+    /**
+     * @return a hash of the names, sizes and modification times of the files, which is cheap
+     * to compute and changes whenever a file is written
+     */
+    private static long stampFiles(List<File> files) {
+        long stamp = files.size();
+        for (File file : files) {
+            stamp = stamp * 31 + file.getPath().hashCode();
+            stamp = stamp * 31 + file.length();
+            stamp = stamp * 31 + file.lastModified();
+        }
+        return stamp;
+    }
+
+    /**
+     * @return a hash of the names and contents of the files, -1 if a file cannot be read
+     */
+    private static long hashContents(List<File> files) {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        for (File file : files) {
+            crc.update(file.getPath().getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = new FileInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
                 }
+            } catch (IOException e) {
+                return -1;
             }
         }
+        return crc.getValue();
     }
 
     public void parse(@NonNull File[] children, String namePrefix) {
@@ -237,52 +361,45 @@ public class ResourceValueParser {
     }
     private void parseColor(XmlPullParser parser, String fileName, String namePrefix) throws IOException,
             XmlPullParserException {
-        XmlToJsonConverter converter = new XmlToJsonConverter();
-        try {
-            JsonObject jsonObjects = converter.convert(parser);
-            Value read =
-                    new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER.read(new JsonReader(new StringReader(jsonObjects.toString())), true);
-            if (read.isObject()) {
-                ObjectValue objectValue = read.getAsObject();
-                Array children = objectValue.getAsArray("children");
-                int[][] states = new int[children.size()][];
-                Value[] colors = new Value[children.size()];
-                float[] alphas = new float[children.size()];
-                for (int i = 0; i < children.size(); i++) {
-                    // set the alpha to be 1 by default
-                    alphas[i] = 1;
-
-                    ObjectValue child = children.get(i).getAsObject();
-                    List<Integer> childStates = new ArrayList<>();
-                    for (Map.Entry<String, Value> entry : child.entrySet()) {
-                        Integer stateInteger =
-                                DrawableValue.StateListValue.sStateMap.get(entry.getKey());
-                        if (stateInteger != null) {
-                            int result = ParseHelper.parseBoolean(entry.getValue()) ? stateInteger : -stateInteger;
-                            childStates.add(result);
-                        }
-
-                        if ("android:color".equals(entry.getKey())) {
-                            colors[i] = entry.getValue();
-                        } else if ("android:alpha".equals(entry.getKey())) {
-                            alphas[i] = ParseHelper.parseFloat(entry.getValue());
-                        }
-                    }
-
-                    int[] temp = new int[childStates.size()];
-                    for (int j = 0; j < childStates.size(); j++) {
-                        Integer childState = childStates.get(j);
-                        temp[j] = childState;
-                    }
-                    states[i] = temp;
+        ObjectValue objectValue = new XmlToLayoutConverter(mContext).convertToObject(parser);
+        Array children = objectValue.getAsArray("children");
+        if (children == null) {
+            return;
+        }
+        int[][] states = new int[children.size()][];
+        Value[] colors = new Value[children.size()];
+        float[] alphas = new float[children.size()];
+        for (int i = 0; i < children.size(); i++) {
+            // set the alpha to be 1 by default
+            alphas[i] = 1;
+
+            ObjectValue child = children.get(i).getAsObject();
+            List<Integer> childStates = new ArrayList<>();
+            for (Map.Entry<String, Value> entry : child.entrySet()) {
+                Integer stateInteger =
+                        DrawableValue.StateListValue.sStateMap.get(entry.getKey());
+                if (stateInteger != null) {
+                    int result = ParseHelper.parseBoolean(entry.getValue()) ? stateInteger : -stateInteger;
+                    childStates.add(result);
+                }
+
+                if ("android:color".equals(entry.getKey())) {
+                    colors[i] = entry.getValue();
+                } else if ("android:alpha".equals(entry.getKey())) {
+                    alphas[i] = ParseHelper.parseFloat(entry.getValue());
                 }
+            }
 
-                Color.LazyStateList lazyStateList = Color.LazyStateList.valueOf(states, colors, alphas);
-                mColors.put(fileName.replace(".xml", ""), lazyStateList);
+            int[] temp = new int[childStates.size()];
+            for (int j = 0; j < childStates.size(); j++) {
+                Integer childState = childStates.get(j);
+                temp[j] = childState;
             }
-        } catch (ConvertException e) {
-            Log.e("ParseSelectorTag", "Unable to convert to json", e);
+            states[i] = temp;
         }
+
+        Color.LazyStateList lazyStateList = Color.LazyStateList.valueOf(states, colors, alphas);
+        mColors.put(fileName.replace(".xml", ""), lazyStateList);
     }
 
     private void parseDimension(XmlPullParser parser, String namePrefix) throws IOException,
@@ -322,4 +439,31 @@ public class ResourceValueParser {
             mStrings.put(namePrefix + pair.first, pair.second);
         }
     }
+
+    private static class CachedValues {
+        final long stamp;
+        final long hash;
+        final Map<String, Value> strings;
+        final Map<String, Style> styles;
+        final Map<String, Value> colors;
+        final Map<String, Value> dimensions;
+
+        CachedValues(long stamp, long hash, ResourceValueParser parser) {
+            this.stamp = stamp;
+            this.hash = hash;
+            strings = parser.mStrings;
+            styles = parser.mStyles;
+            colors = parser.mColors;
+            dimensions = parser.mDimensions;
+        }
+
+        CachedValues(long stamp, CachedValues values) {
+            this.stamp = stamp;
+            hash = values.hash;
+            strings = values.strings;
+            styles = values.styles;
+            colors = values.colors;
+            dimensions = values.dimensions;
+        }
+    }
 }
@@ -0,0 +1,110 @@
+package com.tyron.layoutpreview.convert;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.flipkart.android.proteus.Proteus;
+import com.flipkart.android.proteus.ProteusBuilder;
+import com.flipkart.android.proteus.ProteusContext;
+import com.flipkart.android.proteus.ProteusView;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.Value;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
+import com.tyron.layoutpreview.inflate.IncrementalLayoutInflater;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.StringReader;
+
+@RunWith(RobolectricTestRunner.class)
+public class TestXmlToLayout {
+
+    private static final String TEST_LAYOUT =
+            "<android.widget.LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+            "    android:layout_width=\"match_parent\"\n" +
+            "    android:layout_height=\"match_parent\"\n" +
+            "    android:orientation=\"vertical\">\n" +
+            "\n" +
+            "    <android.widget.TextView\n" +
+            "        android:id=\"@+id/first\"\n" +
+            "        android:layout_width=\"wrap_content\"\n" +
+            "        android:layout_height=\"wrap_content\"\n" +
+            "        android:text=\"First\" />\n" +
+            "\n" +
+            "    <android.widget.TextView\n" +
+            "        android:id=\"@+id/second\"\n" +
+            "        android:layout_width=\"wrap_content\"\n" +
+            "        android:layout_height=\"wrap_content\"\n" +
+            "        android:text=\"%s\" />\n" +
+            "\n" +
+            "    <android.widget.LinearLayout\n" +
+            "        android:layout_width=\"match_parent\"\n" +
+            "        android:layout_height=\"wrap_content\">\n" +
+            "\n" +
+            "        <android.view.View\n" +
+            "            android:layout_width=\"%s\"\n" +
+            "            android:layout_height=\"8dp\" />\n" +
+            "    </android.widget.LinearLayout>\n" +
+            "</android.widget.LinearLayout>";
+
+    private ProteusContext mContext;
+
+    @Before
+    public void setup() {
+        Proteus proteus = new ProteusBuilder().build();
+        mContext = proteus.createContextBuilder(ApplicationProvider.getApplicationContext())
+                .build();
+        ProteusTypeAdapterFactory.PROTEUS_INSTANCE_HOLDER.setProteus(proteus);
+    }
+
+    @Test
+    public void testSameAsJson() throws Exception {
+        String xml = String.format(TEST_LAYOUT, "Second", "8dp");
+        JsonObject object = new XmlToJsonConverter().convert(xml);
+        Value json = new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER
+                .read(new JsonReader(new StringReader(object.toString())), false);
+        Value direct = new XmlToLayoutConverter(mContext).convert(xml);
+
+        assertThat(direct.isLayout()).isTrue();
+        LayoutToXmlConverter converter = new LayoutToXmlConverter(mContext);
+        assertThat(converter.convert(direct.getAsLayout()))
+                .isEqualTo(converter.convert(json.getAsLayout()));
+    }
+
+    @Test
+    public void testUpdateChangedSubtree() throws Exception {
+        IncrementalLayoutInflater inflater = new IncrementalLayoutInflater(mContext);
+        ViewGroup root = (ViewGroup) inflater.inflate(String.format(TEST_LAYOUT, "Second", "8dp"))
+                .getAsView();
+        View first = root.getChildAt(0);
+        View second = root.getChildAt(1);
+        ViewGroup nested = (ViewGroup) root.getChildAt(2);
+        View nestedChild = nested.getChildAt(0);
+
+        ViewGroup updated = (ViewGroup) inflater.update(String.format(TEST_LAYOUT, "Changed", "8dp"))
+                .getAsView();
+        assertThat(updated).isSameInstanceAs(root);
+        assertThat(root.getChildCount()).isEqualTo(3);
+        assertThat(root.getChildAt(0)).isSameInstanceAs(first);
+        assertThat(root.getChildAt(1)).isNotSameInstanceAs(second);
+        assertThat(root.getChildAt(2)).isSameInstanceAs(nested);
+
+        // the layout of the root references the layout of the new view
+        Layout layout = ((ProteusView) root).getViewManager().getLayout();
+        assertThat(new LayoutToXmlConverter(mContext).convert(layout)).contains("Changed");
+
+        inflater.update(String.format(TEST_LAYOUT, "Changed", "16dp"));
+        assertThat(root.getChildAt(2)).isSameInstanceAs(nested);
+        assertThat(nested.getChildCount()).isEqualTo(1);
+        assertThat(nested.getChildAt(0)).isNotSameInstanceAs(nestedChild);
+    }
+}
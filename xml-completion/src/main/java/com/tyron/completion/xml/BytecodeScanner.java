@@ -3,19 +3,10 @@ package com.tyron.completion.xml;
 import android.content.Context;
 import android.util.AttributeSet;
 import android.view.View;
-import android.view.ViewGroup;
-
-import com.tyron.builder.BuildModule;
-
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.ClassParser;
-import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.classfile.Method;
-import org.apache.bcel.generic.Type;
-import org.jetbrains.org.objectweb.asm.ClassReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -23,108 +14,48 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 /**
- * Scans jar files and saves all the class files that extends {@link View} and has the
- * appropriate constructors to be inflated in XML.
+ * Scans jar files for the headers of their classes, used to find the classes that extends
+ * {@link View} and have the appropriate constructors to be inflated in XML.
  */
 public class BytecodeScanner {
 
-    private static boolean sBootScanned = false;
-
-    public static List<JavaClass> scan(File file) throws IOException {
-        scanBootstrapIfNeeded();
+    private static final String VIEW_CONSTRUCTOR_DESCRIPTOR = "(" +
+            descriptor(Context.class) + descriptor(AttributeSet.class) + ")V";
 
-        String path = file.getAbsolutePath();
-        List<JavaClass> viewClasses = new ArrayList<>();
+    /**
+     * Reads the headers of all the classes of the jar file, classes that cannot be read
+     * are skipped
+     */
+    public static List<ClassHeader> scan(File file) throws IOException {
+        List<ClassHeader> headers = new ArrayList<>();
         try (JarFile jarFile = new JarFile(file)) {
             Enumeration<JarEntry> entries = jarFile.entries();
             while (entries.hasMoreElements()) {
                 JarEntry element = entries.nextElement();
-                if (!element.getName().endsWith(".class")) {
+                String name = element.getName();
+                if (!name.endsWith(".class")
+                        || name.startsWith("META-INF/")
+                        || name.endsWith("module-info.class")) {
                     continue;
                 }
-                ClassParser classParser = new ClassParser(path, element.getName());
-                JavaClass parse = classParser.parse();
-                if (isViewClass(parse)) {
-                    viewClasses.add(parse);
+                try (InputStream in = jarFile.getInputStream(element)) {
+                    headers.add(ClassHeader.read(in));
+                } catch (IOException e) {
+                    // ignored, the jar may contain other files named .class
                 }
             }
         }
-        return viewClasses;
+        return headers;
     }
 
-    public static boolean isViewGroup(JavaClass javaClass) {
-        JavaClass[] superClasses;
-        try {
-            superClasses = javaClass.getSuperClasses();
-        } catch (ClassNotFoundException e) {
-            return false;
-        }
-        for (JavaClass superClass : superClasses) {
-            if (ViewGroup.class.getName().equals(superClass.getClassName())) {
-                return true;
-            }
-        }
-        return false;
+    /**
+     * @return whether the class declares the constructor used by the layout inflater
+     */
+    public static boolean hasViewConstructor(ClassHeader header) {
+        return header.getConstructorDescriptors().contains(VIEW_CONSTRUCTOR_DESCRIPTOR);
     }
 
-    private static void scanBootstrapIfNeeded() {
-        if (sBootScanned) {
-            return;
-        }
-        File androidJar = BuildModule.getAndroidJar();
-        if (androidJar != null && androidJar.exists()) {
-            try (JarFile jarFile = new JarFile(androidJar)) {
-                Enumeration<JarEntry> entries = jarFile.entries();
-                while (entries.hasMoreElements()) {
-                    JarEntry element = entries.nextElement();
-                    if (!element.getName().endsWith(".class")) {
-                        continue;
-                    }
-                    ClassParser classParser = new ClassParser(androidJar.getAbsolutePath(),
-                            element.getName());
-                    JavaClass parse = classParser.parse();
-                    Repository.addClass(parse);
-                }
-            } catch (IOException e) {
-                // ignored
-            }
-
-            sBootScanned = true;
-        }
-    }
-
-    private static boolean isViewClass(JavaClass javaClass) {
-        try {
-            JavaClass[] superClasses = javaClass.getSuperClasses();
-            for (JavaClass superClass : superClasses) {
-                if (View.class.getName().equals(superClass.getClassName())) {
-                    Method[] methods = javaClass.getMethods();
-                    if (containsViewConstructors(methods)) {
-                        return true;
-                    }
-                }
-            }
-            return false;
-        } catch (ClassNotFoundException e) {
-            return false;
-        }
-    }
-
-    private static boolean containsViewConstructors(Method[] methods) {
-        for (Method method : methods) {
-            if (!"<init>".equals(method.getName())) {
-                continue;
-            }
-
-            Type[] argumentTypes = method.getArgumentTypes();
-            if (argumentTypes.length == 2) {
-                if (Context.class.getName().equals(argumentTypes[0].toString())) {
-                    if (AttributeSet.class.getName().equals(argumentTypes[1].toString())) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    private static String descriptor(Class<?> type) {
+        return "L" + type.getName().replace('.', '/') + ";";
     }
 }
@@ -0,0 +1,258 @@
+package com.tyron.completion.xml;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The name, super class, interfaces and constructors of a class file.
+ *
+ * <p>Only the constant pool, the header and the method table are read, fields are skipped
+ * and the stream is not read past the methods. Constant pool strings are only decoded when
+ * they are referenced by one of these, so reading the header of a class is much cheaper than
+ * parsing it.
+ */
+public class ClassHeader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final String CONSTRUCTOR_NAME = "<init>";
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final int mAccessFlags;
+    private final String mClassName;
+    private final String mSuperClassName;
+    private final List<String> mInterfaces;
+    private final List<String> mConstructorDescriptors;
+
+    public ClassHeader(int accessFlags,
+                       @NonNull String className,
+                       @Nullable String superClassName,
+                       @NonNull List<String> interfaces,
+                       @NonNull List<String> constructorDescriptors) {
+        mAccessFlags = accessFlags;
+        mClassName = className;
+        mSuperClassName = superClassName;
+        mInterfaces = interfaces;
+        mConstructorDescriptors = constructorDescriptors;
+    }
+
+    public int getAccessFlags() {
+        return mAccessFlags;
+    }
+
+    /**
+     * @return the binary name of the class, e.g. {@code android.widget.TextView}
+     */
+    @NonNull
+    public String getClassName() {
+        return mClassName;
+    }
+
+    /**
+     * @return the binary name of the super class, null for {@code java.lang.Object} and modules
+     */
+    @Nullable
+    public String getSuperClassName() {
+        return mSuperClassName;
+    }
+
+    @NonNull
+    public List<String> getInterfaces() {
+        return mInterfaces;
+    }
+
+    /**
+     * @return the descriptors of the constructors, e.g. {@code (Landroid/content/Context;)V}
+     */
+    @NonNull
+    public List<String> getConstructorDescriptors() {
+        return mConstructorDescriptors;
+    }
+
+    /**
+     * Reads the header of a class file, the stream is left positioned after the method table
+     *
+     * @throws IOException if the stream is not a class file
+     */
+    @NonNull
+    public static ClassHeader read(@NonNull InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        // minor and major version
+        in.readInt();
+
+        int poolSize = in.readUnsignedShort();
+        byte[][] utf8 = new byte[poolSize][];
+        int[] classNames = new int[poolSize];
+        for (int i = 1; i < poolSize; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = new byte[in.readUnsignedShort()];
+                    in.readFully(utf8[i]);
+                    break;
+                case CONSTANT_CLASS:
+                    classNames[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    skipFully(in, 2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    skipFully(in, 3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    skipFully(in, 4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    skipFully(in, 8);
+                    // eight byte constants take two entries
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        int accessFlags = in.readUnsignedShort();
+        String className = className(utf8, classNames, in.readUnsignedShort());
+        if (className == null) {
+            throw new IOException("Missing class name");
+        }
+        String superClassName = className(utf8, classNames, in.readUnsignedShort());
+
+        int interfaceCount = in.readUnsignedShort();
+        List<String> interfaces = interfaceCount == 0
+                ? Collections.emptyList() : new ArrayList<>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(className(utf8, classNames, in.readUnsignedShort()));
+        }
+
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            // access flags, name and descriptor
+            skipFully(in, 6);
+            skipAttributes(in);
+        }
+
+        List<String> constructors = new ArrayList<>(1);
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            // access flags
+            skipFully(in, 2);
+            int name = in.readUnsignedShort();
+            int descriptor = in.readUnsignedShort();
+            if (equals(utf8[name], CONSTRUCTOR_NAME)) {
+                constructors.add(decode(utf8[descriptor]));
+            }
+            skipAttributes(in);
+        }
+        return new ClassHeader(accessFlags, className, superClassName, interfaces, constructors);
+    }
+
+    @Nullable
+    private static String className(byte[][] utf8, int[] classNames, int index) throws IOException {
+        if (index == 0) {
+            return null;
+        }
+        if (index >= classNames.length || utf8[classNames[index]] == null) {
+            throw new IOException("Invalid class reference " + index);
+        }
+        return decode(utf8[classNames[index]]).replace('/', '.');
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // attribute name
+            skipFully(in, 2);
+            skipFully(in, in.readInt() & 0xFFFFFFFFL);
+        }
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                // skip may return 0 before the end of some streams
+                in.readByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static boolean equals(byte[] bytes, String ascii) {
+        if (bytes == null || bytes.length != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the modified UTF-8 of the class file format
+     */
+    private static String decode(byte[] bytes) {
+        char[] chars = new char[bytes.length];
+        int length = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                chars[length++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0 && i + 1 < bytes.length) {
+                chars[length++] = (char) (((b & 0x1F) << 6) | (bytes[++i] & 0x3F));
+            } else if (i + 2 < bytes.length) {
+                chars[length++] = (char) (((b & 0x0F) << 12)
+                        | ((bytes[++i] & 0x3F) << 6)
+                        | (bytes[++i] & 0x3F));
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ClassHeader{" + mClassName + " extends " + mSuperClassName + "}";
+    }
+}
@@ -0,0 +1,288 @@
+package com.tyron.completion.xml;
+
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.completion.xml.model.ViewClass;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The class hierarchy of the jars of a module, used to find the classes that can be inflated
+ * in layout files.
+ *
+ * <p>Each jar is read once with {@link BytecodeScanner} and its classes are stored along with
+ * the jar's size and modification time, so reopening a project does not read unchanged jars
+ * again. Only the classes extending {@link View} are kept for the bootstrap jar since its
+ * classes never extend library classes, which keeps android.jar out of the heap.
+ */
+public class ViewClassIndex {
+
+    private static final int MAGIC = 0x56434958;
+    private static final int VERSION = 1;
+
+    private static final String OBJECT_CLASS = Object.class.getName();
+    private static final String VIEW_CLASS = View.class.getName();
+
+    /**
+     * Classes deeper than this in the hierarchy are assumed to be in a cycle
+     */
+    private static final int MAX_DEPTH = 64;
+
+    private final Map<File, JarHierarchy> mJars = new HashMap<>();
+    private boolean mDirty;
+
+    /**
+     * Finds the classes of the given jars that extend {@link View} and declare the constructor
+     * used by the layout inflater. Jars that changed since they were last indexed are read again.
+     *
+     * @param bootstrapJar the android.jar of the module, its classes are not returned
+     * @param jars         the library jars
+     * @return the view classes, by their binary name
+     */
+    @NonNull
+    public synchronized Map<String, ViewClass> getViewClasses(@Nullable File bootstrapJar,
+                                                              @NonNull Collection<File> jars) {
+        Map<File, JarHierarchy> current = new HashMap<>();
+        List<JarHierarchy> hierarchies = new ArrayList<>();
+        JarHierarchy bootstrap = null;
+        if (bootstrapJar != null && bootstrapJar.exists()) {
+            bootstrap = getJar(bootstrapJar, true);
+            if (bootstrap != null) {
+                current.put(bootstrapJar, bootstrap);
+                hierarchies.add(bootstrap);
+            }
+        }
+        for (File jar : jars) {
+            JarHierarchy hierarchy = getJar(jar, false);
+            if (hierarchy != null) {
+                current.put(jar, hierarchy);
+                hierarchies.add(hierarchy);
+            }
+        }
+        if (!current.keySet().equals(mJars.keySet())) {
+            mDirty = true;
+        }
+        mJars.clear();
+        mJars.putAll(current);
+
+        // the first jar declaring a class wins, as on the class path
+        Map<String, String> superClasses = new HashMap<>();
+        for (JarHierarchy hierarchy : hierarchies) {
+            for (int i = 0; i < hierarchy.classes.length; i++) {
+                superClasses.putIfAbsent(hierarchy.classes[i], hierarchy.superClasses[i]);
+            }
+        }
+
+        Map<String, ViewClass> viewClasses = new TreeMap<>();
+        for (JarHierarchy hierarchy : hierarchies) {
+            if (hierarchy == bootstrap) {
+                continue;
+            }
+            for (int i = 0; i < hierarchy.classes.length; i++) {
+                if (!hierarchy.inflatable[i] || viewClasses.containsKey(hierarchy.classes[i])) {
+                    continue;
+                }
+                List<String> supers = getViewSuperClasses(superClasses, hierarchy.classes[i]);
+                if (supers != null) {
+                    viewClasses.put(hierarchy.classes[i],
+                            new ViewClass(hierarchy.classes[i], supers));
+                }
+            }
+        }
+        return viewClasses;
+    }
+
+    /**
+     * @return the super classes of the class without {@code java.lang.Object}, or null
+     * if it does not extend {@link View}
+     */
+    @Nullable
+    static List<String> getViewSuperClasses(Map<String, String> superClasses, String className) {
+        List<String> supers = new ArrayList<>();
+        String current = superClasses.get(className);
+        while (current != null && supers.size() < MAX_DEPTH) {
+            supers.add(current);
+            if (VIEW_CLASS.equals(current)) {
+                return supers;
+            }
+            current = superClasses.get(current);
+        }
+        return null;
+    }
+
+    @Nullable
+    private JarHierarchy getJar(File jar, boolean viewsOnly) {
+        JarHierarchy hierarchy = mJars.get(jar);
+        if (hierarchy != null && hierarchy.isUpToDate(jar)) {
+            return hierarchy;
+        }
+        try {
+            hierarchy = JarHierarchy.read(jar, viewsOnly);
+            mDirty = true;
+            return hierarchy;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the persisted hierarchies, jars that have not changed since then will not be read
+     * again by {@link #getViewClasses(File, Collection)}
+     */
+    public synchronized void load(@NonNull File indexFile) {
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int jarCount = in.readInt();
+            Map<File, JarHierarchy> jars = new HashMap<>(jarCount);
+            for (int i = 0; i < jarCount; i++) {
+                File jar = new File(in.readUTF());
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                int count = in.readInt();
+                String[] classes = new String[count];
+                String[] superClasses = new String[count];
+                boolean[] inflatable = new boolean[count];
+                for (int j = 0; j < count; j++) {
+                    classes[j] = in.readUTF();
+                    String superClass = in.readUTF();
+                    superClasses[j] = superClass.isEmpty() ? null : superClass;
+                    inflatable[j] = in.readBoolean();
+                }
+                jars.put(jar, new JarHierarchy(length, lastModified, classes, superClasses,
+                        inflatable));
+            }
+            mJars.putAll(jars);
+        } catch (IOException e) {
+            // the index is only a cache, the jars will be read again
+        }
+    }
+
+    /**
+     * Writes the hierarchies of all the jars in this index, does nothing if no jars have
+     * changed since the last load or save.
+     */
+    public synchronized void save(@NonNull File indexFile) throws IOException {
+        if (!mDirty && indexFile.exists()) {
+            return;
+        }
+        File parent = indexFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mJars.size());
+            for (Map.Entry<File, JarHierarchy> entry : mJars.entrySet()) {
+                JarHierarchy hierarchy = entry.getValue();
+                out.writeUTF(entry.getKey().getAbsolutePath());
+                out.writeLong(hierarchy.length);
+                out.writeLong(hierarchy.lastModified);
+                out.writeInt(hierarchy.classes.length);
+                for (int i = 0; i < hierarchy.classes.length; i++) {
+                    out.writeUTF(hierarchy.classes[i]);
+                    String superClass = hierarchy.superClasses[i];
+                    out.writeUTF(superClass == null ? "" : superClass);
+                    out.writeBoolean(hierarchy.inflatable[i]);
+                }
+            }
+        }
+        if (!temp.renameTo(indexFile)) {
+            // renameTo does not replace existing files on some platforms
+            if (!indexFile.delete() || !temp.renameTo(indexFile)) {
+                throw new IOException("Unable to write view class index " + indexFile);
+            }
+        }
+        mDirty = false;
+    }
+
+    private static class JarHierarchy {
+        final long length;
+        final long lastModified;
+        final String[] classes;
+        final String[] superClasses;
+        /**
+         * Whether each class declares the constructor used by the layout inflater
+         */
+        final boolean[] inflatable;
+
+        JarHierarchy(long length, long lastModified, String[] classes, String[] superClasses,
+                     boolean[] inflatable) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.classes = classes;
+            this.superClasses = superClasses;
+            this.inflatable = inflatable;
+        }
+
+        boolean isUpToDate(File jar) {
+            return jar.length() == length && jar.lastModified() == lastModified;
+        }
+
+        /**
+         * @param viewsOnly whether to only keep the classes extending {@link View}, only valid
+         *                  for jars whose classes do not extend classes of other jars
+         */
+        static JarHierarchy read(File jar, boolean viewsOnly) throws IOException {
+            long length = jar.length();
+            long lastModified = jar.lastModified();
+            List<ClassHeader> headers = new ArrayList<>();
+            for (ClassHeader header : BytecodeScanner.scan(jar)) {
+                // classes extending Object directly are not part of any view hierarchy
+                if (header.getSuperClassName() != null
+                        && !OBJECT_CLASS.equals(header.getSuperClassName())) {
+                    headers.add(header);
+                }
+            }
+            if (viewsOnly) {
+                Map<String, String> superClasses = new HashMap<>(headers.size());
+                for (ClassHeader header : headers) {
+                    superClasses.put(header.getClassName(), header.getSuperClassName());
+                }
+                List<ClassHeader> views = new ArrayList<>();
+                for (ClassHeader header : headers) {
+                    if (VIEW_CLASS.equals(header.getClassName())
+                            || getViewSuperClasses(superClasses, header.getClassName()) != null) {
+                        views.add(header);
+                    }
+                }
+                headers = views;
+            }
+            int count = headers.size();
+            String[] classes = new String[count];
+            String[] superClasses = new String[count];
+            boolean[] inflatable = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                ClassHeader header = headers.get(i);
+                classes[i] = header.getClassName();
+                superClasses[i] = header.getSuperClassName();
+                inflatable[i] = BytecodeScanner.hasViewConstructor(header);
+            }
+            return new JarHierarchy(length, lastModified, classes, superClasses, inflatable);
+        }
+    }
+}
@@ -21,16 +21,16 @@ import android.widget.TextView;
 import android.widget.ViewFlipper;
 import android.widget.ViewSwitcher;
 
+import com.tyron.builder.BuildModule;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.common.ApplicationProvider;
 import com.tyron.common.util.Decompress;
 import com.tyron.completion.xml.model.AttributeInfo;
 import com.tyron.completion.xml.model.DeclareStyleable;
 import com.tyron.completion.xml.model.Format;
+import com.tyron.completion.xml.model.ViewClass;
 import com.tyron.completion.xml.util.StyleUtils;
 
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.JavaClass;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -51,7 +51,7 @@ public class XmlRepository {
     private final Map<String, DeclareStyleable> mDeclareStyleables = new TreeMap<>();
     private final Map<String, DeclareStyleable> mManifestAttrs = new TreeMap<>();
     private final Map<String, AttributeInfo> mExtraAttributes = new TreeMap<>();
-    private final Map<String, JavaClass> mJavaViewClasses = new TreeMap<>();
+    private final Map<String, ViewClass> mJavaViewClasses = new TreeMap<>();
 
     private boolean mInitialized = false;
 
@@ -63,7 +63,7 @@ public class XmlRepository {
         return mDeclareStyleables;
     }
 
-    public Map<String, JavaClass> getJavaViewClasses() {
+    public Map<String, ViewClass> getJavaViewClasses() {
         return mJavaViewClasses;
     }
 
@@ -77,6 +77,7 @@ public class XmlRepository {
         }
         mAttrsFile = getOrExtractFiles();
 
+        List<File> classesFiles = new ArrayList<>();
         for (File library : module.getLibraries()) {
             File parent = library.getParentFile();
             if (parent == null) {
@@ -97,19 +98,25 @@ public class XmlRepository {
 
             File classesFile = new File(parent, "classes.jar");
             if (classesFile.exists()) {
-                try {
-                    List<JavaClass> scan =
-                            BytecodeScanner.scan(classesFile);
-                    for (JavaClass javaClass : scan) {
-                        StyleUtils.putStyles(javaClass);
-                        mJavaViewClasses.put(javaClass.getClassName(), javaClass);
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                classesFiles.add(classesFile);
             }
         }
 
+        File indexFile = new File(module.getBuildDirectory(), "intermediate/view_class_index.bin");
+        ViewClassIndex viewClassIndex = new ViewClassIndex();
+        viewClassIndex.load(indexFile);
+        Map<String, ViewClass> viewClasses =
+                viewClassIndex.getViewClasses(BuildModule.getAndroidJar(), classesFiles);
+        for (ViewClass viewClass : viewClasses.values()) {
+            StyleUtils.putStyles(viewClass);
+        }
+        mJavaViewClasses.putAll(viewClasses);
+        try {
+            viewClassIndex.save(indexFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
         try {
             Map<String, DeclareStyleable> android = parse(mAttrsFile, "android");
             mDeclareStyleables.putAll(android);
@@ -153,18 +160,15 @@ public class XmlRepository {
     }
 
     private void addFrameworkView(Class<? extends View> viewClass) {
-        org.apache.bcel.util.Repository repository = Repository.getRepository();
-        try {
-            JavaClass javaClass = repository.loadClass(viewClass);
-            if (javaClass != null) {
-                mJavaViewClasses.put(javaClass.getClassName(), javaClass);
-            }
-        } catch (ClassNotFoundException e) {
-            // ignored
+        List<String> superClasses = new ArrayList<>();
+        for (Class<?> current = viewClass.getSuperclass();
+             current != null && current != Object.class;
+             current = current.getSuperclass()) {
+            superClasses.add(current.getName());
         }
+        mJavaViewClasses.put(viewClass.getName(), new ViewClass(viewClass.getName(), superClasses));
     }
 
-
     private Map<String, DeclareStyleable> parse(File file, String namespace) throws XmlPullParserException, IOException {
         XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
         XmlPullParser parser = factory.newPullParser();
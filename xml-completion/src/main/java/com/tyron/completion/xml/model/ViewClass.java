@@ -0,0 +1,46 @@
+package com.tyron.completion.xml.model;
+
+import android.view.ViewGroup;
+
+import java.util.List;
+
+/**
+ * A class that can be inflated as a tag of a layout file
+ */
+public class ViewClass {
+
+    private final String className;
+    private final List<String> superClasses;
+
+    /**
+     * @param className    the binary name of the class
+     * @param superClasses the binary names of the super classes, the direct super class first,
+     *                     without {@code java.lang.Object}
+     */
+    public ViewClass(String className, List<String> superClasses) {
+        this.className = className;
+        this.superClasses = superClasses;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getPackageName() {
+        int index = className.lastIndexOf('.');
+        return index == -1 ? "" : className.substring(0, index);
+    }
+
+    public List<String> getSuperClasses() {
+        return superClasses;
+    }
+
+    public boolean isViewGroup() {
+        return superClasses.contains(ViewGroup.class.getName());
+    }
+
+    @Override
+    public String toString() {
+        return className;
+    }
+}
@@ -32,6 +32,7 @@ import com.tyron.completion.xml.lexer.XMLLexer;
 import com.tyron.completion.xml.model.AttributeInfo;
 import com.tyron.completion.xml.model.DeclareStyleable;
 import com.tyron.completion.xml.model.Format;
+import com.tyron.completion.xml.model.ViewClass;
 import com.tyron.completion.xml.model.XmlCachedCompletion;
 import com.tyron.completion.xml.util.AndroidResourcesUtils;
 import com.tyron.completion.xml.util.StyleUtils;
@@ -39,7 +40,6 @@ import com.tyron.completion.xml.util.XmlUtils;
 
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.Token;
-import org.apache.bcel.classfile.JavaClass;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -193,7 +193,7 @@ public class XmlCompletionProvider extends CompletionProvider {
             return FuzzySearch.partialRatio(prefixSet, className) >= 30;
 
         });
-        for (Map.Entry<String, JavaClass> entry :
+        for (Map.Entry<String, ViewClass> entry :
                 repository.getJavaViewClasses().entrySet()) {
             CompletionItem item = new CompletionItem();
             item.label = StyleUtils.getSimpleName(entry.getKey());
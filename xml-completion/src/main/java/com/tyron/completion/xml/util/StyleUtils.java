@@ -25,10 +25,8 @@ import android.widget.ViewSwitcher;
 import androidx.annotation.NonNull;
 
 import com.google.common.collect.ImmutableSet;
-import com.tyron.completion.xml.BytecodeScanner;
 import com.tyron.completion.xml.model.DeclareStyleable;
-
-import org.apache.bcel.classfile.JavaClass;
+import com.tyron.completion.xml.model.ViewClass;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -72,45 +70,28 @@ public class StyleUtils {
         putStyle(ViewSwitcher.class);
     }
 
-    public static void putStyles(JavaClass javaClass) {
+    public static void putStyles(ViewClass viewClass) {
         ImmutableSet.Builder<String> builder = ImmutableSet.builder();
-        try {
-            JavaClass[] superClasses = javaClass.getSuperClasses();
-            for (JavaClass superClass : superClasses) {
-                if (Object.class.getName().equals(superClass.getClassName())) {
-                    continue;
-                }
-                builder.add(getSimpleName(superClass.getClassName()));
-            }
-        } catch (ClassNotFoundException e) {
-            // ignored
+        for (String superClass : viewClass.getSuperClasses()) {
+            builder.add(getSimpleName(superClass));
         }
-        sViewStyleMap.put(getSimpleName(javaClass.getClassName()), builder.build());
+        sViewStyleMap.put(getSimpleName(viewClass.getClassName()), builder.build());
 
-        if (BytecodeScanner.isViewGroup(javaClass)) {
-            putLayoutParams(javaClass);
+        if (viewClass.isViewGroup()) {
+            putLayoutParams(viewClass);
         }
     }
 
-    public static void putLayoutParams(JavaClass javaClass) {
+    public static void putLayoutParams(ViewClass viewClass) {
         ImmutableSet.Builder<String> builder = ImmutableSet.builder();
-        try {
-            JavaClass[] superClasses = javaClass.getSuperClasses();
-            for (JavaClass superClass : superClasses) {
-                if (Object.class.getName().equals(superClass.getClassName())) {
-                    continue;
-                }
-
-                if (View.class.getName().equals(superClass.getClassName())) {
-                    continue;
-                }
-
-                builder.add(getSimpleName(superClass.getClassName()) + "_Layout");
+        for (String superClass : viewClass.getSuperClasses()) {
+            if (View.class.getName().equals(superClass)) {
+                continue;
             }
-            sLayoutParamsMap.put(getSimpleName(javaClass.getClassName()) + "_Layout", builder.build());
-        } catch (ClassNotFoundException e) {
-            // ignored
+
+            builder.add(getSimpleName(superClass) + "_Layout");
         }
+        sLayoutParamsMap.put(getSimpleName(viewClass.getClassName()) + "_Layout", builder.build());
     }
 
     public static void putLayoutParams(@NonNull Class<? extends ViewGroup> viewGroup) {
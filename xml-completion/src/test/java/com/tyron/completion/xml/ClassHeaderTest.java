@@ -0,0 +1,90 @@
+package com.tyron.completion.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+public class ClassHeaderTest {
+
+    @SuppressWarnings("unused")
+    static class Sample extends AbstractList<String> implements RandomAccess, Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String value = "é中";
+        private final long count;
+        private final double ratio = 0.5;
+
+        Sample(String first, long count) {
+            this.count = count;
+        }
+
+        Sample() {
+            this(null, 1L);
+        }
+
+        @Override
+        public String get(int index) {
+            return value + index;
+        }
+
+        @Override
+        public int size() {
+            return (int) (count * ratio);
+        }
+    }
+
+    @Test
+    public void testReadHeader() throws IOException {
+        ClassHeader header;
+        try (InputStream in = ClassHeaderTest.class.getResourceAsStream("ClassHeaderTest$Sample.class")) {
+            header = ClassHeader.read(in);
+        }
+        assertEquals(Sample.class.getName(), header.getClassName());
+        assertEquals(AbstractList.class.getName(), header.getSuperClassName());
+        assertEquals(Arrays.asList(RandomAccess.class.getName(), Serializable.class.getName()),
+                header.getInterfaces());
+        assertEquals(Arrays.asList("(Ljava/lang/String;J)V", "()V"),
+                header.getConstructorDescriptors());
+    }
+
+    @Test
+    public void testReadObjectHeader() throws IOException {
+        ClassHeader header;
+        try (InputStream in = Object.class.getResourceAsStream("Object.class")) {
+            if (in == null) {
+                // the runtime does not expose its class files
+                return;
+            }
+            header = ClassHeader.read(in);
+        }
+        assertEquals(Object.class.getName(), header.getClassName());
+        assertNull(header.getSuperClassName());
+        assertEquals(Collections.singletonList("()V"), header.getConstructorDescriptors());
+    }
+
+    @Test
+    public void testViewSuperClasses() {
+        Map<String, String> superClasses = new HashMap<>();
+        superClasses.put("com.example.Button", "android.widget.TextView");
+        superClasses.put("android.widget.TextView", "android.view.View");
+        superClasses.put("com.example.Adapter", "android.widget.BaseAdapter");
+        superClasses.put("com.example.A", "com.example.B");
+        superClasses.put("com.example.B", "com.example.A");
+
+        assertEquals(Arrays.asList("android.widget.TextView", "android.view.View"),
+                ViewClassIndex.getViewSuperClasses(superClasses, "com.example.Button"));
+        assertNull(ViewClassIndex.getViewSuperClasses(superClasses, "com.example.Adapter"));
+        assertNull(ViewClassIndex.getViewSuperClasses(superClasses, "com.example.A"));
+    }
+}